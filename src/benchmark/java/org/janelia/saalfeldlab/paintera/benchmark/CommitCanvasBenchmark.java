@@ -0,0 +1,122 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.apache.commons.io.FileUtils;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
+import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Committing a painted canvas into a single scale dataset of a local N5 container with {@link CommitCanvasN5}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CommitCanvasBenchmark
+{
+
+	private static final long[] DIMENSIONS = {256, 256, 128};
+
+	private static final int[] BLOCK_SIZE = {64, 64, 64};
+
+	private static final String DATASET = "labels";
+
+	@Param({"uint64", "label-multiset"})
+	public String dataType;
+
+	@Param({"0.1", "0.9"})
+	public double paintedFraction;
+
+	private Path containerDir;
+
+	private CachedCellImg<UnsignedLongType, ?> canvas;
+
+	private long[] blocks;
+
+	private PersistCanvas commit;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		final ArrayImg<UnsignedLongType, LongArray> labels = SyntheticVolumes.labels(DIMENSIONS, 200, SyntheticVolumes.DEFAULT_SEED);
+		final Random rng = new Random(SyntheticVolumes.DEFAULT_SEED);
+		final ReadOnlyCachedCellImgFactory factory = new ReadOnlyCachedCellImgFactory(ReadOnlyCachedCellImgOptions.options().cellDimensions(BLOCK_SIZE));
+		canvas = factory.create(DIMENSIONS, new UnsignedLongType(), img -> {
+			for (final UnsignedLongType px : img)
+				px.set(Label.INVALID);
+			for (final Pair<UnsignedLongType, UnsignedLongType> p : Views.interval(Views.pair(img, labels), img))
+				if (rng.nextDouble() < paintedFraction)
+					p.getA().set(p.getB());
+		});
+
+		final CellGrid grid = canvas.getCellGrid();
+		blocks = LongStream.range(0, Intervals.numElements(grid.getGridDimensions())).toArray();
+		// load all cells before benchmarking
+		for (final UnsignedLongType px : canvas)
+			px.get();
+
+		containerDir = Files.createTempDirectory("commit-canvas-benchmark");
+		final N5FSWriter container = new N5FSWriter(containerDir.toAbsolutePath().toString());
+		final boolean isLabelMultiset = "label-multiset".equals(dataType);
+		container.createDataset(DATASET, new DatasetAttributes(
+				DIMENSIONS,
+				BLOCK_SIZE,
+				isLabelMultiset ? DataType.UINT8 : DataType.UINT64,
+				new GzipCompression()));
+		if (isLabelMultiset)
+			container.setAttribute(DATASET, N5Helpers.LABEL_MULTISETTYPE_KEY, true);
+		commit = new CommitCanvasN5(container, DATASET);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		FileUtils.deleteDirectory(containerDir.toFile());
+	}
+
+	@Benchmark
+	public List<?> persistCanvas() throws UnableToPersistCanvas
+	{
+		return commit.persistCanvas(canvas, blocks);
+	}
+
+}
@@ -0,0 +1,93 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.meshes.AverageNormals;
+import org.janelia.saalfeldlab.paintera.meshes.MarchingCubes;
+import org.janelia.saalfeldlab.paintera.meshes.Normals;
+import org.janelia.saalfeldlab.paintera.meshes.Smooth;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesh generation as in {@link org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMeshCacheLoader}: marching cubes
+ * for a single segment of a synthetic label volume, followed by smoothing and normal averaging.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeshBenchmark
+{
+
+	@Param({"64", "128"})
+	public int size;
+
+	@Param({"1", "2"})
+	public int cubeSize;
+
+	private RandomAccessibleInterval<BoolType> mask;
+
+	private float[] vertices;
+
+	private float[] normals;
+
+	@Setup
+	public void setup()
+	{
+		final long[] dimensions = {size, size, size};
+		final ArrayImg<UnsignedLongType, LongArray> labels = SyntheticVolumes.labels(dimensions, 20, SyntheticVolumes.DEFAULT_SEED);
+		final long id = labels.firstElement().getIntegerLong();
+		mask = Converters.convert((RandomAccessibleInterval<UnsignedLongType>) labels, (s, t) -> t.set(s.getIntegerLong() == id), new BoolType());
+		vertices = marchingCubes();
+		normals = new float[vertices.length];
+		Normals.normals(vertices, normals);
+	}
+
+	@Benchmark
+	public float[] marchingCubes()
+	{
+		return new MarchingCubes<>(
+				Views.extendZero(mask),
+				new FinalInterval(mask),
+				new AffineTransform3D(),
+				new int[] {cubeSize, cubeSize, cubeSize},
+				() -> false
+			).generateMesh();
+	}
+
+	@Benchmark
+	public float[] smooth()
+	{
+		return Smooth.smooth(vertices, Smooth.DEFAULT_LAMBDA, Smooth.DEFAULT_ITERATIONS);
+	}
+
+	@Benchmark
+	public float[] averageNormals()
+	{
+		final float[] averaged = normals.clone();
+		AverageNormals.averagedNormals(vertices, averaged);
+		return averaged;
+	}
+
+}
@@ -0,0 +1,233 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.fill.FloodFill;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.control.paint.FloodFillTransformedPlane;
+import org.janelia.saalfeldlab.paintera.control.paint.Paint2D;
+import org.janelia.saalfeldlab.paintera.data.Interpolations;
+import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.Mask;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.mask.Masks;
+import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Painting and flood filling as triggered by the paint tools, and applying the resulting mask to the canvas of a
+ * {@link MaskedSource}, including propagation into lower resolution levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaintBenchmark
+{
+
+	private static final long[] DIMENSIONS = {128, 128, 128};
+
+	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> t.getIntegerLong() == 1;
+
+	@Param({"false", "true"})
+	public boolean oblique;
+
+	@Param({"10", "40"})
+	public double radius;
+
+	private ArrayImg<UnsignedLongType, LongArray> labels;
+
+	private ArrayImg<UnsignedLongType, LongArray> canvas;
+
+	private final AffineTransform3D labelToGlobalTransform = new AffineTransform3D();
+
+	private final AffineTransform3D globalToViewerTransform = new AffineTransform3D();
+
+	private final AffineTransform3D labelToViewerTransform = new AffineTransform3D();
+
+	private final double[] center = new double[3];
+
+	private ExecutorService propagationExecutor;
+
+	private MaskedSource<UnsignedLongType, VolatileUnsignedLongType> maskedSource;
+
+	private long nextId = 1;
+
+	@Setup
+	public void setup()
+	{
+		labels = SyntheticVolumes.labels(DIMENSIONS, 50, SyntheticVolumes.DEFAULT_SEED);
+		canvas = ArrayImgs.unsignedLongs(DIMENSIONS);
+
+		if (oblique)
+		{
+			globalToViewerTransform.rotate(0, Math.PI / 7);
+			globalToViewerTransform.rotate(1, Math.PI / 5);
+		}
+		labelToViewerTransform.set(globalToViewerTransform.copy().concatenate(labelToGlobalTransform));
+		for (int d = 0; d < center.length; ++d)
+			center[d] = DIMENSIONS[d] / 2.0;
+		labelToViewerTransform.apply(center, center);
+
+		propagationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		final AffineTransform3D level1Transform = new AffineTransform3D();
+		level1Transform.set(2.0, 0.0, 0.0, 0.5, 0.0, 2.0, 0.0, 0.5, 0.0, 0.0, 2.0, 0.5);
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleIntervalDataSource<UnsignedLongType, VolatileUnsignedLongType> source = new RandomAccessibleIntervalDataSource<>(
+				new RandomAccessibleInterval[] {labels, Views.subsample(labels, 2)},
+				new RandomAccessibleInterval[] {volatileView(labels), volatileView(Views.subsample(labels, 2))},
+				new AffineTransform3D[] {labelToGlobalTransform, level1Transform},
+				() -> {},
+				Interpolations.nearestNeighbor(),
+				Interpolations.nearestNeighbor(),
+				"labels");
+		maskedSource = Masks.fromIntegerType(source, null, propagationExecutor);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		propagationExecutor.shutdown();
+	}
+
+	@Benchmark
+	public Interval paint()
+	{
+		return Paint2D.paint(
+				Views.extendValue(canvas, new UnsignedLongType(Label.INVALID)),
+				nextId(),
+				center[0],
+				center[1],
+				radius,
+				1.0,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform);
+	}
+
+	@Benchmark
+	public Interval paintCapsule()
+	{
+		// capsules are only painted in axis-aligned views
+		if (oblique)
+			return null;
+		return Paint2D.paintCapsule(
+				canvas,
+				nextId(),
+				center[0] - 2 * radius,
+				center[1],
+				center[0] + 2 * radius,
+				center[1],
+				radius,
+				1.0,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform);
+	}
+
+	@Benchmark
+	public ArrayImg<UnsignedLongType, LongArray> floodFill()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> mask = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final Point seed = new Point(DIMENSIONS.length);
+		for (int d = 0; d < DIMENSIONS.length; ++d)
+			seed.setPosition(DIMENSIONS[d] / 2, d);
+		final RandomAccess<UnsignedLongType> access = labels.randomAccess();
+		access.setPosition(seed);
+		final long seedLabel = access.get().getIntegerLong();
+		FloodFill.fill(
+				Views.extendValue(labels, new UnsignedLongType(Label.OUTSIDE)),
+				mask,
+				seed,
+				new UnsignedLongType(1),
+				new DiamondShape(1),
+				(t, u) -> u.getInteger() == 0 && t.getIntegerLong() == seedLabel);
+		return mask;
+	}
+
+	@Benchmark
+	public ArrayImg<UnsignedLongType, LongArray> floodFill2D()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> mask = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final RandomAccess<UnsignedLongType> access = labels.randomAccess();
+		for (int d = 0; d < DIMENSIONS.length; ++d)
+			access.setPosition(DIMENSIONS[d] / 2, d);
+		final long seedLabel = access.get().getIntegerLong();
+		final RandomAccessibleInterval<BoolType> filter = Converters.convert(
+				(RandomAccessibleInterval<UnsignedLongType>) labels,
+				(s, t) -> t.set(s.getIntegerLong() == seedLabel),
+				new BoolType());
+		FloodFillTransformedPlane.fill(
+				labelToViewerTransform,
+				0.5,
+				Views.extendValue(filter, new BoolType(false)).randomAccess(),
+				Views.extendValue(mask, new UnsignedLongType(1)).randomAccess(),
+				new RealPoint(center[0], center[1], 0.0),
+				1);
+		return mask;
+	}
+
+	@Benchmark
+	public void applyMaskWithPropagation() throws MaskInUse, InterruptedException
+	{
+		final Mask<UnsignedLongType> mask = maskedSource.generateMask(new MaskInfo<>(0, 0, new UnsignedLongType(nextId())), FOREGROUND_CHECK);
+		final Interval paintedInterval = Paint2D.paint(
+				Views.extendValue(mask.mask, new UnsignedLongType(Label.INVALID)),
+				1,
+				center[0],
+				center[1],
+				radius,
+				1.0,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform);
+		maskedSource.applyMask(mask, paintedInterval, FOREGROUND_CHECK);
+		// applyMask and propagation are asynchronous
+		while (maskedSource.getCurrentMask() != null || maskedSource.isApplyingMaskProperty().get())
+			Thread.sleep(1);
+	}
+
+	private long nextId()
+	{
+		return nextId++;
+	}
+
+	private static RandomAccessibleInterval<VolatileUnsignedLongType> volatileView(final RandomAccessibleInterval<UnsignedLongType> data)
+	{
+		return Converters.convert(data, (s, t) -> { t.get().set(s); t.setValid(true); }, new VolatileUnsignedLongType());
+	}
+
+}
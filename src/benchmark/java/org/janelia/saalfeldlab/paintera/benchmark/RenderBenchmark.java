@@ -0,0 +1,151 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import bdv.fx.viewer.project.VolatileHierarchyProjector;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.ARGBColorConverter;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverterIntegerType;
+import org.janelia.saalfeldlab.paintera.stream.ModalGoldenAngleSaturatedHighlightingARGBStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rendering of a single, obliquely cut frame with {@link VolatileHierarchyProjector}, for labels with the highlighting
+ * converter and for raw data with a color converter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark
+{
+
+	private static final long[] VOLUME_DIMENSIONS = {256, 256, 256};
+
+	private static final long[] SCREEN_DIMENSIONS = {1024, 768};
+
+	@Param({"1", "4"})
+	public int numThreads;
+
+	private ExecutorService executors;
+
+	private ArrayImg<ARGBType, IntArray> target;
+
+	private List<RandomAccessible<VolatileUnsignedLongType>> labelSources;
+
+	private List<RandomAccessible<VolatileUnsignedByteType>> rawSources;
+
+	private HighlightingStreamConverterIntegerType<UnsignedLongType, VolatileUnsignedLongType> labelConverter;
+
+	private ARGBColorConverter<VolatileUnsignedByteType> rawConverter;
+
+	@Setup
+	public void setup()
+	{
+		executors = Executors.newFixedThreadPool(numThreads);
+		target = ArrayImgs.argbs(SCREEN_DIMENSIONS);
+
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.rotate(0, Math.PI / 7);
+		viewerTransform.rotate(1, Math.PI / 5);
+		viewerTransform.scale(3.0);
+		viewerTransform.translate(SCREEN_DIMENSIONS[0] / 2.0, SCREEN_DIMENSIONS[1] / 2.0, 0.0);
+
+		final RandomAccessibleInterval<UnsignedLongType> labels = SyntheticVolumes.labels(VOLUME_DIMENSIONS, 500, SyntheticVolumes.DEFAULT_SEED);
+		labelSources = Collections.singletonList(screenSlice(
+				Converters.convert(labels, (s, t) -> { t.get().set(s); t.setValid(true); }, new VolatileUnsignedLongType()),
+				VolatileUnsignedLongType::new,
+				viewerTransform));
+
+		final RandomAccessibleInterval<UnsignedByteType> raw = SyntheticVolumes.raw(VOLUME_DIMENSIONS, SyntheticVolumes.DEFAULT_SEED);
+		rawSources = Collections.singletonList(screenSlice(
+				Converters.convert(raw, (s, t) -> { t.get().set(s); t.setValid(true); }, new VolatileUnsignedByteType()),
+				VolatileUnsignedByteType::new,
+				viewerTransform));
+
+		final ModalGoldenAngleSaturatedHighlightingARGBStream stream = new ModalGoldenAngleSaturatedHighlightingARGBStream();
+		labelConverter = new HighlightingStreamConverterIntegerType<>(stream);
+		rawConverter = new ARGBColorConverter.Imp0<>(0.0, 255.0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		executors.shutdown();
+	}
+
+	@Benchmark
+	public boolean renderLabels()
+	{
+		return render(labelSources, labelConverter);
+	}
+
+	@Benchmark
+	public boolean renderRaw()
+	{
+		return render(rawSources, rawConverter);
+	}
+
+	private <A extends Volatile<?>> boolean render(
+			final List<RandomAccessible<A>> sources,
+			final Converter<? super A, ARGBType> converter)
+	{
+		final VolatileHierarchyProjector<A, ARGBType> projector = new VolatileHierarchyProjector<>(
+				sources,
+				converter,
+				target,
+				numThreads,
+				executors);
+		return projector.map();
+	}
+
+	private static <T extends Type<T>> RandomAccessible<T> screenSlice(
+			final RandomAccessibleInterval<T> data,
+			final Supplier<T> outOfBounds,
+			final AffineTransform3D viewerTransform)
+	{
+		return Views.hyperSlice(
+				Views.raster(RealViews.affine(
+						Views.interpolate(Views.extendValue(data, outOfBounds.get()), new NearestNeighborInterpolatorFactory<>()),
+						viewerTransform)),
+				2,
+				0);
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+
+import java.util.Random;
+
+/**
+ * Reproducible synthetic volumes for benchmarks. All volumes are generated from a fixed seed, so consecutive
+ * benchmark runs operate on identical data.
+ */
+public class SyntheticVolumes
+{
+
+	public static final long DEFAULT_SEED = 100L;
+
+	/**
+	 * Voronoi tessellation of {@code numSegments} random seed points, similar to an over-segmentation of EM data.
+	 * Labels start at {@code 1}.
+	 *
+	 * @param dimensions size of the volume
+	 * @param numSegments number of segments
+	 * @param seed random seed
+	 * @return label volume
+	 */
+	public static ArrayImg<UnsignedLongType, LongArray> labels(
+			final long[] dimensions,
+			final int numSegments,
+			final long seed)
+	{
+		final Random rng = new Random(seed);
+		final double[][] centers = new double[numSegments][dimensions.length];
+		for (final double[] center : centers)
+			for (int d = 0; d < center.length; ++d)
+				center[d] = rng.nextDouble() * dimensions[d];
+
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dimensions);
+		final Cursor<UnsignedLongType> cursor = labels.localizingCursor();
+		final double[] position = new double[dimensions.length];
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			cursor.localize(position);
+			int closest = 0;
+			double minDistance = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < centers.length; ++i)
+			{
+				double distance = 0.0;
+				for (int d = 0; d < position.length; ++d)
+				{
+					final double diff = position[d] - centers[i][d];
+					distance += diff * diff;
+				}
+				if (distance < minDistance)
+				{
+					minDistance = distance;
+					closest = i;
+				}
+			}
+			cursor.get().setInteger(closest + 1);
+		}
+		return labels;
+	}
+
+	/**
+	 * Smooth random intensities, i.e. a sum of random sinusoids plus noise.
+	 *
+	 * @param dimensions size of the volume
+	 * @param seed random seed
+	 * @return raw volume
+	 */
+	public static ArrayImg<UnsignedByteType, ByteArray> raw(
+			final long[] dimensions,
+			final long seed)
+	{
+		final Random rng = new Random(seed);
+		final int numWaves = 4;
+		final double[][] frequencies = new double[numWaves][dimensions.length];
+		for (final double[] frequency : frequencies)
+			for (int d = 0; d < frequency.length; ++d)
+				frequency[d] = rng.nextDouble() * 0.2;
+
+		final ArrayImg<UnsignedByteType, ByteArray> raw = ArrayImgs.unsignedBytes(dimensions);
+		final Cursor<UnsignedByteType> cursor = raw.localizingCursor();
+		final double[] position = new double[dimensions.length];
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			cursor.localize(position);
+			double value = 0.0;
+			for (final double[] frequency : frequencies)
+			{
+				double phase = 0.0;
+				for (int d = 0; d < position.length; ++d)
+					phase += frequency[d] * position[d];
+				value += Math.sin(phase);
+			}
+			value = 127.5 + 100.0 * value / numWaves + 20.0 * rng.nextGaussian();
+			cursor.get().set((int) Math.max(0, Math.min(255, value)));
+		}
+		return raw;
+	}
+
+}
@@ -4,10 +4,13 @@ import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.sun.javafx.tk.PlatformImage;
 import javafx.scene.image.Image;
 import javafx.scene.image.WritableImage;
+import net.imglib2.Interval;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.IntAccess;
@@ -17,6 +20,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.touk.throwing.ThrowingRunnable;
 
+/**
+ * {@link WritableImage} that exposes its pixel store for rendering. The image is a reference counted frame buffer:
+ * consumers that hold on to the rendered pixels beyond the current frame (e.g. as a texture) {@link #retain()} the
+ * image, and the renderer does not render into images that are retained.
+ */
 public class BufferExposingWritableImage extends WritableImage
 {
 
@@ -34,6 +42,10 @@ public class BufferExposingWritableImage extends WritableImage
 
 	private final com.sun.prism.Image prismImage;
 
+	private final AtomicInteger references = new AtomicInteger(0);
+
+	private Consumer<BufferExposingWritableImage> onReleased = null;
+
 	@SuppressWarnings("restriction")
 	public BufferExposingWritableImage(final int width, final int height) throws
 			NoSuchMethodException,
@@ -81,4 +93,75 @@ public class BufferExposingWritableImage extends WritableImage
 		return ArrayImgs.argbs(new IntArray(store), (long) getWidth(), (long) getHeight());
 	}
 
+	/**
+	 * Copy the pixels in {@code region} from {@code source}, which must have the same size as this image. Call
+	 * {@link #setPixelsDirty()} to upload the changes.
+	 */
+	public void copyFrom(final BufferExposingWritableImage source, final Interval region)
+	{
+		final int width = (int) getWidth();
+		final int rowLength = (int) region.dimension(0);
+		for (long y = region.min(1); y <= region.max(1); ++y)
+		{
+			final int offset = (int) (y * width + region.min(0));
+			System.arraycopy(source.store, offset, store, offset, rowLength);
+		}
+	}
+
+	/**
+	 * Set the alpha channel of all pixels in {@code region} to {@code 0xff}.
+	 */
+	public void setOpaque(final Interval region)
+	{
+		final int width = (int) getWidth();
+		for (long y = region.min(1); y <= region.max(1); ++y)
+		{
+			final int offset = (int) (y * width);
+			for (int x = offset + (int) region.min(0), max = offset + (int) region.max(0); x <= max; ++x)
+				store[x] |= 0xff << 24;
+		}
+	}
+
+	public BufferExposingWritableImage retain()
+	{
+		references.incrementAndGet();
+		return this;
+	}
+
+	public void release()
+	{
+		if (references.decrementAndGet() == 0)
+			notifyReleased();
+	}
+
+	public boolean isRetained()
+	{
+		return references.get() > 0;
+	}
+
+	/**
+	 * @param onReleased called once, as soon as this image is not {@link #isRetained() retained} anymore.
+	 */
+	public void whenReleased(final Consumer<BufferExposingWritableImage> onReleased)
+	{
+		synchronized (references)
+		{
+			this.onReleased = onReleased;
+		}
+		if (!isRetained())
+			notifyReleased();
+	}
+
+	private void notifyReleased()
+	{
+		final Consumer<BufferExposingWritableImage> onReleased;
+		synchronized (references)
+		{
+			onReleased = this.onReleased;
+			this.onReleased = null;
+		}
+		if (onReleased != null)
+			onReleased.accept(this);
+	}
+
 }
@@ -0,0 +1,104 @@
+package bdv.fx.viewer.render;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.ui.TransformListener;
+
+/**
+ * Render target of fixed size that keeps the most recently rendered image and its transform in memory instead of
+ * drawing it to a canvas.
+ */
+public class HeadlessRenderTarget implements TransformAwareRenderTargetGeneric<ArrayImg<ARGBType, IntArray>>
+{
+
+	private final int width;
+
+	private final int height;
+
+	private final AffineTransform3D transform = new AffineTransform3D();
+
+	private final CopyOnWriteArrayList<TransformListener<AffineTransform3D>> transformListeners = new CopyOnWriteArrayList<>();
+
+	private ArrayImg<ARGBType, IntArray> image;
+
+	public HeadlessRenderTarget(final int width, final int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public synchronized ArrayImg<ARGBType, IntArray> setBufferedImageAndTransform(
+			final ArrayImg<ARGBType, IntArray> img,
+			final AffineTransform3D transform)
+	{
+		this.transform.set(transform);
+		transformListeners.forEach(l -> l.transformChanged(transform));
+		return setBufferedImage(img);
+	}
+
+	@Override
+	public synchronized ArrayImg<ARGBType, IntArray> setBufferedImage(final ArrayImg<ARGBType, IntArray> bufferedImage)
+	{
+		final ArrayImg<ARGBType, IntArray> previous = this.image;
+		this.image = bufferedImage;
+		return previous;
+	}
+
+	/**
+	 *
+	 * @return most recently rendered image, or {@code null} if nothing has been rendered yet. The image is owned by the
+	 * renderer and will be re-used for subsequent frames.
+	 */
+	public synchronized ArrayImg<ARGBType, IntArray> getImage()
+	{
+		return this.image;
+	}
+
+	/**
+	 *
+	 * @return viewer transform of the most recently rendered image
+	 */
+	public synchronized AffineTransform3D getTransform()
+	{
+		return this.transform.copy();
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	@Override
+	public void addTransformListener(final TransformListener<AffineTransform3D> listener)
+	{
+		addTransformListener(listener, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void addTransformListener(final TransformListener<AffineTransform3D> listener, final int index)
+	{
+		synchronized (transformListeners)
+		{
+			transformListeners.add(Math.min(index, transformListeners.size()), listener);
+		}
+	}
+
+	@Override
+	public void removeTransformListener(final TransformListener<AffineTransform3D> listener)
+	{
+		transformListeners.remove(listener);
+	}
+
+}
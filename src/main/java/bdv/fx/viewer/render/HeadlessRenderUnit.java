@@ -0,0 +1,372 @@
+package bdv.fx.viewer.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+
+import bdv.cache.CacheControl;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import org.janelia.saalfeldlab.paintera.cache.global.FetchProgress;
+import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
+import org.janelia.saalfeldlab.paintera.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives a {@link MultiResolutionRendererHeadless} synchronously on the calling thread, without JavaFX and without a
+ * running {@link PainterThread}. Each call to {@link #paint()} runs a single pass of the renderer, i.e. the same
+ * coarse-to-fine sequence of screen scales and re-rendering of incomplete (volatile) data that {@link RenderUnit}
+ * triggers in the viewer.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class HeadlessRenderUnit implements PainterThread.Paintable
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	/**
+	 * Upper bound for waiting on {@link FetchProgress} between passes, for data that is not loaded through a
+	 * {@link org.janelia.saalfeldlab.paintera.cache.global.FetchExecutor}.
+	 */
+	private static final long MAX_FETCH_WAIT_NANOS = 20 * 1000000L;
+
+	private final HeadlessRenderTarget renderTarget;
+
+	private final MultiResolutionRendererHeadless renderer;
+
+	private final Function<Source<?>, AxisOrder> axisOrder;
+
+	private final Function<Source<?>, Interpolation> interpolation;
+
+	private List<SourceAndConverter<?>> sources;
+
+	private int timepoint;
+
+	private final AffineTransform3D viewerTransform = new AffineTransform3D();
+
+	public HeadlessRenderUnit(
+			final int width,
+			final int height,
+			final double[] screenScales,
+			final Function<Source<?>, AxisOrder> axisOrder,
+			final Function<Source<?>, Interpolation> interpolation,
+			final AccumulateProjectorFactory<ARGBType> accumulateProjectorFactory,
+			final CacheControl cacheControl,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService)
+	{
+		this.renderTarget = new HeadlessRenderTarget(width, height);
+		this.axisOrder = axisOrder;
+		this.interpolation = interpolation;
+		// never started: repaint requests are served by calls to paint() on the calling thread
+		final PainterThread painterThread = new PainterThread(this);
+		this.renderer = new MultiResolutionRendererHeadless(
+				renderTarget,
+				painterThread,
+				screenScales,
+				Long.MAX_VALUE,
+				true,
+				numRenderingThreads,
+				renderingExecutorService,
+				true,
+				accumulateProjectorFactory,
+				cacheControl);
+	}
+
+	/**
+	 * Set sources, timepoint, and viewer transform of the next frame and request a repaint of the full screen, starting
+	 * at the coarsest screen scale.
+	 */
+	public void setFrame(
+			final List<SourceAndConverter<?>> sources,
+			final int timepoint,
+			final AffineTransform3D viewerTransform)
+	{
+		this.sources = sources;
+		this.timepoint = timepoint;
+		this.viewerTransform.set(viewerTransform);
+		renderer.requestRepaint(new FinalInterval(renderTarget.getWidth(), renderTarget.getHeight()));
+	}
+
+	/**
+	 * Run a single rendering pass.
+	 */
+	@Override
+	public void paint()
+	{
+		paintPass();
+	}
+
+	/**
+	 *
+	 * @return {@code true} if the current frame is complete, i.e. rendered at full resolution with all data loaded.
+	 */
+	public boolean isComplete()
+	{
+		return !renderer.hasPendingRepaintRequests();
+	}
+
+	/**
+	 * Render the current frame until it {@link #isComplete() is complete} or {@code timeoutNanos} have passed. Once the
+	 * frame was rendered at full resolution, further passes only re-render missing data: instead of spinning, wait
+	 * for {@link FetchProgress fetches to complete} before each of these passes.
+	 *
+	 * @return timing of the frame
+	 */
+	public FrameStatistics renderUntilComplete(final long timeoutNanos)
+	{
+		final long start = System.nanoTime();
+		long firstFrame = -1;
+		long firstFullResolutionFrame = -1;
+		int numPasses = 0;
+		while (!isComplete() && System.nanoTime() - start < timeoutNanos)
+		{
+			final long numFetched = FetchProgress.numCompleted();
+			final int screenScaleIndex = paintPass();
+			++numPasses;
+			final long elapsed = System.nanoTime() - start;
+			if (screenScaleIndex >= 0 && firstFrame < 0)
+				firstFrame = elapsed;
+			if (screenScaleIndex == 0 && firstFullResolutionFrame < 0)
+				firstFullResolutionFrame = elapsed;
+			if (screenScaleIndex == 0 && !isComplete())
+			{
+				try
+				{
+					FetchProgress.awaitMoreThan(numFetched, Math.min(MAX_FETCH_WAIT_NANOS, timeoutNanos - elapsed));
+				} catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		final boolean complete = isComplete();
+		if (!complete)
+			LOG.warn("Frame not complete after {}ms", timeoutNanos / 1000000);
+		return new FrameStatistics(numPasses, elapsed, firstFrame, firstFullResolutionFrame, complete);
+	}
+
+	/**
+	 * Replay a sequence of viewer transforms as fast as possible, similar to continuous navigation in the viewer: each
+	 * transform is rendered with a single pass at the coarsest screen scale, and only the last transform is rendered
+	 * until complete.
+	 *
+	 * @return frame rate during navigation and timing of the last frame
+	 */
+	public ReplayStatistics replay(
+			final List<SourceAndConverter<?>> sources,
+			final int timepoint,
+			final List<AffineTransform3D> viewerTransforms,
+			final long timeoutNanos)
+	{
+		final Timer frameTimes = new Timer();
+		final long start = System.nanoTime();
+		for (final AffineTransform3D viewerTransform : viewerTransforms)
+		{
+			final long frameStart = System.nanoTime();
+			setFrame(sources, timepoint, viewerTransform);
+			paintPass();
+			frameTimes.updateSince(frameStart);
+		}
+		final long elapsed = System.nanoTime() - start;
+		final FrameStatistics lastFrame = renderUntilComplete(timeoutNanos);
+		return new ReplayStatistics(viewerTransforms.size(), elapsed, frameTimes, lastFrame);
+	}
+
+	/**
+	 * Render each transform until complete and write it as {@code String.format(filePattern, index)}, e.g.
+	 * {@code frame-%05d.png}, into {@code directory}. Frames that are not complete after {@code timeoutNanos} are
+	 * written as rendered so far.
+	 *
+	 * @return timing of each frame
+	 */
+	public List<FrameStatistics> renderSequence(
+			final List<SourceAndConverter<?>> sources,
+			final int timepoint,
+			final List<AffineTransform3D> viewerTransforms,
+			final long timeoutNanos,
+			final Path directory,
+			final String filePattern) throws IOException
+	{
+		Files.createDirectories(directory);
+		final List<FrameStatistics> statistics = new ArrayList<>();
+		for (int index = 0; index < viewerTransforms.size(); ++index)
+		{
+			setFrame(sources, timepoint, viewerTransforms.get(index));
+			final FrameStatistics frame = renderUntilComplete(timeoutNanos);
+			statistics.add(frame);
+			final Path file = directory.resolve(String.format(filePattern, index));
+			if (getImage() == null)
+				throw new IOException("Nothing rendered for frame " + index);
+			writePng(getImage(), file);
+			LOG.debug("Wrote frame {} to {}: {}", index, file, frame);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Write a pre-multiplied ARGB image, as rendered by {@link org.janelia.saalfeldlab.paintera.composition.CompositeProjectorPreMultiply}, as png. Requires AWT but not a display, i.e. works with {@code -Djava.awt.headless=true}.
+	 */
+	public static void writePng(final ArrayImg<ARGBType, IntArray> image, final Path file) throws IOException
+	{
+		final int width = (int) image.dimension(0);
+		final int height = (int) image.dimension(1);
+		final BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		final int[] data = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+		System.arraycopy(image.update(null).getCurrentStorageArray(), 0, data, 0, width * height);
+		if (!ImageIO.write(bufferedImage, "png", file.toFile()))
+			throw new IOException("No png writer available for " + file);
+	}
+
+	/**
+	 *
+	 * @return most recently rendered image. Owned by the renderer, copy it if it is needed after the next call to
+	 * {@link #paint()}.
+	 */
+	public ArrayImg<ARGBType, IntArray> getImage()
+	{
+		return renderTarget.getImage();
+	}
+
+	/**
+	 * Set {@code screenScaleTransform} to a screen scale transform at a given {@code screenScaleIndex}.
+	 */
+	public void getScreenScaleTransform(final int screenScaleIndex, final AffineTransform3D screenScaleTransform)
+	{
+		renderer.getScreenScaleTransform(screenScaleIndex, screenScaleTransform);
+	}
+
+	private int paintPass()
+	{
+		if (sources == null)
+			return -1;
+		// renderer modifies the viewer transform
+		return renderer.paint(sources, axisOrder, timepoint, viewerTransform.copy(), interpolation, null);
+	}
+
+	/**
+	 * Timing of a single frame. All times in nanoseconds since the frame was requested, {@code -1} if the event did not
+	 * happen.
+	 */
+	public static class FrameStatistics
+	{
+
+		public final int numPasses;
+
+		public final long totalNanos;
+
+		public final long firstFrameNanos;
+
+		public final long firstFullResolutionFrameNanos;
+
+		public final boolean isComplete;
+
+		public FrameStatistics(
+				final int numPasses,
+				final long totalNanos,
+				final long firstFrameNanos,
+				final long firstFullResolutionFrameNanos,
+				final boolean isComplete)
+		{
+			this.numPasses = numPasses;
+			this.totalNanos = totalNanos;
+			this.firstFrameNanos = firstFrameNanos;
+			this.firstFullResolutionFrameNanos = firstFullResolutionFrameNanos;
+			this.isComplete = isComplete;
+		}
+
+		/**
+		 *
+		 * @return time between the first full resolution frame and completion, i.e. time spent waiting for data to
+		 * load. {@code -1} if no full resolution frame was rendered.
+		 */
+		public long ioWaitNanos()
+		{
+			return firstFullResolutionFrameNanos < 0 ? -1 : totalNanos - firstFullResolutionFrameNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"{passes=%d, firstFrameMillis=%.3f, firstFullResolutionFrameMillis=%.3f, ioWaitMillis=%.3f, totalMillis=%.3f, complete=%s}",
+					numPasses,
+					millis(firstFrameNanos),
+					millis(firstFullResolutionFrameNanos),
+					millis(ioWaitNanos()),
+					millis(totalNanos),
+					isComplete);
+		}
+
+	}
+
+	/**
+	 * Result of {@link #replay(List, int, List, long)}.
+	 */
+	public static class ReplayStatistics
+	{
+
+		public final int numFrames;
+
+		public final long navigationNanos;
+
+		public final Timer frameTimes;
+
+		public final FrameStatistics lastFrame;
+
+		public ReplayStatistics(
+				final int numFrames,
+				final long navigationNanos,
+				final Timer frameTimes,
+				final FrameStatistics lastFrame)
+		{
+			this.numFrames = numFrames;
+			this.navigationNanos = navigationNanos;
+			this.frameTimes = frameTimes;
+			this.lastFrame = lastFrame;
+		}
+
+		public double framesPerSecond()
+		{
+			return navigationNanos <= 0 ? 0.0 : numFrames * 1e9 / navigationNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"{frames=%d, fps=%.2f, frameMillis=%s, lastFrame=%s}",
+					numFrames,
+					framesPerSecond(),
+					frameTimes.snapshot(),
+					lastFrame);
+		}
+
+	}
+
+	private static double millis(final long nanos)
+	{
+		return nanos < 0 ? -1.0 : nanos * 1e-6;
+	}
+
+}
@@ -29,6 +29,9 @@
  */
 package bdv.fx.viewer.render;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
 
 import bdv.cache.CacheControl;
@@ -91,9 +94,25 @@ public class MultiResolutionRendererFX extends MultiResolutionRendererGeneric<Bu
 			implements MultiResolutionRendererGeneric.ImageGenerator<BufferExposingWritableImage>
 	{
 
+		private static final int MAX_RECYCLED_IMAGES = 3;
+
+		private final Deque<BufferExposingWritableImage> recycled = new ArrayDeque<>();
+
 		@Override
 		public BufferExposingWritableImage create(final int width, final int height)
 		{
+			synchronized (recycled)
+			{
+				for (final Iterator<BufferExposingWritableImage> it = recycled.iterator(); it.hasNext(); )
+				{
+					final BufferExposingWritableImage image = it.next();
+					if ((int) image.getWidth() == width && (int) image.getHeight() == height)
+					{
+						it.remove();
+						return image;
+					}
+				}
+			}
 			try
 			{
 				return new BufferExposingWritableImage(width, height);
@@ -111,6 +130,26 @@ public class MultiResolutionRendererFX extends MultiResolutionRendererGeneric<Bu
 			return create(width, height);
 		}
 
+		@Override
+		public boolean isInUse(final BufferExposingWritableImage image)
+		{
+			return image.isRetained();
+		}
+
+		@Override
+		public void recycle(final BufferExposingWritableImage image)
+		{
+			image.whenReleased(released -> {
+				synchronized (recycled)
+				{
+					// keep the most recently released images
+					recycled.addFirst(released);
+					while (recycled.size() > MAX_RECYCLED_IMAGES)
+						recycled.removeLast();
+				}
+			});
+		}
+
 	}
 
 	public MultiResolutionRendererFX(
@@ -71,6 +71,7 @@ import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tmp.bdv.img.cache.VolatileCachedCellImg;
@@ -82,6 +83,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
@@ -105,6 +107,23 @@ public class MultiResolutionRendererGeneric<T>
 
 		T create(int width, int height, T other);
 
+		/**
+		 * @return {@code true} if {@code image} is still used outside of the renderer and must not be rendered into.
+		 */
+		default boolean isInUse(final T image)
+		{
+			return false;
+		}
+
+		/**
+		 * {@code image} is not used by the renderer anymore and may be re-used by {@link #create(int, int)} once it is
+		 * not {@link #isInUse(Object) in use}.
+		 */
+		default void recycle(final T image)
+		{
+
+		}
+
 	}
 
 	/**
@@ -574,7 +593,10 @@ public class MultiResolutionRendererGeneric<T>
 
 		// try rendering
 		final boolean success = p.map(createProjector);
-//		final long rendertime = p.getLastFrameRenderNanoTime();
+		if (success)
+			MetricRegistry.global()
+					.timer(MetricRegistry.tagged("render.frame", "screenScale", currentScreenScaleIndex))
+					.update(p.getLastFrameRenderNanoTime());
 
 		synchronized (this)
 		{
@@ -589,7 +611,11 @@ public class MultiResolutionRendererGeneric<T>
 						renderIdQueue.pop();
 						final Integer id = bufferedImageToRenderId.get(bi);
 						if (id != null)
+						{
+							if (makeImage.isInUse(bi))
+								replaceScreenImage(bi, id);
 							renderIdQueue.add(id);
+						}
 					}
 
 					/**
@@ -658,6 +684,15 @@ public class MultiResolutionRendererGeneric<T>
 		return lastRenderTargetRealInterval;
 	}
 
+	/**
+	 * @return {@code true} if any screen scale has a pending repaint request, i.e. the last rendered frame is not yet
+	 * complete at full resolution or with all data loaded.
+	 */
+	public synchronized boolean hasPendingRepaintRequests()
+	{
+		return Arrays.stream(pendingRepaintRequests).anyMatch(Objects::nonNull);
+	}
+
 	/**
 	 * Request a repaint of the given display interval from the painter thread, with maximum screen scale index and mipmap level.
 	 */
@@ -1072,6 +1107,26 @@ public class MultiResolutionRendererGeneric<T>
 			screenScaleTransform.set(this.screenScaleTransforms[screenScaleIndex]);
 	}
 
+	/**
+	 * Replace {@code image} with a new image of the same size, e.g. if it is still displayed elsewhere.
+	 */
+	private void replaceScreenImage(final T image, final int renderId)
+	{
+		for (int i = 0; i < screenImages.size(); ++i)
+		{
+			if (screenImages.get(i).get(renderId) != image)
+				continue;
+			final T replacement = makeImage.create(width.applyAsInt(image), height.applyAsInt(image));
+			screenImages.get(i).set(renderId, replacement);
+			bufferedImages.get(i).set(renderId, replacement);
+			bufferedImageToRenderId.remove(image);
+			bufferedImageToRenderId.put(replacement, renderId);
+			makeImage.recycle(image);
+			LOG.trace("Replaced screen image {} that is still in use", image);
+			return;
+		}
+	}
+
 	private synchronized void createVariables()
 	{
 		LOG.debug("Updating images for screen scales {}", screenScales);
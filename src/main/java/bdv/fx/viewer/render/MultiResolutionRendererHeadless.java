@@ -0,0 +1,70 @@
+package bdv.fx.viewer.render;
+
+import java.util.concurrent.ExecutorService;
+
+import bdv.cache.CacheControl;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * {@link MultiResolutionRendererGeneric} that renders into plain {@code int[]} ARGB buffers wrapped as {@link ArrayImg}
+ * and does not depend on the JavaFX toolkit.
+ */
+public class MultiResolutionRendererHeadless extends MultiResolutionRendererGeneric<ArrayImg<ARGBType, IntArray>>
+{
+
+	public static class MakeArrayImg implements MultiResolutionRendererGeneric.ImageGenerator<ArrayImg<ARGBType, IntArray>>
+	{
+
+		@Override
+		public ArrayImg<ARGBType, IntArray> create(final int width, final int height)
+		{
+			return ArrayImgs.argbs(width, height);
+		}
+
+		@Override
+		public ArrayImg<ARGBType, IntArray> create(final int width, final int height, final ArrayImg<ARGBType, IntArray> other)
+		{
+			// re-use storage of the full resolution image if it is large enough
+			final IntArray storage = other.update(null);
+			return storage.getArrayLength() >= width * height
+			       ? ArrayImgs.argbs(storage, width, height)
+			       : create(width, height);
+		}
+
+	}
+
+	public MultiResolutionRendererHeadless(
+			final TransformAwareRenderTargetGeneric<ArrayImg<ARGBType, IntArray>> display,
+			final PainterThread painterThread,
+			final double[] screenScales,
+			final long targetRenderNanos,
+			final boolean doubleBuffered,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService,
+			final boolean useVolatileIfAvailable,
+			final AccumulateProjectorFactory<ARGBType> accumulateProjectorFactory,
+			final CacheControl cacheControl)
+	{
+		super(
+				display,
+				painterThread,
+				screenScales,
+				targetRenderNanos,
+				doubleBuffered,
+				numRenderingThreads,
+				renderingExecutorService,
+				useVolatileIfAvailable,
+				accumulateProjectorFactory,
+				cacheControl,
+				img -> img,
+				new MakeArrayImg(),
+				img -> (int) img.dimension(0),
+				img -> (int) img.dimension(1)
+		     );
+	}
+
+}
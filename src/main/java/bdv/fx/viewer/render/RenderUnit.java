@@ -260,12 +260,15 @@ public class RenderUnit implements PainterThread.Paintable {
 			final Interval screenInterval = renderer.getLastRenderedScreenInterval();
 			final RealInterval renderTargetRealInterval = renderer.getLastRenderTargetRealInterval();
 
+			// the renderer pads the render target interval by 1px on each side
+			final Interval renderTargetInterval = Intervals.expand(Intervals.smallestContainingInterval(renderTargetRealInterval), 1);
+
 			renderTarget.drawOverlays(img -> renderResultProperty.set(new RenderResult(
 				img,
 				screenInterval,
 				renderTargetRealInterval,
 				renderedScreenScaleIndex
-			)));
+			)), renderTargetInterval);
 		}
 	}
 
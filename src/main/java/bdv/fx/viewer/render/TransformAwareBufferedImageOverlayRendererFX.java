@@ -34,8 +34,10 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 import javafx.scene.image.Image;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.Intervals;
 import net.imglib2.ui.TransformListener;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.slf4j.Logger;
@@ -48,8 +50,6 @@ public class TransformAwareBufferedImageOverlayRendererFX
 
 	private static Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	private static final int FULL_OPACITY = 0xff << 24;
-
 	protected AffineTransform3D pendingTransform;
 
 	protected AffineTransform3D paintedTransform;
@@ -80,8 +80,18 @@ public class TransformAwareBufferedImageOverlayRendererFX
 
 	@Override
 	public void drawOverlays(final Consumer<Image> g)
+	{
+		drawOverlays(g, null);
+	}
+
+	/**
+	 * @param dirty region of the image that was rendered, {@code null} for the entire image. Only pixels in this
+	 *              region are prepared for display.
+	 */
+	public void drawOverlays(final Consumer<Image> g, final Interval dirty)
 	{
 		boolean notifyTransformListeners = false;
+		final BufferExposingWritableImage sourceImage;
 		synchronized (this)
 		{
 			if (pending)
@@ -93,11 +103,16 @@ public class TransformAwareBufferedImageOverlayRendererFX
 				pending = false;
 				notifyTransformListeners = true;
 			}
+			sourceImage = this.bufferedImage;
+			// the renderer must not render into the image before it is displayed
+			if (sourceImage != null)
+				sourceImage.retain();
 		}
-		final BufferExposingWritableImage sourceImage = this.bufferedImage;
 		if (sourceImage != null)
 		{
 			final boolean notify = notifyTransformListeners;
+			final Interval imageInterval = new FinalInterval((long) sourceImage.getWidth(), (long) sourceImage.getHeight());
+			final Interval opaqueInterval = dirty == null ? imageInterval : Intervals.intersect(dirty, imageInterval);
 			InvokeOnJavaFXApplicationThread.invoke(() -> {
 
 				LOG.trace("Setting image to {}", sourceImage);
@@ -116,11 +131,17 @@ public class TransformAwareBufferedImageOverlayRendererFX
 				 *
 				 * https://docs.oracle.com/javase/8/javafx/api/javafx/scene/effect/BlendMode.html
 				 */
-				for (final ARGBType px : sourceImage.asArrayImg())
-					px.set(px.get() | FULL_OPACITY);
-
-				sourceImage.setPixelsDirty();
-				g.accept(sourceImage);
+				try
+				{
+					if (!Intervals.isEmpty(opaqueInterval))
+						sourceImage.setOpaque(opaqueInterval);
+
+					sourceImage.setPixelsDirty();
+					g.accept(sourceImage);
+				} finally
+				{
+					sourceImage.release();
+				}
 				// TODO add countdown latch to wait for setImage to return
 				// before
 				// notifying listeners
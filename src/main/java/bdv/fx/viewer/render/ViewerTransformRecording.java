@@ -0,0 +1,153 @@
+package bdv.fx.viewer.render;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import bdv.fx.viewer.ViewerPanelFX;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.ui.TransformListener;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequences of viewer transforms, e.g. recorded during navigation, for replay with {@link HeadlessRenderUnit}. Each
+ * line of a recording holds the 12 row-packed entries of an {@link AffineTransform3D}, separated by whitespace. Lines
+ * starting with {@code #} are ignored.
+ *
+ * Recording of the top-left viewer is enabled in {@code ~/.config/paintera.yml}:
+ * <pre>
+ * render:
+ *   recordViewerTransforms: /path/to/transforms.txt
+ * </pre>
+ */
+public class ViewerTransformRecording
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private ViewerTransformRecording()
+	{
+
+	}
+
+	public static List<AffineTransform3D> read(final Path path) throws IOException
+	{
+		return Files
+				.readAllLines(path, StandardCharsets.UTF_8)
+				.stream()
+				.map(String::trim)
+				.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+				.map(ViewerTransformRecording::parse)
+				.collect(Collectors.toList());
+	}
+
+	public static void write(final Path path, final List<AffineTransform3D> transforms) throws IOException
+	{
+		Files.write(path, transforms.stream().map(ViewerTransformRecording::format).collect(Collectors.toList()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Record all viewer transforms of {@code viewer} into the file configured in the {@code render} section of the
+	 * Paintera config, if any.
+	 *
+	 * @return the {@link Recorder} that was added to {@code viewer}, if any. Callers must {@link #stop(ViewerPanelFX, Recorder) stop}
+	 * the recorder when done, e.g. when the viewer is stopped, to close the recording file.
+	 */
+	public static Optional<Recorder> startFromConfig(final ViewerPanelFX viewer)
+	{
+		final Optional<Object> path = Optional.ofNullable(PainteraConfigYaml.getConfig(() -> null, "render", "recordViewerTransforms"));
+		if (!path.isPresent())
+			return Optional.empty();
+		try
+		{
+			final Recorder recorder = new Recorder(Paths.get(path.get().toString()));
+			viewer.addTransformListener(recorder);
+			LOG.info("Recording viewer transforms into {}", path.get());
+			return Optional.of(recorder);
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to record viewer transforms into {}: {}", path.get(), e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Remove {@code recorder} from {@code viewer} and close the recording file.
+	 */
+	public static void stop(final ViewerPanelFX viewer, final Recorder recorder)
+	{
+		viewer.removeTransformListener(recorder);
+		try
+		{
+			recorder.close();
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to close viewer transform recording: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Append every transform to a file, flushing after each transform.
+	 */
+	public static class Recorder implements TransformListener<AffineTransform3D>, Closeable
+	{
+
+		private final BufferedWriter writer;
+
+		public Recorder(final Path path) throws IOException
+		{
+			this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public synchronized void transformChanged(final AffineTransform3D transform)
+		{
+			try
+			{
+				writer.write(format(transform));
+				writer.newLine();
+				writer.flush();
+			} catch (final IOException e)
+			{
+				LOG.debug("Unable to record viewer transform: {}", e.getMessage());
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException
+		{
+			writer.close();
+		}
+
+	}
+
+	private static String format(final AffineTransform3D transform)
+	{
+		return Arrays
+				.stream(transform.getRowPackedCopy())
+				.mapToObj(Double::toString)
+				.collect(Collectors.joining(" "));
+	}
+
+	private static AffineTransform3D parse(final String line)
+	{
+		final double[] values = Arrays.stream(line.split("\\s+")).mapToDouble(Double::parseDouble).toArray();
+		if (values.length != 12)
+			throw new IllegalArgumentException("Expected 12 values for affine transform but got " + values.length + ": " + line);
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(values);
+		return transform;
+	}
+
+}
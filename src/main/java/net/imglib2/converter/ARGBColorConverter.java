@@ -1,7 +1,9 @@
 package net.imglib2.converter;
 
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import net.imglib2.display.ColorConverter;
@@ -23,6 +25,8 @@ public abstract class ARGBColorConverter<R extends RealType<R>> implements Color
 			255
 	                                                                                                      )));
 
+	protected final BooleanProperty autoContrast = new SimpleBooleanProperty(false);
+
 	protected int A;
 
 	protected double scaleR;
@@ -71,6 +75,15 @@ public abstract class ARGBColorConverter<R extends RealType<R>> implements Color
 		return this.alpha;
 	}
 
+	/**
+	 *
+	 * @return {@code true} if min and max should be chosen automatically from the data in view
+	 */
+	public BooleanProperty autoContrastProperty()
+	{
+		return this.autoContrast;
+	}
+
 	@Override
 	public ARGBType getColor()
 	{
@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.paintera;
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -21,7 +22,6 @@ import org.janelia.saalfeldlab.paintera.control.CommitChanges;
 import org.janelia.saalfeldlab.paintera.control.actions.MenuActionType;
 import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotPersist;
-import org.janelia.saalfeldlab.paintera.serialization.GsonHelpers;
 import org.janelia.saalfeldlab.paintera.serialization.Properties;
 import org.janelia.saalfeldlab.paintera.state.HasSelectedIds;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
@@ -33,6 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
 import bdv.viewer.ViewerOptions;
 import javafx.application.Application;
@@ -215,17 +216,12 @@ public class Paintera extends Application
 
 		//		gridConstraintsManager.set( properties.gridConstraints );
 
+		final ProjectAutosave projectAutosave = new ProjectAutosave(baseView, properties, projectDir);
+
 		paneWithStatus.saveProjectButtonOnActionProperty().set(event -> {
 			try
 			{
-				SaveProject.persistProperties(
-						projectDir,
-						properties,
-						GsonHelpers.builderWithAllRequiredSerializers(baseView, () -> projectDir).setPrettyPrinting()
-				                             );
-			} catch (final IOException e)
-			{
-				LOG.error("Unable to save project", e);
+				projectAutosave.save();
 			} catch (final ProjectUndefined e)
 			{
 				LOG.error("Project undefined");
@@ -266,7 +262,10 @@ public class Paintera extends Application
 		}
 
 		setFocusTraversable(orthoViews, false);
-		stage.setOnCloseRequest(new SaveOnExitDialog(baseView, properties, projectDir, baseView::stop));
+		stage.setOnCloseRequest(new SaveOnExitDialog(baseView, properties, projectAutosave, () -> {
+			projectAutosave.stop();
+			baseView.stop();
+		}));
 
 		EventFX.KEY_PRESSED(
 				"save project",
@@ -284,17 +283,7 @@ public class Paintera extends Application
 
 					try
 					{
-						SaveProject.persistProperties(
-								projectDir,
-								properties,
-								GsonHelpers.builderWithAllRequiredSerializers(
-										baseView,
-										() -> projectDir
-								                                             ).setPrettyPrinting()
-						                             );
-					} catch (final IOException e1)
-					{
-						LOG.error("Unable to safe project", e1);
+						projectAutosave.save();
 					} catch (final ProjectUndefined e1)
 					{
 						LOG.error("Project undefined");
@@ -334,6 +323,8 @@ public class Paintera extends Application
 
 	public static void main(final String[] args)
 	{
+		if (args.length > 0 && PainteraExportMeshes.COMMAND_NAME.equals(args[0]))
+			System.exit(PainteraExportMeshes.run(Arrays.copyOfRange(args, 1, args.length)));
 		launch(args);
 	}
 
@@ -362,9 +353,12 @@ public class Paintera extends Application
 					JsonObject.class
 			                                                                                        );
 			return Optional.of(properties);
-		} catch (final IOException | NullPointerException e)
+		} catch (final IOException | NullPointerException | JsonParseException e)
 		{
-			return Optional.empty();
+			LOG.debug("Unable to read project properties from {}: {}", root, e.getMessage());
+			final Optional<JsonObject> recovered = ProjectAutosave.recoverFromJournal(root);
+			recovered.ifPresent(p -> LOG.warn("Recovered project properties for {} from journal", root));
+			return recovered;
 		}
 	}
 
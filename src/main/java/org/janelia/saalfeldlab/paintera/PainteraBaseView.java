@@ -12,6 +12,7 @@ import org.janelia.saalfeldlab.fx.event.MouseTracker;
 import org.janelia.saalfeldlab.fx.ortho.GridConstraintsManager;
 import org.janelia.saalfeldlab.fx.ortho.OrthogonalViews;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.janelia.saalfeldlab.paintera.cache.CompressedCellCache;
 import org.janelia.saalfeldlab.paintera.cache.DiscoverableMemoryUsage;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedSoftRefLoaderCache;
@@ -29,6 +30,8 @@ import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions.AllowedAc
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrderNotSupported;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.meshes.MeshWorkerExecutorService;
+import org.janelia.saalfeldlab.paintera.metrics.MetricsReporter;
 import org.janelia.saalfeldlab.paintera.state.ChannelSourceState;
 import org.janelia.saalfeldlab.paintera.state.GlobalTransformManager;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
@@ -41,6 +44,7 @@ import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import bdv.fx.viewer.render.ViewerTransformRecording;
 import bdv.viewer.Interpolation;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerOptions;
@@ -92,7 +96,10 @@ public class PainteraBaseView
 //	private final LoaderCache<GlobalCache.Key<?>, ?> globalBackingCache = new BoundedSoftRefLoaderCache<>(DEFAULT_MAX_NUM_CACHE_ENTRIES);
 
 	// 1GB
-	private final LoaderCache<GlobalCache.Key<?>, ?> globalBackingCache = MemoryBoundedSoftRefLoaderCache.withWeakRefs(Runtime.getRuntime().maxMemory(), DiscoverableMemoryUsage.memoryUsageFromDiscoveredFunctions());
+	private final LoaderCache<GlobalCache.Key<?>, ?> globalBackingCache = MemoryBoundedSoftRefLoaderCache.withWeakRefs(
+			Runtime.getRuntime().maxMemory(),
+			DiscoverableMemoryUsage.memoryUsageFromDiscoveredFunctions(),
+			CompressedCellCache.fromConfig());
 
 	private final GlobalCache globalCache;
 
@@ -102,6 +109,8 @@ public class PainteraBaseView
 
 	private final OrthogonalViews<Viewer3DFX> views;
 
+	private final Optional<ViewerTransformRecording.Recorder> transformRecorder;
+
 	private final ObjectProperty<AllowedActions> allowedActionsProperty;
 
 	private final ObservableList<SourceAndConverter<?>> visibleSourcesAndConverters = sourceInfo
@@ -114,11 +123,10 @@ public class PainteraBaseView
 			new NamedThreadFactory("paintera-thread-%d", true));
 
 	private final ExecutorService meshManagerExecutorService = Executors.newFixedThreadPool(
-			3,
+			1,
 			new NamedThreadFactory("paintera-mesh-manager-%d", true));
 
-	private final ExecutorService meshWorkerExecutorService = Executors.newFixedThreadPool(
-			10,
+	private final ExecutorService meshWorkerExecutorService = MeshWorkerExecutorService.withAvailableProcessors(
 			new NamedThreadFactory("paintera-mesh-worker-%d", true));
 
 	private final ExecutorService paintQueue = Executors.newFixedThreadPool(1);
@@ -136,7 +144,7 @@ public class PainteraBaseView
 
 	/**
 	 *
-	 * @param numFetcherThreads number of threads used for {@link net.imglib2.cache.queue.FetcherThreads}
+	 * @param numFetcherThreads maximum number of concurrent fetches from local storage, see {@link org.janelia.saalfeldlab.paintera.cache.global.FetchBackend}
 	 * @param viewerOptions options passed down to {@link OrthogonalViews viewers}
 	 */
 	public PainteraBaseView(
@@ -144,6 +152,7 @@ public class PainteraBaseView
 			final ViewerOptions viewerOptions)
 	{
 		super();
+		MetricsReporter.startFromConfig();
 		this.globalCache = new GlobalCache(MAX_NUM_MIPMAP_LEVELS, numFetcherThreads, globalBackingCache, (Invalidate<GlobalCache.Key<?>>)globalBackingCache);
 		this.viewerOptions = viewerOptions
 				.accumulateProjectorFactory(new CompositeProjectorPreMultiply.CompositeProjectorFactory(sourceInfo
@@ -160,6 +169,7 @@ public class PainteraBaseView
 				s -> Optional.ofNullable(sourceInfo.getState(s)).map(SourceState::interpolationProperty).map(ObjectProperty::get).orElse(Interpolation.NLINEAR),
 				s -> Optional.ofNullable(sourceInfo.getState(s)).map(SourceState::getAxisOrder).orElse(null)
 		);
+		this.transformRecorder = ViewerTransformRecording.startFromConfig(this.views.topLeft().viewer());
 		this.allowedActionsProperty = new SimpleObjectProperty<>(DEFAULT_ALLOWED_ACTIONS);
 		this.vsacUpdate = change -> views.setAllSources(visibleSourcesAndConverters);
 		visibleSourcesAndConverters.addListener(vsacUpdate);
@@ -256,7 +266,8 @@ public class PainteraBaseView
 	 * {@link OrthogonalViews#requestRepaint() a request for repaint} of the underlying viewers.
 	 *
 	 * If {@code state} holds a {@link MaskedSource}, {@link MaskedSource#showCanvasOverBackgroundProperty()}
-	 * and {@link MaskedSource#currentCanvasDirectoryProperty()} trigger {@link OrthogonalViews#requestRepaint()}.
+	 * and {@link MaskedSource#currentCanvasDirectoryProperty()} trigger {@link OrthogonalViews#requestRepaint()}, as
+	 * do canvas blocks restored through {@link MaskedSource#undo()} and {@link MaskedSource#redo()}.
 	 *
 	 * @param state generic state
 	 * @param <D> Data type of {@code state}
@@ -273,6 +284,7 @@ public class PainteraBaseView
 			final MaskedSource<?, ?> ms = ((MaskedSource<?, ?>) state.getDataSource());
 			ms.showCanvasOverBackgroundProperty().addListener(obs -> orthogonalViews().requestRepaint());
 			ms.currentCanvasDirectoryProperty().addListener(obs -> orthogonalViews().requestRepaint());
+			ms.addOnCanvasRestoredListener(() -> orthogonalViews().requestRepaint());
 		}
 	}
 
@@ -485,6 +497,7 @@ public class PainteraBaseView
 		this.orthogonalViews().topLeft().viewer().stop();
 		this.orthogonalViews().topRight().viewer().stop();
 		this.orthogonalViews().bottomLeft().viewer().stop();
+		this.transformRecorder.ifPresent(r -> ViewerTransformRecording.stop(this.orthogonalViews().topLeft().viewer(), r));
 		LOG.debug("Sent stop requests everywhere");
 	}
 
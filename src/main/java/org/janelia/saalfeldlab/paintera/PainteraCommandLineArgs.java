@@ -11,7 +11,7 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
-@Command(name = "Paintera")
+@Command(name = "Paintera", footer = "%nRun `Paintera " + PainteraExportMeshes.COMMAND_NAME + " --help` for headless mesh export.")
 public class PainteraCommandLineArgs implements Callable<Boolean>
 {
 
@@ -0,0 +1,381 @@
+package org.janelia.saalfeldlab.paintera;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Interval;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Pair;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.cache.DiscoverableMemoryUsage;
+import org.janelia.saalfeldlab.paintera.cache.Invalidate;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedSoftRefLoaderCache;
+import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporter;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterBinary;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterObj;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.Smooth;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMaskGenerators;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMeshCacheLoader;
+import org.janelia.saalfeldlab.util.HashWrapper;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
+import org.janelia.saalfeldlab.util.n5.N5Data;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Headless batch export of segment meshes from an N5 label dataset, invoked as {@code paintera export-meshes}. Segments
+ * are resolved into fragments through the fragment-segment assignment of the dataset, and only the blocks listed in
+ * the label-block lookup of these fragments are meshed. Segments are meshed in parallel, one segment per thread, and
+ * each block mesh is appended to the output file as soon as it is generated. Label data is held in a memory bounded
+ * cache.
+ *
+ * Each segment is written to a hidden partial file first that is renamed once the segment is complete. Segments that
+ * already have an output file are skipped, i.e. an interrupted export resumes where it stopped when re-run with the
+ * same arguments.
+ */
+@Command(name = PainteraExportMeshes.COMMAND_NAME, description = "Export meshes of segments in an N5 label dataset without starting the UI.")
+public class PainteraExportMeshes implements Callable<Integer>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String COMMAND_NAME = "export-meshes";
+
+	private static final int MAX_NUM_MIPMAP_LEVELS = 100;
+
+	private static final String PARTIAL_PREFIX = ".partial-";
+
+	private static final long PROGRESS_INTERVAL = 100;
+
+	public enum Format
+	{
+		OBJ(MeshExporterObj::new, ".obj"),
+		BINARY(MeshExporterBinary::new, ".vertices", ".normals");
+
+		private final Supplier<MeshExporter<Long>> exporter;
+
+		private final String[] suffixes;
+
+		Format(final Supplier<MeshExporter<Long>> exporter, final String... suffixes)
+		{
+			this.exporter = exporter;
+			this.suffixes = suffixes;
+		}
+	}
+
+	@Parameters(index = "0", paramLabel = "CONTAINER", description = "N5 container (N5 or HDF5).")
+	private String container;
+
+	@Parameters(index = "1", paramLabel = "DATASET", description = "Label dataset in CONTAINER.")
+	private String dataset;
+
+	@Option(names = {"-o", "--output"}, paramLabel = "OUTPUT", required = true, description = "Output directory. One " +
+			"file per segment (two files for BINARY) is written, named after the segment id.")
+	private Path output;
+
+	@Option(names = "--ids", paramLabel = "IDS", arity = "1..*", split = ",", description = "Segment ids to export.")
+	private long[] ids = {};
+
+	@Option(names = "--id-range", paramLabel = "MIN:MAX", arity = "1..*", description = "Export all segment ids in " +
+			"the half-open range [MIN, MAX).")
+	private String[] idRanges = {};
+
+	@Option(names = "--ids-file", paramLabel = "IDS_FILE", description = "Text file with one segment id per line.")
+	private Path idsFile;
+
+	@Option(names = "--ignore-assignment", description = "Treat ids as fragment ids and ignore the fragment-segment " +
+			"assignment of DATASET.")
+	private boolean ignoreAssignment;
+
+	@Option(names = "--scale-level", paramLabel = "SCALE_LEVEL", description = "Scale level to mesh. Defaults to 0.")
+	private int scaleLevel = 0;
+
+	@Option(names = "--smoothing-lambda", paramLabel = "LAMBDA", description = "Smoothing lambda. Defaults to " +
+			Smooth.DEFAULT_LAMBDA + ".")
+	private double smoothingLambda = Smooth.DEFAULT_LAMBDA;
+
+	@Option(names = "--smoothing-iterations", paramLabel = "ITERATIONS", description = "Smoothing iterations. " +
+			"Defaults to " + Smooth.DEFAULT_ITERATIONS + ".")
+	private int smoothingIterations = Smooth.DEFAULT_ITERATIONS;
+
+	@Option(names = "--format", paramLabel = "FORMAT", description = "Output format, one of OBJ, BINARY. Defaults to OBJ.")
+	private Format format = Format.OBJ;
+
+	@Option(names = "--num-threads", paramLabel = "NUM_THREADS", description = "Number of segments meshed in " +
+			"parallel. Defaults to the number of available processors.")
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	@Option(names = "--cache-size", paramLabel = "BYTES", description = "Upper bound for cached label data in bytes. " +
+			"Defaults to half of the maximum heap size.")
+	private long cacheSize = Runtime.getRuntime().maxMemory() / 2;
+
+	@Option(names = "--overwrite", description = "Re-export segments that already have an output file.")
+	private boolean overwrite;
+
+	@Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message.")
+	private boolean helpRequested;
+
+	private final AtomicLong exported = new AtomicLong();
+
+	private final AtomicLong skipped = new AtomicLong();
+
+	private final AtomicLong empty = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 *
+	 * @param args command line arguments following {@link #COMMAND_NAME}
+	 * @return exit code: {@code 0} if all segments were exported, {@code 1} if any segment failed, {@code 2} if the
+	 * arguments could not be parsed or the dataset could not be opened.
+	 */
+	public static int run(final String... args)
+	{
+		final PainteraExportMeshes command = new PainteraExportMeshes();
+		try
+		{
+			final Integer exitCode = CommandLine.call(command, System.err, args);
+			return Optional.ofNullable(exitCode).orElse(command.helpRequested ? 0 : 2);
+		} catch (final CommandLine.ExecutionException e)
+		{
+			LOG.error("Unable to export meshes: {}", Optional.ofNullable(e.getCause()).orElse(e).getMessage());
+			LOG.debug("Stack trace", e);
+			return 2;
+		}
+	}
+
+	@Override
+	public Integer call() throws Exception
+	{
+		numThreads = Math.max(numThreads, 1);
+		Files.createDirectories(output);
+		return export(N5Helpers.n5Writer(container, 64, 64, 64));
+	}
+
+	private <D extends NativeType<D>, T extends NativeType<T>> int export(final N5Writer n5) throws IOException, ReflectionException, InterruptedException
+	{
+		final LoaderCache<GlobalCache.Key<?>, ?> backingCache = MemoryBoundedSoftRefLoaderCache.withWeakRefs(
+				cacheSize,
+				DiscoverableMemoryUsage.memoryUsageFromDiscoveredFunctions());
+		final GlobalCache globalCache = new GlobalCache(
+				MAX_NUM_MIPMAP_LEVELS,
+				1,
+				backingCache,
+				(Invalidate<GlobalCache.Key<?>>) backingCache);
+		final DataSource<D, T> source = N5Data.openAsLabelSource(
+				n5,
+				dataset,
+				N5Helpers.getTransform(n5, dataset),
+				globalCache,
+				0,
+				dataset);
+
+		if (scaleLevel < 0 || scaleLevel >= source.getNumMipmapLevels())
+		{
+			LOG.error("Scale level {} out of range: {} has {} scale levels", scaleLevel, dataset, source.getNumMipmapLevels());
+			return 2;
+		}
+
+		final FragmentSegmentAssignmentState assignment = ignoreAssignment ? null : N5Helpers.assignments(n5, dataset);
+		final LabelBlockLookup lookup = labelBlockLookup(n5, dataset, source);
+		final SegmentMeshCacheLoader<D> meshLoader = meshLoader(source, scaleLevel);
+
+		LOG.info("Exporting meshes of {} {} at scale level {} into {} with {} threads", container, dataset, scaleLevel, output, numThreads);
+		final long startTime = System.currentTimeMillis();
+
+		// bounded queue: ids are consumed lazily and at most 2 * numThreads segments are pending at any time
+		final ThreadPoolExecutor es = new ThreadPoolExecutor(
+				numThreads,
+				numThreads,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(numThreads),
+				new NamedThreadFactory("paintera-mesh-export-%d", true),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		try (final LongStream segments = segmentIds())
+		{
+			final PrimitiveIterator.OfLong it = segments.iterator();
+			while (it.hasNext())
+			{
+				final long segment = it.next();
+				es.execute(() -> exportSegment(segment, assignment, lookup, meshLoader));
+			}
+		} finally
+		{
+			es.shutdown();
+			es.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		LOG.info(
+				"Finished in {}s: {} exported, {} skipped, {} without blocks, {} failed",
+				(System.currentTimeMillis() - startTime) / 1000,
+				exported.get(),
+				skipped.get(),
+				empty.get(),
+				failed.get());
+		return failed.get() == 0 ? 0 : 1;
+	}
+
+	private void exportSegment(
+			final long segment,
+			final FragmentSegmentAssignmentState assignment,
+			final LabelBlockLookup lookup,
+			final SegmentMeshCacheLoader<?> meshLoader)
+	{
+		try
+		{
+			if (!overwrite && Stream.of(format.suffixes).allMatch(suffix -> Files.exists(outputFile(segment, suffix))))
+			{
+				skipped.incrementAndGet();
+				return;
+			}
+
+			final TLongHashSet fragments = assignment == null
+					? new TLongHashSet(new long[] {segment})
+					: assignment.getFragments(segment);
+			final Interval[] blocks = blocks(lookup, fragments);
+			if (blocks.length == 0)
+			{
+				LOG.debug("No blocks for segment {} (fragments {})", segment, fragments);
+				empty.incrementAndGet();
+				return;
+			}
+
+			@SuppressWarnings("unchecked") final Function<Long, Interval[]>[] blockLists = new Function[scaleLevel + 1];
+			@SuppressWarnings("unchecked") final Function<ShapeKey<Long>, Pair<float[], float[]>>[] meshes = new Function[scaleLevel + 1];
+			blockLists[scaleLevel] = id -> blocks;
+			meshes[scaleLevel] = key -> {
+				try
+				{
+					return meshLoader.get(new ShapeKey<>(
+							fragments,
+							key.scaleIndex(),
+							key.simplificationIterations(),
+							key.smoothingLambda(),
+							key.smoothingIterations(),
+							key.min(),
+							key.max()));
+				} catch (final Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			};
+
+			final Path partial = output.resolve(PARTIAL_PREFIX + segment);
+			format.exporter.get().exportMesh(blockLists, meshes, segment, scaleLevel, smoothingLambda, smoothingIterations, partial.toString());
+			for (final String suffix : format.suffixes)
+				Files.move(Paths.get(partial + suffix), outputFile(segment, suffix), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			final long count = exported.incrementAndGet();
+			if (count % PROGRESS_INTERVAL == 0)
+				LOG.info("Exported {} segments ({} skipped, {} failed)", count, skipped.get(), failed.get());
+		} catch (final IOException | RuntimeException e)
+		{
+			failed.incrementAndGet();
+			LOG.error("Unable to export mesh for segment {}: {}", segment, e.getMessage());
+			LOG.debug("Stack trace", e);
+		}
+	}
+
+	private Interval[] blocks(final LabelBlockLookup lookup, final TLongHashSet fragments) throws IOException
+	{
+		final Set<HashWrapper<Interval>> blocks = new HashSet<>();
+		for (final long fragment : fragments.toArray())
+			Stream.of(lookup.read(scaleLevel, fragment)).map(HashWrapper::interval).forEach(blocks::add);
+		return blocks.stream().map(HashWrapper::getData).toArray(Interval[]::new);
+	}
+
+	private Path outputFile(final long segment, final String suffix)
+	{
+		return output.resolve(segment + suffix);
+	}
+
+	private LongStream segmentIds() throws IOException
+	{
+		LongStream segments = LongStream.of(ids);
+		for (final String range : idRanges)
+		{
+			final String[] minMax = range.split(":");
+			if (minMax.length != 2)
+				throw new CommandLine.PicocliException("Expected id range MIN:MAX but got " + range);
+			segments = LongStream.concat(segments, LongStream.range(Long.parseLong(minMax[0].trim()), Long.parseLong(minMax[1].trim())));
+		}
+		if (idsFile != null)
+		{
+			final LongStream fromFile = Files
+					.lines(idsFile)
+					.map(String::trim)
+					.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+					.mapToLong(Long::parseLong);
+			segments = LongStream.concat(segments, fromFile);
+		}
+		return segments;
+	}
+
+	private static LabelBlockLookup labelBlockLookup(final N5Writer n5, final String dataset, final DataSource<?, ?> source) throws IOException
+	{
+		try
+		{
+			return N5Helpers.getLabelBlockLookup(n5, dataset);
+		} catch (final N5Helpers.NotAPainteraDataset e)
+		{
+			LOG.warn("No label-block lookup for {}: meshing all blocks for each segment, this will be slow", dataset);
+			final CellGrid[] grids = source.getGrids();
+			final long[][] dims = new long[grids.length][];
+			final int[][] blockSizes = new int[grids.length][];
+			for (int i = 0; i < grids.length; ++i)
+			{
+				dims[i] = grids[i].getImgDimensions();
+				blockSizes[i] = new int[grids[i].numDimensions()];
+				grids[i].cellDimensions(blockSizes[i]);
+			}
+			return new LabelBlockLookupAllBlocks(dims, blockSizes);
+		}
+	}
+
+	private static <D> SegmentMeshCacheLoader<D> meshLoader(final DataSource<D, ?> source, final int level)
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		source.getSourceTransform(0, level, transform);
+		return new SegmentMeshCacheLoader<>(
+				new int[] {1, 1, 1},
+				() -> source.getDataSource(0, level),
+				SegmentMaskGenerators.forType(source.getDataType()),
+				transform);
+	}
+
+}
@@ -0,0 +1,300 @@
+package org.janelia.saalfeldlab.paintera;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+import org.janelia.saalfeldlab.paintera.SaveProject.ProjectUndefined;
+import org.janelia.saalfeldlab.paintera.control.actions.MenuActionType;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.paintera.serialization.GsonHelpers;
+import org.janelia.saalfeldlab.paintera.serialization.Properties;
+import org.janelia.saalfeldlab.paintera.serialization.SourceInfoSerializer;
+import org.janelia.saalfeldlab.paintera.state.SourceInfo;
+import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Save project {@link Properties} without blocking the JavaFX application thread on IO.
+ *
+ * The properties are serialized into a {@link JsonElement} on the application thread, which owns all state, and
+ * written by a background thread through a {@link ProjectJournal}, i.e. atomically and with a rolling backup of
+ * previous versions. Serialized source states are cached and only states that are {@link SourceState#isDirty() dirty}
+ * are serialized again for autosaves. Explicit saves serialize all states.
+ *
+ * Autosave runs every {@code project.autosave.interval} seconds (paintera.yml, default
+ * {@value #DEFAULT_AUTOSAVE_INTERVAL_SECONDS}) if the properties are dirty. A non-positive interval disables autosave.
+ */
+public class ProjectAutosave
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final double DEFAULT_AUTOSAVE_INTERVAL_SECONDS = 60.0;
+
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("project-writer-%d", true));
+
+	private final PainteraBaseView baseView;
+
+	private final Properties properties;
+
+	private final String project;
+
+	private final Gson gson;
+
+	private final Map<SourceState<?, ?>, JsonElement> serializedStates = new HashMap<>();
+
+	private List<SourceState<?, ?>> lastStates = new ArrayList<>();
+
+	private boolean serializeAllStates = false;
+
+	private CompletableFuture<Void> lastSave = CompletableFuture.completedFuture(null);
+
+	private final Timeline autosave;
+
+	public ProjectAutosave(
+			final PainteraBaseView baseView,
+			final Properties properties,
+			final String project)
+	{
+		this(baseView, properties, project, autosaveIntervalFromConfig());
+	}
+
+	/**
+	 * @param autosaveIntervalSeconds interval between autosaves, non-positive values disable autosave
+	 */
+	public ProjectAutosave(
+			final PainteraBaseView baseView,
+			final Properties properties,
+			final String project,
+			final double autosaveIntervalSeconds)
+	{
+		this.baseView = baseView;
+		this.properties = properties;
+		this.project = project;
+		this.gson = GsonHelpers
+				.builderWithAllRequiredSerializers(baseView, () -> project)
+				.registerTypeAdapter(SourceInfo.class, (JsonSerializer<SourceInfo>) (src, type, context) ->
+						SourceInfoSerializer.serialize(src, state -> serializeState(state, context)))
+				.setPrettyPrinting()
+				.create();
+		this.autosave = new Timeline(new KeyFrame(Duration.seconds(Math.max(autosaveIntervalSeconds, 1.0)), e -> autosave()));
+		this.autosave.setCycleCount(Animation.INDEFINITE);
+		if (autosaveIntervalSeconds > 0 && project != null)
+		{
+			LOG.debug("Autosaving {} every {} seconds", project, autosaveIntervalSeconds);
+			this.autosave.play();
+		}
+	}
+
+	public void stop()
+	{
+		autosave.stop();
+	}
+
+	/**
+	 * Serialize all properties and write them in the background. Must be called on the JavaFX application thread.
+	 *
+	 * @return completes when the properties are written
+	 * @throws ProjectUndefined if no project directory is specified
+	 */
+	public CompletableFuture<Void> save() throws ProjectUndefined
+	{
+		if (project == null)
+			throw new ProjectUndefined(project);
+		return save(true);
+	}
+
+	/**
+	 * Serialize all properties and wait until they are written. Must be called on the JavaFX application thread.
+	 */
+	public void saveAndWait() throws IOException, ProjectUndefined
+	{
+		try
+		{
+			save().get();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving project " + project, e);
+		} catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void autosave()
+	{
+		if (!lastSave.isDone() || !properties.isDirty())
+			return;
+		if (!baseView.allowedActionsProperty().get().isAllowed(MenuActionType.SaveProject))
+			return;
+		LOG.debug("Autosaving project {}", project);
+		save(false);
+	}
+
+	private CompletableFuture<Void> save(final boolean serializeAllStates)
+	{
+		final long start = System.nanoTime();
+		final JsonElement serializedProperties = snapshot(serializeAllStates);
+		MetricRegistry.global().timer("project.serialize").updateSince(start);
+		final List<SourceState<?, ?>> states = lastStates;
+
+		final CompletableFuture<Void> save = new CompletableFuture<>();
+		WRITER.submit(() -> {
+			try
+			{
+				write(serializedProperties);
+				save.complete(null);
+			} catch (final IOException | RuntimeException e)
+			{
+				LOG.error("Unable to save project {}", project, e);
+				// properties and states were cleaned in snapshot but could not be persisted
+				Platform.runLater(() -> {
+					serializedStates.clear();
+					states.forEach(SourceState::stain);
+					properties.stain();
+				});
+				save.completeExceptionally(e);
+			}
+		});
+		lastSave = save;
+		return save;
+	}
+
+	private JsonElement snapshot(final boolean serializeAllStates)
+	{
+		final SourceInfo sourceInfo = properties.sourceInfo;
+		final List<SourceState<?, ?>> states = sourceInfo
+				.trackSources()
+				.stream()
+				.map(sourceInfo::getState)
+				.collect(Collectors.toList());
+		// serialized states refer to dependencies by index
+		if (!states.equals(lastStates))
+			serializedStates.clear();
+		serializedStates.keySet().retainAll(states);
+
+		this.serializeAllStates = serializeAllStates;
+		final JsonElement serializedProperties = gson.toJsonTree(properties);
+		this.lastStates = states;
+		properties.clean();
+		return serializedProperties;
+	}
+
+	private JsonElement serializeState(final SourceState<?, ?> state, final JsonSerializationContext context)
+	{
+		final JsonElement cached = serializedStates.get(state);
+		if (cached != null && !serializeAllStates && !state.isDirty())
+			return cached;
+		final JsonElement serialized = context.serialize(state, state.getClass());
+		serializedStates.put(state, serialized);
+		return serialized;
+	}
+
+	private void write(final JsonElement serializedProperties) throws IOException
+	{
+		final long start = System.nanoTime();
+		if (N5Helpers.isHDF(project))
+		{
+			N5Helpers.n5Writer(project, 64, 64, 64).setAttribute("", Paintera.PAINTERA_KEY, serializedProperties);
+			return;
+		}
+
+		// make sure that project is a valid N5 container
+		N5Helpers.n5Writer(project);
+		final Path projectDirectory = Paths.get(project);
+		final JsonObject attributes = readAttributes(projectDirectory.resolve(ProjectJournal.ATTRIBUTES_FILE));
+		attributes.add(Paintera.PAINTERA_KEY, serializedProperties);
+		new ProjectJournal(projectDirectory).commit(gson.toJson(attributes));
+		MetricRegistry.global().timer("project.write").updateSince(start);
+	}
+
+	private static JsonObject readAttributes(final Path attributes) throws IOException
+	{
+		if (!Files.exists(attributes))
+			return new JsonObject();
+		try (final Reader reader = Files.newBufferedReader(attributes, StandardCharsets.UTF_8))
+		{
+			final JsonElement json = new JsonParser().parse(reader);
+			return json.isJsonObject() ? json.getAsJsonObject() : new JsonObject();
+		} catch (final JsonParseException e)
+		{
+			LOG.warn("Replacing corrupted attributes {}: {}", attributes, e.getMessage());
+			return new JsonObject();
+		}
+	}
+
+	/**
+	 * Read the properties of a project from the latest valid {@link ProjectJournal journal} entry, e.g. if the
+	 * attributes file could not be read.
+	 */
+	public static Optional<JsonObject> recoverFromJournal(final String project)
+	{
+		if (project == null || N5Helpers.isHDF(project))
+			return Optional.empty();
+		try
+		{
+			return new ProjectJournal(Paths.get(project))
+					.latestValidEntry(ProjectAutosave::hasProperties)
+					.map(contents -> new JsonParser().parse(contents).getAsJsonObject().getAsJsonObject(Paintera.PAINTERA_KEY));
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to read journal of project {}: {}", project, e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	private static boolean hasProperties(final String attributes)
+	{
+		try
+		{
+			final JsonElement json = new JsonParser().parse(attributes);
+			return json.isJsonObject() && json.getAsJsonObject().has(Paintera.PAINTERA_KEY) && json.getAsJsonObject().get(Paintera.PAINTERA_KEY).isJsonObject();
+		} catch (final JsonParseException e)
+		{
+			return false;
+		}
+	}
+
+	private static double autosaveIntervalFromConfig()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "project", "autosave", "interval"))
+				.map(o -> o instanceof Number ? ((Number) o).doubleValue() : Double.parseDouble(o.toString()))
+				.orElse(DEFAULT_AUTOSAVE_INTERVAL_SECONDS);
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.janelia.saalfeldlab.paintera;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Crash-safe writes of the project attributes file. Every commit is first written into a rolling journal of the last
+ * few versions in {@link #DIRECTORY} and then replaces the attributes file through an atomic rename, i.e. readers
+ * always see either the previous or the new version of the file. If the attributes file is lost or corrupted, the
+ * latest valid journal entry can be used for recovery.
+ */
+public class ProjectJournal
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String DIRECTORY = ".paintera-journal";
+
+	public static final String ATTRIBUTES_FILE = "attributes.json";
+
+	public static final int DEFAULT_MAX_ENTRIES = 5;
+
+	private static final String ENTRY_PREFIX = "attributes.";
+
+	private static final String ENTRY_SUFFIX = ".json";
+
+	private final Path attributes;
+
+	private final Path journal;
+
+	private final int maxEntries;
+
+	private long lastEntry = 0;
+
+	public ProjectJournal(final Path projectDirectory)
+	{
+		this(projectDirectory, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries number of versions that are kept in the journal, must be positive
+	 */
+	public ProjectJournal(final Path projectDirectory, final int maxEntries)
+	{
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("Journal needs at least one entry: " + maxEntries);
+		this.attributes = projectDirectory.resolve(ATTRIBUTES_FILE);
+		this.journal = projectDirectory.resolve(DIRECTORY);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Add {@code contents} to the journal, drop the oldest entries, and atomically replace the attributes file with
+	 * {@code contents}.
+	 */
+	public synchronized void commit(final String contents) throws IOException
+	{
+		Files.createDirectories(journal);
+		final long entry = Math.max(System.currentTimeMillis(), lastEntry + 1);
+		writeAtomically(journal.resolve(String.format("%s%019d%s", ENTRY_PREFIX, entry, ENTRY_SUFFIX)), contents);
+		lastEntry = entry;
+
+		final List<Path> entries = entries();
+		for (final Path obsolete : entries.subList(Math.min(maxEntries, entries.size()), entries.size()))
+			Files.deleteIfExists(obsolete);
+
+		writeAtomically(attributes, contents);
+	}
+
+	/**
+	 * @return journal entries, latest first
+	 */
+	public List<Path> entries() throws IOException
+	{
+		final List<Path> entries = new ArrayList<>();
+		if (!Files.isDirectory(journal))
+			return entries;
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(journal, ENTRY_PREFIX + "*" + ENTRY_SUFFIX))
+		{
+			stream.forEach(entries::add);
+		}
+		entries.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+		return entries;
+	}
+
+	/**
+	 * @param isValid test if the contents of an entry can be used, e.g. if it can be parsed
+	 * @return contents of the latest journal entry that is valid, if any
+	 */
+	public Optional<String> latestValidEntry(final Predicate<String> isValid) throws IOException
+	{
+		for (final Path entry : entries())
+		{
+			try
+			{
+				final String contents = new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+				if (isValid.test(contents))
+					return Optional.of(contents);
+				LOG.warn("Ignoring invalid journal entry {}", entry);
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to read journal entry {}: {}", entry, e.getMessage());
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Write {@code contents} into a temporary file next to {@code target}, flush it to disk, and rename it to
+	 * {@code target}. Falls back to a non-atomic replace if the file system does not support atomic moves.
+	 */
+	public static void writeAtomically(final Path target, final String contents) throws IOException
+	{
+		final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (final FileChannel channel = FileChannel.open(
+				tmp,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE))
+		{
+			final ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		}
+		try
+		{
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e)
+		{
+			LOG.debug("Atomic move not supported for {}: {}", target, e.getMessage());
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+}
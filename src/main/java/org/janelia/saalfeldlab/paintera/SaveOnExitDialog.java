@@ -8,7 +8,6 @@ import org.janelia.saalfeldlab.paintera.SaveProject.ProjectUndefined;
 import org.janelia.saalfeldlab.paintera.control.CommitChanges;
 import org.janelia.saalfeldlab.paintera.control.CommitChanges.Commitable;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
-import org.janelia.saalfeldlab.paintera.serialization.GsonHelpers;
 import org.janelia.saalfeldlab.paintera.serialization.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,17 +28,20 @@ public class SaveOnExitDialog implements EventHandler<WindowEvent>
 
 	private final Properties properties;
 
-	private final String project;
+	private final ProjectAutosave projectAutosave;
 
 	private final Runnable onSuccess;
 
-	public SaveOnExitDialog(final PainteraBaseView baseView, final Properties properties, final String project, final
-	Runnable onSuccess)
+	public SaveOnExitDialog(
+			final PainteraBaseView baseView,
+			final Properties properties,
+			final ProjectAutosave projectAutosave,
+			final Runnable onSuccess)
 	{
 		super();
 		this.baseView = baseView;
 		this.properties = properties;
-		this.project = project;
+		this.projectAutosave = projectAutosave;
 		this.onSuccess = onSuccess;
 	}
 
@@ -71,11 +73,7 @@ public class SaveOnExitDialog implements EventHandler<WindowEvent>
 				LOG.debug("Saving project before exit");
 				try
 				{
-					SaveProject.persistProperties(
-							project,
-							properties,
-							GsonHelpers.builderWithAllRequiredSerializers(baseView, this::project).setPrettyPrinting()
-					                             );
+					projectAutosave.saveAndWait();
 					checkForUncommitedCanvases();
 				} catch (final IOException e)
 				{
@@ -121,9 +119,4 @@ public class SaveOnExitDialog implements EventHandler<WindowEvent>
 						Optional.of(Commitable.setOf(Commitable.CANVAS)))));
 	}
 
-	private String project()
-	{
-		return this.project;
-	}
-
 }
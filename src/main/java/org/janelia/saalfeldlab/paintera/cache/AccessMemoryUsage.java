@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.paintera.cache;
 import net.imglib2.img.basictypeaccess.array.*;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.type.label.VolatileLabelMultisetArray;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -118,6 +119,20 @@ public class AccessMemoryUsage {
 		}
 	}
 
+	@Plugin(type = DiscoverableMemoryUsage.class)
+	public static class PaletteLongArrayMemoryUsage implements DiscoverableMemoryUsage<Cell<PaletteLongArray>> {
+
+		@Override
+		public boolean isApplicable(Object object) {
+			return object instanceof Cell<?> && ((Cell<?>)object).getData() instanceof PaletteLongArray;
+		}
+
+		@Override
+		public long applyAsLong(Cell<PaletteLongArray> paletteAccess) {
+			return paletteAccess.getData().sizeInBytes();
+		}
+	}
+
 	@Plugin(type = DiscoverableMemoryUsage.class)
 	public static class VolatileLabelMultisetArrayMemoryUsage implements DiscoverableMemoryUsage<Cell<VolatileLabelMultisetArray>>
 	{
@@ -0,0 +1,589 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.array.AbstractByteArray;
+import net.imglib2.img.basictypeaccess.array.AbstractCharArray;
+import net.imglib2.img.basictypeaccess.array.AbstractDoubleArray;
+import net.imglib2.img.basictypeaccess.array.AbstractFloatArray;
+import net.imglib2.img.basictypeaccess.array.AbstractIntArray;
+import net.imglib2.img.basictypeaccess.array.AbstractLongArray;
+import net.imglib2.img.basictypeaccess.array.AbstractShortArray;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.LabelUtils;
+import net.imglib2.type.label.VolatileLabelMultisetArray;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
+import org.janelia.saalfeldlab.paintera.metrics.Counter;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second cache tier for cells evicted from a {@link MemoryBoundedSoftRefLoaderCache}. Cells backed by primitive
+ * arrays, {@link PaletteLongArray palette encoded labels}, or label multisets are stored deflate compressed in direct
+ * (off-heap) buffers, in least recently inserted order, up to a bound on the total compressed size. {@code long} and
+ * palette encoded cells (labels) are run-length encoded before compression, label multisets are compressed in their
+ * serialized N5 representation. Cells that are dirty, invalid, or that do not compress well are not stored.
+ *
+ * Evicted cells are {@link #offer(Object, Object, long) compressed on a background thread}, so that compression does
+ * not delay the thread that triggered the eviction. Cells that are evicted while too many cells are waiting for
+ * compression are dropped.
+ *
+ * Entries are removed when they are rehydrated: the rehydrated cell lives in the primary tier again and will be
+ * re-compressed when it is evicted the next time.
+ *
+ * The bound defaults to a quarter of the maximum direct memory and is configured in {@code ~/.config/paintera.yml},
+ * a bound of {@code 0} disables the second tier:
+ * <pre>
+ * cache:
+ *   compressed:
+ *     maxBytes: 1073741824
+ * </pre>
+ *
+ * @param <K> key type
+ */
+public class CompressedCellCache<K>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final long DEFAULT_MAX_BYTES = maxDirectMemory() / 4;
+
+	private static final int MAX_PENDING = 1024;
+
+	/**
+	 * Cells that compress to more than this fraction of their raw size are not stored.
+	 */
+	private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+	private static final byte FORMAT_RAW = 0;
+
+	private static final byte FORMAT_RUN_LENGTH = 1;
+
+	private static final byte FORMAT_PALETTE = 2;
+
+	private static final byte FORMAT_LABEL_MULTISET = 3;
+
+	private static class Entry
+	{
+
+		private final int[] dimensions;
+
+		private final long[] min;
+
+		// null unless format is FORMAT_RAW or FORMAT_RUN_LENGTH
+		private final ArrayDataAccess<?> prototype;
+
+		private final int numElements;
+
+		private final byte format;
+
+		private final int rawLength;
+
+		private final ByteBuffer data;
+
+		private Entry(
+				final int[] dimensions,
+				final long[] min,
+				final ArrayDataAccess<?> prototype,
+				final int numElements,
+				final byte format,
+				final int rawLength,
+				final ByteBuffer data)
+		{
+			this.dimensions = dimensions;
+			this.min = min;
+			this.prototype = prototype;
+			this.numElements = numElements;
+			this.format = format;
+			this.rawLength = rawLength;
+			this.data = data;
+		}
+
+		private int sizeInBytes()
+		{
+			return data.capacity();
+		}
+
+	}
+
+	private final long maxBytes;
+
+	// guarded by this
+	private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>();
+
+	// guarded by this
+	private long bytes = 0;
+
+	// guarded by this
+	private long epoch = 0;
+
+	private final Counter hits = MetricRegistry.global().counter("cache.compressed.hits");
+
+	private final Counter misses = MetricRegistry.global().counter("cache.compressed.misses");
+
+	private final Counter evictions = MetricRegistry.global().counter("cache.compressed.evictions");
+
+	private final Counter rejected = MetricRegistry.global().counter("cache.compressed.rejected");
+
+	private final ThreadPoolExecutor compressor;
+
+	public CompressedCellCache(final long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		this.compressor = new ThreadPoolExecutor(
+				1,
+				1,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(MAX_PENDING),
+				new NamedThreadFactory("compressed-cell-cache-%d", true),
+				(task, executor) -> rejected.inc());
+		MetricRegistry.global().gauge("cache.compressed.bytes", this::sizeInBytes);
+		MetricRegistry.global().gauge("cache.compressed.pending", () -> compressor.getQueue().size());
+	}
+
+	/**
+	 * @return second tier with bound as configured in {@code cache.compressed.maxBytes}, or {@code null} if the bound
+	 * is not positive
+	 */
+	public static <K> CompressedCellCache<K> fromConfig()
+	{
+		final long maxBytes = Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "cache", "compressed", "maxBytes"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(DEFAULT_MAX_BYTES);
+		LOG.debug("Max bytes for compressed cell cache: {}", maxBytes);
+		return maxBytes > 0 ? new CompressedCellCache<>(maxBytes) : null;
+	}
+
+	/**
+	 * Incremented on every invalidation. Values evicted from the primary tier before an invalidation must not be
+	 * stored after it: pass the epoch at the time of eviction to {@link #put(Object, Object, long)}.
+	 */
+	public synchronized long epoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * {@link #put(Object, Object, long) Compress and store} {@code value} on a background thread.
+	 */
+	public void offer(final K key, final Object value, final long epoch)
+	{
+		if (isSupported(value))
+			compressor.execute(() -> put(key, value, epoch));
+	}
+
+	/**
+	 * Wait until all values that were {@link #offer(Object, Object, long) offered} before are stored or rejected.
+	 */
+	void awaitPending() throws InterruptedException, ExecutionException
+	{
+		compressor.submit(() -> {}).get();
+	}
+
+	/**
+	 * Compress and store {@code value} if it is a clean and valid {@link Cell} backed by a supported access, and if
+	 * no invalidation happened since {@code epoch}.
+	 *
+	 * @return {@code true} if {@code value} was stored
+	 */
+	public boolean put(final K key, final Object value, final long epoch)
+	{
+		if (!isSupported(value))
+			return false;
+
+		final Entry entry = encode((Cell<?>) value);
+		if (entry == null)
+		{
+			rejected.inc();
+			return false;
+		}
+
+		synchronized (this)
+		{
+			if (epoch != this.epoch)
+				return false;
+			final Entry previous = entries.put(key, entry);
+			if (previous != null)
+				bytes -= previous.sizeInBytes();
+			bytes += entry.sizeInBytes();
+			for (final Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext(); )
+			{
+				bytes -= it.next().sizeInBytes();
+				it.remove();
+				evictions.inc();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove and decompress the cell stored for {@code key}.
+	 *
+	 * @return rehydrated cell, or {@code null} if no cell is stored for {@code key}
+	 */
+	public Object remove(final K key)
+	{
+		final Entry entry;
+		synchronized (this)
+		{
+			entry = entries.remove(key);
+			if (entry != null)
+				bytes -= entry.sizeInBytes();
+		}
+		if (entry == null)
+		{
+			misses.inc();
+			return null;
+		}
+		hits.inc();
+		return decode(entry);
+	}
+
+	public synchronized void invalidate(final K key)
+	{
+		++epoch;
+		final Entry entry = entries.remove(key);
+		if (entry != null)
+			bytes -= entry.sizeInBytes();
+	}
+
+	public synchronized void invalidate(final Collection<K> keys)
+	{
+		keys.forEach(this::invalidate);
+	}
+
+	public synchronized List<K> invalidateMatching(final Predicate<K> test)
+	{
+		++epoch;
+		final List<K> removed = new ArrayList<>();
+		for (final Iterator<Map.Entry<K, Entry>> it = entries.entrySet().iterator(); it.hasNext(); )
+		{
+			final Map.Entry<K, Entry> entry = it.next();
+			if (test.test(entry.getKey()))
+			{
+				bytes -= entry.getValue().sizeInBytes();
+				removed.add(entry.getKey());
+				it.remove();
+			}
+		}
+		return removed;
+	}
+
+	public synchronized void invalidateAll()
+	{
+		++epoch;
+		entries.clear();
+		bytes = 0;
+	}
+
+	public long getMaxSize()
+	{
+		return maxBytes;
+	}
+
+	public synchronized long sizeInBytes()
+	{
+		return bytes;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	private static boolean isSupported(final Object value)
+	{
+		if (!(value instanceof Cell<?>))
+			return false;
+		final Object data = ((Cell<?>) value).getData();
+		final boolean isSupportedAccess = data instanceof PaletteLongArray
+				|| data instanceof VolatileLabelMultisetArray
+				|| data instanceof AbstractByteArray<?>
+				|| data instanceof AbstractCharArray<?>
+				|| data instanceof AbstractShortArray<?>
+				|| data instanceof AbstractIntArray<?>
+				|| data instanceof AbstractLongArray<?>
+				|| data instanceof AbstractFloatArray<?>
+				|| data instanceof AbstractDoubleArray<?>;
+		if (!isSupportedAccess)
+			return false;
+		if (data instanceof VolatileAccess && !((VolatileAccess) data).isValid())
+			return false;
+		// dirty accesses may hold modifications that are not persisted anywhere
+		return !AccessFlags.ofAccess(data).contains(AccessFlags.DIRTY);
+	}
+
+	private static Entry encode(final Cell<?> cell)
+	{
+		final Object data = cell.getData();
+		final int[] dimensions = new int[cell.numDimensions()];
+		final long[] min = new long[cell.numDimensions()];
+		Arrays.setAll(dimensions, d -> (int) cell.dimension(d));
+		cell.min(min);
+
+		final int numElements;
+		final byte format;
+		final ByteBuffer raw;
+		final long uncompressedSize;
+		final ArrayDataAccess<?> prototype;
+		if (data instanceof PaletteLongArray)
+		{
+			final PaletteLongArray access = (PaletteLongArray) data;
+			numElements = access.getNumElements();
+			format = FORMAT_PALETTE;
+			raw = encodeRunLength(access::getValue, numElements);
+			uncompressedSize = access.sizeInBytes();
+			prototype = null;
+		}
+		else if (data instanceof VolatileLabelMultisetArray)
+		{
+			final VolatileLabelMultisetArray access = (VolatileLabelMultisetArray) data;
+			numElements = (int) Intervals.numElements(dimensions);
+			final ArrayImg<LabelMultisetType, VolatileLabelMultisetArray> img = new ArrayImg<>(access, new long[] {numElements}, new LabelMultisetType().getEntitiesPerPixel());
+			img.setLinkedType(new LabelMultisetType(img));
+			format = FORMAT_LABEL_MULTISET;
+			raw = ByteBuffer.wrap(LabelUtils.serializeLabelMultisetTypes(img, numElements));
+			uncompressedSize = VolatileLabelMultisetArray.getRequiredNumberOfBytes(access);
+			prototype = null;
+		}
+		else
+		{
+			final ArrayDataAccess<?> access = (ArrayDataAccess<?>) data;
+			final Object array = access.getCurrentStorageArray();
+			numElements = access.getArrayLength();
+			format = array instanceof long[] ? FORMAT_RUN_LENGTH : FORMAT_RAW;
+			raw = format == FORMAT_RUN_LENGTH
+					? encodeRunLength(i -> ((long[]) array)[i], numElements)
+					: encodeRaw(array, numElements);
+			uncompressedSize = (long) bytesPerElement(array) * numElements;
+			prototype = (ArrayDataAccess<?>) access.createArray(0);
+		}
+
+		final byte[] compressed = deflate(raw.array(), raw.limit());
+		if (compressed.length > MAX_COMPRESSION_RATIO * uncompressedSize)
+			return null;
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length);
+		buffer.put(compressed);
+		buffer.flip();
+		return new Entry(dimensions, min, prototype, numElements, format, raw.limit(), buffer);
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static Cell<?> decode(final Entry entry)
+	{
+		final byte[] input = new byte[entry.data.capacity()];
+		entry.data.duplicate().get(input);
+		final byte[] inflated = inflate(input, entry.rawLength);
+		final ByteBuffer raw = ByteBuffer.wrap(inflated).order(ByteOrder.LITTLE_ENDIAN);
+
+		final Object access;
+		if (entry.format == FORMAT_PALETTE)
+		{
+			final long[] values = new long[entry.numElements];
+			decodeRunLength(raw, values);
+			access = PaletteLongArray.fromArray(values, true);
+		}
+		else if (entry.format == FORMAT_LABEL_MULTISET)
+			access = LabelUtils.fromBytes(inflated, entry.numElements);
+		else
+		{
+			final ArrayDataAccess<?> arrayAccess = (ArrayDataAccess<?>) entry.prototype.createArray(entry.numElements);
+			final Object array = arrayAccess.getCurrentStorageArray();
+			if (entry.format == FORMAT_RUN_LENGTH)
+				decodeRunLength(raw, (long[]) array);
+			else
+				decodeRaw(raw, array);
+			access = arrayAccess;
+		}
+		return new Cell(entry.dimensions.clone(), entry.min.clone(), access);
+	}
+
+	/**
+	 * Pairs of (value, run length).
+	 */
+	private static ByteBuffer encodeRunLength(final IntToLongFunction array, final int numElements)
+	{
+		int numRuns = 0;
+		for (int i = 0; i < numElements; ++numRuns)
+		{
+			final long value = array.applyAsLong(i);
+			while (i < numElements && array.applyAsLong(i) == value)
+				++i;
+		}
+		final ByteBuffer raw = ByteBuffer.allocate(numRuns * (Long.BYTES + Integer.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < numElements; )
+		{
+			final long value = array.applyAsLong(i);
+			final int start = i;
+			while (i < numElements && array.applyAsLong(i) == value)
+				++i;
+			raw.putLong(value).putInt(i - start);
+		}
+		raw.flip();
+		return raw;
+	}
+
+	private static void decodeRunLength(final ByteBuffer raw, final long[] array)
+	{
+		for (int i = 0; raw.hasRemaining(); )
+		{
+			final long value = raw.getLong();
+			final int length = raw.getInt();
+			for (final int end = i + length; i < end; ++i)
+				array[i] = value;
+		}
+	}
+
+	private static ByteBuffer encodeRaw(final Object array, final int numElements)
+	{
+		final ByteBuffer raw = ByteBuffer.allocate(bytesPerElement(array) * numElements).order(ByteOrder.LITTLE_ENDIAN);
+		if (array instanceof byte[])
+			raw.put((byte[]) array, 0, numElements);
+		else if (array instanceof char[])
+			raw.asCharBuffer().put((char[]) array, 0, numElements);
+		else if (array instanceof short[])
+			raw.asShortBuffer().put((short[]) array, 0, numElements);
+		else if (array instanceof int[])
+			raw.asIntBuffer().put((int[]) array, 0, numElements);
+		else if (array instanceof long[])
+			raw.asLongBuffer().put((long[]) array, 0, numElements);
+		else if (array instanceof float[])
+			raw.asFloatBuffer().put((float[]) array, 0, numElements);
+		else if (array instanceof double[])
+			raw.asDoubleBuffer().put((double[]) array, 0, numElements);
+		raw.position(0).limit(raw.capacity());
+		return raw;
+	}
+
+	private static void decodeRaw(final ByteBuffer raw, final Object array)
+	{
+		if (array instanceof byte[])
+			raw.get((byte[]) array);
+		else if (array instanceof char[])
+			raw.asCharBuffer().get((char[]) array);
+		else if (array instanceof short[])
+			raw.asShortBuffer().get((short[]) array);
+		else if (array instanceof int[])
+			raw.asIntBuffer().get((int[]) array);
+		else if (array instanceof long[])
+			raw.asLongBuffer().get((long[]) array);
+		else if (array instanceof float[])
+			raw.asFloatBuffer().get((float[]) array);
+		else if (array instanceof double[])
+			raw.asDoubleBuffer().get((double[]) array);
+	}
+
+	private static int bytesPerElement(final Object array)
+	{
+		if (array instanceof byte[])
+			return Byte.BYTES;
+		if (array instanceof char[])
+			return Character.BYTES;
+		if (array instanceof short[])
+			return Short.BYTES;
+		if (array instanceof int[] || array instanceof float[])
+			return Integer.BYTES;
+		return Long.BYTES;
+	}
+
+	/**
+	 * @return value of {@code -XX:MaxDirectMemorySize} if set, or the maximum heap size, which is the default maximum
+	 * direct memory of the JVM
+	 */
+	private static long maxDirectMemory()
+	{
+		final String prefix = "-XX:MaxDirectMemorySize=";
+		for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments())
+		{
+			if (!argument.startsWith(prefix))
+				continue;
+			final String value = argument.substring(prefix.length()).trim().toLowerCase();
+			try
+			{
+				final int shift = "kmgt".indexOf(value.charAt(value.length() - 1));
+				return shift < 0
+						? Long.parseLong(value)
+						: Long.parseLong(value.substring(0, value.length() - 1)) << (10 * (shift + 1));
+			} catch (final RuntimeException e)
+			{
+				LOG.debug("Unable to parse {}: {}", argument, e.getMessage());
+			}
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	private static byte[] deflate(final byte[] input, final int length)
+	{
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try
+		{
+			deflater.setInput(input, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[Math.max(length / 4, 64)];
+			int compressedLength = 0;
+			while (!deflater.finished())
+			{
+				if (compressedLength == buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+			}
+			return Arrays.copyOf(buffer, compressedLength);
+		} finally
+		{
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(final byte[] input, final int rawLength)
+	{
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(input);
+			final byte[] raw = new byte[rawLength];
+			int length = 0;
+			while (length < rawLength && !inflater.finished())
+				length += inflater.inflate(raw, length, rawLength - length);
+			return raw;
+		} catch (final DataFormatException e)
+		{
+			throw new RuntimeException("Unable to decompress cell", e);
+		} finally
+		{
+			inflater.end();
+		}
+	}
+
+}
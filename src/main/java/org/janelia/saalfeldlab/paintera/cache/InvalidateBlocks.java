@@ -0,0 +1,10 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+public interface InvalidateBlocks {
+
+	/**
+	 * @param blocksByLevel linear indices of blocks in the cell grid of each scale level, highest resolution first
+	 */
+	void invalidateBlocks(long[][] blocksByLevel);
+
+}
@@ -2,6 +2,8 @@ package org.janelia.saalfeldlab.paintera.cache;
 
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.LoaderCache;
+import org.janelia.saalfeldlab.paintera.metrics.Counter;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,9 +11,12 @@ import java.lang.invoke.MethodHandles;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -22,6 +27,10 @@ import java.util.function.ToLongFunction;
  * additionally keeps {@link SoftReference}s to the <em>N</em> most recently
  * accessed values.
  *
+ * If a {@link CompressedCellCache second tier} is provided, values evicted from the
+ * soft references are compressed into the second tier and misses are rehydrated from
+ * it before calling the loader.
+ *
  * @param <K>
  * @param <V>
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
@@ -31,33 +40,85 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final Set<MemoryBoundedSoftRefLoaderCache<?, ?, ?>> INSTANCES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	static
+	{
+		// aggregate across all instances, e.g. the global cache and caches of exported meshes
+		MetricRegistry.global().gauge("cache.bytes", MemoryBoundedSoftRefLoaderCache::getTotalMemoryUsageInBytes);
+	}
+
 	private final LC cache;
 
 	private SoftRefs softRefs;
 
 	private final ToLongFunction<V> memoryUsageInBytes;
 
-	private MemoryBoundedSoftRefLoaderCache(final LC cache, final long maxSizeInBytes, final ToLongFunction<V> memoryUsageInBytes) {
+	private final CompressedCellCache<K> secondTier;
+
+	private final Counter requests = MetricRegistry.global().counter("cache.requests");
+
+	private final Counter misses = MetricRegistry.global().counter("cache.misses");
+
+	private final Counter evictions = MetricRegistry.global().counter("cache.evictions");
+
+	private MemoryBoundedSoftRefLoaderCache(
+			final LC cache,
+			final long maxSizeInBytes,
+			final ToLongFunction<V> memoryUsageInBytes,
+			final CompressedCellCache<K> secondTier) {
 		this.cache = cache;
 		this.softRefs = new SoftRefs(maxSizeInBytes);
 		this.memoryUsageInBytes = memoryUsageInBytes;
+		this.secondTier = secondTier;
+		INSTANCES.add(this);
 	}
 
 	public static <K, V> MemoryBoundedSoftRefLoaderCache<K, V, WeakRefLoaderCache<K, V>> withWeakRefs(final long maxSizeInBytes, final ToLongFunction<V> memoryUsageInBytes)
 	{
-		return new MemoryBoundedSoftRefLoaderCache<>(new WeakRefLoaderCache<>(), maxSizeInBytes, memoryUsageInBytes);
+		return withWeakRefs(maxSizeInBytes, memoryUsageInBytes, null);
+	}
+
+	/**
+	 *
+	 * @param secondTier compressed second tier for evicted values, may be {@code null}
+	 */
+	public static <K, V> MemoryBoundedSoftRefLoaderCache<K, V, WeakRefLoaderCache<K, V>> withWeakRefs(
+			final long maxSizeInBytes,
+			final ToLongFunction<V> memoryUsageInBytes,
+			final CompressedCellCache<K> secondTier)
+	{
+		return new MemoryBoundedSoftRefLoaderCache<>(new WeakRefLoaderCache<>(), maxSizeInBytes, memoryUsageInBytes, secondTier);
 	}
 
 	public void restrictToMaxSize()
 	{
 		LOG.debug("Restricting to max size");
-		final List<K> toBeInvalidated = softRefs.restrictToMaxSize();
+		evict(softRefs.restrictToMaxSize());
+	}
+
+	private void evict(final List<K> toBeInvalidated)
+	{
 		if (toBeInvalidated != null) {
 			LOG.debug("Invalidated {} keys: Soft refs size {}", toBeInvalidated.size(), softRefs.size());
+			evictions.inc(toBeInvalidated.size());
 			this.cache.invalidate(toBeInvalidated);
 		}
 		else
 			LOG.debug("Did not invalidate any keys");
+		compressEvicted();
+	}
+
+	/**
+	 * Hand values evicted from the soft references to the second tier, which compresses them on a background thread.
+	 * Called outside of the lock on the soft references, so that other threads accessing the cache are not blocked.
+	 */
+	private void compressEvicted()
+	{
+		if (secondTier == null)
+			return;
+		for (final Evicted<K, V> evicted : softRefs.drainEvicted())
+			secondTier.offer(evicted.key, evicted.value, evicted.epoch);
 	}
 
 	public long getMaxSize()
@@ -67,8 +128,7 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 
 	public void setMaxSize(long maxSizeInBytes)
 	{
-		final List<K> toBeInvalidated = this.softRefs.setMaxSize(maxSizeInBytes);
-		this.invalidate(toBeInvalidated);
+		evict(this.softRefs.setMaxSize(maxSizeInBytes));
 	}
 
 	public long getCurrentMemoryUsageInBytes()
@@ -79,18 +139,48 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 		}
 	}
 
+	/**
+	 *
+	 * @return sum of {@link #getCurrentMemoryUsageInBytes()} over all instances that have not been garbage collected
+	 */
+	public static long getTotalMemoryUsageInBytes()
+	{
+		synchronized (INSTANCES)
+		{
+			return INSTANCES.stream().mapToLong(MemoryBoundedSoftRefLoaderCache::getCurrentMemoryUsageInBytes).sum();
+		}
+	}
+
 	@Override
 	public V getIfPresent(final K key) {
+		requests.inc();
 		final V value = cache.getIfPresent(key);
-		if (value != null)
+		if (value != null) {
 			softRefs.touch(key, value);
+			compressEvicted();
+		}
+		else
+			misses.inc();
 		return value;
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public V get(final K key, final CacheLoader<? super K, ? extends V> loader) throws ExecutionException {
-		final V value = cache.get(key, loader);
+		requests.inc();
+		// the backing cache only calls the loader on a miss
+		final V value = cache.get(key, k -> {
+			misses.inc();
+			if (secondTier != null) {
+				// the second tier only holds values that were evicted from this cache
+				final V rehydrated = (V) secondTier.remove(k);
+				if (rehydrated != null)
+					return rehydrated;
+			}
+			return loader.get(k);
+		});
 		softRefs.touch(key, value);
+		compressEvicted();
 		return value;
 	}
 
@@ -98,6 +188,8 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 	public void invalidateAll() {
 		softRefs.clear();
 		cache.invalidateAll();
+		if (secondTier != null)
+			secondTier.invalidateAll();
 	}
 
 	@Override
@@ -108,6 +200,8 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 		{
 			softRefs.keySet().stream().filter(test).forEach(toBeRemoved::add);
 		}
+		if (secondTier != null)
+			toBeRemoved.addAll(secondTier.invalidateMatching(test));
 		// this removes removedKeys from backing cache twice but makes sure additional keys get removed, as well
 		invalidate(toBeRemoved);
 		return toBeRemoved;
@@ -124,6 +218,8 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 					v.clear();
 			}
 		}
+		if (secondTier != null)
+			secondTier.invalidate(keys);
 	}
 
 	@Override
@@ -135,6 +231,23 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 			if (v != null)
 				v.clear();
 		}
+		if (secondTier != null)
+			secondTier.invalidate(key);
+	}
+
+	private static class Evicted<K, V> {
+
+		private final K key;
+
+		private final V value;
+
+		private final long epoch;
+
+		private Evicted(final K key, final V value, final long epoch) {
+			this.key = key;
+			this.value = value;
+			this.epoch = epoch;
+		}
 	}
 
 	class SoftRefs extends LinkedHashMap<K, SoftRef<V>> {
@@ -148,6 +261,8 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 
 		private final Consumer<V> onClear = v -> this.subtractFromCurrentSizeInBytes(memoryUsageInBytes.applyAsLong(v));
 
+		private List<Evicted<K, V>> evicted = new ArrayList<>();
+
 		public SoftRefs(final long maxSizeInBytes) {
 			// 262144 = 8 * 8 * 8 * 1byte
 			super(100, 0.75f, true);
@@ -169,6 +284,7 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 					if (currentSizeInBytes <= maxSizeInBytes)
 						break;
 					SoftRef<V> ref = remove(key);
+					addEvicted(key, ref);
 					ref.clear();
 					removedKeys.add(key);
 				}
@@ -187,12 +303,30 @@ public class MemoryBoundedSoftRefLoaderCache<K, V, LC extends LoaderCache<K, V>
 		@Override
 		protected boolean removeEldestEntry(final Entry<K, SoftRef<V>> eldest) {
 			if (currentSizeInBytes > maxSizeInBytes) {
+				addEvicted(eldest.getKey(), eldest.getValue());
 				eldest.getValue().clear();
+				evictions.inc();
 				return true;
 			} else
 				return false;
 		}
 
+		private void addEvicted(final K key, final SoftRef<V> ref) {
+			if (secondTier == null)
+				return;
+			final V value = ref.get();
+			if (value != null)
+				evicted.add(new Evicted<>(key, value, secondTier.epoch()));
+		}
+
+		synchronized List<Evicted<K, V>> drainEvicted() {
+			if (evicted.isEmpty())
+				return Collections.emptyList();
+			final List<Evicted<K, V>> drained = evicted;
+			evicted = new ArrayList<>();
+			return drained;
+		}
+
 		synchronized void touch(final K key, final V value) {
 			final SoftRef<V> ref = get(key);
 			if (ref == null || ref.get() == null)
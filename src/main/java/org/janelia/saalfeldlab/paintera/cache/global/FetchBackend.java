@@ -0,0 +1,72 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import java.util.Optional;
+
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+
+/**
+ * Storage backends that are fetched from with separate queues and separate limits on concurrent loads in
+ * {@link GlobalCache}. Local file systems saturate with few concurrent reads, whereas the throughput of high latency
+ * (cloud) storage grows with the number of concurrent requests. HDF5 is not thread safe and is always fetched from
+ * sequentially.
+ *
+ * Limits for local and cloud storage are configured in the {@code cache.fetch} section of {@code paintera.yml}:
+ * <pre>
+ * cache:
+ *   fetch:
+ *     local: 8
+ *     cloud: 32
+ *     virtualThreads: true
+ * </pre>
+ */
+public enum FetchBackend
+{
+	/**
+	 * Local file system, and data that is computed rather than read.
+	 */
+	LOCAL,
+
+	HDF5,
+
+	CLOUD;
+
+	public static final int DEFAULT_MAX_CONCURRENT_CLOUD_FETCHES = 32;
+
+	/**
+	 * @param defaultMaxConcurrentLocalFetches limit for {@link #LOCAL} if not configured
+	 * @return maximum number of concurrent fetches for this backend
+	 */
+	public int maxConcurrentFetches(final int defaultMaxConcurrentLocalFetches)
+	{
+		switch (this)
+		{
+			case HDF5:
+				return 1;
+			case CLOUD:
+				return Math.max(1, getConfig("cloud", DEFAULT_MAX_CONCURRENT_CLOUD_FETCHES));
+			case LOCAL:
+			default:
+				return Math.max(1, getConfig("local", defaultMaxConcurrentLocalFetches));
+		}
+	}
+
+	/**
+	 * @return {@code true} unless virtual threads are disabled in {@code paintera.yml}
+	 */
+	public static boolean useVirtualThreadsIfAvailable()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "cache", "fetch", "virtualThreads"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(true);
+	}
+
+	private static int getConfig(final String key, final int fallback)
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "cache", "fetch", key))
+				.map(o -> o instanceof Number ? ((Number) o).intValue() : Integer.parseInt(o.toString()))
+				.orElse(fallback);
+	}
+
+}
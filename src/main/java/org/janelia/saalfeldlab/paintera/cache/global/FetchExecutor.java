@@ -0,0 +1,131 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import net.imglib2.cache.queue.FetcherThreads;
+import org.janelia.saalfeldlab.paintera.metrics.Counter;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serve a {@link BlockingFetchQueues} like {@link FetcherThreads}, but run fetches on virtual threads if the runtime
+ * supports them (Java 21+), and on a fixed pool of platform threads otherwise. Fetches block on IO most of the time,
+ * so virtual threads allow for many concurrent requests to high latency storage without the cost of as many
+ * platform threads.
+ *
+ * A dispatcher thread takes requests from the queue in priority order, but only while fewer than
+ * {@code maxConcurrentFetches} are running. Requests that are not running yet stay in the queue, i.e. they keep their
+ * priority and are moved to the prefetch queue by {@link BlockingFetchQueues#clearToPrefetch()} as before.
+ */
+public class FetchExecutor
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final BlockingFetchQueues<Callable<?>> queue;
+
+	private final Semaphore available;
+
+	private final ExecutorService executor;
+
+	private final Counter failed;
+
+	private final Thread dispatcher;
+
+	/**
+	 * @param name                 name of threads, and of metrics
+	 * @param maxConcurrentFetches maximum number of fetches that run at the same time
+	 * @param useVirtualThreads    use virtual threads if supported by the runtime
+	 */
+	public FetchExecutor(
+			final BlockingFetchQueues<Callable<?>> queue,
+			final String name,
+			final int maxConcurrentFetches,
+			final boolean useVirtualThreads)
+	{
+		this.queue = queue;
+		this.available = new Semaphore(maxConcurrentFetches);
+		this.executor = Optional
+				.ofNullable(useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null)
+				.orElseGet(() -> Executors.newFixedThreadPool(maxConcurrentFetches, new NamedThreadFactory(name + "-fetcher-%d", true)));
+		this.failed = MetricRegistry.global().counter(MetricRegistry.tagged("fetch.failed", "backend", name));
+		this.dispatcher = new Thread(this::dispatch, name + "-fetch-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+		LOG.debug("Fetching {} with at most {} concurrent requests on {}", name, maxConcurrentFetches, executor);
+	}
+
+	public void shutdown()
+	{
+		dispatcher.interrupt();
+		executor.shutdownNow();
+	}
+
+	private void dispatch()
+	{
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				available.acquire();
+				final Callable<?> fetch;
+				try
+				{
+					fetch = queue.take();
+				} catch (final InterruptedException e)
+				{
+					available.release();
+					throw e;
+				}
+				executor.execute(() -> {
+					try
+					{
+						fetch.call();
+					} catch (final InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					} catch (final Exception e)
+					{
+						failed.inc();
+						LOG.debug("Fetch failed: {}", e.getMessage());
+					} finally
+					{
+						available.release();
+						FetchProgress.completed();
+					}
+				});
+			}
+		} catch (final InterruptedException e)
+		{
+			LOG.debug("Fetch dispatcher interrupted");
+		}
+	}
+
+	/**
+	 * {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up reflectively to support runtimes without
+	 * virtual threads.
+	 *
+	 * @return {@code null} if virtual threads are not supported
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final NoSuchMethodException | IllegalAccessException | InvocationTargetException | ClassCastException e)
+		{
+			LOG.debug("Virtual threads not supported: {}", e.getMessage());
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide count of completed fetches of all {@link FetchExecutor fetch executors}, for consumers that wait for
+ * volatile data to load, e.g. {@link bdv.fx.viewer.render.HeadlessRenderUnit}, without polling. Counting a completed
+ * fetch only takes a lock if someone is {@link #awaitMoreThan(long, long) waiting}.
+ */
+public class FetchProgress
+{
+
+	private static final AtomicLong numCompleted = new AtomicLong();
+
+	private static final AtomicInteger numWaiting = new AtomicInteger();
+
+	private static final Object lock = new Object();
+
+	private FetchProgress()
+	{
+
+	}
+
+	/**
+	 *
+	 * @return number of fetches that completed, successfully or not, since the start of the process
+	 */
+	public static long numCompleted()
+	{
+		return numCompleted.get();
+	}
+
+	/**
+	 * Wait until more than {@code numCompleted} fetches completed or {@code timeoutNanos} have passed.
+	 *
+	 * @return number of completed fetches after waiting
+	 */
+	public static long awaitMoreThan(final long numCompleted, final long timeoutNanos) throws InterruptedException
+	{
+		// register before checking the count so that completed() cannot miss this waiter
+		numWaiting.incrementAndGet();
+		try
+		{
+			final long deadline = System.nanoTime() + timeoutNanos;
+			synchronized (lock)
+			{
+				for (long remaining = timeoutNanos; FetchProgress.numCompleted.get() <= numCompleted && remaining > 0; remaining = deadline - System.nanoTime())
+					lock.wait(remaining / 1000000, (int) (remaining % 1000000));
+			}
+			return FetchProgress.numCompleted.get();
+		} finally
+		{
+			numWaiting.decrementAndGet();
+		}
+	}
+
+	static void completed()
+	{
+		numCompleted.incrementAndGet();
+		if (numWaiting.get() > 0)
+		{
+			synchronized (lock)
+			{
+				lock.notifyAll();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionHelpers;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Register gauges for the number of pending requests per priority (and in the prefetch queue) of a
+ * {@link BlockingFetchQueues}. {@link BlockingFetchQueues} does not expose its queue sizes, so they are read
+ * reflectively. If that fails, e.g. after an imglib2-cache update, all gauges report {@code -1}.
+ */
+class FetchQueueMetrics
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final long UNAVAILABLE = -1;
+
+	static final String NAME = "fetch.queue.depth";
+
+	private FetchQueueMetrics()
+	{
+
+	}
+
+	static void register(final BlockingFetchQueues<?> queue, final MetricRegistry registry, final String name)
+	{
+		final Collection<?>[] queues;
+		final Collection<?> prefetch;
+		final Lock lock;
+		try
+		{
+			queues = (Collection<?>[]) get(queue, "queues");
+			prefetch = (Collection<?>) get(queue, "prefetch");
+			lock = (Lock) get(queue, "lock");
+		} catch (final NoSuchFieldException | IllegalAccessException | ClassCastException e)
+		{
+			LOG.warn("Unable to access fetch queues, queue depth will not be reported: {}", e.getMessage());
+			for (int priority = 0; priority < queue.getNumPriorities(); ++priority)
+				registry.gauge(MetricRegistry.tagged(name, "priority", priority), () -> UNAVAILABLE);
+			registry.gauge(MetricRegistry.tagged(name, "priority", "prefetch"), () -> UNAVAILABLE);
+			return;
+		}
+
+		for (int priority = 0; priority < queues.length; ++priority)
+			registry.gauge(MetricRegistry.tagged(name, "priority", priority), sizeOf(queues[priority], lock));
+		registry.gauge(MetricRegistry.tagged(name, "priority", "prefetch"), sizeOf(prefetch, lock));
+	}
+
+	private static Object get(final Object object, final String name) throws NoSuchFieldException, IllegalAccessException
+	{
+		final Field field = ReflectionHelpers.searchForField(object.getClass(), name);
+		return field.get(object);
+	}
+
+	private static LongSupplier sizeOf(final Collection<?> collection, final Lock lock)
+	{
+		return () -> {
+			lock.lock();
+			try
+			{
+				return collection.size();
+			} finally
+			{
+				lock.unlock();
+			}
+		};
+	}
+
+}
@@ -41,18 +41,20 @@ import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.img.LoadedCellCacheLoader;
 import net.imglib2.cache.queue.BlockingFetchQueues;
-import net.imglib2.cache.queue.FetcherThreads;
 import net.imglib2.cache.util.KeyBimap;
 import net.imglib2.cache.volatiles.*;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.basictypeaccess.AccessFlags;
 import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Triple;
 import net.imglib2.util.Util;
@@ -60,14 +62,23 @@ import net.imglib2.util.ValuePair;
 import net.imglib2.util.ValueTriple;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteUnsignedLongType;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import tmp.bdv.img.cache.VolatileCachedCellImg;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GlobalCache implements CacheControl {
 
@@ -135,7 +146,9 @@ public class GlobalCache implements CacheControl {
 		}
 	}
 
-	private final BlockingFetchQueues<Callable<?>> queue;
+	private final Map<FetchBackend, BlockingFetchQueues<Callable<?>>> queues = new EnumMap<>(FetchBackend.class);
+
+	private final Set<BlockingFetchQueues<Callable<?>>> additionalQueues = new CopyOnWriteArraySet<>();
 
 	private final LoaderCache<Key<?>, ?> backingCache;
 
@@ -144,29 +157,41 @@ public class GlobalCache implements CacheControl {
 	private final AtomicInteger nextSetupId = new AtomicInteger(0);
 
 	/**
-	 * Create a new global cache with a new fetch queue served by the specified
-	 * number of fetcher threads.
+	 * Create a new global cache with a new fetch queue for each {@link FetchBackend}, each served by a
+	 * {@link FetchExecutor} with the limit on concurrent fetches of its backend.
 	 *
 	 * @param maxNumLevels      the highest occurring mipmap level plus 1.
-	 * @param numFetcherThreads how many threads should be created to load data.
+	 * @param numFetcherThreads how many concurrent fetches are allowed for {@link FetchBackend#LOCAL} unless
+	 *                          configured otherwise.
 	 */
 	public GlobalCache(final int maxNumLevels, final int numFetcherThreads, LoaderCache<Key<?>, ?> backingCache, Invalidate<Key<?>> invalidate) {
-		queue = new BlockingFetchQueues<>(maxNumLevels);
-		new FetcherThreads(queue, numFetcherThreads);
+		final boolean useVirtualThreads = FetchBackend.useVirtualThreadsIfAvailable();
+		for (final FetchBackend backend : FetchBackend.values()) {
+			final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(maxNumLevels);
+			final String name = backend.name().toLowerCase();
+			new FetchExecutor(queue, name, backend.maxConcurrentFetches(numFetcherThreads), useVirtualThreads);
+			FetchQueueMetrics.register(
+					queue,
+					MetricRegistry.global(),
+					backend == FetchBackend.LOCAL ? FetchQueueMetrics.NAME : MetricRegistry.tagged(FetchQueueMetrics.NAME, "backend", name));
+			queues.put(backend, queue);
+		}
 		this.backingCache = backingCache;
 		this.invalidate = invalidate;
 	}
 
 	/**
-	 * Create a new global cache with the specified fetch queue. (It is the
+	 * Create a new global cache with the specified fetch queue for all {@link FetchBackend backends}. (It is the
 	 * callers responsibility to create fetcher threads that serve the queue.)
 	 *
 	 * @param queue queue to which asynchronous data loading jobs are submitted
 	 */
 	public GlobalCache(final BlockingFetchQueues<Callable<?>> queue, LoaderCache<Key<?>, ?> backingCache, Invalidate<Key<?>> invalidate) {
-		this.queue = queue;
+		for (final FetchBackend backend : FetchBackend.values())
+			queues.put(backend, queue);
 		this.backingCache = backingCache;
 		this.invalidate = invalidate;
+		FetchQueueMetrics.register(queue, MetricRegistry.global(), FetchQueueMetrics.NAME);
 	}
 
 	/**
@@ -176,7 +201,7 @@ public class GlobalCache implements CacheControl {
 	 */
 	@Override
 	public void prepareNextFrame() {
-		queue.clearToPrefetch();
+		allQueues().forEach(BlockingFetchQueues::clearToPrefetch);
 	}
 
 	/**
@@ -185,16 +210,34 @@ public class GlobalCache implements CacheControl {
 	 */
 	public void clearCache() {
 		backingCache.invalidateAll();
-		queue.clear();
+		allQueues().forEach(BlockingFetchQueues::clear);
 		backingCache.invalidateAll();
 	}
 
+	/**
+	 * Create a fetch queue with as many priorities as the queues of this cache, for cells that must not occupy the
+	 * fetchers of these queues, e.g. because they are computed from (and wait for) other cells of this cache. The queue
+	 * is prepared for the next frame and cleared along with the queues of this cache until it is
+	 * {@link #removeFetchQueue(BlockingFetchQueues) removed}. (It is the callers responsibility to create fetcher
+	 * threads that serve the queue.)
+	 */
+	public BlockingFetchQueues<Callable<?>> createFetchQueue() {
+		final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(getNumPriorities());
+		additionalQueues.add(queue);
+		return queue;
+	}
+
+	public void removeFetchQueue(final BlockingFetchQueues<Callable<?>> queue) {
+		additionalQueues.remove(queue);
+		queue.clear();
+	}
+
 	public int nextSetupId() {
 		return this.nextSetupId.getAndIncrement();
 	}
 
 	public int getNumPriorities() {
-		return this.queue.getNumPriorities();
+		return this.queues.get(FetchBackend.LOCAL).getNumPriorities();
 	}
 
 	public <T extends NativeType<T>, A extends ArrayDataAccess<A>> Pair<CachedCellImg<T, A>, Invalidate<Long>> createVolatileImg(
@@ -220,6 +263,38 @@ public class GlobalCache implements CacheControl {
 		return createImg(grid, loader, type);
 	}
 
+	/**
+	 * Create a volatile {@code uint64} image that holds cells as {@link PaletteLongArray} instead of
+	 * {@link VolatileLongArray}. Cells are loaded into a {@link VolatileLongArray} first and then palette encoded.
+	 * The linked type of the image is a {@link PaletteUnsignedLongType}.
+	 */
+	public Pair<CachedCellImg<UnsignedLongType, PaletteLongArray>, Invalidate<Long>> createVolatilePaletteImg(
+			final CellGrid grid,
+			final CellLoader<UnsignedLongType> loader) {
+		final UnsignedLongType type = new UnsignedLongType();
+		final LoadedCellCacheLoader<UnsignedLongType, VolatileLongArray> cellLoader = LoadedCellCacheLoader.get(
+				grid,
+				loader,
+				type,
+				AccessFlags.setOf(AccessFlags.VOLATILE));
+		final CacheLoader<Long, Cell<PaletteLongArray>> paletteLoader = key -> {
+			final Cell<VolatileLongArray> cell = cellLoader.get(key);
+			final int[] cellDimensions = new int[cell.numDimensions()];
+			Arrays.setAll(cellDimensions, d -> (int) cell.dimension(d));
+			return new Cell<>(
+					cellDimensions,
+					Intervals.minAsLongArray(cell),
+					PaletteLongArray.fromArray(cell.getData().getCurrentStorageArray(), (int) cell.size(), true));
+		};
+		final Pair<CachedCellImg<UnsignedLongType, PaletteLongArray>, Invalidate<Long>> img = createImg(
+				grid,
+				paletteLoader,
+				type.getEntitiesPerPixel(),
+				PaletteLongArray.fromArray(new long[0], true));
+		img.getA().setLinkedType(new PaletteUnsignedLongType(img.getA()));
+		return img;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <K, V> Pair<Cache<K, V>, Invalidate<K>> createNewCache(final CacheLoader<K, V> loader)
 	{
@@ -281,6 +356,37 @@ public class GlobalCache implements CacheControl {
 			final CachedCellImg<T, A> img,
 			final Invalidate<Long> backingInvalidate,
 			final int priority
+	) throws InvalidAccessException {
+		return wrapAsVolatile(img, backingInvalidate, priority, FetchBackend.LOCAL);
+	}
+
+	/**
+	 * @param backend fetch cells through the queue of this backend
+	 */
+	public <
+			T extends NativeType<T>,
+			V extends Volatile<T> & NativeType<V>, A>
+	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
+			final CachedCellImg<T, A> img,
+			final Invalidate<Long> backingInvalidate,
+			final int priority,
+			final FetchBackend backend
+	) throws InvalidAccessException {
+		return wrapAsVolatile(img, backingInvalidate, priority, queues.get(backend));
+	}
+
+	/**
+	 * @param queue fetch cells through this queue, e.g. a queue {@link #createFetchQueue() created} by this cache
+	 */
+	@SuppressWarnings("unchecked")
+	public <
+			T extends NativeType<T>,
+			V extends Volatile<T> & NativeType<V>, A>
+	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
+			final CachedCellImg<T, A> img,
+			final Invalidate<Long> backingInvalidate,
+			final int priority,
+			final BlockingFetchQueues<Callable<?>> queue
 	) throws InvalidAccessException {
 		final A accessType = img.getAccessType();
 
@@ -320,6 +426,23 @@ public class GlobalCache implements CacheControl {
 			final Function<NativeImg<V, ? extends A>, V> typeFactory,
 			final CreateInvalid<Long, Cell<A>> createInvalid,
 			final int priority
+	) throws InvalidAccessException {
+		return wrapAsVolatile(img, backingInvalidate, typeFactory, createInvalid, priority, FetchBackend.LOCAL);
+	}
+
+	/**
+	 * @param backend fetch cells through the queue of this backend
+	 */
+	public <
+			T extends NativeType<T>,
+			V extends Volatile<T> & NativeType<V>, A>
+	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
+			CachedCellImg<T, A> img,
+			final Invalidate<Long> backingInvalidate,
+			final Function<NativeImg<V, ? extends A>, V> typeFactory,
+			final CreateInvalid<Long, Cell<A>> createInvalid,
+			final int priority,
+			final FetchBackend backend
 	) throws InvalidAccessException {
 		final A accessType = img.getAccessType();
 
@@ -329,7 +452,7 @@ public class GlobalCache implements CacheControl {
 		final T type = Util.getTypeFromInterval(img);
 		final boolean isDirty = AccessFlags.ofAccess(accessType).contains(AccessFlags.DIRTY);
 
-		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queue, createInvalid);
+		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queues.get(backend), createInvalid);
 		final UncheckedVolatileCache<Long, Cell<A>> unchecked = vcache.unchecked();
 
 		final CacheHints cacheHints = new CacheHints(LoadingStrategy.VOLATILE, priority, true);
@@ -344,6 +467,10 @@ public class GlobalCache implements CacheControl {
 		return new ValueTriple<>(vimg, vcache, vcache);
 	}
 
+	private Stream<BlockingFetchQueues<Callable<?>>> allQueues() {
+		return Stream.concat(queues.values().stream(), additionalQueues.stream()).distinct();
+	}
+
 	private <K> Invalidate <K> invalidateFor(int setup)
 	{
 		return new Invalidate<K>() {
@@ -0,0 +1,337 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import bdv.fx.viewer.ViewerPanelFX;
+import bdv.util.MipmapTransforms;
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.ARGBColorConverter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.RealType;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.math.StreamingHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Choose min and max of an {@link ARGBColorConverter} from percentiles of the data in view while
+ * {@link ARGBColorConverter#autoContrastProperty()} is set. The visible plane of each viewer is sampled on a regular
+ * grid through the volatile source, i.e. only cells that are loaded already contribute and sampling never waits for
+ * data. Levels are sampled from coarsest to the level that is rendered, and the finest level with enough loaded samples
+ * is used, so the contrast window is refined as finer cells arrive. Sampling runs in the background and the latest
+ * window is applied to the converter on the next JavaFX pulse.
+ *
+ * Changing min or max of the converter manually disables automatic contrast.
+ */
+public class AutoContrast
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final double DEFAULT_LOWER_QUANTILE = 0.005;
+
+	public static final double DEFAULT_UPPER_QUANTILE = 0.995;
+
+	private static final int SAMPLES_PER_DIMENSION = 128;
+
+	private static final int NUM_BINS = 1024;
+
+	private static final double MIN_LOADED_FRACTION = 0.9;
+
+	private static final long RESAMPLE_INTERVAL_NANOS = 250_000_000L;
+
+	private static final ExecutorService SAMPLERS = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("auto-contrast-%d", true));
+
+	private static class View
+	{
+
+		private final double[] transform;
+
+		private final double width;
+
+		private final double height;
+
+		private View(final ViewerPanelFX viewer)
+		{
+			final AffineTransform3D transform = new AffineTransform3D();
+			viewer.getState().getViewerTransform(transform);
+			this.transform = transform.getRowPackedCopy();
+			this.width = viewer.getWidth();
+			this.height = viewer.getHeight();
+		}
+
+		private AffineTransform3D transform()
+		{
+			final AffineTransform3D transform = new AffineTransform3D();
+			transform.set(this.transform);
+			return transform;
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			return other instanceof View
+					&& Arrays.equals(((View) other).transform, transform)
+					&& ((View) other).width == width
+					&& ((View) other).height == height;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(transform);
+		}
+
+	}
+
+	private final DataSource<?, ? extends RealType<?>> source;
+
+	private final ARGBColorConverter<?> converter;
+
+	private final ViewerPanelFX[] viewers;
+
+	private final double lowerQuantile;
+
+	private final double upperQuantile;
+
+	private final AtomicReference<double[]> window = new AtomicReference<>();
+
+	private final AtomicBoolean isSampling = new AtomicBoolean(false);
+
+	private volatile boolean isComplete = false;
+
+	private View[] lastViews = null;
+
+	private long lastSampleTime = 0;
+
+	private boolean isApplying = false;
+
+	private final ChangeListener<Boolean> autoContrastListener = (obs, oldv, newv) -> {
+		if (newv)
+			start();
+		else
+			stop();
+	};
+
+	private final InvalidationListener manualChangeListener = obs -> disableOnManualChange();
+
+	private final AnimationTimer timer = new AnimationTimer()
+	{
+		@Override
+		public void handle(final long now)
+		{
+			onPulse(now);
+		}
+	};
+
+	public AutoContrast(
+			final DataSource<?, ? extends RealType<?>> source,
+			final ARGBColorConverter<?> converter,
+			final ViewerPanelFX... viewers)
+	{
+		this(source, converter, DEFAULT_LOWER_QUANTILE, DEFAULT_UPPER_QUANTILE, viewers);
+	}
+
+	/**
+	 * Must be called on the JavaFX application thread.
+	 *
+	 * @param lowerQuantile quantile of sampled values that is mapped to min
+	 * @param upperQuantile quantile of sampled values that is mapped to max
+	 */
+	public AutoContrast(
+			final DataSource<?, ? extends RealType<?>> source,
+			final ARGBColorConverter<?> converter,
+			final double lowerQuantile,
+			final double upperQuantile,
+			final ViewerPanelFX... viewers)
+	{
+		this.source = source;
+		this.converter = converter;
+		this.lowerQuantile = lowerQuantile;
+		this.upperQuantile = upperQuantile;
+		this.viewers = viewers;
+
+		converter.autoContrastProperty().addListener(autoContrastListener);
+		converter.minProperty().addListener(manualChangeListener);
+		converter.maxProperty().addListener(manualChangeListener);
+		if (converter.autoContrastProperty().get())
+			start();
+	}
+
+	/**
+	 * Stop sampling and stop listening to {@code converter}, e.g. when the source is removed. Must be called on the
+	 * JavaFX application thread.
+	 */
+	public void dispose()
+	{
+		converter.autoContrastProperty().removeListener(autoContrastListener);
+		converter.minProperty().removeListener(manualChangeListener);
+		converter.maxProperty().removeListener(manualChangeListener);
+		stop();
+	}
+
+	private void start()
+	{
+		LOG.debug("Starting auto contrast for {}", source.getName());
+		lastViews = null;
+		isComplete = false;
+		timer.start();
+	}
+
+	private void stop()
+	{
+		LOG.debug("Stopping auto contrast for {}", source.getName());
+		timer.stop();
+		window.set(null);
+	}
+
+	private void disableOnManualChange()
+	{
+		if (!isApplying)
+			converter.autoContrastProperty().set(false);
+	}
+
+	private void onPulse(final long now)
+	{
+		final double[] window = this.window.getAndSet(null);
+		if (window != null && (window[0] != converter.getMin() || window[1] != converter.getMax()))
+		{
+			isApplying = true;
+			try
+			{
+				converter.setMin(window[0]);
+				converter.setMax(window[1]);
+			} finally
+			{
+				isApplying = false;
+			}
+		}
+
+		if (isSampling.get())
+			return;
+
+		final View[] views = Arrays.stream(viewers).map(View::new).toArray(View[]::new);
+		final boolean hasViewChanged = !Arrays.equals(views, lastViews);
+		if (!hasViewChanged && (isComplete || now - lastSampleTime < RESAMPLE_INTERVAL_NANOS))
+			return;
+
+		lastViews = views;
+		lastSampleTime = now;
+		isSampling.set(true);
+		SAMPLERS.submit(() -> {
+			try
+			{
+				sample(views);
+			} catch (final RuntimeException e)
+			{
+				LOG.debug("Unable to sample {} for auto contrast: {}", source.getName(), e.getMessage());
+			} finally
+			{
+				isSampling.set(false);
+			}
+		});
+	}
+
+	private void sample(final View[] views)
+	{
+		final long start = System.nanoTime();
+		final StreamingHistogram histogram = new StreamingHistogram(NUM_BINS);
+		boolean isComplete = true;
+		for (final View view : views)
+			isComplete &= sample(view, histogram);
+		this.isComplete = isComplete;
+		MetricRegistry.global().timer("autoContrast.sample").updateSince(start);
+
+		if (histogram.getTotalCount() == 0)
+			return;
+		final double min = histogram.quantile(lowerQuantile);
+		final double max = histogram.quantile(upperQuantile);
+		LOG.trace("Auto contrast for {}: min={} max={} complete={}", source.getName(), min, max, isComplete);
+		if (max > min)
+			this.window.set(new double[] {min, max});
+	}
+
+	/**
+	 * Add samples of the finest level with enough loaded samples, from coarsest to the level rendered in
+	 * {@code view}, to {@code histogram}.
+	 *
+	 * @return {@code true} if enough samples were loaded at the rendered level
+	 */
+	private boolean sample(final View view, final StreamingHistogram histogram)
+	{
+		if (view.width <= 0 || view.height <= 0)
+			return true;
+
+		final int renderedLevel = MipmapTransforms.getBestMipMapLevel(view.transform(), source, 0);
+		StreamingHistogram selected = null;
+		double loadedFraction = 1.0;
+		for (int level = source.getNumMipmapLevels() - 1; level >= renderedLevel; --level)
+		{
+			final StreamingHistogram levelHistogram = new StreamingHistogram(NUM_BINS);
+			loadedFraction = sample(view, level, levelHistogram);
+			if (loadedFraction >= MIN_LOADED_FRACTION || selected == null || levelHistogram.getTotalCount() > selected.getTotalCount())
+				selected = levelHistogram;
+		}
+		if (selected != null)
+			histogram.add(selected);
+		return loadedFraction >= MIN_LOADED_FRACTION;
+	}
+
+	/**
+	 * @return fraction of samples within the source that are loaded
+	 */
+	private double sample(final View view, final int level, final StreamingHistogram histogram)
+	{
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform(0, level, sourceToScreen);
+		sourceToScreen.preConcatenate(view.transform());
+
+		final RandomAccessibleInterval<? extends RealType<?>> data = source.getSource(0, level);
+		final RandomAccess<? extends RealType<?>> access = data.randomAccess();
+		final double[] screen = new double[3];
+		final double[] voxel = new double[3];
+		final long[] position = new long[3];
+		long numSamples = 0;
+		long numLoaded = 0;
+		for (int y = 0; y < SAMPLES_PER_DIMENSION; ++y)
+		{
+			screen[1] = (y + 0.5) * view.height / SAMPLES_PER_DIMENSION;
+			for (int x = 0; x < SAMPLES_PER_DIMENSION; ++x)
+			{
+				screen[0] = (x + 0.5) * view.width / SAMPLES_PER_DIMENSION;
+				sourceToScreen.applyInverse(voxel, screen);
+				boolean isInside = true;
+				for (int d = 0; d < 3 && isInside; ++d)
+				{
+					position[d] = Math.round(voxel[d]);
+					isInside = position[d] >= data.min(d) && position[d] <= data.max(d);
+				}
+				if (!isInside)
+					continue;
+
+				++numSamples;
+				access.setPosition(position);
+				final RealType<?> value = access.get();
+				if (value instanceof Volatile<?> && !((Volatile<?>) value).isValid())
+					continue;
+				++numLoaded;
+				histogram.add(value.getRealDouble());
+			}
+		}
+		return numSamples == 0 ? 1.0 : numLoaded / (double) numSamples;
+	}
+
+}
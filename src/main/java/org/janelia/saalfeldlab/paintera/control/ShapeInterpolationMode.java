@@ -1,7 +1,15 @@
 package org.janelia.saalfeldlab.paintera.control;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 
 import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
@@ -10,6 +18,8 @@ import org.janelia.saalfeldlab.fx.event.KeyTracker;
 import org.janelia.saalfeldlab.fx.event.MouseClickFX;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
+import org.janelia.saalfeldlab.paintera.cache.Invalidate;
+import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
 import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions;
 import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions.AllowedActionsBuilder;
 import org.janelia.saalfeldlab.paintera.control.actions.MenuActionType;
@@ -27,6 +37,7 @@ import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +61,7 @@ import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealInterval;
 import net.imglib2.RealPoint;
@@ -58,7 +70,11 @@ import net.imglib2.algorithm.morphology.distance.DistanceTransform;
 import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.logical.Logical;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.loops.LoopBuilder;
@@ -132,6 +148,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		final AffineTransform3D sourceToDisplayTransform;
 		final Interval sourceBoundingBox;
 		final TLongObjectMap<SelectedObjectInfo> selectedObjects;
+		final SectionContent content;
 
 		SectionInfo(
 				final Mask<UnsignedLongType> mask,
@@ -145,9 +162,116 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			this.sourceToDisplayTransform = sourceToDisplayTransform;
 			this.sourceBoundingBox = sourceBoundingBox;
 			this.selectedObjects = selectedObjects;
+			this.content = new SectionContent(mask, sourceToDisplayTransform, selectedObjects.keys());
 		}
 	}
 
+	/**
+	 * Identifies the contents of a section: the mask, the orientation of the section, and the fill values of the
+	 * selected objects in the mask. Fill values are never re-used within the mode, so any edit of the selection changes
+	 * the contents.
+	 */
+	private static final class SectionContent
+	{
+		final Mask<UnsignedLongType> mask;
+		final double[] sourceToDisplayTransform;
+		final long[] fillValues;
+
+		SectionContent(final Mask<UnsignedLongType> mask, final AffineTransform3D sourceToDisplayTransform, final long[] fillValues)
+		{
+			this.mask = mask;
+			this.sourceToDisplayTransform = sourceToDisplayTransform.getRowPackedCopy();
+			this.fillValues = fillValues.clone();
+			Arrays.sort(this.fillValues);
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			if (this == other)
+				return true;
+			if (!(other instanceof SectionContent))
+				return false;
+			final SectionContent that = (SectionContent) other;
+			return this.mask == that.mask
+					&& Arrays.equals(this.sourceToDisplayTransform, that.sourceToDisplayTransform)
+					&& Arrays.equals(this.fillValues, that.fillValues);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * (31 * System.identityHashCode(mask) + Arrays.hashCode(sourceToDisplayTransform)) + Arrays.hashCode(fillValues);
+		}
+	}
+
+	/**
+	 * Signed distance transform of a section, computed over the foreground bounding box of the section padded by
+	 * {@link #DISTANCE_TRANSFORM_PADDING}, in display coordinates of the section.
+	 */
+	private static final class SectionDistanceTransform
+	{
+		final Interval foregroundBoundingBox;
+		final RandomAccessibleInterval<FloatType> distanceTransform;
+
+		SectionDistanceTransform(final Interval foregroundBoundingBox, final RandomAccessibleInterval<FloatType> distanceTransform)
+		{
+			this.foregroundBoundingBox = foregroundBoundingBox;
+			this.distanceTransform = distanceTransform;
+		}
+
+		/**
+		 * Crop or extend the distance transform to {@code interval}. Within the padded bounding box, the distance
+		 * transform is exact. Outside, the distance is extended as the distance to the closest point of the padded
+		 * bounding box plus the distance transform at that point, which is an upper bound of the distance to the
+		 * foreground.
+		 *
+		 * @param interval in display coordinates of the section
+		 * @return distance transform over {@code interval}
+		 */
+		RandomAccessibleInterval<FloatType> over(final Interval interval)
+		{
+			boolean contained = true;
+			for (int d = 0; d < interval.numDimensions(); ++d)
+				contained &= interval.min(d) >= distanceTransform.min(d) && interval.max(d) <= distanceTransform.max(d);
+			if (contained)
+				return Views.interval(distanceTransform, interval);
+
+			final RandomAccessibleInterval<FloatType> extended = Views.translate(
+					new ArrayImgFactory<>(new FloatType()).create(Intervals.dimensionsAsLongArray(interval)),
+					Intervals.minAsLongArray(interval));
+			final RandomAccess<FloatType> access = distanceTransform.randomAccess();
+			final long[] position = new long[interval.numDimensions()];
+			final long[] closest = new long[interval.numDimensions()];
+			final Cursor<FloatType> cursor = Views.iterable(extended).localizingCursor();
+			while (cursor.hasNext())
+			{
+				cursor.fwd();
+				cursor.localize(position);
+				double squaredDistance = 0.0;
+				for (int d = 0; d < position.length; ++d)
+				{
+					closest[d] = Math.min(Math.max(position[d], distanceTransform.min(d)), distanceTransform.max(d));
+					squaredDistance += (position[d] - closest[d]) * (double) (position[d] - closest[d]);
+				}
+				access.setPosition(closest);
+				cursor.get().setReal(access.get().getRealDouble() + Math.sqrt(squaredDistance));
+			}
+			return extended;
+		}
+	}
+
+	// both sections are transformed concurrently, the transforms themselves are parallelized in DISTANCE_TRANSFORM_EXECUTOR
+	private static final ExecutorService SECTION_EXECUTOR = Executors.newFixedThreadPool(
+			2,
+			new NamedThreadFactory("shape-interpolation-section-%d", true));
+
+	private static final int NUM_DISTANCE_TRANSFORM_TASKS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService DISTANCE_TRANSFORM_EXECUTOR = Executors.newFixedThreadPool(
+			NUM_DISTANCE_TRANSFORM_TASKS,
+			new NamedThreadFactory("shape-interpolation-distance-transform-%d", true));
+
 	private static final double FILL_DEPTH = 2.0;
 
 	private static final double FILL_DEPTH_ORTHOGONAL = 1.0;
@@ -156,6 +280,11 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private static final int SHAPE_INTERPOLATION_SCALE_LEVEL = MASK_SCALE_LEVEL;
 
+	private static final int[] INTERPOLATED_MASK_BLOCK_SIZE = {64, 64, 64};
+
+	// background around the foreground of a section in which its distance transform is exact
+	private static final int DISTANCE_TRANSFORM_PADDING = 16;
+
 	private static final Color MASK_COLOR = Color.web("00CCFF");
 
 	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> t.get() > 0;
@@ -189,6 +318,10 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	private Thread workerThread;
 	private Runnable onInterpolationFinished;
 	private Pair<RealRandomAccessible<UnsignedLongType>, RealRandomAccessible<VolatileUnsignedLongType>> interpolatedMaskImgs;
+	private Invalidate<Long> interpolatedMaskInvalidate;
+
+	// distance transforms are re-used for sections that did not change
+	private final Map<SectionContent, SectionDistanceTransform> distanceTransformCache = new HashMap<>();
 
 	public ShapeInterpolationMode(
 			final MaskedSource<D, ?> source,
@@ -364,6 +497,11 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		workerThread = null;
 		onInterpolationFinished = null;
 		interpolatedMaskImgs = null;
+		invalidateInterpolatedMask();
+		synchronized (distanceTransformCache)
+		{
+			distanceTransformCache.clear();
+		}
 		lastSelectedId = Label.INVALID;
 		lastActiveIds = null;
 
@@ -591,87 +729,87 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 					sectionInfoPair[1].sourceBoundingBox
 				);
 
-			// get the two sections as 2D images
-			final Interval[] displaySectionIntervalPair = new Interval[2];
-			final RandomAccessibleInterval<UnsignedLongType>[] sectionPair = new RandomAccessibleInterval[2];
+			// compute distance transform on both sections in parallel, or re-use them if a section did not change
+			synchronized (distanceTransformCache)
+			{
+				distanceTransformCache.keySet().retainAll(Arrays.asList(sectionInfoPair[0].content, sectionInfoPair[1].content));
+			}
+			final List<Future<SectionDistanceTransform>> distanceTransformFutures = new ArrayList<>();
 			for (int i = 0; i < 2; ++i)
 			{
-				final SectionInfo newSectionInfo = new SectionInfo(
-						sectionInfoPair[i].mask,
-						sectionInfoPair[i].globalTransform,
-						sectionInfoPair[i].sourceToDisplayTransform,
-						affectedUnionSourceInterval,
-						sectionInfoPair[i].selectedObjects
-					);
-				final RandomAccessibleInterval<UnsignedLongType> section = getTransformedMaskSection(newSectionInfo);
-				displaySectionIntervalPair[i] = new FinalInterval(section);
-				sectionPair[i] = Views.zeroMin(section);
+				final SectionInfo sectionInfo = sectionInfoPair[i];
+				distanceTransformFutures.add(SECTION_EXECUTOR.submit(() -> getDistanceTransform(sectionInfo)));
+			}
+			final SectionDistanceTransform[] sectionDistanceTransformPair = new SectionDistanceTransform[2];
+			try
+			{
+				for (int i = 0; i < 2; ++i)
+					sectionDistanceTransformPair[i] = distanceTransformFutures.get(i).get();
+			}
+			catch (final InterruptedException e)
+			{
+				distanceTransformFutures.forEach(f -> f.cancel(true));
+				return;
+			}
+			catch (final ExecutionException e)
+			{
+				LOG.error("Unable to compute distance transform for shape interpolation", e);
+				return;
 			}
 
-			// Narrow the bounding box of the two sections in the display space.
-			// The initial bounding box may be larger because of transforming the source bounding box into the display space and then taking the bounding box of that.
+			// Align both sections relative to the union source bounding box in their display space, and narrow it to
+			// the union of the foreground bounding boxes of both sections.
+			final long[][] displaySectionOffsetPair = new long[2][];
 			final Interval[] boundingBoxPair = new Interval[2];
 			for (int i = 0; i < 2; ++i)
 			{
-				if (Thread.currentThread().isInterrupted())
-					return;
-
-				final long[] min = new long[2], max = new long[2], position = new long[2];
-				Arrays.fill(min, Long.MAX_VALUE);
-				Arrays.fill(max, Long.MIN_VALUE);
-				final Cursor<UnsignedLongType> cursor = Views.iterable(sectionPair[i]).localizingCursor();
-				while (cursor.hasNext())
-				{
-					if (FOREGROUND_CHECK.test(cursor.next()))
-					{
-						cursor.localize(position);
-						for (int d = 0; d < position.length; ++d)
-						{
-							min[d] = Math.min(min[d], position[d]);
-							max[d] = Math.max(max[d], position[d]);
-						}
-					}
-				}
-				boundingBoxPair[i] = new FinalInterval(min, max);
+				displaySectionOffsetPair[i] = Intervals.minAsLongArray(getDisplaySectionInterval(sectionInfoPair[i], affectedUnionSourceInterval));
+				boundingBoxPair[i] = Intervals.translate(
+						Intervals.translate(sectionDistanceTransformPair[i].foregroundBoundingBox, -displaySectionOffsetPair[i][0], 0),
+						-displaySectionOffsetPair[i][1],
+						1);
 			}
 			final Interval boundingBox = Intervals.union(boundingBoxPair[0], boundingBoxPair[1]);
-			LOG.debug("Narrowed the bounding box of the selected shape in both sections from {} to {}", Intervals.dimensionsAsLongArray(sectionPair[0]), Intervals.dimensionsAsLongArray(boundingBox));
-			for (int i = 0; i < 2; ++i)
-				sectionPair[i] = Views.offsetInterval(sectionPair[i], boundingBox);
+			LOG.debug("Narrowed the bounding box of the selected shape in both sections to {}", Intervals.dimensionsAsLongArray(boundingBox));
 
-			// compute distance transform on both sections
 			final RandomAccessibleInterval<FloatType>[] distanceTransformPair = new RandomAccessibleInterval[2];
 			for (int i = 0; i < 2; ++i)
 			{
-				if (Thread.currentThread().isInterrupted())
-					return;
-
-				distanceTransformPair[i] = new ArrayImgFactory<>(new FloatType()).create(sectionPair[i]);
-				final RandomAccessibleInterval<BoolType> binarySection = Converters.convert(sectionPair[i], new PredicateConverter<>(FOREGROUND_CHECK), new BoolType());
-				computeSignedDistanceTransform(binarySection, distanceTransformPair[i], DISTANCE_TYPE.EUCLIDIAN);
+				final Interval displayInterval = Intervals.translate(
+						Intervals.translate(boundingBox, displaySectionOffsetPair[i][0], 0),
+						displaySectionOffsetPair[i][1],
+						1);
+				distanceTransformPair[i] = Views.zeroMin(sectionDistanceTransformPair[i].over(displayInterval));
 			}
 
 			final double distanceBetweenSections = computeDistanceBetweenSections(sectionInfoPair[0], sectionInfoPair[1]);
 			final AffineTransform3D transformToSource = new AffineTransform3D();
 			transformToSource
 				.preConcatenate(new Translation3D(boundingBox.min(0), boundingBox.min(1), 0))
-				.preConcatenate(new Translation3D(displaySectionIntervalPair[0].min(0), displaySectionIntervalPair[0].min(1), 0))
+				.preConcatenate(new Translation3D(displaySectionOffsetPair[0][0], displaySectionOffsetPair[0][1], 0))
 				.preConcatenate(sectionInfoPair[0].sourceToDisplayTransform.inverse());
 
-			final RealRandomAccessible<UnsignedLongType> interpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new UnsignedLongType(1),
-					transformToSource
+			// evaluate the interpolated shape lazily block by block within the union bounding box of both sections
+			final Pair<RealRandomAccessible<UnsignedLongType>, Invalidate<Long>> interpolatedShapeMaskAndInvalidate = cacheInBlocks(
+					getInterpolatedDistanceTransformMask(
+							distanceTransformPair[0],
+							distanceTransformPair[1],
+							distanceBetweenSections,
+							new UnsignedLongType(1),
+							transformToSource
+						),
+					affectedUnionSourceInterval,
+					paintera.getGlobalCache()
 				);
-
-			final RealRandomAccessible<VolatileUnsignedLongType> volatileInterpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new VolatileUnsignedLongType(1),
-					transformToSource
+			final RealRandomAccessible<UnsignedLongType> interpolatedShapeMask = interpolatedShapeMaskAndInvalidate.getA();
+
+			final RealRandomAccessible<VolatileUnsignedLongType> volatileInterpolatedShapeMask = Converters.convert(
+					interpolatedShapeMask,
+					(in, out) -> {
+						out.get().set(in);
+						out.setValid(true);
+					},
+					new VolatileUnsignedLongType()
 				);
 
 			if (Thread.currentThread().isInterrupted())
@@ -690,6 +828,8 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 							FOREGROUND_CHECK
 						);
 					interpolatedMaskImgs = new ValuePair<>(interpolatedShapeMask, volatileInterpolatedShapeMask);
+					invalidateInterpolatedMask();
+					interpolatedMaskInvalidate = interpolatedShapeMaskAndInvalidate.getB();
 				}
 
 				paintera.orthogonalViews().requestRepaint();
@@ -727,16 +867,117 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		onInterpolationFinished = null;
 	}
 
+	private void invalidateInterpolatedMask()
+	{
+		if (interpolatedMaskInvalidate != null)
+		{
+			interpolatedMaskInvalidate.invalidateAll();
+			interpolatedMaskInvalidate = null;
+		}
+	}
+
+	/**
+	 * Get the signed distance transform of a section over its padded foreground bounding box. The distance transform is
+	 * re-used if it was computed for a section with the same contents before, independently of the other section.
+	 *
+	 * @param sectionInfo section
+	 * @return signed distance transform of {@code sectionInfo} and its foreground bounding box, in display coordinates
+	 */
+	private SectionDistanceTransform getDistanceTransform(final SectionInfo sectionInfo) throws InterruptedException, ExecutionException
+	{
+		final SectionDistanceTransform cached;
+		synchronized (distanceTransformCache)
+		{
+			cached = distanceTransformCache.get(sectionInfo.content);
+		}
+		if (cached != null)
+		{
+			LOG.debug("Re-using distance transform for section with interval {}", Intervals.dimensionsAsLongArray(cached.distanceTransform));
+			return cached;
+		}
+
+		// Narrow the bounding box of the section in the display space.
+		// The initial bounding box may be larger because of transforming the source bounding box into the display space and then taking the bounding box of that.
+		final RandomAccessible<UnsignedLongType> section = getTransformedMaskSection(sectionInfo);
+		final Interval displaySectionInterval = getDisplaySectionInterval(sectionInfo, sectionInfo.sourceBoundingBox);
+		final long[] min = new long[2], max = new long[2], position = new long[2];
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+		final Cursor<UnsignedLongType> cursor = Views.interval(section, displaySectionInterval).localizingCursor();
+		while (cursor.hasNext())
+		{
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedException();
+			if (FOREGROUND_CHECK.test(cursor.next()))
+			{
+				cursor.localize(position);
+				for (int d = 0; d < position.length; ++d)
+				{
+					min[d] = Math.min(min[d], position[d]);
+					max[d] = Math.max(max[d], position[d]);
+				}
+			}
+		}
+		final Interval foregroundBoundingBox = min[0] > max[0] ? displaySectionInterval : new FinalInterval(min, max);
+		LOG.debug("Narrowed the bounding box of the section from {} to {}", Intervals.dimensionsAsLongArray(displaySectionInterval), Intervals.dimensionsAsLongArray(foregroundBoundingBox));
+
+		final Interval paddedBoundingBox = Intervals.expand(foregroundBoundingBox, DISTANCE_TRANSFORM_PADDING);
+		final RandomAccessibleInterval<UnsignedLongType> paddedSection = Views.zeroMin(Views.interval(section, paddedBoundingBox));
+		final RandomAccessibleInterval<FloatType> distanceTransform = new ArrayImgFactory<>(new FloatType()).create(paddedSection);
+		final RandomAccessibleInterval<BoolType> binarySection = Converters.convert(paddedSection, new PredicateConverter<>(FOREGROUND_CHECK), new BoolType());
+		computeSignedDistanceTransform(binarySection, distanceTransform, DISTANCE_TYPE.EUCLIDIAN);
+
+		final SectionDistanceTransform sectionDistanceTransform = new SectionDistanceTransform(
+				foregroundBoundingBox,
+				Views.translate(distanceTransform, Intervals.minAsLongArray(paddedBoundingBox)));
+		synchronized (distanceTransformCache)
+		{
+			distanceTransformCache.put(sectionInfo.content, sectionDistanceTransform);
+		}
+		return sectionDistanceTransform;
+	}
+
+	/**
+	 * Evaluate {@code data} lazily in blocks within {@code interval}. Blocks that are already loaded are not
+	 * re-computed when the mask is queried again, e.g. for rendering and when applying the mask.
+	 *
+	 * @param data interpolated shape mask
+	 * @param interval evaluate {@code data} only within this interval, zero outside
+	 * @param globalCache cache that holds the blocks
+	 * @return {@code data} cached in blocks, and invalidate for the cache
+	 */
+	private static Pair<RealRandomAccessible<UnsignedLongType>, Invalidate<Long>> cacheInBlocks(
+			final RealRandomAccessible<UnsignedLongType> data,
+			final Interval interval,
+			final GlobalCache globalCache)
+	{
+		final long[] min = Intervals.minAsLongArray(interval);
+		final RandomAccessible<UnsignedLongType> rasteredData = Views.translate(Views.raster(data), Arrays.stream(min).map(m -> -m).toArray());
+		final CellGrid grid = new CellGrid(Intervals.dimensionsAsLongArray(interval), INTERPOLATED_MASK_BLOCK_SIZE);
+		final CellLoader<UnsignedLongType> loader = cell -> {
+			final Cursor<UnsignedLongType> source = Views.flatIterable(Views.interval(rasteredData, cell)).cursor();
+			final Cursor<UnsignedLongType> target = Views.flatIterable(cell).cursor();
+			while (target.hasNext())
+				target.next().set(source.next());
+		};
+		final Pair<CachedCellImg<UnsignedLongType, LongArray>, Invalidate<Long>> img = globalCache.createImg(grid, loader, new UnsignedLongType());
+		return new ValuePair<>(
+				Views.interpolate(
+						Views.extendZero(Views.translate(img.getA(), min)),
+						new NearestNeighborInterpolatorFactory<>()),
+				img.getB());
+	}
+
 	private static <R extends RealType<R> & NativeType<R>, B extends BooleanType<B>> void computeSignedDistanceTransform(
 			final RandomAccessibleInterval<B> mask,
 			final RandomAccessibleInterval<R> target,
 			final DISTANCE_TYPE distanceType,
-			final double... weights)
+			final double... weights) throws InterruptedException, ExecutionException
 	{
 		final RandomAccessibleInterval<R> distanceOutside = target;
 		final RandomAccessibleInterval<R> distanceInside = new ArrayImgFactory<>(Util.getTypeFromInterval(target)).create(target);
-		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, weights);
-		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, weights);
+		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, DISTANCE_TRANSFORM_EXECUTOR, NUM_DISTANCE_TRANSFORM_TASKS, weights);
+		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, DISTANCE_TRANSFORM_EXECUTOR, NUM_DISTANCE_TRANSFORM_TASKS, weights);
 		LoopBuilder.setImages(distanceOutside, distanceInside, target).forEachPixel((outside, inside, result) -> {
 			switch (distanceType)
 			{
@@ -781,13 +1022,27 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return RealViews.affineReal(interpolatedShape, transformToSource);
 	}
 
-	private RandomAccessibleInterval<UnsignedLongType> getTransformedMaskSection(final SectionInfo sectionInfo)
+	/**
+	 *
+	 * @return mask of the section in its display coordinates
+	 */
+	private static RandomAccessible<UnsignedLongType> getTransformedMaskSection(final SectionInfo sectionInfo)
 	{
-		final RealInterval sectionBounds = sectionInfo.sourceToDisplayTransform.estimateBounds(sectionInfo.sourceBoundingBox);
-		final Interval sectionInterval = Intervals.smallestContainingInterval(sectionBounds);
 		final RealRandomAccessible<UnsignedLongType> transformedMask = getTransformedMask(sectionInfo.mask, sectionInfo.sourceToDisplayTransform);
-		final RandomAccessibleInterval<UnsignedLongType> transformedMaskInterval = Views.interval(Views.raster(transformedMask), sectionInterval);
-		return Views.hyperSlice(transformedMaskInterval, 2, 0l);
+		return Views.hyperSlice(Views.raster(transformedMask), 2, 0l);
+	}
+
+	/**
+	 *
+	 * @return bounding box of {@code sourceInterval} in display coordinates of the section
+	 */
+	private static Interval getDisplaySectionInterval(final SectionInfo sectionInfo, final Interval sourceInterval)
+	{
+		final RealInterval sectionBounds = sectionInfo.sourceToDisplayTransform.estimateBounds(sourceInterval);
+		final Interval sectionInterval = Intervals.smallestContainingInterval(sectionBounds);
+		return new FinalInterval(
+				new long[] {sectionInterval.min(0), sectionInterval.min(1)},
+				new long[] {sectionInterval.max(0), sectionInterval.max(1)});
 	}
 
 	private static RealRandomAccessible<UnsignedLongType> getTransformedMask(final Mask<UnsignedLongType> mask, final AffineTransform3D transform)
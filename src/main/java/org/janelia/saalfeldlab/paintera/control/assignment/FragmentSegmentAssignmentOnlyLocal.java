@@ -84,6 +84,8 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 
 	private final Supplier<TLongLongMap> initialLut;
 
+	private boolean isLutLoaded = false;
+
 	public FragmentSegmentAssignmentOnlyLocal(final Persister persister)
 	{
 		this(NO_INITIAL_LUT_AVAILABLE, persister);
@@ -98,9 +100,8 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 
 		this.initialLut = initialLut;
 		this.persister = persister;
-		LOG.debug("Assignment map: {}", fragmentToSegmentMap);
-		// TODO should reset lut also forget about all actions? I think not.
-		resetLut();
+		// initial lut is loaded on first access: reading it can be expensive and
+		// is not necessary for sources that are never shown or edited
 	}
 
 	public Persister getPersister() {
@@ -124,6 +125,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		{
 			// TODO Should we reset the LUT first to make sure that all previous
 			// TODO changes were loaded?
+			ensureLutLoaded();
 			LOG.debug("Persisting assignment {}", this.fragmentToSegmentMap);
 			LOG.debug("Committing actions {}", this.actions);
 			this.persister.persist(this.fragmentToSegmentMap.keys(), this.fragmentToSegmentMap.values());
@@ -137,6 +139,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	public synchronized long getSegment(final long fragmentId)
 	{
+		ensureLutLoaded();
 		final long id;
 		final long segmentId = fragmentToSegmentMap.get(fragmentId);
 		if (segmentId == fragmentToSegmentMap.getNoEntryValue())
@@ -154,6 +157,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	public synchronized TLongHashSet getFragments(final long segmentId)
 	{
+		ensureLutLoaded();
 		final TLongHashSet fragments = segmentToFragmentsMap.get(segmentId);
 		return fragments == null ? new TLongHashSet(new long[] {segmentId}) : new TLongHashSet(fragments);
 	}
@@ -245,8 +249,20 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
+	/**
+	 * Load the initial lut and apply all actions, unless this has happened already.
+	 */
+	public synchronized void ensureLutLoaded()
+	{
+		if (!isLutLoaded)
+			resetLut();
+	}
+
 	private void resetLut()
 	{
+		// TODO should reset lut also forget about all actions? I think not.
+		LOG.debug("Loading initial lut");
+		isLutLoaded = true;
 		fragmentToSegmentMap.clear();
 		fragmentToSegmentMap.putAll(initialLut.get());
 		syncILut();
@@ -258,6 +274,9 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	protected void applyImpl(final AssignmentAction action)
 	{
+		// actions are tracked and will be applied after the initial lut is loaded
+		if (!isLutLoaded)
+			return;
 		LOG.debug("Applying action {}", action);
 		switch (action.getType())
 		{
@@ -275,9 +294,10 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	}
 
 	@Override
-	protected void reapplyActions()
+	protected synchronized void reapplyActions()
 	{
-		resetLut();
+		if (isLutLoaded)
+			resetLut();
 	}
 
 	private synchronized void syncILut()
@@ -300,13 +320,15 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
-	public int size()
+	public synchronized int size()
 	{
+		ensureLutLoaded();
 		return this.fragmentToSegmentMap.size();
 	}
 
-	public void persist(final long[] keys, final long[] values)
+	public synchronized void persist(final long[] keys, final long[] values)
 	{
+		ensureLutLoaded();
 		this.fragmentToSegmentMap.keys(keys);
 		this.fragmentToSegmentMap.values(values);
 	}
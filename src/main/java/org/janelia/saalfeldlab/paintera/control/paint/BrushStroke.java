@@ -0,0 +1,242 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
+import java.util.function.DoubleSupplier;
+
+import bdv.fx.viewer.ViewerPanelFX;
+import bdv.util.Affine3DHelpers;
+import gnu.trove.list.array.TDoubleArrayList;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.LinAlgHelpers;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single brush stroke into a mask. Mouse samples are queued by {@link #addSample(double, double)} and painted in
+ * batches on {@code executor}: all samples that arrived since the last batch are coalesced into one batch, so the
+ * painting thread never falls behind the cursor, no matter how many mouse events arrive per frame. Each batch
+ * requests a single repaint of the union of the painted areas in viewer coordinates.
+ *
+ * If the viewer plane is aligned with the label axes, the segment between consecutive samples is rasterized as a
+ * capsule with {@link Paint2D#paintCapsule}. Otherwise, discs are painted one screen pixel apart with
+ * {@link Paint2D#paint}.
+ */
+public class BrushStroke
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final RandomAccessibleInterval<UnsignedLongType> mask;
+
+	private final AffineTransform3D labelToViewerTransform;
+
+	private final AffineTransform3D globalToViewerTransform;
+
+	private final AffineTransform3D labelToGlobalTransform;
+
+	private final DoubleSupplier brushRadius;
+
+	private final DoubleSupplier brushDepth;
+
+	private final ViewerPanelFX viewer;
+
+	private final ExecutorService executor;
+
+	private final boolean isAxisAligned;
+
+	private final Object paintLock = new Object();
+
+	// guarded by this
+	private final TDoubleArrayList pendingSamples = new TDoubleArrayList();
+
+	// guarded by this
+	private boolean isBatchScheduled = false;
+
+	// guarded by paintLock
+	private double lastX = Double.NaN;
+
+	// guarded by paintLock
+	private double lastY = Double.NaN;
+
+	// guarded by paintLock
+	private long fillLabel = 1;
+
+	// guarded by paintLock
+	private Interval interval = null;
+
+	public BrushStroke(
+			final RandomAccessibleInterval<UnsignedLongType> mask,
+			final AffineTransform3D labelToViewerTransform,
+			final AffineTransform3D globalToViewerTransform,
+			final AffineTransform3D labelToGlobalTransform,
+			final DoubleSupplier brushRadius,
+			final DoubleSupplier brushDepth,
+			final ViewerPanelFX viewer,
+			final ExecutorService executor)
+	{
+		this.mask = mask;
+		this.labelToViewerTransform = labelToViewerTransform.copy();
+		this.globalToViewerTransform = globalToViewerTransform.copy();
+		this.labelToGlobalTransform = labelToGlobalTransform.copy();
+		this.brushRadius = brushRadius;
+		this.brushDepth = brushDepth;
+		this.viewer = viewer;
+		this.executor = executor;
+		this.isAxisAligned = PaintUtils.labelAxisCorrespondingToViewerAxis(labelToGlobalTransform, globalToViewerTransform, 2) >= 0;
+	}
+
+	/**
+	 * Queue a mouse sample in viewer coordinates. Returns immediately, painting happens asynchronously.
+	 */
+	public synchronized void addSample(final double viewerX, final double viewerY)
+	{
+		pendingSamples.add(viewerX);
+		pendingSamples.add(viewerY);
+		if (!isBatchScheduled)
+		{
+			isBatchScheduled = true;
+			executor.submit(this::paintBatchLogExceptions);
+		}
+	}
+
+	/**
+	 * Paint all queued samples on the calling thread and wait for batches in progress.
+	 *
+	 * @return bounding box of all voxels painted in this stroke in label coordinates, or {@code null} if nothing was
+	 * painted
+	 */
+	public Interval finish()
+	{
+		synchronized (paintLock)
+		{
+			paintBatch();
+			return interval;
+		}
+	}
+
+	private void paintBatchLogExceptions()
+	{
+		try
+		{
+			paintBatch();
+		} catch (final RuntimeException e)
+		{
+			LOG.error("Unable to paint brush stroke", e);
+		}
+	}
+
+	private void paintBatch()
+	{
+		synchronized (paintLock)
+		{
+			final double[] samples;
+			synchronized (this)
+			{
+				samples = pendingSamples.toArray();
+				pendingSamples.resetQuick();
+				isBatchScheduled = false;
+			}
+			if (samples.length == 0)
+				return;
+
+			final long start = System.nanoTime();
+			final double radius = brushRadius.getAsDouble();
+			final double depth = brushDepth.getAsDouble();
+			final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * radius;
+			final double[] viewerMin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+			final double[] viewerMax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+			for (int i = 0; i < samples.length; i += 2)
+			{
+				final double x = samples[i];
+				final double y = samples[i + 1];
+				final double fromX = Double.isNaN(lastX) ? x : lastX;
+				final double fromY = Double.isNaN(lastY) ? y : lastY;
+				paintSegment(fromX, fromY, x, y, radius, depth);
+				viewerMin[0] = Math.min(viewerMin[0], Math.min(fromX, x));
+				viewerMin[1] = Math.min(viewerMin[1], Math.min(fromY, y));
+				viewerMax[0] = Math.max(viewerMax[0], Math.max(fromX, x));
+				viewerMax[1] = Math.max(viewerMax[1], Math.max(fromY, y));
+				lastX = x;
+				lastY = y;
+			}
+
+			MetricRegistry.global().timer("paint.stroke.batch").updateSince(start);
+			MetricRegistry.global().counter("paint.stroke.samples").inc(samples.length / 2);
+			LOG.debug("Painted {} samples with radius {} in {}ms", samples.length / 2, radius, (System.nanoTime() - start) / 1000000);
+
+			viewer.requestRepaint(
+					new long[] {(long) Math.floor(viewerMin[0] - viewerRadius), (long) Math.floor(viewerMin[1] - viewerRadius)},
+					new long[] {(long) Math.ceil(viewerMax[0] + viewerRadius), (long) Math.ceil(viewerMax[1] + viewerRadius)});
+		}
+	}
+
+	private void paintSegment(
+			final double fromX,
+			final double fromY,
+			final double toX,
+			final double toY,
+			final double radius,
+			final double depth)
+	{
+		if (isAxisAligned)
+		{
+			updateInterval(Paint2D.paintCapsule(
+					mask,
+					fillLabel,
+					fromX,
+					fromY,
+					toX,
+					toY,
+					radius,
+					depth,
+					labelToViewerTransform,
+					globalToViewerTransform,
+					labelToGlobalTransform));
+			return;
+		}
+
+		// flood fill of oblique discs needs a new fill label for each disc
+		final double[] p = {fromX, fromY};
+		final double[] d = {toX - fromX, toY - fromY};
+		final double l = LinAlgHelpers.length(d);
+		if (l > 0)
+			LinAlgHelpers.normalize(d);
+		for (int i = 0; i < l; ++i)
+		{
+			paintDisc(p[0], p[1], radius, depth);
+			LinAlgHelpers.add(p, d, p);
+		}
+		paintDisc(toX, toY, radius, depth);
+	}
+
+	private void paintDisc(final double x, final double y, final double radius, final double depth)
+	{
+		updateInterval(Paint2D.paint(
+				Views.extendValue(mask, new UnsignedLongType(Label.INVALID)),
+				fillLabel,
+				x,
+				y,
+				radius,
+				depth,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform));
+		++fillLabel;
+	}
+
+	private void updateInterval(final Interval painted)
+	{
+		if (painted != null)
+			this.interval = this.interval == null ? painted : Intervals.union(painted, this.interval);
+	}
+
+}
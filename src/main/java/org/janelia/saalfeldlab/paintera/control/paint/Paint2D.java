@@ -10,6 +10,7 @@ import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.algorithm.neighborhood.HyperSphereNeighborhood;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
@@ -157,10 +158,7 @@ public class Paint2D
 					Math.round(seed[viewerAxisInLabelCoordinates != 2 ? 2 : 1])
 			};
 
-			final long[] sliceRadii = {
-					(long) Math.ceil(transformedRadius[viewerAxisInLabelCoordinates == 0 ? 1 : 0]),
-					(long) Math.ceil(transformedRadius[viewerAxisInLabelCoordinates != 2 ? 2 : 1])
-			};
+			final long[] sliceRadii = sliceRadii(transformedRadius, viewerAxisInLabelCoordinates);
 
 			LOG.debug("Transformed radius={}", transformedRadius);
 
@@ -228,4 +226,232 @@ public class Paint2D
 		}
 	}
 
+
+	/**
+	 * Paint a capsule, i.e. the area swept by a brush of {@code radius} that moves from ({@code fromX}, {@code fromY})
+	 * to ({@code toX}, {@code toY}) in viewer coordinates, directly into {@code labels}, one row span at a time. The
+	 * brush extends over the same number of slices as in {@link #paint}, and painting a capsule with identical end
+	 * points yields the same disc as {@link #paint}. Voxels outside of {@code labels} are ignored.
+	 *
+	 * Only applicable if the viewer plane is aligned with the label axes, see
+	 * {@link PaintUtils#labelAxisCorrespondingToViewerAxis(AffineTransform3D, AffineTransform3D, int)}.
+	 *
+	 * @return bounding box of painted voxels in label coordinates, or {@code null} if no voxel was painted
+	 */
+	public static Interval paintCapsule(
+			final RandomAccessibleInterval<UnsignedLongType> labels,
+			final long fillLabel,
+			final double fromX,
+			final double fromY,
+			final double toX,
+			final double toY,
+			final double radius,
+			final double brushDepth,
+			final AffineTransform3D labelToViewerTransform,
+			final AffineTransform3D globalToViewerTransform,
+			final AffineTransform3D labelToGlobalTransform)
+	{
+		final int viewerAxisInLabelCoordinates = PaintUtils.labelAxisCorrespondingToViewerAxis(
+				labelToGlobalTransform,
+				globalToViewerTransform,
+				2);
+		if (viewerAxisInLabelCoordinates < 0)
+			throw new IllegalArgumentException("Viewer plane is not aligned with label axes.");
+
+		final int correspondingToXAxis = PaintUtils.labelAxisCorrespondingToViewerAxis(labelToGlobalTransform, globalToViewerTransform, 0);
+		final int correspondingToYAxis = PaintUtils.labelAxisCorrespondingToViewerAxis(labelToGlobalTransform, globalToViewerTransform, 1);
+
+		final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * radius;
+		final double[] transformedRadius = new double[3];
+		transformedRadius[correspondingToXAxis] = PaintUtils.viewerAxisInLabelCoordinates(labelToGlobalTransform, globalToViewerTransform, 0, viewerRadius)[correspondingToXAxis];
+		transformedRadius[correspondingToYAxis] = PaintUtils.viewerAxisInLabelCoordinates(labelToGlobalTransform, globalToViewerTransform, 1, viewerRadius)[correspondingToYAxis];
+
+		// label axes within the slice: spans are written along the first, rows along the second
+		final int spanAxis = viewerAxisInLabelCoordinates == 0 ? 1 : 0;
+		final int rowAxis = viewerAxisInLabelCoordinates != 2 ? 2 : 1;
+		final long[] sliceRadii = sliceRadii(transformedRadius, viewerAxisInLabelCoordinates);
+		final double spanRadius = sliceRadii[0];
+		final double rowRadius = sliceRadii[1];
+
+		final double[] from = {fromX, fromY, 0.0};
+		final double[] to = {toX, toY, 0.0};
+		labelToViewerTransform.applyInverse(from, from);
+		labelToViewerTransform.applyInverse(to, to);
+
+		final long slicePos = Math.round(from[viewerAxisInLabelCoordinates]);
+		final long numSlices = Math.max((long) Math.ceil(brushDepth) - 1, 0);
+
+		// end points are rounded to voxel centers, like the center in paint
+		final long fromSpan = Math.round(from[spanAxis]);
+		final long fromRow = Math.round(from[rowAxis]);
+		final long toSpan = Math.round(to[spanAxis]);
+		final long toRow = Math.round(to[rowAxis]);
+
+		final long rowMin = Math.max(Math.min(fromRow, toRow) - (long) rowRadius, labels.min(rowAxis));
+		final long rowMax = Math.min(Math.max(fromRow, toRow) + (long) rowRadius, labels.max(rowAxis));
+		final long sliceMin = Math.max(slicePos - numSlices, labels.min(viewerAxisInLabelCoordinates));
+		final long sliceMax = Math.min(slicePos + numSlices, labels.max(viewerAxisInLabelCoordinates));
+		if (rowMin > rowMax || sliceMin > sliceMax)
+			return null;
+
+		final CapsuleRows capsule = new CapsuleRows(fromSpan, fromRow, toSpan, toRow, spanRadius, rowRadius);
+		final RandomAccess<UnsignedLongType> access = labels.randomAccess();
+		final long[] min = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+		final long[] max = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+		final long[] span = new long[2];
+		for (long row = rowMin; row <= rowMax; ++row)
+		{
+			if (!capsule.span(row, span))
+				continue;
+			final long spanMin = Math.max(span[0], labels.min(spanAxis));
+			final long spanMax = Math.min(span[1], labels.max(spanAxis));
+			if (spanMin > spanMax)
+				continue;
+			for (long slice = sliceMin; slice <= sliceMax; ++slice)
+			{
+				access.setPosition(slice, viewerAxisInLabelCoordinates);
+				access.setPosition(row, rowAxis);
+				access.setPosition(spanMin, spanAxis);
+				for (long pos = spanMin; pos <= spanMax; ++pos, access.fwd(spanAxis))
+					access.get().set(fillLabel);
+			}
+			min[rowAxis] = Math.min(min[rowAxis], row);
+			max[rowAxis] = Math.max(max[rowAxis], row);
+			min[spanAxis] = Math.min(min[spanAxis], spanMin);
+			max[spanAxis] = Math.max(max[spanAxis], spanMax);
+		}
+
+		if (min[rowAxis] > max[rowAxis])
+			return null;
+
+		min[viewerAxisInLabelCoordinates] = sliceMin;
+		max[viewerAxisInLabelCoordinates] = sliceMax;
+		LOG.debug("Painted capsule with radii ({}, {}) from ({}, {}) to ({}, {}): ({} {})", spanRadius, rowRadius, fromSpan, fromRow, toSpan, toRow, min, max);
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * Radii of the brush within the slice, along the two label axes other than {@code viewerAxisInLabelCoordinates},
+	 * in ascending order of the axes. Components of {@code transformedRadius} are negative if the viewer axis points
+	 * in the opposite direction of the label axis, which does not change the brush.
+	 */
+	private static long[] sliceRadii(final double[] transformedRadius, final int viewerAxisInLabelCoordinates)
+	{
+		return new long[] {
+				(long) Math.ceil(Math.abs(transformedRadius[viewerAxisInLabelCoordinates == 0 ? 1 : 0])),
+				(long) Math.ceil(Math.abs(transformedRadius[viewerAxisInLabelCoordinates != 2 ? 2 : 1]))
+		};
+	}
+
+	/**
+	 * Intersection of rows with a 2D capsule with elliptic cross section. Coordinates are scaled by the radii so that
+	 * the capsule has unit radius. The capsule is convex and covered by the discs at its end points and the band
+	 * between them, so the span of each row is the hull of the spans of these three parts.
+	 */
+	private static final class CapsuleRows
+	{
+
+		private static final double EPSILON = 1e-9;
+
+		private final double spanRadius;
+
+		private final double rowRadius;
+
+		private final double fromU, fromV, toU, toV;
+
+		private final double dU, dV, lengthSquared, length;
+
+		private final double[] range = new double[2];
+
+		private CapsuleRows(
+				final double fromSpan,
+				final double fromRow,
+				final double toSpan,
+				final double toRow,
+				final double spanRadius,
+				final double rowRadius)
+		{
+			// avoid division by zero for radius 0: the brush paints at least its center voxel
+			this.spanRadius = Math.max(spanRadius, EPSILON);
+			this.rowRadius = Math.max(rowRadius, EPSILON);
+			this.fromU = fromSpan / this.spanRadius;
+			this.fromV = fromRow / this.rowRadius;
+			this.toU = toSpan / this.spanRadius;
+			this.toV = toRow / this.rowRadius;
+			this.dU = toU - fromU;
+			this.dV = toV - fromV;
+			this.lengthSquared = dU * dU + dV * dV;
+			this.length = Math.sqrt(lengthSquared);
+		}
+
+		/**
+		 * @return {@code true} if {@code row} intersects the capsule. In that case, {@code span} holds the inclusive
+		 * min and max voxel of the intersection.
+		 */
+		private boolean span(final long row, final long[] span)
+		{
+			final double v = row / rowRadius;
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+
+			final double fromDV = v - fromV;
+			if (Math.abs(fromDV) <= 1.0 + EPSILON)
+			{
+				final double half = Math.sqrt(Math.max(1.0 - fromDV * fromDV, 0.0));
+				lo = Math.min(lo, fromU - half);
+				hi = Math.max(hi, fromU + half);
+			}
+
+			final double toDV = v - toV;
+			if (Math.abs(toDV) <= 1.0 + EPSILON)
+			{
+				final double half = Math.sqrt(Math.max(1.0 - toDV * toDV, 0.0));
+				lo = Math.min(lo, toU - half);
+				hi = Math.max(hi, toU + half);
+			}
+
+			if (lengthSquared > 0.0)
+			{
+				// 0 <= (p - from) . d <= |d|^2 and |(p - from) x d| <= |d|, both linear in u
+				range[0] = Double.NEGATIVE_INFINITY;
+				range[1] = Double.POSITIVE_INFINITY;
+				if (intersectLinear(dU, -fromU * dU + fromDV * dV, 0.0, lengthSquared, range)
+				    && intersectLinear(dV, -fromU * dV - fromDV * dU, -length, length, range))
+				{
+					lo = Math.min(lo, range[0]);
+					hi = Math.max(hi, range[1]);
+				}
+			}
+
+			if (lo > hi)
+				return false;
+
+			span[0] = (long) Math.ceil(lo * spanRadius - EPSILON);
+			span[1] = (long) Math.floor(hi * spanRadius + EPSILON);
+			return span[0] <= span[1];
+		}
+
+		/**
+		 * Intersect {@code range} with all u that satisfy {@code lower <= slope * u + offset <= upper}.
+		 *
+		 * @return {@code false} if the intersection is empty
+		 */
+		private static boolean intersectLinear(
+				final double slope,
+				final double offset,
+				final double lower,
+				final double upper,
+				final double[] range)
+		{
+			if (slope == 0.0)
+				return offset >= lower - EPSILON && offset <= upper + EPSILON;
+			final double u1 = (lower - offset) / slope;
+			final double u2 = (upper - offset) / slope;
+			range[0] = Math.max(range[0], Math.min(u1, u2));
+			range[1] = Math.min(range[1], Math.max(u1, u2));
+			return range[0] <= range[1];
+		}
+
+	}
+
 }
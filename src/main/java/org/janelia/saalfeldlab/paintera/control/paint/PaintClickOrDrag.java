@@ -2,20 +2,14 @@ package org.janelia.saalfeldlab.paintera.control.paint;
 
 import bdv.fx.viewer.ViewerPanelFX;
 import bdv.fx.viewer.ViewerState;
-import bdv.util.Affine3DHelpers;
 import bdv.viewer.Source;
 import javafx.event.EventHandler;
 import javafx.event.EventType;
 import javafx.scene.Node;
 import javafx.scene.input.MouseEvent;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.type.label.Label;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.util.Intervals;
-import net.imglib2.util.LinAlgHelpers;
-import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.event.InstallAndRemove;
 import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
@@ -24,10 +18,13 @@ import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.DoubleSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -84,6 +81,8 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 
 	private static final ForegroundCheck FOREGROUND_CHECK = new ForegroundCheck();
 
+	private static final ExecutorService STROKE_EXECUTOR = Executors.newSingleThreadExecutor(new NamedThreadFactory("paint-stroke-%d", true));
+
 	private final SourceInfo sourceInfo;
 
 	private final ViewerPanelFX viewer;
@@ -108,9 +107,7 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 
 	private MaskedSource<?, ?> paintIntoThis = null;
 
-	private long fillLabel = 0;
-
-	private Interval interval = null;
+	private BrushStroke stroke = null;
 
 	private final AffineTransform3D labelToGlobalTransform = new AffineTransform3D();
 
@@ -173,12 +170,19 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 					if (id == null)
 						throw new IllegalIdForPainting(id);
 					this.mask = source.generateMask(new MaskInfo<>(0, level, new UnsignedLongType(id)), FOREGROUND_CHECK);
+					this.stroke = new BrushStroke(
+							mask.mask,
+							labelToViewerTransform,
+							globalToViewerTransform,
+							labelToGlobalTransform,
+							brushRadius,
+							brushDepth,
+							viewer,
+							STROKE_EXECUTOR);
 					this.isPainting = true;
-					this.fillLabel = 1;
-					this.interval = null;
 					this.paintIntoThis = source;
 					position.update(event);
-					paint(position.x, position.y);
+					stroke.addSample(position.x, position.y);
 				}
 				// TODO should this be more specific? I think that we should never enter a painting state
 				// TODO when an exception occurs
@@ -203,36 +207,11 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 				event.consume();
 
 				try {
-					double x = event.getX();
-					double y = event.getY();
+					final double x = event.getX();
+					final double y = event.getY();
 					if (x != this.position.x || y != this.position.y) {
-						final double[] p1 = new double[] {position.x, position.y};
-
-						LOG.debug("Drag: paint at screen=({},{}) / start={}", x, y, position);
-
-						final double[] d = new double[] {x, y};
-
-						LinAlgHelpers.subtract(d, p1, d);
-
-						final double l = LinAlgHelpers.length(d);
-						LinAlgHelpers.normalize(d);
-
-						LOG.debug("Number of paintings triggered {}", l + 1);
-
-						final long t0 = System.currentTimeMillis();
-						for (int i = 0; i < l; ++i)
-						{
-							paint(p1[0], p1[1]);
-							LinAlgHelpers.add(p1, d, p1);
-						}
-						paint(x, y);
-						final long t1 = System.currentTimeMillis();
-						LOG.debug(
-								"Painting {} times with radius {} took a total of {}ms",
-								l + 1,
-								brushRadius.getAsDouble(),
-								t1 - t0
-						);
+						LOG.trace("Drag: paint at screen=({},{}) / start={}", x, y, position);
+						this.stroke.addSample(x, y);
 					}
 				} finally {
 					this.position.update(event);
@@ -255,7 +234,11 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 					}
 
 					try {
-						this.paintIntoThis.applyMask(this.mask, this.interval, FOREGROUND_CHECK);
+						final Interval interval = this.stroke.finish();
+						if (interval == null)
+							this.paintIntoThis.resetMasks();
+						else
+							this.paintIntoThis.applyMask(this.mask, interval, FOREGROUND_CHECK);
 					} catch (final Exception e) {
 						InvokeOnJavaFXApplicationThread.invoke(() ->
 								Exceptions.exceptionAlert("Exception when trying to submit mask.", e).show());
@@ -304,62 +287,10 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 		return this.isPainting;
 	}
 
-	private synchronized RandomAccessibleInterval<UnsignedLongType> getMaskIfIsPaintingOrNull()
-	{
-		return getIsPainting() && this.mask != null ? this.mask.mask : null;
-	}
-
-	private synchronized void paint(final double viewerX, final double viewerY)
-	{
-
-		LOG.debug( "At {} {}", viewerX, viewerY );
-
-		if (!this.isPainting) {
-			LOG.debug("Not currently activated for painting, returning without action");
-			return;
-		}
-
-		final RandomAccessibleInterval<UnsignedLongType> mask = getMaskIfIsPaintingOrNull();
-		if (mask == null) {
-			LOG.debug("Current mask is null, returning without action");
-			return;
-		}
-		final double radius = brushRadius.getAsDouble();
-		final Interval trackedInterval = Paint2D.paint(
-				Views.extendValue(mask, new UnsignedLongType(Label.INVALID)),
-				this.fillLabel,
-				viewerX,
-				viewerY,
-				radius,
-				brushDepth.getAsDouble(),
-				labelToViewerTransform,
-				globalToViewerTransform,
-				labelToGlobalTransform);
-		this.interval = this.interval == null
-				? trackedInterval
-				: Intervals.union(trackedInterval, this.interval);
-		++this.fillLabel;
-
-		final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * radius;
-		final long[] viewerMin = {
-				(long) Math.floor(viewerX - viewerRadius),
-				(long) Math.floor(viewerY - viewerRadius)
-		};
-		final long[] viewerMax = {
-				(long) Math.ceil(viewerX + viewerRadius),
-				(long) Math.ceil(viewerY + viewerRadius)
-		};
-
-		LOG.debug("Painted sphere with radius {} at ({}, {}): ({} {})", viewerRadius, viewerX, viewerY, viewerMin, viewerMax);
-
-		this.viewer.requestRepaint(viewerMin, viewerMax);
-
-	}
-
 	private void release() {
 		this.mask = null;
+		this.stroke = null;
 		this.isPainting = false;
-		this.interval = null;
 		this.paintIntoThis = null;
 	}
 
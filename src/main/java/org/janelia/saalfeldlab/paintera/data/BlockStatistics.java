@@ -0,0 +1,512 @@
+package org.janelia.saalfeldlab.paintera.data;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.data.n5.N5BlockVersions;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimum, maximum, and number of NaN voxels for each cell of a {@link CellGrid} over real valued data. Statistics
+ * are computed lazily in the background: {@link #get(long, double[])} never blocks and returns {@code false} for cells
+ * that were not computed yet, and schedules their computation. Consumers fall back to evaluating the data voxel by
+ * voxel for those cells. Statistics are stored sparsely in chunks of {@link #CHUNK_SIZE} cells that are allocated when
+ * the first of their cells is computed.
+ *
+ * Statistics can be persisted to a file, e.g. next to the dataset, so that they are computed only once. They are
+ * stored in single precision, rounded outwards, so that the stored range always contains the actual range. Each
+ * entry also stores a stamp of the cell data, e.g. the modification time of the block file: loaded entries are only
+ * used once their stamp was verified in the background, and are recomputed if the stamp changed.
+ */
+public class BlockStatistics
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String FILE_NAME = ".paintera-block-statistics";
+
+	private static final int MAGIC = 0x50425332; // PBS2
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final int ENTRY_BYTES = Long.BYTES + 2 * Float.BYTES + Integer.BYTES + Long.BYTES;
+
+	private static final byte UNKNOWN = 0;
+
+	private static final byte LOADED = 1;
+
+	private static final byte KNOWN = 2;
+
+	private static final long SAVE_DELAY_SECONDS = 5;
+
+	private static final ExecutorService COMPUTE = Executors.newFixedThreadPool(
+			Math.max(Runtime.getRuntime().availableProcessors() / 2, 1),
+			new NamedThreadFactory("block-statistics-%d", true));
+
+	private static final ScheduledExecutorService SAVE = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("block-statistics-save-%d", true));
+
+	private static final Map<DataSource<?, ?>, BlockStatistics[]> FOR_SOURCE = new WeakHashMap<>();
+
+	private static class Chunk
+	{
+
+		private final byte[] state = new byte[CHUNK_SIZE];
+
+		private final float[] min = new float[CHUNK_SIZE];
+
+		private final float[] max = new float[CHUNK_SIZE];
+
+		private final int[] nanCount = new int[CHUNK_SIZE];
+
+		private final long[] stamp = new long[CHUNK_SIZE];
+
+	}
+
+	private final RandomAccessibleInterval<? extends RealType<?>> data;
+
+	private final CellGrid grid;
+
+	private final long numCells;
+
+	private final Path file;
+
+	private final LongUnaryOperator stamps;
+
+	private final TLongObjectMap<Chunk> chunks = new TLongObjectHashMap<>();
+
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+	private boolean isSaveScheduled = false;
+
+	/**
+	 * @param data real valued data
+	 * @param grid cells for which statistics are collected
+	 * @param file persist statistics in this file. Set to {@code null} to keep statistics in memory only.
+	 */
+	public BlockStatistics(
+			final RandomAccessibleInterval<? extends RealType<?>> data,
+			final CellGrid grid,
+			final Path file)
+	{
+		this(data, grid, file, null);
+	}
+
+	/**
+	 * @param data   real valued data
+	 * @param grid   cells for which statistics are collected
+	 * @param file   persist statistics in this file. Set to {@code null} to keep statistics in memory only.
+	 * @param stamps stamp of the data of a cell by linear index, e.g. the modification time of its block. Persisted
+	 *               statistics of a cell are discarded if its stamp changed. Set to {@code null} if the data never
+	 *               changes.
+	 */
+	public BlockStatistics(
+			final RandomAccessibleInterval<? extends RealType<?>> data,
+			final CellGrid grid,
+			final Path file,
+			final LongUnaryOperator stamps)
+	{
+		this.data = data;
+		this.grid = grid;
+		this.numCells = Intervals.numElements(grid.getGridDimensions());
+		this.file = file;
+		this.stamps = stamps;
+		if (file != null)
+			load();
+	}
+
+	/**
+	 * Statistics for all levels of {@code source}, shared by all callers. For file system N5 sources, statistics of
+	 * each scale level dataset are persisted in {@link #FILE_NAME} in the dataset directory if it is writable, stamped
+	 * with the modification times of the blocks.
+	 */
+	public static synchronized <D extends RealType<D>> BlockStatistics[] forSource(final DataSource<D, ?> source)
+	{
+		BlockStatistics[] statistics = FOR_SOURCE.get(source);
+		if (statistics == null)
+		{
+			final Path[] directories = persistentDirectories(source);
+			statistics = new BlockStatistics[source.getNumMipmapLevels()];
+			for (int level = 0; level < statistics.length; ++level)
+			{
+				final CellGrid grid = source.getGrid(level);
+				final Path directory = level < directories.length ? directories[level] : null;
+				statistics[level] = new BlockStatistics(
+						source.getDataSource(0, level),
+						grid,
+						directory == null ? null : directory.resolve(FILE_NAME),
+						directory == null ? null : blockFileStamps(directory, grid));
+			}
+			FOR_SOURCE.put(source, statistics);
+		}
+		return statistics;
+	}
+
+	public CellGrid getGrid()
+	{
+		return this.grid;
+	}
+
+	/**
+	 * Get statistics of {@code cell} if computed, request computation otherwise.
+	 *
+	 * @param cell         linear index of cell in {@link #getGrid() grid}
+	 * @param minMaxNaNCount  receives minimum and maximum of all non-NaN voxels, and number of NaN voxels of {@code cell}.
+	 *                     If all voxels are NaN, minimum and maximum are positive and negative infinity, respectively.
+	 * @return {@code true} if statistics of {@code cell} are available
+	 */
+	public boolean get(final long cell, final double[] minMaxNaNCount)
+	{
+		synchronized (this)
+		{
+			final Chunk chunk = chunks.get(cell / CHUNK_SIZE);
+			final int index = (int) (cell % CHUNK_SIZE);
+			if (chunk != null && chunk.state[index] == KNOWN)
+			{
+				minMaxNaNCount[0] = chunk.min[index];
+				minMaxNaNCount[1] = chunk.max[index];
+				minMaxNaNCount[2] = chunk.nanCount[index];
+				return true;
+			}
+		}
+		request(cell);
+		return false;
+	}
+
+	/**
+	 * Get combined statistics of all cells that intersect {@code interval}, request computation of unknown cells.
+	 *
+	 * @param interval    in voxel coordinates of the data
+	 * @param minMaxNaNCount receives minimum and maximum of all non-NaN voxels, and number of NaN voxels of all cells
+	 *                    that intersect {@code interval}
+	 * @return {@code true} if statistics of all cells that intersect {@code interval} are available
+	 */
+	public boolean get(final Interval interval, final double[] minMaxNaNCount)
+	{
+		final Interval clipped = Intervals.intersect(interval, new FinalInterval(grid.getImgDimensions()));
+		if (Intervals.isEmpty(clipped))
+		{
+			minMaxNaNCount[0] = Double.POSITIVE_INFINITY;
+			minMaxNaNCount[1] = Double.NEGATIVE_INFINITY;
+			minMaxNaNCount[2] = 0;
+			return true;
+		}
+
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[n];
+		final long[] cellMax = new long[n];
+		grid.getCellPosition(Intervals.minAsLongArray(clipped), cellMin);
+		grid.getCellPosition(Intervals.maxAsLongArray(clipped), cellMax);
+
+		final double[] cellStatistics = new double[3];
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		long numNaN = 0;
+		boolean isKnown = true;
+		final long[] cellPosition = new long[n];
+		final long[] cellRange = new long[n];
+		Arrays.setAll(cellRange, d -> cellMax[d] - cellMin[d] + 1);
+		for (long i = 0, numCells = Intervals.numElements(cellRange); i < numCells; ++i)
+		{
+			IntervalIndexer.indexToPositionWithOffset(i, cellRange, cellMin, cellPosition);
+			if (!get(IntervalIndexer.positionToIndex(cellPosition, grid.getGridDimensions()), cellStatistics))
+				isKnown = false;
+			else
+			{
+				min = Math.min(min, cellStatistics[0]);
+				max = Math.max(max, cellStatistics[1]);
+				numNaN += (long) cellStatistics[2];
+			}
+		}
+		minMaxNaNCount[0] = min;
+		minMaxNaNCount[1] = max;
+		minMaxNaNCount[2] = numNaN;
+		return isKnown;
+	}
+
+	/**
+	 * Compute statistics of {@code cell} in the background unless they are known or already being computed.
+	 */
+	public void request(final long cell)
+	{
+		if (pending.add(cell))
+			COMPUTE.submit(() -> {
+				try
+				{
+					compute(cell);
+				} catch (final RuntimeException e)
+				{
+					LOG.debug("Unable to compute statistics for cell {} of grid {}: {}", cell, grid, e.getMessage());
+				} finally
+				{
+					pending.remove(cell);
+				}
+			});
+	}
+
+	/**
+	 * Compute statistics of {@code cell} in the calling thread unless they are known. Loaded statistics are only
+	 * recomputed if the stamp of {@code cell} changed.
+	 */
+	public void compute(final long cell)
+	{
+		final int index = (int) (cell % CHUNK_SIZE);
+		synchronized (this)
+		{
+			final Chunk chunk = chunks.get(cell / CHUNK_SIZE);
+			if (chunk != null && chunk.state[index] == KNOWN)
+				return;
+		}
+
+		// stamp before reading the data: statistics of data modified while computing are recomputed next time
+		final long stamp = stamps == null ? 0 : stamps.applyAsLong(cell);
+		synchronized (this)
+		{
+			final Chunk chunk = chunks.get(cell / CHUNK_SIZE);
+			if (chunk != null && chunk.state[index] == LOADED && chunk.stamp[index] == stamp)
+			{
+				chunk.state[index] = KNOWN;
+				return;
+			}
+		}
+
+		final long start = System.nanoTime();
+		final int n = grid.numDimensions();
+		final long[] cellPosition = new long[n];
+		final long[] cellMin = new long[n];
+		final int[] cellDimensions = new int[n];
+		IntervalIndexer.indexToPosition(cell, grid.getGridDimensions(), cellPosition);
+		grid.getCellDimensions(cellPosition, cellMin, cellDimensions);
+		final long[] cellMax = new long[n];
+		Arrays.setAll(cellMax, d -> cellMin[d] + cellDimensions[d] - 1);
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		int numNaN = 0;
+		final Cursor<? extends RealType<?>> cursor = Views.flatIterable(Views.interval(data, cellMin, cellMax)).cursor();
+		while (cursor.hasNext())
+		{
+			final double value = cursor.next().getRealDouble();
+			if (Double.isNaN(value))
+			{
+				++numNaN;
+				continue;
+			}
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		synchronized (this)
+		{
+			put(cell, KNOWN, roundDown(min), roundUp(max), numNaN, stamp);
+			scheduleSave();
+		}
+		MetricRegistry.global().timer("statistics.compute").updateSince(start);
+		MetricRegistry.global().counter("statistics.blocksComputed").inc();
+	}
+
+	private synchronized void put(final long cell, final byte state, final float min, final float max, final int nanCount, final long stamp)
+	{
+		Chunk chunk = chunks.get(cell / CHUNK_SIZE);
+		if (chunk == null)
+		{
+			chunk = new Chunk();
+			chunks.put(cell / CHUNK_SIZE, chunk);
+		}
+		final int index = (int) (cell % CHUNK_SIZE);
+		chunk.state[index] = state;
+		chunk.min[index] = min;
+		chunk.max[index] = max;
+		chunk.nanCount[index] = nanCount;
+		chunk.stamp[index] = stamp;
+	}
+
+	private synchronized void scheduleSave()
+	{
+		if (file == null || isSaveScheduled)
+			return;
+		isSaveScheduled = true;
+		SAVE.schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Write all known statistics to the file passed at construction, if any. Loaded statistics that were not verified
+	 * yet are written as loaded.
+	 */
+	public void save()
+	{
+		if (file == null)
+			return;
+		final ByteBuffer buffer;
+		synchronized (this)
+		{
+			isSaveScheduled = false;
+			int numEntries = 0;
+			for (final Chunk chunk : chunks.valueCollection())
+				for (final byte state : chunk.state)
+					if (state != UNKNOWN)
+						++numEntries;
+			final int n = grid.numDimensions();
+			buffer = ByteBuffer
+					.allocate(3 * Integer.BYTES + n * (Long.BYTES + Integer.BYTES) + numEntries * ENTRY_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(n);
+			for (int d = 0; d < n; ++d)
+				buffer.putLong(grid.imgDimension(d)).putInt(grid.cellDimension(d));
+			buffer.putInt(numEntries);
+			for (final TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				final Chunk chunk = it.value();
+				for (int index = 0; index < CHUNK_SIZE; ++index)
+					if (chunk.state[index] != UNKNOWN)
+						buffer
+								.putLong(it.key() * CHUNK_SIZE + index)
+								.putFloat(chunk.min[index])
+								.putFloat(chunk.max[index])
+								.putInt(chunk.nanCount[index])
+								.putLong(chunk.stamp[index]);
+			}
+		}
+
+		Path tmp = null;
+		try
+		{
+			tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			Files.write(tmp, buffer.array());
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOG.debug("Saved block statistics for grid {} to {}", grid, file);
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to save block statistics to {}: {}", file, e.getMessage());
+			if (tmp != null)
+				try
+				{
+					Files.deleteIfExists(tmp);
+				} catch (final IOException ignored)
+				{
+				}
+		}
+	}
+
+	private synchronized void load()
+	{
+		try
+		{
+			final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+			final int n = grid.numDimensions();
+			if (buffer.getInt() != MAGIC || buffer.getInt() != n)
+				throw new IOException("Not a block statistics file");
+			for (int d = 0; d < n; ++d)
+				if (buffer.getLong() != grid.imgDimension(d) || buffer.getInt() != grid.cellDimension(d))
+					throw new IOException("Grid does not match " + grid);
+			final int numEntries = buffer.getInt();
+			if (numEntries < 0 || buffer.remaining() != (long) numEntries * ENTRY_BYTES)
+				throw new IOException("Unexpected number of cells");
+			// without stamps, data never changes and loaded statistics can be used right away
+			final byte state = stamps == null ? KNOWN : LOADED;
+			for (int entry = 0; entry < numEntries; ++entry)
+			{
+				final long cell = buffer.getLong();
+				if (cell < 0 || cell >= numCells)
+					throw new IOException("Cell " + cell + " out of range");
+				put(cell, state, buffer.getFloat(), buffer.getFloat(), buffer.getInt(), buffer.getLong());
+			}
+			LOG.debug("Loaded block statistics of {} cells for grid {} from {}", numEntries, grid, file);
+		} catch (final NoSuchFileException e)
+		{
+			LOG.debug("No block statistics in {}", file);
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.debug("Ignoring block statistics in {}: {}", file, e.getMessage());
+			chunks.clear();
+		}
+	}
+
+	private static float roundDown(final double value)
+	{
+		final float rounded = (float) value;
+		return rounded > value ? Math.nextDown(rounded) : rounded;
+	}
+
+	private static float roundUp(final double value)
+	{
+		final float rounded = (float) value;
+		return rounded < value ? Math.nextUp(rounded) : rounded;
+	}
+
+	private static Path[] persistentDirectories(final DataSource<?, ?> source)
+	{
+		if (!(source instanceof N5DataSource<?, ?>) || !(((N5DataSource<?, ?>) source).meta() instanceof N5FSMeta))
+			return new Path[0];
+		final N5DataSource<?, ?> n5Source = (N5DataSource<?, ?>) source;
+		try
+		{
+			final String basePath = ((N5FSMeta) n5Source.meta()).basePath();
+			return Arrays
+					.stream(N5BlockVersions.levelDatasets(n5Source.reader(), n5Source.dataset()))
+					.map(dataset -> Paths.get(basePath, dataset))
+					.map(directory -> Files.isWritable(directory) ? directory : null)
+					.toArray(Path[]::new);
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to determine scale level datasets of {}: {}", n5Source.dataset(), e.getMessage());
+			return new Path[0];
+		}
+	}
+
+	// modification time of the block file of a cell in an N5 file system dataset, -1 if the block does not exist
+	private static LongUnaryOperator blockFileStamps(final Path datasetDirectory, final CellGrid grid)
+	{
+		final long[] gridDimensions = grid.getGridDimensions();
+		return cell -> {
+			final long[] cellPosition = new long[gridDimensions.length];
+			IntervalIndexer.indexToPosition(cell, gridDimensions, cellPosition);
+			Path block = datasetDirectory;
+			for (final long p : cellPosition)
+				block = block.resolve(Long.toString(p));
+			try
+			{
+				return Files.getLastModifiedTime(block).toMillis();
+			} catch (final IOException e)
+			{
+				return -1;
+			}
+		};
+	}
+
+}
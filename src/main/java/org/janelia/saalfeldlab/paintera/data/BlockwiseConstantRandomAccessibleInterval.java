@@ -0,0 +1,139 @@
+package org.janelia.saalfeldlab.paintera.data;
+
+import java.util.function.LongFunction;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * View of {@code source} that returns a constant for all voxels of a cell if the value of the cell is known to be
+ * constant, without accessing {@code source}. The constant is looked up once whenever a {@link RandomAccess} enters a
+ * cell.
+ *
+ * @param <T> pixel type
+ */
+public class BlockwiseConstantRandomAccessibleInterval<T> extends AbstractInterval implements RandomAccessibleInterval<T>
+{
+
+	private final RandomAccessibleInterval<T> source;
+
+	private final CellGrid grid;
+
+	private final LongFunction<T> constantForCell;
+
+	/**
+	 * @param source          data, min must be at the origin
+	 * @param grid            cells of {@code source}
+	 * @param constantForCell constant value of the cell at a linear index in {@code grid}, or {@code null} if not
+	 *                        constant or unknown
+	 */
+	public BlockwiseConstantRandomAccessibleInterval(
+			final RandomAccessibleInterval<T> source,
+			final CellGrid grid,
+			final LongFunction<T> constantForCell)
+	{
+		super(source);
+		this.source = source;
+		this.grid = grid;
+		this.constantForCell = constantForCell;
+	}
+
+	@Override
+	public RandomAccess<T> randomAccess()
+	{
+		return new BlockwiseConstantRandomAccess(source.randomAccess());
+	}
+
+	@Override
+	public RandomAccess<T> randomAccess(final Interval interval)
+	{
+		return new BlockwiseConstantRandomAccess(source.randomAccess(interval));
+	}
+
+	private class BlockwiseConstantRandomAccess extends Point implements RandomAccess<T>
+	{
+
+		private final RandomAccess<T> sourceAccess;
+
+		private final long[] cellPosition;
+
+		private final long[] cellMin;
+
+		private final long[] cellMax;
+
+		private final int[] cellDimensions;
+
+		private boolean isInCell = false;
+
+		private T constant = null;
+
+		private BlockwiseConstantRandomAccess(final RandomAccess<T> sourceAccess)
+		{
+			super(sourceAccess.numDimensions());
+			this.sourceAccess = sourceAccess;
+			this.cellPosition = new long[n];
+			this.cellMin = new long[n];
+			this.cellMax = new long[n];
+			this.cellDimensions = new int[n];
+		}
+
+		@Override
+		public T get()
+		{
+			if (!isInCurrentCell())
+				enterCell();
+			if (constant != null)
+				return constant;
+			sourceAccess.setPosition(this);
+			return sourceAccess.get();
+		}
+
+		private boolean isInCurrentCell()
+		{
+			if (!isInCell)
+				return false;
+			for (int d = 0; d < n; ++d)
+				if (position[d] < cellMin[d] || position[d] > cellMax[d])
+					return false;
+			return true;
+		}
+
+		private void enterCell()
+		{
+			for (int d = 0; d < n; ++d)
+				if (position[d] < 0 || position[d] >= grid.imgDimension(d))
+				{
+					isInCell = false;
+					constant = null;
+					return;
+				}
+			grid.getCellPosition(position, cellPosition);
+			grid.getCellDimensions(cellPosition, cellMin, cellDimensions);
+			for (int d = 0; d < n; ++d)
+				cellMax[d] = cellMin[d] + cellDimensions[d] - 1;
+			constant = constantForCell.apply(IntervalIndexer.positionToIndex(cellPosition, grid.getGridDimensions()));
+			isInCell = true;
+		}
+
+		@Override
+		public BlockwiseConstantRandomAccess copy()
+		{
+			final BlockwiseConstantRandomAccess copy = new BlockwiseConstantRandomAccess(sourceAccess.copyRandomAccess());
+			copy.setPosition(this);
+			return copy;
+		}
+
+		@Override
+		public BlockwiseConstantRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+
+	}
+
+}
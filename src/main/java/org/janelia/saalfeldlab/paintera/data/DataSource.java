@@ -61,6 +61,16 @@ public interface DataSource<D, T> extends Source<T>, InvalidateAll
 		return targetScale;
 	}
 
+	/**
+	 * Invalidate cached blocks, e.g. after they were modified by another process. Sources that cannot invalidate
+	 * individual blocks invalidate all blocks.
+	 *
+	 * @param blocksByLevel linear indices of blocks in the cell grid of each level, highest resolution first
+	 */
+	default void invalidateBlocks(final long[][] blocksByLevel) {
+		invalidateAll();
+	}
+
 	default CellGrid[] getGrids() {
 		return IntStream
 				.range(0, getNumMipmapLevels())
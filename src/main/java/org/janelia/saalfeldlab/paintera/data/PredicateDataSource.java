@@ -1,10 +1,14 @@
 package org.janelia.saalfeldlab.paintera.data;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Optional;
 import java.util.function.Predicate;
 
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.BooleanType;
 import net.imglib2.type.logic.BoolType;
 import org.slf4j.Logger;
@@ -14,11 +18,59 @@ public class PredicateDataSource<D, T extends Volatile<D>, P extends Predicate<D
 		extends ConvertedDataSource<D, T, BoolType, Volatile<BoolType>>
 {
 
+	/**
+	 * Evaluates a predicate for all voxels of a cell at once, e.g. from {@link BlockStatistics}.
+	 */
+	public interface CellPredicate
+	{
+
+		/**
+		 *
+		 * @return cells at {@code level}
+		 */
+		CellGrid getGrid(int level);
+
+		/**
+		 *
+		 * @param level scale level
+		 * @param cell linear index of cell in {@link #getGrid(int) grid} of {@code level}
+		 * @return value of the predicate for all voxels of {@code cell}, or empty if not constant or unknown. Must not
+		 * block.
+		 */
+		Optional<Boolean> test(int level, long cell);
+
+		/**
+		 *
+		 * @param level scale level
+		 * @param interval in voxel coordinates of {@code level}
+		 * @return value of the predicate for all voxels in {@code interval}, or empty if not constant or unknown. Must
+		 * not block.
+		 */
+		Optional<Boolean> test(int level, Interval interval);
+
+	}
+
 	private final P predicate;
 
+	private final CellPredicate cellPredicate;
+
+	public PredicateDataSource(
+			final DataSource<D, T> source,
+			final P predicate,
+			final String name)
+	{
+		this(source, predicate, null, name);
+	}
+
+	/**
+	 *
+	 * @param cellPredicate evaluates {@code predicate} for whole cells. Cells for which it is constant are filled
+	 *                      without accessing {@code source}. Set to {@code null} to always evaluate voxel by voxel.
+	 */
 	public PredicateDataSource(
 			final DataSource<D, T> source,
 			final P predicate,
+			final CellPredicate cellPredicate,
 			final String name)
 	{
 		super(
@@ -32,6 +84,7 @@ public class PredicateDataSource<D, T extends Volatile<D>, P extends Predicate<D
 				name
 		     );
 		this.predicate = predicate;
+		this.cellPredicate = cellPredicate;
 	}
 
 	public P getPredicate()
@@ -39,6 +92,40 @@ public class PredicateDataSource<D, T extends Volatile<D>, P extends Predicate<D
 		return predicate;
 	}
 
+	/**
+	 *
+	 * @return value of the predicate for all voxels in {@code interval} at {@code level}, or empty if not constant or
+	 * unknown
+	 */
+	public Optional<Boolean> test(final int level, final Interval interval)
+	{
+		return cellPredicate == null ? Optional.empty() : cellPredicate.test(level, interval);
+	}
+
+	@Override
+	public RandomAccessibleInterval<Volatile<BoolType>> getSource(final int t, final int level)
+	{
+		final RandomAccessibleInterval<Volatile<BoolType>> source = super.getSource(t, level);
+		if (cellPredicate == null)
+			return source;
+		return new BlockwiseConstantRandomAccessibleInterval<>(
+				source,
+				cellPredicate.getGrid(level),
+				cell -> cellPredicate.test(level, cell).map(b -> new Volatile<>(new BoolType(b), true)).orElse(null));
+	}
+
+	@Override
+	public RandomAccessibleInterval<BoolType> getDataSource(final int t, final int level)
+	{
+		final RandomAccessibleInterval<BoolType> source = super.getDataSource(t, level);
+		if (cellPredicate == null)
+			return source;
+		return new BlockwiseConstantRandomAccessibleInterval<>(
+				source,
+				cellPredicate.getGrid(level),
+				cell -> cellPredicate.test(level, cell).map(BoolType::new).orElse(null));
+	}
+
 	public static class PredicateConverter<T, B extends BooleanType<B>> implements Converter<T, B>
 	{
 		private final Predicate<T> predicate;
@@ -12,6 +12,7 @@ import net.imglib2.util.Triple;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
+import org.janelia.saalfeldlab.paintera.cache.InvalidateBlocks;
 import org.janelia.saalfeldlab.util.n5.ImagesWithInvalidate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +35,8 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 
 	private final InvalidateAll invalidateAll;
 
+	private final InvalidateBlocks invalidateBlocks;
+
 	private final Function<Interpolation, InterpolatorFactory<D, RandomAccessible<D>>> dataInterpolation;
 
 	private final Function<Interpolation, InterpolatorFactory<T, RandomAccessible<T>>> interpolation;
@@ -53,11 +56,18 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 
 		public final InvalidateAll invalidateAll;
 
+		public final InvalidateBlocks invalidateBlocks;
+
 		public DataWithInvalidate(RandomAccessibleInterval<D>[] data, RandomAccessibleInterval<T>[] viewData, AffineTransform3D[] transforms, InvalidateAll invalidateAll) {
+			this(data, viewData, transforms, invalidateAll, null);
+		}
+
+		public DataWithInvalidate(RandomAccessibleInterval<D>[] data, RandomAccessibleInterval<T>[] viewData, AffineTransform3D[] transforms, InvalidateAll invalidateAll, InvalidateBlocks invalidateBlocks) {
 			this.data = data;
 			this.viewData = viewData;
 			this.transforms = transforms;
 			this.invalidateAll = invalidateAll;
+			this.invalidateBlocks = invalidateBlocks;
 		}
 	}
 
@@ -66,7 +76,17 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 			final Function<Interpolation, InterpolatorFactory<D, RandomAccessible<D>>> dataInterpolation,
 			final Function<Interpolation, InterpolatorFactory<T, RandomAccessible<T>>> interpolation,
 			final String name) {
-		this(dataWithInvalidate.data, dataWithInvalidate.viewData, dataWithInvalidate.transforms, dataWithInvalidate.invalidateAll, dataInterpolation, interpolation, name);
+		this(
+				dataWithInvalidate.data,
+				dataWithInvalidate.viewData,
+				dataWithInvalidate.transforms,
+				dataWithInvalidate.invalidateAll,
+				dataWithInvalidate.invalidateBlocks,
+				dataInterpolation,
+				interpolation,
+				() -> Util.getTypeFromInterval(dataWithInvalidate.data[0]).createVariable(),
+				() -> Util.getTypeFromInterval(dataWithInvalidate.viewData[0]).createVariable(),
+				name);
 	}
 
 	public RandomAccessibleIntervalDataSource(
@@ -129,11 +149,42 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 			final Supplier<D> dataTypeSupplier,
 			final Supplier<T> typeSupplier,
 			final String name) {
+		this(
+				dataSources,
+				sources,
+				mipmapTransforms,
+				invalidateAll,
+				null,
+				dataInterpolation,
+				interpolation,
+				dataTypeSupplier,
+				typeSupplier,
+				name
+		    );
+	}
+
+	/**
+	 *
+	 * @param invalidateBlocks invalidate individual blocks. If {@code null}, {@link #invalidateBlocks(long[][])}
+	 *                         invalidates all blocks.
+	 */
+	public RandomAccessibleIntervalDataSource(
+			final RandomAccessibleInterval<D>[] dataSources,
+			final RandomAccessibleInterval<T>[] sources,
+			final AffineTransform3D[] mipmapTransforms,
+			final InvalidateAll invalidateAll,
+			final InvalidateBlocks invalidateBlocks,
+			final Function<Interpolation, InterpolatorFactory<D, RandomAccessible<D>>> dataInterpolation,
+			final Function<Interpolation, InterpolatorFactory<T, RandomAccessible<T>>> interpolation,
+			final Supplier<D> dataTypeSupplier,
+			final Supplier<T> typeSupplier,
+			final String name) {
 		super();
 		this.mipmapTransforms = mipmapTransforms;
 		this.dataSources = dataSources;
 		this.sources = sources;
 		this.invalidateAll = invalidateAll;
+		this.invalidateBlocks = invalidateBlocks;
 		this.dataInterpolation = dataInterpolation;
 		this.interpolation = interpolation;
 		this.dataTypeSupplier = dataTypeSupplier;
@@ -151,7 +202,14 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 		RandomAccessibleInterval<T>[] vdata = Stream.of(imagesWithInvalidate).map(i -> i.vdata).toArray(RandomAccessibleInterval[]::new);
 		AffineTransform3D[] transforms = Stream.of(imagesWithInvalidate).map(i -> i.transform).toArray(AffineTransform3D[]::new);
 		InvalidateAll invalidateAll = () -> Stream.of(imagesWithInvalidate).forEach( i -> {i.invalidate.invalidateAll(); i.vinvalidate.invalidateAll();});
-		return new RandomAccessibleIntervalDataSource.DataWithInvalidate(data, vdata, transforms, invalidateAll);
+		InvalidateBlocks invalidateBlocks = blocksByLevel -> {
+			for (int level = 0; level < Math.min(blocksByLevel.length, imagesWithInvalidate.length); ++level)
+				for (final long block : blocksByLevel[level]) {
+					imagesWithInvalidate[level].invalidate.invalidate(block);
+					imagesWithInvalidate[level].vinvalidate.invalidate(block);
+				}
+		};
+		return new RandomAccessibleIntervalDataSource.DataWithInvalidate(data, vdata, transforms, invalidateAll, invalidateBlocks);
 	}
 
 	@Override
@@ -251,4 +309,12 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 	public void invalidateAll() {
 		this.invalidateAll.invalidateAll();
 	}
+
+	@Override
+	public void invalidateBlocks(final long[][] blocksByLevel) {
+		if (this.invalidateBlocks == null)
+			invalidateAll();
+		else
+			this.invalidateBlocks.invalidateBlocks(blocksByLevel);
+	}
 }
@@ -10,7 +10,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.DoubleStream;
@@ -24,10 +26,13 @@ import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotClearCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotPersist;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.CommitConflict;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas.BlockDiff;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.data.n5.BlockSpec;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -169,6 +174,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private final PersistCanvas persistCanvas;
 
+	private final Consumer<long[][]> backgroundModifiedListener;
+
 	private final StringProperty cacheDirectory = new SimpleStringProperty();
 
 	private final Supplier<String> nextCacheDirectory;
@@ -189,6 +196,12 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private final List<Runnable> canvasClearedListeners = new ArrayList<>();
 
+	private final List<Runnable> canvasRestoredListeners = new ArrayList<>();
+
+	private final List<Consumer<long[][]>> blocksModifiedListeners = new CopyOnWriteArrayList<>();
+
+	private final PaintHistory paintHistory = PaintHistory.fromConfig();
+
 	private final BooleanProperty showCanvasOverBackground = new SimpleBooleanProperty(this, "show canvas", true);
 
 	public MaskedSource(
@@ -260,6 +273,12 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		this.affectedBlocksByLabel = Stream.generate(HashMap::new).limit(this.canvases.length).toArray(Map[]::new);
 
+		this.backgroundModifiedListener = blocksByLevel -> {
+			this.source.invalidateBlocks(blocksByLevel);
+			this.blocksModifiedListeners.forEach(listener -> listener.accept(blocksByLevel));
+		};
+		this.persistCanvas.addBackgroundModifiedListener(this.backgroundModifiedListener);
+
 		setMasksConstant();
 
 	}
@@ -420,6 +439,17 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 			final TLongSet affectedBlocks = affectedBlocks(mask.mask, canvas.getCellGrid(), paintedInterval);
 
+			// record pre-image of all blocks that are touched by painting and propagation, for undo
+			final TLongSet[] affectedBlocksPerLevel = IntStream
+					.range(0, getNumMipmapLevels())
+					.mapToObj(level -> this.scaleBlocksToLevel(affectedBlocks, maskInfo.level, level))
+					.toArray(TLongSet[]::new);
+			final PaintHistory.Entry preImage = PaintHistory.snapshot(
+					maskInfo.value.getIntegerLong(),
+					dataCanvases,
+					canvasGrids(),
+					affectedBlocksPerLevel);
+
 			paintAffectedPixels(
 					affectedBlocks,
 					Converters.convert(
@@ -446,6 +476,10 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					key -> new TLongHashSet()
 			                                                          ).addAll(affectedBlocks);
 			LOG.debug("Added affected block: {}", affectedBlocksByLabel[maskInfo.level]);
+			final TLongSet newlyPaintedBlocks = new TLongHashSet(paintedBlocksAtHighestResolution);
+			newlyPaintedBlocks.removeAll(this.affectedBlocks);
+			if (!newlyPaintedBlocks.isEmpty())
+				this.persistCanvas.blocksPainted(newlyPaintedBlocks.toArray());
 			this.affectedBlocks.addAll(paintedBlocksAtHighestResolution);
 
 			propagationExecutor.submit(() -> {
@@ -458,6 +492,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 						acceptAsPainted
 					);
 				setMasksConstant();
+				paintHistory.push(preImage);
 				synchronized (this)
 				{
 					LOG.debug("Done applying mask!");
@@ -469,6 +504,89 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	}
 
+	/**
+	 * Restore the canvas blocks touched by the most recently applied mask to their state before the mask was applied.
+	 * Only these blocks are restored, on all mipmap levels, so the time it takes is proportional to the size of the
+	 * painted area. Restoring happens asynchronously, listeners added through
+	 * {@link #addOnCanvasRestoredListener(Runnable)} are notified when it is done.
+	 *
+	 * @return {@code false} if there is nothing to undo
+	 * @throws MaskInUse if a mask is in use or being applied, or the canvas is being persisted
+	 */
+	public boolean undo() throws MaskInUse
+	{
+		return restoreFromHistory(true);
+	}
+
+	/**
+	 * Re-apply the most recently undone mask, see {@link #undo()}.
+	 *
+	 * @return {@code false} if there is nothing to redo
+	 * @throws MaskInUse if a mask is in use or being applied, or the canvas is being persisted
+	 */
+	public boolean redo() throws MaskInUse
+	{
+		return restoreFromHistory(false);
+	}
+
+	public boolean canUndo()
+	{
+		return paintHistory.canUndo();
+	}
+
+	public boolean canRedo()
+	{
+		return paintHistory.canRedo();
+	}
+
+	private boolean restoreFromHistory(final boolean undo) throws MaskInUse
+	{
+		final PaintHistory.Entry entry;
+		synchronized (this)
+		{
+			final boolean canRestore = !isCreatingMask && currentMask == null && !isApplyingMask.get() && !isPersisting;
+			LOG.debug("Can {}? {}", undo ? "undo" : "redo", canRestore);
+			if (!canRestore)
+				throw new MaskInUse("Busy, cannot " + (undo ? "undo" : "redo") + " painting.");
+			entry = undo ? paintHistory.popUndo() : paintHistory.popRedo();
+			if (entry == null)
+				return false;
+			this.isApplyingMask.set(true);
+		}
+
+		propagationExecutor.submit(() -> {
+			try
+			{
+				final long start = System.nanoTime();
+				final CellGrid[] grids = canvasGrids();
+				final PaintHistory.Entry current = PaintHistory.snapshot(entry, dataCanvases, grids);
+				PaintHistory.restore(entry, dataCanvases, grids);
+				if (undo)
+					paintHistory.pushRedo(current);
+				else
+					paintHistory.pushUndo(current);
+				MetricRegistry.global().timer("paint.history.restore").updateSince(start);
+				LOG.debug("{} painting of label {} in {} blocks", undo ? "Undid" : "Redid", entry.label, entry.blocks().size());
+			} catch (final RuntimeException e)
+			{
+				LOG.error("Unable to {} painting of label {}", undo ? "undo" : "redo", entry.label, e);
+			} finally
+			{
+				synchronized (this)
+				{
+					this.isApplyingMask.set(false);
+				}
+			}
+			this.canvasRestoredListeners.forEach(Runnable::run);
+		});
+		return true;
+	}
+
+	private CellGrid[] canvasGrids()
+	{
+		return Arrays.stream(this.dataCanvases).map(AbstractCellImg::getCellGrid).toArray(CellGrid[]::new);
+	}
+
 	private void setMasksConstant()
 	{
 		for (int level = 0; level < getNumMipmapLevels(); ++level)
@@ -602,18 +720,26 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					throw new RuntimeException(e);
 				}
 				try {
-					states.add("Persisting painted labels...");
-					final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = this.persistCanvas.persistCanvas(canvas, affectedBlocks);
-					states.set(states.size() - 1, "Persisting painted labels...   Done");
-					if (this.persistCanvas.supportsLabelBlockLookupUpdate()) {
-						states.add("Updating label-to-block lookup...");
-						this.persistCanvas.updateLabelBlockLookup(blockDiffs);
-						states.set(states.size() - 1, "Updating label-to-block lookup...   Done");
-					}
+					final String persistingState = this.persistCanvas.supportsLabelBlockLookupUpdate()
+							? "Persisting painted labels and updating label-to-block lookup..."
+							: "Persisting painted labels...";
+					states.add(persistingState);
+					final List<TLongObjectMap<BlockDiff>> blockDiffs = this.persistCanvas.commit(canvas, affectedBlocks);
+					states.set(states.size() - 1, persistingState + "   Done");
 					states.add("Clearing canvases...");
 					clearCanvases();
 					states.set(states.size() - 1, "Clearing canvases...   Done");
 					this.source.invalidateAll();
+					final long[][] committedBlocks = blockDiffs.stream().map(TLongObjectMap::keys).toArray(long[][]::new);
+					this.blocksModifiedListeners.forEach(listener -> listener.accept(committedBlocks));
+				}
+				catch (final CommitConflict e)
+				{
+					// keep the canvas for another attempt after the modified background was reviewed
+					this.affectedBlocks.addAll(affectedBlocks);
+					this.source.invalidateAll();
+					caughtException = e;
+					throw new RuntimeException("Error while trying to persist.", e);
 				}
 				catch (UnableToPersistCanvas | UnableToUpdateLabelBlockLookup e)
 				{
@@ -1262,6 +1388,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.cacheDirectory.set(this.nextCacheDirectory.get());
 		this.affectedBlocks.clear();
 		Arrays.stream(this.affectedBlocksByLabel).forEach(Map::clear);
+		this.paintHistory.clear();
 		this.canvasClearedListeners.forEach(Runnable::run);
 	}
 
@@ -1271,6 +1398,18 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.source.invalidateAll();
 	}
 
+	@Override
+	public void invalidateBlocks(final long[][] blocksByLevel) {
+		this.source.invalidateBlocks(blocksByLevel);
+	}
+
+	/**
+	 * Stop listening for modifications of the background by other processes. Call when this source is removed.
+	 */
+	public void stopWatchingBackground() {
+		this.persistCanvas.removeBackgroundModifiedListener(this.backgroundModifiedListener);
+	}
+
 	private static class CanvasBaseDirChangeListener implements ChangeListener<String>
 	{
 
@@ -1379,6 +1518,25 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.canvasClearedListeners.add(listener);
 	}
 
+	/**
+	 * @param listener notified after canvas blocks were restored by {@link #undo()} or {@link #redo()}, on the
+	 * propagation thread
+	 */
+	public void addOnCanvasRestoredListener(final Runnable listener)
+	{
+		this.canvasRestoredListeners.add(listener);
+	}
+
+	/**
+	 * @param listener notified with the linear indices of modified blocks for each scale level, highest resolution
+	 * first, after the canvas was committed or when the background was modified by another process. Not called on the
+	 * JavaFX application thread.
+	 */
+	public void addOnBlocksModifiedListener(final Consumer<long[][]> listener)
+	{
+		this.blocksModifiedListeners.add(listener);
+	}
+
 	Map<Long, long[]>[] getAffectedBlocksById()
 	{
 		@SuppressWarnings("unchecked") final Map<Long, long[]>[] maps = new HashMap[this.affectedBlocksByLabel.length];
@@ -1404,6 +1562,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		assert this.affectedBlocksByLabel.length == blocksById.length;
 
 		LOG.debug("Affected blocks: {} to add: {}", this.affectedBlocks, blocks);
+		this.persistCanvas.blocksPainted(blocks);
 		this.affectedBlocks.addAll(blocks);
 		LOG.debug("Affected blocks: {}", this.affectedBlocks);
 
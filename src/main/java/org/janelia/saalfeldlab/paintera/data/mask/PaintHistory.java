@@ -0,0 +1,354 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.n5.BlockSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Undo and redo history of masks applied to the canvas of a {@link MaskedSource}. For each applied mask, only the
+ * canvas blocks touched by the mask (on all mipmap levels) are recorded, as they were before the mask was applied.
+ * Blocks are deflate compressed and held in direct (off-heap) buffers. The total size of all recorded blocks, undo
+ * and redo, is bounded: when the bound is exceeded, the entries farthest from the current state are dropped, i.e. the
+ * oldest entry of the longer of the undo and redo histories, or the oldest undo entry if both are equally long.
+ *
+ * The bound is configured in {@code ~/.config/paintera.yml}:
+ * <pre>
+ * painting:
+ *   history:
+ *     maxBytes: 268435456
+ * </pre>
+ */
+public class PaintHistory
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	/**
+	 * Compressed contents of a single canvas block.
+	 */
+	public static class BlockSnapshot
+	{
+
+		public final int level;
+
+		public final long blockId;
+
+		private final ByteBuffer data;
+
+		private BlockSnapshot(final int level, final long blockId, final ByteBuffer data)
+		{
+			this.level = level;
+			this.blockId = blockId;
+			this.data = data;
+		}
+
+		public int sizeInBytes()
+		{
+			return data.capacity();
+		}
+
+	}
+
+	/**
+	 * Canvas blocks touched by a single mask, as they were before (undo) or after (redo) the mask was applied.
+	 */
+	public static class Entry
+	{
+
+		public final long label;
+
+		private final List<BlockSnapshot> blocks;
+
+		private final long sizeInBytes;
+
+		private Entry(final long label, final List<BlockSnapshot> blocks)
+		{
+			this.label = label;
+			this.blocks = Collections.unmodifiableList(blocks);
+			this.sizeInBytes = blocks.stream().mapToLong(BlockSnapshot::sizeInBytes).sum();
+		}
+
+		public List<BlockSnapshot> blocks()
+		{
+			return blocks;
+		}
+
+		public long sizeInBytes()
+		{
+			return sizeInBytes;
+		}
+
+	}
+
+	private final long maxBytes;
+
+	private final Deque<Entry> undo = new ArrayDeque<>();
+
+	private final Deque<Entry> redo = new ArrayDeque<>();
+
+	private long bytes = 0;
+
+	public PaintHistory(final long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return history with bound on memory as configured in {@code painting.history.maxBytes}
+	 */
+	public static PaintHistory fromConfig()
+	{
+		final long maxBytes = Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "painting", "history", "maxBytes"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(DEFAULT_MAX_BYTES);
+		return new PaintHistory(maxBytes);
+	}
+
+	/**
+	 * Record a newly applied mask. Clears the redo history.
+	 */
+	public synchronized void push(final Entry entry)
+	{
+		redo.forEach(e -> bytes -= e.sizeInBytes());
+		redo.clear();
+		undo.push(entry);
+		bytes += entry.sizeInBytes();
+		evict();
+	}
+
+	/**
+	 * @return most recent entry that can be undone, or {@code null}
+	 */
+	public synchronized Entry popUndo()
+	{
+		return pop(undo);
+	}
+
+	/**
+	 * @return most recent entry that can be redone, or {@code null}
+	 */
+	public synchronized Entry popRedo()
+	{
+		return pop(redo);
+	}
+
+	/**
+	 * Record the state before an entry was undone, so it can be redone.
+	 */
+	public synchronized void pushRedo(final Entry entry)
+	{
+		redo.push(entry);
+		bytes += entry.sizeInBytes();
+		evict();
+	}
+
+	/**
+	 * Record the state before an entry was redone, so it can be undone again. Does not clear the redo history.
+	 */
+	public synchronized void pushUndo(final Entry entry)
+	{
+		undo.push(entry);
+		bytes += entry.sizeInBytes();
+		evict();
+	}
+
+	public synchronized boolean canUndo()
+	{
+		return !undo.isEmpty();
+	}
+
+	public synchronized boolean canRedo()
+	{
+		return !redo.isEmpty();
+	}
+
+	public synchronized long sizeInBytes()
+	{
+		return bytes;
+	}
+
+	public synchronized void clear()
+	{
+		undo.clear();
+		redo.clear();
+		bytes = 0;
+	}
+
+	private void evict()
+	{
+		while (bytes > maxBytes && !(undo.isEmpty() && redo.isEmpty()))
+		{
+			final Entry dropped = redo.size() > undo.size() ? redo.removeLast() : undo.removeLast();
+			bytes -= dropped.sizeInBytes();
+			LOG.debug("Dropped paint history entry for label {} ({} bytes)", dropped.label, dropped.sizeInBytes());
+		}
+	}
+
+	private Entry pop(final Deque<Entry> entries)
+	{
+		final Entry entry = entries.poll();
+		if (entry != null)
+			bytes -= entry.sizeInBytes();
+		return entry;
+	}
+
+	/**
+	 * Record the current contents of {@code blocksPerLevel[level]} for each level.
+	 *
+	 * @param canvases canvas for each mipmap level
+	 * @param blocksPerLevel linear indices of blocks in the cell grid of each level
+	 */
+	public static Entry snapshot(
+			final long label,
+			final RandomAccessibleInterval<UnsignedLongType>[] canvases,
+			final CellGrid[] grids,
+			final TLongSet[] blocksPerLevel)
+	{
+		final List<BlockSnapshot> blocks = new ArrayList<>();
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try
+		{
+			for (int level = 0; level < blocksPerLevel.length; ++level)
+			{
+				final BlockSpec blockSpec = new BlockSpec(grids[level]);
+				for (final TLongIterator it = blocksPerLevel[level].iterator(); it.hasNext(); )
+				{
+					final long blockId = it.next();
+					blockSpec.fromLinearIndex(blockId);
+					blocks.add(new BlockSnapshot(level, blockId, compress(Views.interval(canvases[level], blockSpec.asInterval()), deflater)));
+				}
+			}
+		} finally
+		{
+			deflater.end();
+		}
+		return new Entry(label, blocks);
+	}
+
+	/**
+	 * Record the current contents of the blocks in {@code entry}.
+	 */
+	public static Entry snapshot(
+			final Entry entry,
+			final RandomAccessibleInterval<UnsignedLongType>[] canvases,
+			final CellGrid[] grids)
+	{
+		final List<BlockSnapshot> blocks = new ArrayList<>();
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try
+		{
+			for (final BlockSnapshot block : entry.blocks)
+			{
+				final BlockSpec blockSpec = new BlockSpec(grids[block.level]);
+				blockSpec.fromLinearIndex(block.blockId);
+				blocks.add(new BlockSnapshot(block.level, block.blockId, compress(Views.interval(canvases[block.level], blockSpec.asInterval()), deflater)));
+			}
+		} finally
+		{
+			deflater.end();
+		}
+		return new Entry(entry.label, blocks);
+	}
+
+	/**
+	 * Write the recorded blocks of {@code entry} back into {@code canvases}.
+	 */
+	public static void restore(
+			final Entry entry,
+			final RandomAccessibleInterval<UnsignedLongType>[] canvases,
+			final CellGrid[] grids)
+	{
+		final Inflater inflater = new Inflater();
+		try
+		{
+			for (final BlockSnapshot block : entry.blocks)
+			{
+				final BlockSpec blockSpec = new BlockSpec(grids[block.level]);
+				blockSpec.fromLinearIndex(block.blockId);
+				decompress(block.data, Views.interval(canvases[block.level], blockSpec.asInterval()), inflater);
+			}
+		} catch (final DataFormatException e)
+		{
+			throw new RuntimeException("Unable to restore canvas blocks for label " + entry.label, e);
+		} finally
+		{
+			inflater.end();
+		}
+	}
+
+	private static ByteBuffer compress(final RandomAccessibleInterval<UnsignedLongType> block, final Deflater deflater)
+	{
+		final int numElements = (int) Intervals.numElements(block);
+		final ByteBuffer raw = ByteBuffer.allocate(numElements * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		final LongBuffer longs = raw.asLongBuffer();
+		for (final UnsignedLongType t : Views.flatIterable(block))
+			longs.put(t.getLong());
+
+		deflater.reset();
+		deflater.setInput(raw.array());
+		deflater.finish();
+		// canvas blocks are mostly empty and compress well
+		byte[] buffer = new byte[Math.max(raw.capacity() / 16, 64)];
+		int length = 0;
+		while (!deflater.finished())
+		{
+			if (length == buffer.length)
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+
+		final ByteBuffer compressed = ByteBuffer.allocateDirect(length);
+		compressed.put(buffer, 0, length);
+		compressed.flip();
+		return compressed;
+	}
+
+	private static void decompress(
+			final ByteBuffer compressed,
+			final RandomAccessibleInterval<UnsignedLongType> block,
+			final Inflater inflater) throws DataFormatException
+	{
+		final byte[] input = new byte[compressed.capacity()];
+		compressed.duplicate().get(input);
+		final int numElements = (int) Intervals.numElements(block);
+		final byte[] raw = new byte[numElements * Long.BYTES];
+		inflater.reset();
+		inflater.setInput(input);
+		int length = 0;
+		while (length < raw.length && !inflater.finished())
+			length += inflater.inflate(raw, length, raw.length - length);
+
+		final LongBuffer longs = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		final Cursor<UnsignedLongType> cursor = Views.flatIterable(block).cursor();
+		while (cursor.hasNext())
+			cursor.next().set(longs.get());
+	}
+
+}
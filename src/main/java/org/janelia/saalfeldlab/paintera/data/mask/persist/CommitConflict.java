@@ -0,0 +1,26 @@
+package org.janelia.saalfeldlab.paintera.data.mask.persist;
+
+/**
+ * Thrown if committing the canvas would overwrite modifications of the background that were made, e.g. by another
+ * annotator, after the canvas was painted. Nothing is written in that case, and the canvas is retained.
+ */
+public class CommitConflict extends UnableToPersistCanvas {
+
+	private final long[] conflictingBlocks;
+
+	public CommitConflict(final String message, final long[] conflictingBlocks)
+	{
+		super(message);
+		this.conflictingBlocks = conflictingBlocks;
+	}
+
+	/**
+	 *
+	 * @return linear indices of conflicting blocks at highest resolution
+	 */
+	public long[] getConflictingBlocks()
+	{
+		return this.conflictingBlocks.clone();
+	}
+
+}
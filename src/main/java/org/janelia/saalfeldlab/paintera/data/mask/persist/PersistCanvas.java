@@ -7,6 +7,7 @@ import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface PersistCanvas {
 
@@ -106,4 +107,47 @@ public interface PersistCanvas {
 	{
 		return false;
 	}
+
+	/**
+	 * Persist {@code canvas} and update the label block lookup if {@link #supportsLabelBlockLookupUpdate() supported}
+	 * as a single commit step. Implementations that serialize commits hold their lock for both.
+	 *
+	 * @return block diffs by scale level, as returned by {@link #persistCanvas(CachedCellImg, long[])}
+	 */
+	default List<TLongObjectMap<BlockDiff>> commit(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blockIds)
+			throws UnableToPersistCanvas, UnableToUpdateLabelBlockLookup
+	{
+		final List<TLongObjectMap<BlockDiff>> blockDiffs = persistCanvas(canvas, blockIds);
+		if (supportsLabelBlockLookupUpdate())
+			updateLabelBlockLookup(blockDiffs);
+		return blockDiffs;
+	}
+
+	/**
+	 * Called with blocks at highest resolution that are painted for the first time since the canvas was last committed
+	 * or cleared. Implementations can record the background that the canvas is painted over to detect conflicting
+	 * modifications of the background when committing.
+	 *
+	 * @param blocks linear indices of newly painted blocks
+	 */
+	default void blocksPainted(final long[] blocks)
+	{
+	}
+
+	/**
+	 * Add {@code listener} to be notified when the background is modified by another process, e.g. a commit of
+	 * another annotator. The listener receives the linear indices of the modified blocks for each scale level,
+	 * highest resolution first.
+	 */
+	default void addBackgroundModifiedListener(final Consumer<long[][]> listener)
+	{
+	}
+
+	/**
+	 * Remove {@code listener} that was added with {@link #addBackgroundModifiedListener(Consumer)}, e.g. when the
+	 * source is removed.
+	 */
+	default void removeBackgroundModifiedListener(final Consumer<long[][]> listener)
+	{
+	}
 }
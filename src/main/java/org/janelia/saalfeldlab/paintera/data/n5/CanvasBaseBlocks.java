@@ -0,0 +1,298 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background blocks of the highest resolution level that a canvas was painted over: the {@link N5BlockVersions block
+ * version} at the time the block was first painted and, for integer type label data, a palette encoded copy of its
+ * contents.
+ *
+ * A block can be committed without conflict if its version did not change since it was recorded, or if none of the
+ * voxels that were painted in the canvas were modified in the background since. In the latter case, committing the
+ * canvas over the current background merges both modifications. For label multiset data, contents are not recorded
+ * and any change of the block version is a conflict.
+ *
+ * Blocks are recorded on a background thread when they are first painted. Contents are recorded only up to a total of
+ * {@code commit.maxBaseBlockBytes} (default: a sixteenth of the maximum heap size); beyond that, only versions are
+ * recorded and any change of the block version is a conflict.
+ */
+public class CanvasBaseBlocks
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final ExecutorService RECORDERS = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("paintera-canvas-base-blocks-%d", true));
+
+	private static class BaseBlock
+	{
+
+		private final long version;
+
+		private final PaletteLongArray contents;
+
+		private BaseBlock(final long version, final PaletteLongArray contents)
+		{
+			this.version = version;
+			this.contents = contents;
+		}
+
+	}
+
+	private final DatasetSpec datasetSpec;
+
+	private final boolean recordContents;
+
+	private final BlockSpec blockSpec;
+
+	private final long maxContentBytes;
+
+	private final TLongObjectMap<BaseBlock> baseBlocks = new TLongObjectHashMap<>();
+
+	private long contentBytes = 0;
+
+	private volatile Future<?> pendingRecords = CompletableFuture.completedFuture(null);
+
+	/**
+	 * @param datasetSpec    highest resolution level dataset
+	 * @param recordContents record block contents for voxel-wise conflict detection. Only supported for integer type
+	 *                       label data.
+	 */
+	public CanvasBaseBlocks(final DatasetSpec datasetSpec, final boolean recordContents)
+	{
+		this(datasetSpec, recordContents, maxContentBytesFromConfig());
+	}
+
+	/**
+	 * @param datasetSpec     highest resolution level dataset
+	 * @param recordContents  record block contents for voxel-wise conflict detection. Only supported for integer type
+	 *                        label data.
+	 * @param maxContentBytes record contents of blocks only while recorded contents take less than this many bytes
+	 */
+	public CanvasBaseBlocks(final DatasetSpec datasetSpec, final boolean recordContents, final long maxContentBytes)
+	{
+		this.datasetSpec = datasetSpec;
+		this.recordContents = recordContents;
+		this.maxContentBytes = maxContentBytes;
+		this.blockSpec = new BlockSpec(datasetSpec.grid);
+	}
+
+	/**
+	 * Record the current state of {@code blocks} on a background thread, replacing previous records. Pending records
+	 * are completed before conflicts are {@link #findConflicts(RandomAccessibleInterval, long[], TLongLongMap) found}.
+	 *
+	 * @param blocks linear indices of blocks in the highest resolution grid
+	 */
+	public void recordAsync(final long[] blocks)
+	{
+		final long[] copy = blocks.clone();
+		this.pendingRecords = RECORDERS.submit(() -> {
+			try
+			{
+				record(copy);
+			} catch (final IOException | RuntimeException e)
+			{
+				LOG.warn("Unable to record background of painted blocks -- modifications of these blocks by others will be overwritten on commit: {}", e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Record the current state of {@code blocks}, replacing previous records.
+	 *
+	 * @param blocks linear indices of blocks in the highest resolution grid
+	 */
+	public synchronized void record(final long[] blocks) throws IOException
+	{
+		final TLongLongMap versions = N5BlockVersions.read(datasetSpec.container, datasetSpec.dataset);
+		for (final long block : blocks)
+		{
+			final PaletteLongArray contents = recordContents && contentBytes < maxContentBytes
+					? PaletteLongArray.fromArray(readValues(block), true)
+					: null;
+			put(block, new BaseBlock(versions.get(block), contents));
+		}
+		LOG.debug("Recorded {} base blocks of {} ({} bytes of contents)", blocks.length, datasetSpec.dataset, contentBytes);
+	}
+
+	/**
+	 * Find blocks that cannot be committed without overwriting modifications of the background that were made after
+	 * the block was recorded. Blocks that were not recorded are never conflicting.
+	 *
+	 * @param canvas          painted canvas at highest resolution, {@link Label#INVALID} where not painted
+	 * @param blocks          linear indices of blocks to be committed
+	 * @param currentVersions current block versions of the highest resolution level
+	 * @return linear indices of conflicting blocks
+	 */
+	public long[] findConflicts(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final long[] blocks,
+			final TLongLongMap currentVersions) throws IOException
+	{
+		awaitPendingRecords();
+		synchronized (this)
+		{
+			final TLongArrayList conflicts = new TLongArrayList();
+			for (final long block : blocks)
+			{
+				final BaseBlock base = baseBlocks.get(block);
+				if (base == null || base.version == currentVersions.get(block))
+					continue;
+				if (base.contents == null || isPaintedOverModifiedVoxel(canvas, block, base.contents))
+					conflicts.add(block);
+			}
+			LOG.debug("Found {} conflicting blocks in {}: {}", conflicts.size(), datasetSpec.dataset, conflicts);
+			return conflicts.toArray();
+		}
+	}
+
+	/**
+	 * Forget records for {@code blocks}, e.g. after they were committed.
+	 */
+	public synchronized void forget(final long[] blocks)
+	{
+		for (final long block : blocks)
+			put(block, null);
+	}
+
+	public synchronized int size()
+	{
+		return baseBlocks.size();
+	}
+
+	/**
+	 *
+	 * @return number of bytes taken by recorded block contents
+	 */
+	public synchronized long contentBytes()
+	{
+		return contentBytes;
+	}
+
+	/**
+	 * Block until all blocks passed to {@link #recordAsync(long[])} are recorded.
+	 */
+	public void awaitPendingRecords() throws IOException
+	{
+		try
+		{
+			// records are submitted to a single thread in order: the latest record completes last
+			pendingRecords.get();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while recording base blocks of " + datasetSpec.dataset, e);
+		} catch (final ExecutionException e)
+		{
+			throw new IOException("Unable to record base blocks of " + datasetSpec.dataset, e.getCause());
+		}
+	}
+
+	private void put(final long block, final BaseBlock base)
+	{
+		final BaseBlock previous = base == null ? baseBlocks.remove(block) : baseBlocks.put(block, base);
+		if (previous != null && previous.contents != null)
+			contentBytes -= previous.contents.sizeInBytes();
+		if (base != null && base.contents != null)
+			contentBytes += base.contents.sizeInBytes();
+	}
+
+	private boolean isPaintedOverModifiedVoxel(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final long block,
+			final PaletteLongArray baseContents) throws IOException
+	{
+		final long[] background = readValues(block);
+		final Cursor<UnsignedLongType> canvasCursor = Views.flatIterable(Views.interval(canvas, blockSpec.asInterval())).cursor();
+		for (int index = 0; canvasCursor.hasNext(); ++index)
+		{
+			final long painted = canvasCursor.next().getIntegerLong();
+			if (painted != Label.INVALID && background[index] != baseContents.getValue(index))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read the current contents of {@code block} directly from the container, bypassing any cache, and set
+	 * {@code blockSpec} to {@code block}. Blocks that do not exist are all zero.
+	 *
+	 * @return contents of {@code block} in flat iteration order
+	 */
+	private long[] readValues(final long block) throws IOException
+	{
+		blockSpec.fromLinearIndex(block);
+		final long[] values = new long[(int) Intervals.numElements(blockSpec.asInterval())];
+		final DataBlock<?> dataBlock = datasetSpec.container.readBlock(datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
+		if (dataBlock == null)
+			return values;
+		final Object data = dataBlock.getData();
+		switch (datasetSpec.attributes.getDataType())
+		{
+		case UINT8:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((byte[]) data)[index] & 0xffL;
+			break;
+		case INT8:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((byte[]) data)[index];
+			break;
+		case UINT16:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((short[]) data)[index] & 0xffffL;
+			break;
+		case INT16:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((short[]) data)[index];
+			break;
+		case UINT32:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((int[]) data)[index] & 0xffffffffL;
+			break;
+		case INT32:
+			for (int index = 0; index < values.length; ++index)
+				values[index] = ((int[]) data)[index];
+			break;
+		case UINT64:
+		case INT64:
+			System.arraycopy((long[]) data, 0, values, 0, values.length);
+			break;
+		default:
+			throw new IOException("Unsupported label data type " + datasetSpec.attributes.getDataType() + " in " + datasetSpec.dataset);
+		}
+		return values;
+	}
+
+	private static long maxContentBytesFromConfig()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "commit", "maxBaseBlockBytes"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(Runtime.getRuntime().maxMemory() / 16);
+	}
+
+}
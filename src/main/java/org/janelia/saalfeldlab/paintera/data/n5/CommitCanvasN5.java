@@ -38,10 +38,13 @@ import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.CommitConflict;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.janelia.saalfeldlab.util.math.ArrayMath;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
@@ -55,6 +58,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class CommitCanvasN5 implements PersistCanvas
@@ -72,6 +76,10 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	private final boolean isLabelMultiset;
 
+	private final CanvasBaseBlocks baseBlocks;
+
+	private final N5BlockVersionWatcher versionWatcher;
+
 	public CommitCanvasN5(final N5Writer n5, final String dataset) throws IOException {
 		super();
 		this.n5 = n5;
@@ -84,6 +92,10 @@ public class CommitCanvasN5 implements PersistCanvas
 				this.isMultiscale ? N5Helpers.getFinestLevelJoinWithGroup(n5, volumetricDataGroup) : volumetricDataGroup,
 				N5Helpers.IS_LABEL_MULTISET_KEY,
 				false);
+		this.baseBlocks = new CanvasBaseBlocks(
+				DatasetSpec.of(n5, this.isMultiscale ? N5Helpers.getFinestLevelJoinWithGroup(n5, volumetricDataGroup) : volumetricDataGroup),
+				!this.isLabelMultiset);
+		this.versionWatcher = new N5BlockVersionWatcher(n5, dataset);
 	}
 
 	public final N5Writer n5()
@@ -104,8 +116,41 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	@Override
 	public void updateLabelBlockLookup(final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel) throws UnableToUpdateLabelBlockLookup
+	{
+		try (final N5CommitLock lock = N5CommitLock.acquire(n5, volumetricDataGroup()))
+		{
+			updateLabelBlockLookupLocked(blockDiffsByLevel);
+		} catch (final IOException e)
+		{
+			throw new UnableToUpdateLabelBlockLookup("Unable to acquire commit lock for " + this.dataset, e);
+		}
+	}
+
+	/**
+	 * Persist {@code canvas} and update the label block lookup while holding the {@link N5CommitLock} of the dataset,
+	 * so that concurrent commits into the same dataset cannot interleave between writing blocks and updating the
+	 * lookup.
+	 */
+	@Override
+	public List<TLongObjectMap<BlockDiff>> commit(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks)
+			throws UnableToPersistCanvas, UnableToUpdateLabelBlockLookup
+	{
+		try (final N5CommitLock lock = N5CommitLock.acquire(n5, volumetricDataGroup()))
+		{
+			final List<TLongObjectMap<BlockDiff>> blockDiffs = persistCanvasLocked(canvas, blocks);
+			if (supportsLabelBlockLookupUpdate())
+				updateLabelBlockLookupLocked(blockDiffs);
+			return blockDiffs;
+		} catch (final IOException e)
+		{
+			throw new UnableToPersistCanvas("Unable to acquire commit lock for " + this.dataset, e);
+		}
+	}
+
+	private void updateLabelBlockLookupLocked(final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel) throws UnableToUpdateLabelBlockLookup
 	{
 		LOG.debug("Updating label block lookup with {}", blockDiffsByLevel);
+		final long start = System.nanoTime();
 		try {
 			final String uniqueLabelsPath = this.dataset + "/unique-labels";
 			LOG.debug("uniqueLabelsPath {}", uniqueLabelsPath);
@@ -157,9 +202,11 @@ public class CommitCanvasN5 implements PersistCanvas
 				modifiedIds.addAll(addedById.keySet());
 				LOG.debug("Removed by id: {}", removedById);
 				LOG.debug("Added by id: {}", addedById);
+				final TLongObjectMap<Interval[]> blockLists = readBlockLists(labelBlockLoader, level, modifiedIds.toArray());
+				final TLongObjectMap<Interval[]> updatedBlockLists = new TLongObjectHashMap<>();
 				for (final long modifiedId : modifiedIds.toArray())
 				{
-					final Interval[] blockList = labelBlockLoader.read(level, modifiedId);
+					final Interval[] blockList = blockLists.get(modifiedId);
 					final TLongSet blockListLinearIndices = new TLongHashSet();
 					for (final Interval block : blockList)
 					{
@@ -189,8 +236,9 @@ public class CommitCanvasN5 implements PersistCanvas
 						updatedIntervals[index] = interval;
 						LOG.trace("Added interval {} for linear index {} and block spec {}", interval, blockId, blockSpec);
 					}
-					labelBlockLoader.write(level, modifiedId, updatedIntervals);
+					updatedBlockLists.put(modifiedId, updatedIntervals);
 				}
+				writeBlockLists(labelBlockLoader, level, updatedBlockLists);
 
 			}
 
@@ -200,16 +248,52 @@ public class CommitCanvasN5 implements PersistCanvas
 		{
 			throw new UnableToUpdateLabelBlockLookup("Unable to update label block lookup for " + this.dataset, e);
 		}
+		MetricRegistry.global().timer("commit.updateLabelBlockLookup").updateSince(start);
 		LOG.info("Finished updating label-block-lookup");
 	}
 
+	@Override
+	public void blocksPainted(final long[] blocks)
+	{
+		if (N5BlockVersions.isTracked())
+			baseBlocks.recordAsync(blocks);
+	}
+
+	@Override
+	public void addBackgroundModifiedListener(final Consumer<long[][]> listener)
+	{
+		versionWatcher.addListener(listener);
+	}
+
+	@Override
+	public void removeBackgroundModifiedListener(final Consumer<long[][]> listener)
+	{
+		versionWatcher.removeListener(listener);
+	}
+
 	@Override
 	public List<TLongObjectMap<BlockDiff>> persistCanvas(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks) throws UnableToPersistCanvas {
+		try (final N5CommitLock lock = N5CommitLock.acquire(n5, volumetricDataGroup()))
+		{
+			return persistCanvasLocked(canvas, blocks);
+		} catch (final IOException e)
+		{
+			throw new UnableToPersistCanvas("Unable to acquire commit lock for " + this.dataset, e);
+		}
+	}
+
+	private String volumetricDataGroup()
+	{
+		return isPainteraDataset ? this.dataset + "/data" : this.dataset;
+	}
+
+	private List<TLongObjectMap<BlockDiff>> persistCanvasLocked(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks) throws UnableToPersistCanvas {
 		LOG.info("Committing canvas: {} blocks", blocks.length);
 		LOG.debug("Affected blocks in grid {}: {}", canvas.getCellGrid(), blocks);
+		final long start = System.nanoTime();
+		final String dataset = volumetricDataGroup();
 		try
 		{
-			final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
 
 			final CellGrid canvasGrid = canvas.getCellGrid();
 
@@ -222,17 +306,37 @@ public class CommitCanvasN5 implements PersistCanvas
 
 			final BlockSpec highestResolutionBlockSpec = new BlockSpec(highestResolutionDataset.grid);
 
+			final long[] conflictingBlocks = baseBlocks.findConflicts(
+					canvas,
+					blocks,
+					N5BlockVersions.read(n5, highestResolutionDataset.dataset));
+			if (conflictingBlocks.length > 0)
+			{
+				MetricRegistry.global().counter("commit.conflicts").inc(conflictingBlocks.length);
+				// the next commit overwrites these blocks, after the annotator has seen the modified background
+				baseBlocks.record(conflictingBlocks);
+				throw new CommitConflict(
+						String.format(
+								"%d blocks were modified by others since they were painted. Review the reloaded " +
+										"background and commit again to overwrite these modifications.",
+								conflictingBlocks.length),
+						conflictingBlocks);
+			}
+
 			LOG.debug("Persisting canvas with grid={} into background with grid={}", canvasGrid, highestResolutionDataset.grid);
 
 			final List<TLongObjectMap<BlockDiff>> blockDiffs = new ArrayList<>();
 			final TLongObjectHashMap<BlockDiff> blockDiffsAtHighestLevel = new TLongObjectHashMap<>();
 			blockDiffs.add(blockDiffsAtHighestLevel);
 
+			final long highestResolutionStart = System.nanoTime();
 			if (this.isLabelMultiset)
 				writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
 			else {
 				writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
 			}
+			N5BlockVersions.bump(n5, highestResolutionDataset.dataset, blocks);
+			MetricRegistry.global().timer(MetricRegistry.tagged("commit.writeBlocks", "level", 0)).updateSince(highestResolutionStart);
 
 			if (isMultiscale)
 			{
@@ -241,6 +345,7 @@ public class CommitCanvasN5 implements PersistCanvas
 				for (int level = 1; level < scaleDatasets.length; ++level)
 				{
 
+					final long levelStart = System.nanoTime();
 					final TLongObjectHashMap<BlockDiff> blockDiffsAt = new TLongObjectHashMap<>();
 					blockDiffs.add(blockDiffsAt);
 					final DatasetSpec targetDataset = DatasetSpec.of(n5, Paths.get(dataset, scaleDatasets[level]).toString());
@@ -290,13 +395,22 @@ public class CommitCanvasN5 implements PersistCanvas
 								relativeFactors,
 								level,
 								blockDiffsAt);
+					N5BlockVersions.bump(n5, targetDataset.dataset, affectedBlocks);
 
+					MetricRegistry.global().timer(MetricRegistry.tagged("commit.writeBlocks", "level", level)).updateSince(levelStart);
 				}
 
 			}
+			baseBlocks.forget(blocks);
+			versionWatcher.acknowledge();
+			MetricRegistry.global().timer("commit.persistCanvas").updateSince(start);
 			LOG.info("Finished commiting canvas");
 			return blockDiffs;
 
+		} catch (final CommitConflict e)
+		{
+			LOG.warn("Unable to commit canvas: {}", e.getMessage());
+			throw e;
 		} catch (final IOException | PainteraException e)
 		{
 			LOG.error("Unable to commit canvas.", e);
@@ -304,6 +418,38 @@ public class CommitCanvasN5 implements PersistCanvas
 		}
 	}
 
+	private static TLongObjectMap<Interval[]> readBlockLists(
+			final LabelBlockLookup lookup,
+			final int level,
+			final long[] ids) throws IOException
+	{
+		if (lookup instanceof LabelBlockLookupSharded)
+			return ((LabelBlockLookupSharded) lookup).read(level, ids);
+
+		final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+		for (final long id : ids)
+			blockLists.put(id, lookup.read(level, id));
+		return blockLists;
+	}
+
+	private static void writeBlockLists(
+			final LabelBlockLookup lookup,
+			final int level,
+			final TLongObjectMap<Interval[]> blockLists) throws IOException
+	{
+		if (lookup instanceof LabelBlockLookupSharded)
+		{
+			((LabelBlockLookupSharded) lookup).write(level, blockLists);
+			return;
+		}
+
+		for (final TLongObjectIterator<Interval[]> it = blockLists.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			lookup.write(level, it.key(), it.value());
+		}
+	}
+
 	private static long[] readContainedLabels(
 			final N5Reader n5,
 			final String uniqueLabelsDataset,
@@ -0,0 +1,193 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically re-reads the {@link N5BlockVersions block versions} of a label dataset and notifies listeners when
+ * they changed, e.g. because another Paintera instance committed into the same dataset. The poll interval is read
+ * from the {@code commit.watchIntervalSeconds} entry of the Paintera config and polling is disabled if it is not
+ * positive or if block versions are not {@link N5BlockVersions#isTracked() tracked}.
+ *
+ * Polling starts with the first listener and stops when the last listener is removed or {@link #stop()} is called.
+ */
+public class N5BlockVersionWatcher
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final long DEFAULT_WATCH_INTERVAL_SECONDS = 10;
+
+	private static final ScheduledThreadPoolExecutor WATCHERS = new ScheduledThreadPoolExecutor(
+			1,
+			new NamedThreadFactory("paintera-block-version-watcher-%d", true));
+
+	static
+	{
+		// stopped watchers must not be referenced by the queue of the shared executor
+		WATCHERS.setRemoveOnCancelPolicy(true);
+	}
+
+	private final N5Reader n5;
+
+	private final String[] levelDatasets;
+
+	private final long intervalSeconds;
+
+	private final List<Consumer<long[][]>> listeners = new CopyOnWriteArrayList<>();
+
+	private TLongLongHashMap[] versions;
+
+	private ScheduledFuture<?> task = null;
+
+	public N5BlockVersionWatcher(final N5Reader n5, final String dataset) throws IOException
+	{
+		this(n5, dataset, intervalSecondsFromConfig());
+	}
+
+	public N5BlockVersionWatcher(final N5Reader n5, final String dataset, final long intervalSeconds) throws IOException
+	{
+		this.n5 = n5;
+		this.levelDatasets = N5BlockVersions.levelDatasets(n5, dataset);
+		this.intervalSeconds = intervalSeconds;
+		this.versions = readVersions();
+	}
+
+	/**
+	 * Add {@code listener} and start polling if not started yet. Listeners receive the linear indices of the modified
+	 * blocks for each scale level, highest resolution first.
+	 */
+	public synchronized void addListener(final Consumer<long[][]> listener)
+	{
+		this.listeners.add(listener);
+		if (task == null && intervalSeconds > 0 && N5BlockVersions.isTracked())
+			task = WATCHERS.scheduleWithFixedDelay(this::pollAndLogErrors, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Remove {@code listener} and stop polling if no listeners remain.
+	 */
+	public synchronized void removeListener(final Consumer<long[][]> listener)
+	{
+		this.listeners.remove(listener);
+		if (this.listeners.isEmpty())
+			stop();
+	}
+
+	public synchronized boolean isPolling()
+	{
+		return task != null;
+	}
+
+	public synchronized void stop()
+	{
+		if (task != null)
+		{
+			task.cancel(false);
+			task = null;
+		}
+	}
+
+	/**
+	 * Re-read block versions and notify listeners if they changed since the last call to {@link #poll()} or
+	 * {@link #acknowledge()}.
+	 *
+	 * @return {@code true} if block versions changed
+	 */
+	public boolean poll() throws IOException
+	{
+		final TLongLongHashMap[] versions = readVersions();
+		final TLongLongHashMap[] previousVersions;
+		synchronized (this)
+		{
+			if (Arrays.equals(this.versions, versions))
+				return false;
+			previousVersions = this.versions;
+			this.versions = versions;
+		}
+		final long[][] modifiedBlocks = new long[versions.length][];
+		for (int level = 0; level < versions.length; ++level)
+			modifiedBlocks[level] = modifiedBlocks(previousVersions[level], versions[level]);
+		LOG.debug("Block versions of {} changed", (Object) levelDatasets);
+		MetricRegistry.global().counter("commit.backgroundModified").inc();
+		listeners.forEach(listener -> listener.accept(modifiedBlocks));
+		return true;
+	}
+
+	/**
+	 * Re-read block versions without notifying listeners, e.g. after this instance committed into the dataset.
+	 */
+	public void acknowledge() throws IOException
+	{
+		final TLongLongHashMap[] versions = readVersions();
+		synchronized (this)
+		{
+			this.versions = versions;
+		}
+	}
+
+	private void pollAndLogErrors()
+	{
+		try
+		{
+			poll();
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.warn("Unable to read block versions of {}: {}", levelDatasets, e.getMessage());
+		}
+	}
+
+	// versions are only ever bumped, but a re-created versions file may also drop blocks
+	private static long[] modifiedBlocks(final TLongLongHashMap previous, final TLongLongHashMap current)
+	{
+		final TLongArrayList modified = new TLongArrayList();
+		for (final TLongLongIterator it = current.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			if (!previous.containsKey(it.key()) || previous.get(it.key()) != it.value())
+				modified.add(it.key());
+		}
+		for (final TLongLongIterator it = previous.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			if (!current.containsKey(it.key()))
+				modified.add(it.key());
+		}
+		return modified.toArray();
+	}
+
+	private TLongLongHashMap[] readVersions() throws IOException
+	{
+		final TLongLongHashMap[] versions = new TLongLongHashMap[levelDatasets.length];
+		for (int level = 0; level < levelDatasets.length; ++level)
+			versions[level] = N5BlockVersions.read(n5, levelDatasets[level]);
+		return versions;
+	}
+
+	private static long intervalSecondsFromConfig()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "commit", "watchIntervalSeconds"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(DEFAULT_WATCH_INTERVAL_SECONDS);
+	}
+
+}
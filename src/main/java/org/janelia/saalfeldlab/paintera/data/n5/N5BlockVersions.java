@@ -0,0 +1,263 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.iterator.IntervalIterator;
+import net.imglib2.util.IntervalIndexer;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCaches;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content versions of the blocks of a (multi-scale) N5 label dataset. {@link CommitCanvasN5} bumps the version of
+ * every block that it writes, at all scale levels. Versions are stored sparsely in a separate {@link #FILE_NAME} file
+ * in the directory of each scale level dataset, so they do not add to the dataset attributes: blocks that were never
+ * modified by Paintera are at version {@code 0}.
+ *
+ * Versions are only tracked for file system containers, and only if they are used, i.e. if
+ * {@link PersistentMeshCaches persistent mesh caching} or detection of commit conflicts is enabled:
+ * <pre>
+ * commit:
+ *   detectConflicts: true
+ * </pre>
+ *
+ * Within a scale level, a bumped block always receives a version that is larger than all existing versions, i.e. the
+ * maximum version over a set of blocks changes whenever any of these blocks is modified.
+ */
+public class N5BlockVersions
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String FILE_NAME = ".paintera-block-versions";
+
+	private static final int MAGIC = 0x50425631; // PBV1
+
+	private final N5Reader n5;
+
+	private final String[] levelDatasets;
+
+	private final CellGrid[] grids;
+
+	private volatile TLongLongHashMap[] versions;
+
+	public N5BlockVersions(final N5Reader n5, final String dataset) throws IOException
+	{
+		this.n5 = n5;
+		this.levelDatasets = levelDatasets(n5, dataset);
+		this.grids = new CellGrid[levelDatasets.length];
+		for (int level = 0; level < levelDatasets.length; ++level)
+			this.grids[level] = N5Helpers.getGrid(n5, levelDatasets[level]);
+		reload();
+	}
+
+	/**
+	 * Re-read versions from the N5 container, e.g. after a commit.
+	 */
+	public void reload() throws IOException
+	{
+		final TLongLongHashMap[] versions = new TLongLongHashMap[levelDatasets.length];
+		for (int level = 0; level < levelDatasets.length; ++level)
+			versions[level] = read(n5, levelDatasets[level]);
+		this.versions = versions;
+	}
+
+	/**
+	 *
+	 * @param level scale level
+	 * @param interval in voxel coordinates of {@code level}
+	 * @return maximum version of all blocks at {@code level} that intersect {@code interval} or are adjacent to it.
+	 * Neighboring blocks are included because meshes close to block boundaries depend on them.
+	 */
+	public long version(final int level, final Interval interval)
+	{
+		if (level < 0 || level >= grids.length)
+			return 0;
+		final TLongLongHashMap versions = this.versions[level];
+		if (versions.isEmpty())
+			return 0;
+
+		final CellGrid grid = grids[level];
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] min = new long[grid.numDimensions()];
+		final long[] max = new long[grid.numDimensions()];
+		for (int d = 0; d < min.length; ++d)
+		{
+			min[d] = Math.max(interval.min(d) / grid.cellDimension(d) - 1, 0);
+			max[d] = Math.min(interval.max(d) / grid.cellDimension(d) + 1, gridDimensions[d] - 1);
+			if (max[d] < min[d])
+				return 0;
+		}
+
+		long version = 0;
+		final IntervalIterator it = new IntervalIterator(new FinalInterval(min, max));
+		final long[] position = new long[min.length];
+		while (it.hasNext())
+		{
+			it.fwd();
+			it.localize(position);
+			version = Math.max(version, versions.get(IntervalIndexer.positionToIndex(position, gridDimensions)));
+		}
+		return version;
+	}
+
+	/**
+	 *
+	 * @return {@code true} if block versions are used, i.e. if persistent mesh caching or detection of commit
+	 * conflicts is enabled.
+	 */
+	public static boolean isTracked()
+	{
+		return PersistentMeshCaches.isEnabled() || detectsConflicts();
+	}
+
+	/**
+	 *
+	 * @return {@code true} if block versions of {@code levelDataset} can be stored, i.e. for file system containers
+	 */
+	public static boolean isSupported(final N5Reader n5, final String levelDataset)
+	{
+		return versionsFile(n5, levelDataset) != null;
+	}
+
+	/**
+	 * Assign a new version to {@code blocks} of {@code levelDataset}. No-op if block versions are not
+	 * {@link #isTracked() tracked} or not {@link #isSupported(N5Reader, String) supported} for {@code n5}. Callers
+	 * must hold the {@link N5CommitLock} of the dataset, which makes the read-modify-write atomic across processes.
+	 *
+	 * @param blocks linear indices of modified blocks in the block grid of {@code levelDataset}
+	 * @return new version of {@code blocks}, or {@code 0} if versions are not tracked
+	 */
+	public static synchronized long bump(final N5Writer n5, final String levelDataset, final long[] blocks) throws IOException
+	{
+		final Path file = versionsFile(n5, levelDataset);
+		if (file == null || !isTracked())
+		{
+			LOG.debug("Not tracking block versions of {} in {}", levelDataset, n5);
+			return 0;
+		}
+
+		final TLongLongHashMap versions = read(file);
+		final long version = Arrays.stream(versions.values()).max().orElse(0) + 1;
+		for (final long block : blocks)
+			versions.put(block, version);
+		write(file, versions);
+		LOG.debug("Bumped {} blocks in {} to version {}", blocks.length, levelDataset, version);
+		return version;
+	}
+
+	/**
+	 *
+	 * @return scale level datasets of {@code dataset}, highest resolution first. If {@code dataset} is a single-scale
+	 * dataset, the returned array holds {@code dataset} only.
+	 */
+	public static String[] levelDatasets(final N5Reader n5, final String dataset) throws IOException
+	{
+		final String group = N5Helpers.isPainteraDataset(n5, dataset)
+				? dataset + "/" + N5Helpers.PAINTERA_DATA_DATASET
+				: dataset;
+		if (!N5Helpers.isMultiScale(n5, group))
+			return new String[] {group};
+		return Stream
+				.of(N5Helpers.listAndSortScaleDatasets(n5, group))
+				.map(scale -> Paths.get(group, scale).toString())
+				.toArray(String[]::new);
+	}
+
+	/**
+	 *
+	 * @return versions of all blocks of {@code levelDataset} that were modified by Paintera, by linear block index
+	 */
+	public static TLongLongHashMap read(final N5Reader n5, final String levelDataset) throws IOException
+	{
+		final Path file = versionsFile(n5, levelDataset);
+		return file == null ? new TLongLongHashMap() : read(file);
+	}
+
+	private static TLongLongHashMap read(final Path file) throws IOException
+	{
+		final TLongLongHashMap versions = new TLongLongHashMap();
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a block versions file: " + file);
+			for (int remaining = in.readInt(); remaining > 0; --remaining)
+				versions.put(in.readLong(), in.readLong());
+		} catch (final NoSuchFileException e)
+		{
+			// no block was modified yet
+		}
+		return versions;
+	}
+
+	private static void write(final Path file, final TLongLongHashMap versions) throws IOException
+	{
+		final long[] blocks = versions.keys();
+		Arrays.sort(blocks);
+		final Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+		try
+		{
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(blocks.length);
+				for (final long block : blocks)
+				{
+					out.writeLong(block);
+					out.writeLong(versions.get(block));
+				}
+			}
+			// readers in other processes never see a partially written file
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static Path versionsFile(final N5Reader n5, final String levelDataset)
+	{
+		try
+		{
+			final N5Meta meta = N5Meta.fromReader(n5, levelDataset);
+			if (!(meta instanceof N5FSMeta))
+				return null;
+			final Path directory = Paths.get(((N5FSMeta) meta).basePath(), levelDataset);
+			return Files.isDirectory(directory) ? directory.resolve(FILE_NAME) : null;
+		} catch (final ReflectionException e)
+		{
+			LOG.debug("Unable to determine container path for {}: {}", n5, e.getMessage());
+			return null;
+		}
+	}
+
+	private static boolean detectsConflicts()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "commit", "detectConflicts"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(true);
+	}
+
+}
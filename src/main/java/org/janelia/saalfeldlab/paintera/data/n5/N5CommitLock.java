@@ -0,0 +1,111 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exclusive lock for committing into a dataset. Within this JVM, commits into the same dataset are serialized. For
+ * file system N5 containers, an operating system lock on {@link #LOCK_FILE_NAME} in the dataset directory also
+ * serializes commits of other processes, so that checking block versions, writing blocks, and bumping block versions
+ * is atomic.
+ */
+public class N5CommitLock implements AutoCloseable
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String LOCK_FILE_NAME = ".paintera-commit.lock";
+
+	private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+	private final ReentrantLock lock;
+
+	private final FileChannel channel;
+
+	private final FileLock fileLock;
+
+	private N5CommitLock(final ReentrantLock lock, final FileChannel channel, final FileLock fileLock)
+	{
+		this.lock = lock;
+		this.channel = channel;
+		this.fileLock = fileLock;
+	}
+
+	/**
+	 * Block until the commit lock for {@code dataset} is acquired.
+	 */
+	public static N5CommitLock acquire(final N5Reader n5, final String dataset) throws IOException
+	{
+		final Path lockFile = lockFile(n5, dataset);
+		final String key = lockFile == null ? System.identityHashCode(n5) + ":" + dataset : lockFile.toString();
+		final ReentrantLock lock = LOCKS.computeIfAbsent(key, k -> new ReentrantLock());
+		lock.lock();
+		if (lockFile == null)
+		{
+			LOG.debug("No file lock for {} in {}: only commits within this process are serialized", dataset, n5);
+			return new N5CommitLock(lock, null, null);
+		}
+
+		try
+		{
+			final FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			try
+			{
+				return new N5CommitLock(lock, channel, channel.lock());
+			} catch (final IOException | RuntimeException e)
+			{
+				channel.close();
+				throw e;
+			}
+		} catch (final IOException | RuntimeException e)
+		{
+			lock.unlock();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (fileLock != null)
+				fileLock.release();
+			if (channel != null)
+				channel.close();
+		} finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private static Path lockFile(final N5Reader n5, final String dataset)
+	{
+		try
+		{
+			final N5Meta meta = N5Meta.fromReader(n5, dataset);
+			if (!(meta instanceof N5FSMeta))
+				return null;
+			final Path directory = Paths.get(((N5FSMeta) meta).basePath(), dataset);
+			return Files.isDirectory(directory) ? directory.resolve(LOCK_FILE_NAME) : null;
+		} catch (final ReflectionException e)
+		{
+			LOG.debug("Unable to determine container path for {}: {}", n5, e.getMessage());
+			return null;
+		}
+	}
+
+}
@@ -16,6 +16,7 @@ import net.imglib2.type.numeric.RealType;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.util.n5.ImagesWithInvalidate;
+import org.janelia.saalfeldlab.util.n5.LazyPyramid;
 import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
@@ -133,12 +134,13 @@ public class N5DataSource<D extends NativeType<D>, T extends Volatile<D> & Nativ
 		{
 			return isMultiscale
 			       ? N5Data.openRawMultiscale(reader, dataset, transform, globalCache, priority)
-			       : new ImagesWithInvalidate[] {N5Data.openRaw(
+			       : LazyPyramid.withGeneratedLevels(
+					       N5Data.openRaw(reader, dataset, transform, globalCache, priority),
+					       N5Helpers.getGrid(reader, dataset),
 					       reader,
 					       dataset,
-					       transform,
 					       globalCache,
-					       priority)};
+					       priority);
 		}
 	}
 }
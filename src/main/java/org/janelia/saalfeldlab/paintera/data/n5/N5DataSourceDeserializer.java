@@ -3,18 +3,33 @@ package org.janelia.saalfeldlab.paintera.data.n5;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import net.imglib2.realtransform.AffineTransform3D;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer.Arguments;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,40 +45,118 @@ public class N5DataSourceDeserializer implements JsonDeserializer<N5DataSource<?
 
 	private static final String TRANSFORM_KEY = "transform";
 
+	private static final int MAX_NUM_OPENING_THREADS = 8;
+
 	private final GlobalCache globalCache;
 
 	private final int priority;
 
+	private final Map<JsonElement, CompletableFuture<? extends DataSource<?, ?>>> openingDataSources;
+
 	public N5DataSourceDeserializer(final GlobalCache globalCache, final int priority)
+	{
+		this(globalCache, priority, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @param openingDataSources sources that are opened in the background, see
+	 *                           {@link #openInBackground(JsonElement, Gson, Arguments)}
+	 */
+	public N5DataSourceDeserializer(
+			final GlobalCache globalCache,
+			final int priority,
+			final Map<JsonElement, CompletableFuture<? extends DataSource<?, ?>>> openingDataSources)
 	{
 		super();
 		this.globalCache = globalCache;
 		this.priority = priority;
+		this.openingDataSources = openingDataSources;
 	}
 
 	@Override
 	public N5DataSource<?, ?> deserialize(final JsonElement el, final Type type, final JsonDeserializationContext
 			context)
 	throws JsonParseException
+	{
+		final CompletableFuture<? extends DataSource<?, ?>> opening = openingDataSources.remove(el);
+		if (opening != null)
+		{
+			LOG.debug("Waiting for source that is opened in the background: {}", el);
+			try
+			{
+				return (N5DataSource<?, ?>) opening.join();
+			} catch (final CompletionException e)
+			{
+				throw e.getCause() instanceof JsonParseException ? (JsonParseException) e.getCause() : new JsonParseException(e.getCause());
+			}
+		}
+		return open(el, context::deserialize, globalCache, priority);
+	}
+
+	/**
+	 * Start opening all {@link N5DataSource sources} found in {@code serialized}, e.g. all serialized source states,
+	 * in parallel. Opening a source reads N5 attributes of all scale levels, which is slow on high latency storage.
+	 * Deserializers created with {@code arguments} use the sources opened here.
+	 */
+	public static void openInBackground(final JsonElement serialized, final Gson gson, final Arguments arguments)
+	{
+		final List<JsonElement> sources = new ArrayList<>();
+		findSerializedSources(serialized, sources::add);
+		if (sources.isEmpty())
+			return;
+
+		LOG.debug("Opening {} sources in background", sources.size());
+		final ExecutorService es = Executors.newFixedThreadPool(
+				Math.min(sources.size(), MAX_NUM_OPENING_THREADS),
+				new NamedThreadFactory("open-source-%d", true));
+		for (final JsonElement source : sources)
+			arguments.openingDataSources.computeIfAbsent(source, el -> CompletableFuture.supplyAsync(
+					() -> open(el, gson::fromJson, arguments.globalCache, 0),
+					es));
+		es.shutdown();
+	}
+
+	private static N5DataSource<?, ?> open(
+			final JsonElement el,
+			final BiFunction<JsonElement, Type, Object> deserialize,
+			final GlobalCache globalCache,
+			final int priority)
 	{
 		try
 		{
+			final long start = System.nanoTime();
 			LOG.debug("Deserializing from {}", el);
 			final String            clazz     = el.getAsJsonObject().get(META_CLASS_KEY).getAsString();
-			final N5Meta            meta      = context.deserialize(
+			final N5Meta            meta      = (N5Meta) deserialize.apply(
 					el.getAsJsonObject().get(META_KEY),
 					Class.forName(clazz));
-			final AffineTransform3D transform = context.deserialize(
+			final AffineTransform3D transform = (AffineTransform3D) deserialize.apply(
 					el.getAsJsonObject().get(TRANSFORM_KEY),
 					AffineTransform3D.class);
 
 			LOG.debug("Deserialized transform: {}", transform);
-			return new N5DataSource<>(meta, transform, globalCache, "", priority);
+			final N5DataSource<?, ?> source = new N5DataSource<>(meta, transform, globalCache, "", priority);
+			MetricRegistry.global().timer("project.openSource").updateSince(start);
+			return source;
 		} catch (IOException | ClassNotFoundException e)
 		{
 			throw new JsonParseException(e);
 		}
+	}
 
+	private static void findSerializedSources(final JsonElement el, final Consumer<JsonElement> sources)
+	{
+		if (el.isJsonArray())
+			el.getAsJsonArray().forEach(child -> findSerializedSources(child, sources));
+		else if (el.isJsonObject())
+		{
+			final JsonObject map = el.getAsJsonObject();
+			// channel sources share these keys but are opened by N5ChannelDataSourceDeserializer
+			if (map.has(META_CLASS_KEY) && map.has(META_KEY) && map.has(TRANSFORM_KEY) && !map.has(N5ChannelDataSourceSerializer.CHANNELS_KEY))
+				sources.accept(map);
+			else
+				map.entrySet().forEach(entry -> findSerializedSources(entry.getValue(), sources));
+		}
 	}
 
 	@Plugin(type= StatefulSerializer.DeserializerFactory.class)
@@ -76,7 +169,7 @@ public class N5DataSourceDeserializer implements JsonDeserializer<N5DataSource<?
 				final Supplier<String> projectDirectory,
 				final IntFunction<SourceState<?, ?>> dependencyFromIndex)
 		{
-			return new N5DataSourceDeserializer(arguments.globalCache, 0);
+			return new N5DataSourceDeserializer(arguments.globalCache, 0, arguments.openingDataSources);
 		}
 
 		@Override
@@ -0,0 +1,340 @@
+package org.janelia.saalfeldlab.paintera.data.palette;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.TLongSet;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileLongAccess;
+
+/**
+ * Palette encoded {@link VolatileLongAccess} for label data: each distinct value is stored once in a palette, and
+ * each element is stored as an 8, 16, or 32 bit index into the palette. The index width is chosen to fit the palette
+ * and is promoted when {@link #setValue(int, long)} adds more values to the palette than the current width can
+ * address. A block of a typical segmentation holds few distinct labels and needs one or two bytes per element instead
+ * of eight. If writes add more than {@code numElements / 2} values to the palette, the palette no longer saves memory
+ * and the access falls back to storing plain {@code long} values.
+ *
+ * Reads are not synchronized. The palette only grows, and writes publish the palette, i.e. its values together with
+ * its size, before they update the indices, so concurrent readers always see a valid index into the palette.
+ */
+public class PaletteLongArray implements VolatileLongAccess
+{
+
+	private static final int MAX_BYTE_PALETTE_SIZE = 1 << 8;
+
+	private static final int MAX_SHORT_PALETTE_SIZE = 1 << 16;
+
+	/**
+	 * Palette values with the number of values in use. Never modified after it is published: adding a value publishes
+	 * a new instance, which may share the {@link #values} array with its predecessor if it has capacity left.
+	 */
+	private static final class Palette
+	{
+
+		private final long[] values;
+
+		private final int size;
+
+		private Palette(final long[] values, final int size)
+		{
+			this.values = values;
+			this.size = size;
+		}
+
+	}
+
+	/**
+	 * Per palette entry, whether it is contained in {@link #labels}.
+	 */
+	private static class Mask
+	{
+
+		private final TLongSet labels;
+
+		private final boolean[] isContained;
+
+		private Mask(final TLongSet labels, final Palette palette)
+		{
+			this.labels = labels;
+			this.isContained = new boolean[palette.size];
+			for (int i = 0; i < palette.size; ++i)
+				this.isContained[i] = labels.contains(palette.values[i]);
+		}
+
+	}
+
+	private final int numElements;
+
+	private final boolean isValid;
+
+	// null after falling back to plain values
+	private volatile Palette palette;
+
+	// byte[], short[], or int[] palette indices, or long[] plain values
+	private volatile Object indices;
+
+	private volatile Mask mask = null;
+
+	// created on first write, guarded by this
+	private TLongIntHashMap lookup = null;
+
+	private PaletteLongArray(
+			final int numElements,
+			final boolean isValid,
+			final Palette palette,
+			final Object indices)
+	{
+		this.numElements = numElements;
+		this.isValid = isValid;
+		this.palette = palette;
+		this.indices = indices;
+	}
+
+	/**
+	 * Encode the first {@code numElements} elements of {@code data}. Falls back to plain values if {@code data} holds
+	 * more than {@code numElements / 2} distinct values.
+	 */
+	public static PaletteLongArray fromArray(final long[] data, final int numElements, final boolean isValid)
+	{
+		final TLongIntHashMap lookup = new TLongIntHashMap(16, 0.5f, 0, -1);
+		final int[] paletteIndices = new int[numElements];
+		long[] palette = new long[16];
+		int paletteSize = 0;
+		for (int i = 0; i < numElements; ++i)
+		{
+			final long value = data[i];
+			int paletteIndex = lookup.get(value);
+			if (paletteIndex < 0)
+			{
+				if (paletteSize >= maxPaletteSize(numElements))
+					return new PaletteLongArray(numElements, isValid, null, Arrays.copyOf(data, numElements));
+				if (paletteSize == palette.length)
+					palette = Arrays.copyOf(palette, 2 * palette.length);
+				paletteIndex = paletteSize++;
+				palette[paletteIndex] = value;
+				lookup.put(value, paletteIndex);
+			}
+			paletteIndices[i] = paletteIndex;
+		}
+
+		final Object indices;
+		if (paletteSize <= MAX_BYTE_PALETTE_SIZE)
+		{
+			final byte[] bytes = new byte[numElements];
+			for (int i = 0; i < numElements; ++i)
+				bytes[i] = (byte) paletteIndices[i];
+			indices = bytes;
+		}
+		else if (paletteSize <= MAX_SHORT_PALETTE_SIZE)
+		{
+			final short[] shorts = new short[numElements];
+			for (int i = 0; i < numElements; ++i)
+				shorts[i] = (short) paletteIndices[i];
+			indices = shorts;
+		}
+		else
+			indices = paletteIndices;
+
+		return new PaletteLongArray(numElements, isValid, new Palette(Arrays.copyOf(palette, paletteSize), paletteSize), indices);
+	}
+
+	public static PaletteLongArray fromArray(final long[] data, final boolean isValid)
+	{
+		return fromArray(data, data.length, isValid);
+	}
+
+	@Override
+	public long getValue(final int index)
+	{
+		final Object indices = this.indices;
+		if (indices instanceof long[])
+			return ((long[]) indices)[index];
+		final int paletteIndex = getPaletteIndex(indices, index);
+		// read after the indices: at least as recent as paletteIndex
+		final Palette palette = this.palette;
+		return palette == null
+				? ((long[]) this.indices)[index]
+				: palette.values[paletteIndex];
+	}
+
+	@Override
+	public synchronized void setValue(final int index, final long value)
+	{
+		if (this.indices instanceof long[])
+		{
+			((long[]) this.indices)[index] = value;
+			return;
+		}
+
+		final Palette palette = this.palette;
+		if (lookup == null)
+		{
+			lookup = new TLongIntHashMap(Math.max(2 * palette.size, 16), 0.5f, 0, -1);
+			for (int i = 0; i < palette.size; ++i)
+				lookup.put(palette.values[i], i);
+		}
+
+		int paletteIndex = lookup.get(value);
+		if (paletteIndex < 0)
+		{
+			if (palette.size >= maxPaletteSize(numElements))
+			{
+				fallBackToValues();
+				((long[]) this.indices)[index] = value;
+				return;
+			}
+			paletteIndex = palette.size;
+			final long[] values = paletteIndex < palette.values.length
+					? palette.values
+					: Arrays.copyOf(palette.values, Math.max(2 * palette.values.length, 1));
+			values[paletteIndex] = value;
+			this.palette = new Palette(values, paletteIndex + 1);
+			lookup.put(value, paletteIndex);
+			promoteIfNecessary();
+		}
+
+		final Object indices = this.indices;
+		if (indices instanceof byte[])
+			((byte[]) indices)[index] = (byte) paletteIndex;
+		else if (indices instanceof short[])
+			((short[]) indices)[index] = (short) paletteIndex;
+		else
+			((int[]) indices)[index] = paletteIndex;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return isValid;
+	}
+
+	/**
+	 * @return {@code false} if the access fell back to plain values because the palette grew too large
+	 */
+	public boolean isPaletteEncoded()
+	{
+		return palette != null;
+	}
+
+	/**
+	 * @return index into the palette of element {@code index}
+	 * @throws IllegalStateException if the access is not {@link #isPaletteEncoded() palette encoded}
+	 */
+	public int getPaletteIndex(final int index)
+	{
+		final Object indices = this.indices;
+		if (indices instanceof long[])
+			throw new IllegalStateException("Not palette encoded.");
+		return getPaletteIndex(indices, index);
+	}
+
+	private static int getPaletteIndex(final Object indices, final int index)
+	{
+		if (indices instanceof byte[])
+			return ((byte[]) indices)[index] & 0xff;
+		if (indices instanceof short[])
+			return ((short[]) indices)[index] & 0xffff;
+		return ((int[]) indices)[index];
+	}
+
+	/**
+	 * @return number of values in the palette, or {@code 0} if the access is not {@link #isPaletteEncoded() palette
+	 * encoded}
+	 */
+	public int getPaletteSize()
+	{
+		final Palette palette = this.palette;
+		return palette == null ? 0 : palette.size;
+	}
+
+	/**
+	 * Check if element {@code index} is contained in {@code labels}. Each palette entry is tested against
+	 * {@code labels} only once for as long as the same set is passed, i.e. {@code labels} must not be modified while
+	 * it is used.
+	 */
+	public boolean isContainedIn(final int index, final TLongSet labels)
+	{
+		final Object indices = this.indices;
+		if (indices instanceof long[])
+			return labels.contains(((long[]) indices)[index]);
+		final int paletteIndex = getPaletteIndex(indices, index);
+		Mask mask = this.mask;
+		if (mask == null || mask.labels != labels || paletteIndex >= mask.isContained.length)
+		{
+			// read after the indices: at least as recent as paletteIndex
+			final Palette palette = this.palette;
+			if (palette == null)
+				return labels.contains(getValue(index));
+			mask = new Mask(labels, palette);
+			this.mask = mask;
+		}
+		return mask.isContained[paletteIndex];
+	}
+
+	public int getNumElements()
+	{
+		return numElements;
+	}
+
+	public long sizeInBytes()
+	{
+		final Object indices = this.indices;
+		if (indices instanceof long[])
+			return (long) numElements * Long.BYTES;
+		final long indicesSize = indices instanceof byte[]
+				? numElements * Byte.BYTES
+				: indices instanceof short[]
+				? numElements * Short.BYTES
+				: numElements * Integer.BYTES;
+		final TLongIntHashMap lookup = this.lookup;
+		final long lookupSize = lookup == null ? 0 : lookup.capacity() * (Long.BYTES + Integer.BYTES + Byte.BYTES);
+		final Palette palette = this.palette;
+		return indicesSize + (palette == null ? 0 : palette.values.length * Long.BYTES) + lookupSize;
+	}
+
+	/**
+	 * With 32 bit indices, a palette of more than half as many values as elements takes more memory than plain values.
+	 */
+	private static int maxPaletteSize(final int numElements)
+	{
+		return numElements / 2;
+	}
+
+	/**
+	 * Replace indices by plain values. Publishes the values before dropping the palette: readers that find the palette
+	 * gone re-read the values.
+	 */
+	private void fallBackToValues()
+	{
+		final long[] values = new long[numElements];
+		for (int i = 0; i < numElements; ++i)
+			values[i] = getValue(i);
+		this.indices = values;
+		this.palette = null;
+		this.mask = null;
+		this.lookup = null;
+	}
+
+	private void promoteIfNecessary()
+	{
+		final Object indices = this.indices;
+		final int paletteSize = this.palette.size;
+		if (indices instanceof byte[] && paletteSize > MAX_BYTE_PALETTE_SIZE)
+		{
+			final byte[] bytes = (byte[]) indices;
+			final short[] shorts = new short[numElements];
+			for (int i = 0; i < numElements; ++i)
+				shorts[i] = (short) (bytes[i] & 0xff);
+			this.indices = shorts;
+		}
+		else if (indices instanceof short[] && paletteSize > MAX_SHORT_PALETTE_SIZE)
+		{
+			final short[] shorts = (short[]) indices;
+			final int[] ints = new int[numElements];
+			for (int i = 0; i < numElements; ++i)
+				ints[i] = shorts[i] & 0xffff;
+			this.indices = ints;
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package org.janelia.saalfeldlab.paintera.data.palette;
+
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+
+/**
+ * {@link UnsignedLongType} linked to a {@link NativeImg} that exposes its current access, so that consumers can take
+ * a fast path if the access is a {@link PaletteLongArray}.
+ */
+public class PaletteUnsignedLongType extends UnsignedLongType
+{
+
+	public PaletteUnsignedLongType(final NativeImg<?, ? extends LongAccess> img)
+	{
+		super(img);
+	}
+
+	/**
+	 * @return current access, or {@code null} if this type is not linked to a {@link PaletteLongArray}
+	 */
+	public PaletteLongArray getPaletteAccess()
+	{
+		return dataAccess instanceof PaletteLongArray ? (PaletteLongArray) dataAccess : null;
+	}
+
+	@Override
+	public PaletteUnsignedLongType duplicateTypeOnSameNativeImg()
+	{
+		return new PaletteUnsignedLongType(img);
+	}
+
+}
@@ -0,0 +1,346 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scene graph representation of all block meshes of a single segment. Instead of one {@link MeshView} per block, block
+ * meshes are merged into a small number of batches, each of which is backed by a single {@link TriangleMesh} with up
+ * to {@link #DEFAULT_MAX_VERTICES_PER_BATCH} vertices. Adding or removing a block only marks the affected batch as
+ * dirty; dirty batches are re-built on the JavaFX application thread by the shared {@link MeshBatchUpdater}, which
+ * limits the number of batch updates per pulse.
+ *
+ * All batches share a single {@link PhongMaterial}, draw mode, and cull face. {@link #inflateProperty() Inflation} is
+ * applied to each block individually (with respect to the block's bounding box center), consistent with scaling one
+ * {@link MeshView} per block.
+ *
+ * @param <T> segment id type of the {@link ShapeKey block keys}
+ */
+public class BatchedMeshGroup<T>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_MAX_VERTICES_PER_BATCH = 1 << 19;
+
+	private static final float[] NO_TEX_COORDS = {0, 0};
+
+	private static class BlockMesh
+	{
+		private final float[] vertices;
+
+		private final float[] normals;
+
+		private final float[] center;
+
+		private Batch batch;
+
+		private BlockMesh(final float[] vertices, final float[] normals)
+		{
+			this.vertices = vertices;
+			this.normals = normals;
+			this.center = boundingBoxCenter(vertices);
+		}
+
+		private int numVertices()
+		{
+			return vertices.length / 3;
+		}
+	}
+
+	private class Batch implements Runnable
+	{
+		private final Set<ShapeKey<T>> keys = new LinkedHashSet<>();
+
+		private int numVertices = 0;
+
+		private MeshView view = null;
+
+		/**
+		 * Re-build mesh from current blocks. Called by {@link MeshBatchUpdater} on the JavaFX application thread.
+		 */
+		@Override
+		public void run()
+		{
+			final float[] points;
+			final float[] normals;
+			final int[] faces;
+			final float inflate;
+			synchronized (BatchedMeshGroup.this)
+			{
+				if (keys.isEmpty())
+				{
+					if (view != null)
+					{
+						group.getChildren().remove(view);
+						unbind(view);
+						view = null;
+					}
+					return;
+				}
+				inflate = (float) BatchedMeshGroup.this.inflate.get();
+				points = new float[3 * numVertices];
+				normals = new float[3 * numVertices];
+				int offset = 0;
+				for (final ShapeKey<T> key : keys)
+				{
+					final BlockMesh block = blocks.get(key);
+					copyInflated(block.vertices, block.center, inflate, points, offset);
+					System.arraycopy(block.normals, 0, normals, offset, block.normals.length);
+					offset += block.vertices.length;
+				}
+			}
+
+			faces = new int[3 * (points.length / 3)];
+			for (int i = 0, k = 0; i < faces.length; i += 3, ++k)
+			{
+				faces[i + 0] = k;
+				faces[i + 1] = k;
+				faces[i + 2] = 0;
+			}
+
+			if (view == null)
+			{
+				final TriangleMesh mesh = new TriangleMesh();
+				mesh.setVertexFormat(VertexFormat.POINT_NORMAL_TEXCOORD);
+				mesh.getTexCoords().setAll(NO_TEX_COORDS);
+				view = new MeshView(mesh);
+				view.setMaterial(material);
+				view.drawModeProperty().bind(drawMode);
+				view.cullFaceProperty().bind(cullFace);
+				group.getChildren().add(view);
+			}
+			final TriangleMesh mesh = (TriangleMesh) view.getMesh();
+			// faces refer to points and normals: clear faces first so that they never refer to missing points
+			mesh.getFaces().clear();
+			mesh.getPoints().setAll(points);
+			mesh.getNormals().setAll(normals);
+			mesh.getFaces().setAll(faces);
+			LOG.trace("Updated batch with {} blocks and {} vertices", keys.size(), points.length / 3);
+		}
+	}
+
+	private final Map<ShapeKey<T>, BlockMesh> blocks = new HashMap<>();
+
+	private final List<Batch> batches = new ArrayList<>();
+
+	private final Group group = new Group();
+
+	private final PhongMaterial material = new PhongMaterial();
+
+	private final ObjectProperty<DrawMode> drawMode = new SimpleObjectProperty<>(DrawMode.FILL);
+
+	private final ObjectProperty<CullFace> cullFace = new SimpleObjectProperty<>(CullFace.FRONT);
+
+	private final DoubleProperty inflate = new SimpleDoubleProperty(1.0);
+
+	private final int maxVerticesPerBatch;
+
+	private final Consumer<Runnable> scheduleUpdate;
+
+	public BatchedMeshGroup()
+	{
+		this(DEFAULT_MAX_VERTICES_PER_BATCH);
+	}
+
+	public BatchedMeshGroup(final int maxVerticesPerBatch)
+	{
+		this(maxVerticesPerBatch, MeshBatchUpdater.getInstance()::schedule);
+	}
+
+	/**
+	 *
+	 * @param scheduleUpdate schedule re-building of a dirty batch on the JavaFX application thread
+	 */
+	BatchedMeshGroup(final int maxVerticesPerBatch, final Consumer<Runnable> scheduleUpdate)
+	{
+		this.maxVerticesPerBatch = maxVerticesPerBatch;
+		this.scheduleUpdate = scheduleUpdate;
+		this.material.setSpecularColor(new Color(1, 1, 1, 1.0));
+		this.material.setSpecularPower(50);
+		this.inflate.addListener(obs -> invalidateAll());
+	}
+
+	/**
+	 *
+	 * @return single scene graph node that holds all batches.
+	 */
+	public Node getNode()
+	{
+		return this.group;
+	}
+
+	public PhongMaterial getMaterial()
+	{
+		return this.material;
+	}
+
+	public ObjectProperty<DrawMode> drawModeProperty()
+	{
+		return this.drawMode;
+	}
+
+	public ObjectProperty<CullFace> cullFaceProperty()
+	{
+		return this.cullFace;
+	}
+
+	public DoubleProperty inflateProperty()
+	{
+		return this.inflate;
+	}
+
+	/**
+	 * Add (or replace) the mesh for block {@code key}.
+	 *
+	 * @param vertices triangle vertices, three consecutive vertices make up a triangle
+	 * @param normals one normal per vertex
+	 */
+	public synchronized void add(final ShapeKey<T> key, final float[] vertices, final float[] normals)
+	{
+		remove(key);
+		final BlockMesh block = new BlockMesh(vertices, normals);
+		if (block.numVertices() == 0)
+			return;
+		final Batch batch = batchWithCapacity(block.numVertices());
+		block.batch = batch;
+		batch.keys.add(key);
+		batch.numVertices += block.numVertices();
+		blocks.put(key, block);
+		scheduleUpdate.accept(batch);
+	}
+
+	public synchronized void remove(final ShapeKey<T> key)
+	{
+		final BlockMesh block = blocks.remove(key);
+		if (block == null)
+			return;
+		final Batch batch = block.batch;
+		batch.keys.remove(key);
+		batch.numVertices -= block.numVertices();
+		if (batch.keys.isEmpty())
+			batches.remove(batch);
+		scheduleUpdate.accept(batch);
+	}
+
+	/**
+	 * Remove all blocks that match {@code filter}.
+	 *
+	 * @return number of removed blocks
+	 */
+	public synchronized int removeMatching(final Predicate<ShapeKey<T>> filter)
+	{
+		final List<ShapeKey<T>> toBeRemoved = new ArrayList<>();
+		for (final ShapeKey<T> key : blocks.keySet())
+			if (filter.test(key))
+				toBeRemoved.add(key);
+		toBeRemoved.forEach(this::remove);
+		return toBeRemoved.size();
+	}
+
+	/**
+	 * Remove all blocks whose {@link ShapeKey#interval() interval} intersects with {@code range}, e.g. after the
+	 * labels in {@code range} were modified.
+	 *
+	 * @param range in voxel coordinates of the scale level of the blocks
+	 *
+	 * @return number of removed blocks
+	 */
+	public synchronized int removeIntersecting(final Interval range)
+	{
+		return removeMatching(key -> !Intervals.isEmpty(Intervals.intersect(key.interval(), range)));
+	}
+
+	public synchronized void clear()
+	{
+		removeMatching(key -> true);
+	}
+
+	public synchronized int numBlocks()
+	{
+		return this.blocks.size();
+	}
+
+	public synchronized int numBatches()
+	{
+		return this.batches.size();
+	}
+
+	private synchronized void invalidateAll()
+	{
+		batches.forEach(scheduleUpdate);
+	}
+
+	private Batch batchWithCapacity(final int numVertices)
+	{
+		// fill batches in order of creation to keep the number of batches small
+		for (final Batch batch : batches)
+			if (batch.numVertices + numVertices <= maxVerticesPerBatch)
+				return batch;
+		final Batch batch = new Batch();
+		batches.add(batch);
+		return batch;
+	}
+
+	private void unbind(final MeshView view)
+	{
+		view.drawModeProperty().unbind();
+		view.cullFaceProperty().unbind();
+	}
+
+	private static float[] boundingBoxCenter(final float[] vertices)
+	{
+		final float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+		final float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		for (int i = 0; i < vertices.length; i += 3)
+			for (int d = 0; d < 3; ++d)
+			{
+				min[d] = Math.min(min[d], vertices[i + d]);
+				max[d] = Math.max(max[d], vertices[i + d]);
+			}
+		return new float[] {0.5f * (min[0] + max[0]), 0.5f * (min[1] + max[1]), 0.5f * (min[2] + max[2])};
+	}
+
+	private static void copyInflated(
+			final float[] source,
+			final float[] center,
+			final float inflate,
+			final float[] target,
+			final int offset)
+	{
+		if (inflate == 1.0f)
+		{
+			System.arraycopy(source, 0, target, offset, source.length);
+			return;
+		}
+		for (int i = 0; i < source.length; i += 3)
+			for (int d = 0; d < 3; ++d)
+				target[offset + i + d] = center[d] + inflate * (source[i + d] - center[d]);
+	}
+
+}
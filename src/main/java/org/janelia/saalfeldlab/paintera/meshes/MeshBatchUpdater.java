@@ -0,0 +1,119 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import javafx.animation.AnimationTimer;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Apply pending updates of {@link BatchedMeshGroup} batches on the JavaFX application thread, at most
+ * {@link #getMaxUpdatesPerPulse()} per pulse across all mesh groups. Updates that are requested repeatedly before they
+ * are applied are merged, i.e. any number of block updates of a batch result in a single scene graph update. The
+ * underlying {@link AnimationTimer} only runs while there are pending updates.
+ *
+ * The number of updates per pulse is configured in {@code paintera.yml}:
+ * <pre>
+ * meshes:
+ *   maxBatchUpdatesPerPulse: 4
+ * </pre>
+ */
+class MeshBatchUpdater
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int DEFAULT_MAX_UPDATES_PER_PULSE = 4;
+
+	private static final MeshBatchUpdater INSTANCE = new MeshBatchUpdater(maxUpdatesPerPulseFromConfig());
+
+	private final Set<Runnable> pending = new LinkedHashSet<>();
+
+	private final AnimationTimer timer = new AnimationTimer()
+	{
+		@Override
+		public void handle(final long now)
+		{
+			applyPendingUpdates();
+		}
+	};
+
+	private final int maxUpdatesPerPulse;
+
+	private boolean isRunning = false;
+
+	private MeshBatchUpdater(final int maxUpdatesPerPulse)
+	{
+		this.maxUpdatesPerPulse = Math.max(maxUpdatesPerPulse, 1);
+	}
+
+	static MeshBatchUpdater getInstance()
+	{
+		return INSTANCE;
+	}
+
+	int getMaxUpdatesPerPulse()
+	{
+		return this.maxUpdatesPerPulse;
+	}
+
+	/**
+	 * Schedule {@code update} for execution on the JavaFX application thread. No-op if {@code update} is pending
+	 * already.
+	 */
+	void schedule(final Runnable update)
+	{
+		synchronized (pending)
+		{
+			pending.add(update);
+			if (isRunning)
+				return;
+			isRunning = true;
+		}
+		InvokeOnJavaFXApplicationThread.invoke(timer::start);
+	}
+
+	private void applyPendingUpdates()
+	{
+		final int maxUpdates = this.maxUpdatesPerPulse;
+		for (int i = 0; i < maxUpdates; ++i)
+		{
+			final Runnable update;
+			synchronized (pending)
+			{
+				final Iterator<Runnable> it = pending.iterator();
+				if (!it.hasNext())
+				{
+					timer.stop();
+					isRunning = false;
+					return;
+				}
+				update = it.next();
+				it.remove();
+			}
+			try
+			{
+				update.run();
+			} catch (final RuntimeException e)
+			{
+				LOG.warn("Unable to update mesh batch: {}", e.getMessage());
+				LOG.debug("Unable to update mesh batch", e);
+			}
+		}
+	}
+
+	private static int maxUpdatesPerPulseFromConfig()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "meshes", "maxBatchUpdatesPerPulse"))
+				.map(o -> o instanceof Number ? ((Number) o).intValue() : Integer.parseInt(o.toString()))
+				.orElse(DEFAULT_MAX_UPDATES_PER_PULSE);
+	}
+
+}
@@ -42,6 +42,18 @@ public abstract class MeshExporter<T>
 			final T id,
 			final int scaleIndex,
 			final String path)
+	{
+		exportMesh(blockListCache, meshCache, id, scaleIndex, 0.0, 0, path);
+	}
+
+	public void exportMesh(
+			final Function<T, Interval[]>[] blockListCache,
+			final Function<ShapeKey<T>, Pair<float[], float[]>>[] meshCache,
+			final T id,
+			final int scaleIndex,
+			final double smoothingLambda,
+			final int smoothingIterations,
+			final String path)
 	{
 		// all blocks from id
 		final Set<HashWrapper<Interval>> blockSet = new HashSet<>();
@@ -58,13 +70,12 @@ public abstract class MeshExporter<T>
 		for (final Interval block : blocks)
 		{
 			// ignoring simplification iterations parameter
-			// TODO consider smoothing parameters
 			keys.add(new ShapeKey<>(
 					id,
 					scaleIndex,
 					0,
-					0,
-					0,
+					smoothingLambda,
+					smoothingIterations,
 					Intervals.minAsLongArray(block),
 					Intervals.maxAsLongArray(block)
 			));
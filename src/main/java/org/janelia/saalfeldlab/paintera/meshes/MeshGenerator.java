@@ -23,12 +23,11 @@ import javafx.collections.ObservableMap;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
-import javafx.scene.shape.MeshView;
 import net.imglib2.Interval;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.meshes.MeshGeneratorJobManager.ManagementTask;
@@ -99,7 +98,9 @@ public class MeshGenerator<T>
 
 	private final BooleanProperty isVisible = new SimpleBooleanProperty(true);
 
-	private final ObservableMap<ShapeKey<T>, MeshView> meshes = FXCollections.observableHashMap();
+	private final ObservableMap<ShapeKey<T>, Pair<float[], float[]>> meshes = FXCollections.observableHashMap();
+
+	private final BatchedMeshGroup<T> meshGroup = new BatchedMeshGroup<>();
 
 	private final IntegerProperty scaleIndex = new SimpleIntegerProperty(0);
 
@@ -164,7 +165,7 @@ public class MeshGenerator<T>
 		this.color = Bindings.createObjectBinding(() -> fromInt(color.get()), color);
 		this.managers = managers;
 		this.workers = workers;
-		this.manager = new MeshGeneratorJobManager<>(this.meshes, this.managers, this.workers);
+		this.manager = new MeshGeneratorJobManager<>(this.meshes, this.managers, this.workers, this.isVisible::get);
 		this.colorWithAlpha = Bindings.createObjectBinding(
 				() -> this.color.getValue().deriveColor(
 						0,
@@ -193,65 +194,20 @@ public class MeshGenerator<T>
 
 		this.root = root;
 
-		this.isEnabled.addListener((obs, oldv, newv) -> {
-			InvokeOnJavaFXApplicationThread.invoke(() -> {
-				synchronized (this.meshes)
-				{
-					if (newv)
-					{
-						this.root.getChildren().addAll(this.meshes.values());
-					}
-					else
-					{
-						this.root.getChildren().removeAll(this.meshes.values());
-					}
-				}
-			});
-		});
+		this.meshGroup.getMaterial().diffuseColorProperty().bind(this.colorWithAlpha);
+		this.meshGroup.getNode().visibleProperty().bind(this.isVisible);
+		this.meshGroup.drawModeProperty().bind(this.drawMode);
+		this.meshGroup.cullFaceProperty().bind(this.cullFace);
+		this.meshGroup.inflateProperty().bind(this.inflate);
 
-		this.meshes.addListener((MapChangeListener<ShapeKey<T>, MeshView>) change -> {
-			if (change.wasRemoved())
-			{
-				((PhongMaterial) change.getValueRemoved().getMaterial()).diffuseColorProperty().unbind();
-				change.getValueRemoved().visibleProperty().unbind();
-				change.getValueRemoved().drawModeProperty().unbind();
-				change.getValueRemoved().cullFaceProperty().unbind();
-				change.getValueRemoved().scaleXProperty().unbind();
-				change.getValueRemoved().scaleYProperty().unbind();
-				change.getValueRemoved().scaleZProperty().unbind();
-			}
-			else
-			{
-				((PhongMaterial) change.getValueAdded().getMaterial()).diffuseColorProperty().bind(this
-						.colorWithAlpha);
-				change.getValueAdded().visibleProperty().bind(this.isVisible);
-				change.getValueAdded().drawModeProperty().bind(this.drawMode);
-				change.getValueAdded().cullFaceProperty().bind(this.cullFace);
-				change.getValueAdded().scaleXProperty().bind(this.inflate);
-				change.getValueAdded().scaleYProperty().bind(this.inflate);
-				change.getValueAdded().scaleZProperty().bind(this.inflate);
-			}
+		this.isEnabled.addListener((obs, oldv, newv) -> InvokeOnJavaFXApplicationThread.invoke(() -> setMeshGroupEnabled(newv)));
+		InvokeOnJavaFXApplicationThread.invoke(() -> setMeshGroupEnabled(this.isEnabled.get()));
 
+		this.meshes.addListener((MapChangeListener<ShapeKey<T>, Pair<float[], float[]>>) change -> {
 			if (change.wasRemoved())
-			{
-				InvokeOnJavaFXApplicationThread.invoke(() -> this.root.getChildren().remove(change.getValueRemoved()));
-				//					InvokeOnJavaFXApplicationThread.invoke( synchronize( () -> this.root.getChildren()
-				// .remove( change.getValueRemoved() ), this.root ) );
-			}
-			else if (change.wasAdded() && !this.root.getChildren().contains(change.getValueAdded()))
-			{
-				InvokeOnJavaFXApplicationThread.invoke(() -> {
-					if (this.root != null && this.isEnabled.get())
-					{
-						final ObservableList<Node> children = this.root.getChildren();
-						if (!children.contains(change.getValueAdded()))
-						{
-							LOG.debug("Adding children: {}", change.getValueAdded());
-							children.add(change.getValueAdded());
-						}
-					}
-				});
-			}
+				this.meshGroup.remove(change.getKey());
+			if (change.wasAdded())
+				this.meshGroup.add(change.getKey(), change.getValueAdded().getA(), change.getValueAdded().getB());
 		});
 		this.changed.set(true);
 	}
@@ -272,6 +228,58 @@ public class MeshGenerator<T>
 		}
 	}
 
+	/**
+	 * Remove meshes of all blocks that intersect {@code range}, e.g. after labels in {@code range} were modified. Does
+	 * not trigger re-generation of the removed meshes.
+	 *
+	 * @param range in voxel coordinates of the current {@link #scaleIndexProperty() scale level}
+	 */
+	public void removeMeshesIntersecting(final Interval range)
+	{
+		synchronized (this.meshes)
+		{
+			// removes the blocks from the scene in one pass, the map listener is a no-op for them afterwards
+			this.meshGroup.removeIntersecting(range);
+			this.meshes.keySet().removeIf(key -> !Intervals.isEmpty(Intervals.intersect(key.interval(), range)));
+		}
+	}
+
+	/**
+	 * Remove and re-generate meshes of all blocks that intersect any of {@code ranges}, e.g. after labels in
+	 * {@code ranges} were modified. Meshes of all other blocks are kept, and blocks that now contain the segment are
+	 * added. Cached meshes of the affected blocks must be invalidated by the caller. If meshes are still being
+	 * generated, all meshes are re-generated instead.
+	 *
+	 * @param ranges in voxel coordinates of the current {@link #scaleIndexProperty() scale level}
+	 */
+	public void refreshMeshesIntersecting(final Interval... ranges)
+	{
+		synchronized (this.activeFuture)
+		{
+			final Future<Void> activeFuture = this.activeFuture.get();
+			if (activeFuture != null && !activeFuture.isDone())
+			{
+				updateMeshes(true);
+				return;
+			}
+			for (final Interval range : ranges)
+				removeMeshesIntersecting(range);
+			submit(true);
+		}
+	}
+
+	private void setMeshGroupEnabled(final boolean isEnabled)
+	{
+		final ObservableList<Node> children = this.root.getChildren();
+		if (!isEnabled)
+			children.remove(this.meshGroup.getNode());
+		else if (!children.contains(this.meshGroup.getNode()))
+		{
+			LOG.debug("Adding mesh group for {}", this.id);
+			children.add(this.meshGroup.getNode());
+		}
+	}
+
 	private void updateMeshes(final boolean doUpdate)
 	{
 		LOG.debug("Updating mesh? {}", doUpdate);
@@ -280,6 +288,14 @@ public class MeshGenerator<T>
 		synchronized (this.activeFuture)
 		{
 			interrupt();
+			submit(false);
+		}
+	}
+
+	private void submit(final boolean keepExisting)
+	{
+		synchronized (this.activeFuture)
+		{
 			final int scaleIndex = this.scaleIndex.get();
 			final Pair<Future<Void>, MeshGeneratorJobManager<T>.ManagementTask> futureAndTask = manager.submit(
 					id,
@@ -292,7 +308,8 @@ public class MeshGenerator<T>
 					submittedTasks::set,
 					completedTasks::set,
 					() -> {
-					}
+					},
+					keepExisting
 			                                                                                                  );
 			LOG.debug("Submitting new task {}", futureAndTask);
 			this.activeFuture.set(futureAndTask.getA());
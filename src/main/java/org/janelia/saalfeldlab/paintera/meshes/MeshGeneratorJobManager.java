@@ -2,29 +2,23 @@ package org.janelia.saalfeldlab.paintera.meshes;
 
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.IntConsumer;
-import java.util.stream.Collectors;
 
 import javafx.collections.ObservableMap;
-import javafx.scene.paint.Color;
-import javafx.scene.paint.PhongMaterial;
-import javafx.scene.shape.CullFace;
-import javafx.scene.shape.DrawMode;
-import javafx.scene.shape.MeshView;
-import javafx.scene.shape.TriangleMesh;
-import javafx.scene.shape.VertexFormat;
 import net.imglib2.Interval;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.janelia.saalfeldlab.util.HashWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,21 +27,41 @@ public class MeshGeneratorJobManager<T>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	private final ObservableMap<ShapeKey<T>, MeshView> meshes;
+	private final ObservableMap<ShapeKey<T>, Pair<float[], float[]>> meshes;
 
 	private final ExecutorService manager;
 
 	private final ExecutorService workers;
 
+	private final BooleanSupplier isVisible;
+
 	public MeshGeneratorJobManager(
-			final ObservableMap<ShapeKey<T>, MeshView> meshes,
+			final ObservableMap<ShapeKey<T>, Pair<float[], float[]>> meshes,
 			final ExecutorService manager,
 			final ExecutorService workers)
+	{
+		this(meshes, manager, workers, () -> true);
+	}
+
+	/**
+	 * @param manager   runs {@link ManagementTask}s. A task only schedules its work on {@code workers} and does not
+	 *                  block a manager thread while the meshes are generated.
+	 * @param workers   runs block list retrieval and mesh generation. If {@code workers} is a
+	 *                  {@link MeshWorkerExecutorService}, blocks are prioritized by {@code isVisible}, their index
+	 *                  within the segment, and the submission time of the segment.
+	 * @param isVisible whether the segment is visible, queried once per {@link ManagementTask}
+	 */
+	public MeshGeneratorJobManager(
+			final ObservableMap<ShapeKey<T>, Pair<float[], float[]>> meshes,
+			final ExecutorService manager,
+			final ExecutorService workers,
+			final BooleanSupplier isVisible)
 	{
 		super();
 		this.meshes = meshes;
 		this.manager = manager;
 		this.workers = workers;
+		this.isVisible = isVisible;
 	}
 
 	public Pair<Future<Void>, ManagementTask> submit(
@@ -61,6 +75,38 @@ public class MeshGeneratorJobManager<T>
 			final IntConsumer setNumberOfTasks,
 			final IntConsumer setNumberOfCompletedTasks,
 			final Runnable onFinish)
+	{
+		return submit(
+				identifier,
+				scaleIndex,
+				simplificationIterations,
+				smoothingLambda,
+				smoothingIterations,
+				getBlockList,
+				getMesh,
+				setNumberOfTasks,
+				setNumberOfCompletedTasks,
+				onFinish,
+				false);
+	}
+
+	/**
+	 * @param keepExisting if {@code true}, keep existing meshes and only generate meshes for blocks that do not have
+	 *                     one yet, e.g. after the meshes of modified blocks were removed. Otherwise, all meshes are
+	 *                     removed and re-generated.
+	 */
+	public Pair<Future<Void>, ManagementTask> submit(
+			final T identifier,
+			final int scaleIndex,
+			final int simplificationIterations,
+			final double smoothingLambda,
+			final int smoothingIterations,
+			final InterruptibleFunction<T, Interval[]> getBlockList,
+			final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh,
+			final IntConsumer setNumberOfTasks,
+			final IntConsumer setNumberOfCompletedTasks,
+			final Runnable onFinish,
+			final boolean keepExisting)
 	{
 		final ManagementTask task = new ManagementTask(
 				identifier,
@@ -72,11 +118,12 @@ public class MeshGeneratorJobManager<T>
 				getMesh,
 				setNumberOfTasks,
 				setNumberOfCompletedTasks,
-				onFinish
+				onFinish,
+				keepExisting
 		);
-		final Future<Void> future = manager.submit(task);
+		manager.submit(task);
 		setNumberOfTasks.accept(MeshGenerator.SUBMITTED_MESH_GENERATION_TASK);
-		return new ValuePair<>(future, task);
+		return new ValuePair<>(task.completion, task);
 	}
 
 	public class ManagementTask implements Callable<Void>
@@ -95,7 +142,7 @@ public class MeshGeneratorJobManager<T>
 
 		private final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh;
 
-		private boolean isInterrupted = false;
+		private volatile boolean isInterrupted = false;
 
 		private final IntConsumer setNumberOfTasks;
 
@@ -103,8 +150,22 @@ public class MeshGeneratorJobManager<T>
 
 		private final Runnable onFinish;
 
+		private final boolean keepExisting;
+
 		private final List<ShapeKey<T>> keys = new ArrayList<>();
 
+		private final List<CompletableFuture<Void>> blockTasks = new ArrayList<>();
+
+		private final Set<HashWrapper<Interval>> submittedBlocks = new HashSet<>();
+
+		private final AtomicInteger completedTasks = new AtomicInteger(0);
+
+		private volatile boolean isVisible;
+
+		private final long selectionTime = System.nanoTime();
+
+		private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
 		public ManagementTask(
 				final T identifier,
 				final int scaleIndex,
@@ -116,6 +177,33 @@ public class MeshGeneratorJobManager<T>
 				final IntConsumer setNumberOfTasks,
 				final IntConsumer setNumberOfCompletedTasks,
 				final Runnable onFinish)
+		{
+			this(
+					identifier,
+					scaleIndex,
+					simplificationIterations,
+					smoothingLambda,
+					smoothingIterations,
+					getBlockList,
+					getMesh,
+					setNumberOfTasks,
+					setNumberOfCompletedTasks,
+					onFinish,
+					false);
+		}
+
+		public ManagementTask(
+				final T identifier,
+				final int scaleIndex,
+				final int simplificationIterations,
+				final double smoothingLambda,
+				final int smoothingIterations,
+				final InterruptibleFunction<T, Interval[]> getBlockList,
+				final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh,
+				final IntConsumer setNumberOfTasks,
+				final IntConsumer setNumberOfCompletedTasks,
+				final Runnable onFinish,
+				final boolean keepExisting)
 		{
 			super();
 			this.identifier = identifier;
@@ -128,6 +216,7 @@ public class MeshGeneratorJobManager<T>
 			this.setNumberOfTasks = setNumberOfTasks;
 			this.setNumberOfCompletedTasks = setNumberOfCompletedTasks;
 			this.onFinish = onFinish;
+			this.keepExisting = keepExisting;
 		}
 
 		public void interrupt()
@@ -137,6 +226,7 @@ public class MeshGeneratorJobManager<T>
 			this.getBlockList.interruptFor(this.identifier);
 			synchronized (this.keys)
 			{
+				cancelBlockTasks();
 				this.keys.forEach(this.getMesh::interruptFor);
 			}
 		}
@@ -144,235 +234,214 @@ public class MeshGeneratorJobManager<T>
 		@Override
 		public Void call()
 		{
-			try
+			if (this.isInterrupted)
+			{
+				this.onFinish.run();
+				completion.complete(null);
+				return null;
+			}
+
+			if (!keepExisting)
 			{
 				synchronized (meshes)
 				{
 					LOG.debug("Clearing meshes: {}", meshes);
 					meshes.clear();
 				}
+			}
 
-				final Set<HashWrapper<Interval>> blockSet = new HashSet<>();
+			synchronized (setNumberOfTasks)
+			{
+				setNumberOfTasks.accept(MeshGenerator.RETRIEVING_RELEVANT_BLOCKS);
+				setNumberOfCompletedTasks.accept(0);
+			}
 
-				final CountDownLatch countDownOnBlockList = new CountDownLatch(1);
+			this.isVisible = MeshGeneratorJobManager.this.isVisible.getAsBoolean();
 
-				synchronized (setNumberOfTasks)
-				{
-					setNumberOfTasks.accept(MeshGenerator.RETRIEVING_RELEVANT_BLOCKS);
-					setNumberOfCompletedTasks.accept(0);
-				}
+			@SuppressWarnings("unchecked") final Callable<Interval[]> retrieveBlocks = getBlockList instanceof StreamingBlockListFunction<?>
+			                                                                          ? () -> ((StreamingBlockListFunction<T>) getBlockList).apply(identifier, this::submitBlock)
+			                                                                          : () -> getBlockList.apply(identifier);
 
-				workers.submit(() -> {
-					try
-					{
+			submitToWorkers(retrieveBlocks, MeshWorkerExecutorService.Priority.DEFAULT)
+					.thenCompose(this::submitBlocks)
+					.whenComplete((result, error) -> {
+						if (error != null && !this.isInterrupted)
+							LOG.debug("Unable to generate meshes for {}: {}", identifier, error);
+						if (this.isInterrupted)
+						{
+							LOG.debug("Was interrupted, removing all meshes");
+							synchronized (meshes)
+							{
+								meshes.clear();
+							}
+						}
+						this.onFinish.run();
+						completion.complete(null);
+					});
 
-						blockSet.addAll(
-								Arrays
-										.stream(getBlockList.apply(identifier))
-										.map(HashWrapper::interval)
-										.collect(Collectors.toList()));
-						LOG.debug("Found relevant blocks: {}", blockSet);
-					} finally
-					{
-						countDownOnBlockList.countDown();
-					}
-				});
-				try
-				{
-					countDownOnBlockList.await();
-				} catch (final InterruptedException e)
-				{
-					LOG.debug("Interrupted while waiting for block lists for label {}", identifier);
-					getBlockList.interruptFor(identifier);
-					this.isInterrupted = true;
-				}
+			return null;
+		}
+
+		/**
+		 * Submit mesh generation for all {@code blocks} that were not {@link #submitBlock(Interval) submitted} while
+		 * the block list was retrieved.
+		 *
+		 * @return completes when the meshes of all submitted blocks are generated
+		 */
+		private CompletableFuture<Void> submitBlocks(final Interval[] blocks)
+		{
+			if (blocks == null)
+			{
+				LOG.debug("Block list retrieval for {} was interrupted", identifier);
+				return CompletableFuture.completedFuture(null);
+			}
+
+			LOG.debug("Found {} blocks for id {}", blocks.length, identifier);
+
+			if (this.isInterrupted)
+			{
+				LOG.debug("Got interrupted before building meshes -- returning");
+				return CompletableFuture.completedFuture(null);
+			}
 
-				final List<Interval> blockList = blockSet
-						.stream()
-						.map(HashWrapper::getData)
-						.collect(Collectors.toList());
+			synchronized (keys)
+			{
+				for (final Interval block : blocks)
+					submitBlock(block);
 
 				synchronized (setNumberOfTasks)
 				{
-					setNumberOfTasks.accept(blockList.size());
-					setNumberOfCompletedTasks.accept(0);
+					setNumberOfTasks.accept(keys.size());
 				}
 
-				LOG.debug("Found {} blocks", blockList.size());
-
 				if (this.isInterrupted)
-				{
-					LOG.debug("Got interrupted before building meshes -- returning");
-					return null;
-				}
+					cancelBlockTasks();
 
-				LOG.debug("Generating mesh with {} blocks for id {}.", blockList.size(), this.identifier);
+				return CompletableFuture
+						.allOf(blockTasks.toArray(new CompletableFuture[0]))
+						.exceptionally(error -> null);
+			}
+		}
 
-				synchronized (keys)
+		/**
+		 * Submit mesh generation for {@code block} unless it was submitted before, or it has a mesh already and
+		 * existing meshes are kept. Blocks are prioritized in the order in which they are submitted.
+		 */
+		private void submitBlock(final Interval block)
+		{
+			synchronized (keys)
+			{
+				if (this.isInterrupted || !submittedBlocks.add(HashWrapper.interval(block)))
+					return;
+
+				final ShapeKey<T> key = new ShapeKey<>(
+						identifier,
+						scaleIndex,
+						simplificationIterations,
+						smoothingLambda,
+						smoothingIterations,
+						Intervals.minAsLongArray(block),
+						Intervals.maxAsLongArray(block)
+				);
+				synchronized (meshes)
 				{
-					keys.clear();
-					for (final Interval block : blockList)
-					{
-						keys.add(
-								new ShapeKey<>(
-										identifier,
-										scaleIndex,
-										simplificationIterations,
-										smoothingLambda,
-										smoothingIterations,
-										Intervals.minAsLongArray(block),
-										Intervals.maxAsLongArray(block)
-								));
-					}
+					if (keepExisting && meshes.containsKey(key))
+						return;
 				}
 
-				if (!isInterrupted)
+				final int index = keys.size();
+				keys.add(key);
+				synchronized (setNumberOfTasks)
 				{
+					setNumberOfTasks.accept(keys.size());
+				}
+				MetricRegistry.global().counter("mesh.blocks.queued").inc();
+				blockTasks.add(submitToWorkers(
+						() -> generateMesh(key),
+						new MeshWorkerExecutorService.Priority(isVisible, index, selectionTime)));
+			}
+		}
 
-					final int            numTasks          = keys.size();
-					final CountDownLatch countDownOnMeshes = new CountDownLatch(numTasks);
-
-					final ArrayList<Callable<Void>> tasks = new ArrayList<>();
-
-					for (final ShapeKey<T> key : keys)
+		private Void generateMesh(final ShapeKey<T> key)
+		{
+			boolean completed = false;
+			try
+			{
+				final String initialName = Thread.currentThread().getName();
+				try
+				{
+					Thread.currentThread().setName(initialName + " -- generating mesh: " + key);
+					LOG.trace(
+							"Set name of current thread to {} ( was {})",
+							Thread.currentThread().getName(),
+							initialName
+					         );
+					if (!isInterrupted)
 					{
-						tasks.add(() -> {
-							try
-							{
-								final String initialName = Thread.currentThread().getName();
-								try
-								{
-									Thread.currentThread().setName(initialName + " -- generating mesh: " + key);
-									LOG.trace(
-											"Set name of current thread to {} ( was {})",
-											Thread.currentThread().getName(),
-											initialName
-									         );
-									if (!isInterrupted)
-									{
-										final Pair<float[], float[]> verticesAndNormals = getMesh.apply(key);
-										final MeshView               mv                 = makeMeshView(verticesAndNormals);
-										LOG.debug("Found {}/3 vertices and {}/3 normals", verticesAndNormals.getA().length, verticesAndNormals.getB().length);
-										synchronized (meshes)
-										{
-											if (!isInterrupted)
-											{
-												meshes.put(key, mv);
-											}
-										}
-									}
-								} catch (final RuntimeException e)
-								{
-									LOG.debug("Was not able to retrieve mesh for {}: {}", key, e);
-								} finally
-								{
-									Thread.currentThread().setName(initialName);
-								}
-								return null;
-							} finally
+						final long start = System.nanoTime();
+						final Pair<float[], float[]> verticesAndNormals = getMesh.apply(key);
+						MetricRegistry.global().timer("mesh.blocks.generate").updateSince(start);
+						LOG.debug("Found {}/3 vertices and {}/3 normals", verticesAndNormals.getA().length, verticesAndNormals.getB().length);
+						synchronized (meshes)
+						{
+							if (!isInterrupted)
 							{
-								synchronized (setNumberOfTasks)
-								{
-									countDownOnMeshes.countDown();
-									if (!isInterrupted)
-									{
-										setNumberOfCompletedTasks.accept(numTasks - (int) countDownOnMeshes.getCount
-												());
-									}
-								}
-								LOG.debug("Counted down latch. {} remaining", countDownOnMeshes.getCount());
+								meshes.put(key, verticesAndNormals);
+								completed = true;
 							}
-
-						});
-					}
-
-					try
-					{
-						workers.invokeAll(tasks);
-					} catch (final InterruptedException e)
-					{
-						this.isInterrupted = true;
-						keys.forEach(getMesh::interruptFor);
-					}
-
-					try
-					{
-						if (this.isInterrupted)
-						{
-							keys.forEach(getMesh::interruptFor);
-						}
-						else
-						{
-							countDownOnMeshes.await();
-						}
-					} catch (final InterruptedException e)
-					{
-						LOG.debug(
-								"Current thread was interrupted while waiting for mesh count down latch ({} " +
-										"remaining)",
-								countDownOnMeshes.getCount()
-						         );
-						synchronized (getMesh)
-						{
-							this.isInterrupted = true;
-							keys.forEach(getMesh::interruptFor);
 						}
 					}
-
-					return null;
+				} catch (final RuntimeException e)
+				{
+					LOG.debug("Was not able to retrieve mesh for {}: {}", key, e);
+				} finally
+				{
+					Thread.currentThread().setName(initialName);
 				}
+				return null;
 			} finally
 			{
+				MetricRegistry.global().counter(completed ? "mesh.blocks.completed" : "mesh.blocks.cancelled").inc();
+				synchronized (setNumberOfTasks)
 				{
-					if (this.isInterrupted)
+					final int numCompletedTasks = completedTasks.incrementAndGet();
+					if (!isInterrupted)
 					{
-						LOG.debug("Was interrupted, removing all meshes");
-						synchronized (meshes)
-						{
-							meshes.clear();
-						}
+						setNumberOfCompletedTasks.accept(numCompletedTasks);
 					}
 				}
-				this.onFinish.run();
+				LOG.debug("Completed {} tasks", completedTasks.get());
 			}
+		}
 
-			return null;
-
+		private void cancelBlockTasks()
+		{
+			final long numCancelled = blockTasks.stream().filter(task -> task.cancel(false)).count();
+			MetricRegistry.global().counter("mesh.blocks.cancelled").inc(numCancelled);
+			if (workers instanceof MeshWorkerExecutorService)
+				((MeshWorkerExecutorService) workers).purge();
 		}
 
 	}
 
-	private static MeshView makeMeshView(final Pair<float[], float[]> verticesAndNormals)
+	private <V> CompletableFuture<V> submitToWorkers(
+			final Callable<V> task,
+			final MeshWorkerExecutorService.Priority priority)
 	{
-		final float[]      vertices = verticesAndNormals.getA();
-		final float[]      normals  = verticesAndNormals.getB();
-		final TriangleMesh mesh     = new TriangleMesh();
-		mesh.getPoints().addAll(vertices);
-		mesh.getNormals().addAll(normals);
-		mesh.getTexCoords().addAll(0, 0);
-		mesh.setVertexFormat(VertexFormat.POINT_NORMAL_TEXCOORD);
-		final int[] faceIndices = new int[vertices.length];
-		for (int i = 0, k = 0; i < faceIndices.length; i += 3, ++k)
-		{
-			faceIndices[i + 0] = k;
-			faceIndices[i + 1] = k;
-			faceIndices[i + 2] = 0;
-		}
-		mesh.getFaces().addAll(faceIndices);
-		final PhongMaterial material = new PhongMaterial();
-		material.setSpecularColor(new Color(1, 1, 1, 1.0));
-		material.setSpecularPower(50);
-		//						material.diffuseColorProperty().bind( color );
-		final MeshView mv = new MeshView(mesh);
-		mv.setOpacity(1.0);
-		//						synchronized ( this.isVisible )
-		//						{
-		//							mv.visibleProperty().bind( this.isVisible );
-		//						}
-		mv.setCullFace(CullFace.FRONT);
-		mv.setMaterial(material);
-		mv.setDrawMode(DrawMode.FILL);
-		return mv;
+		if (workers instanceof MeshWorkerExecutorService)
+			return ((MeshWorkerExecutorService) workers).submit(task, priority);
+
+		final CompletableFuture<V> completion = new CompletableFuture<>();
+		workers.submit(() -> {
+			try
+			{
+				completion.complete(task.call());
+			} catch (final Exception e)
+			{
+				completion.completeExceptionally(e);
+			}
+		});
+		return completion;
 	}
 
 }
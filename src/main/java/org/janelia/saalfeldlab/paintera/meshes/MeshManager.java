@@ -42,4 +42,14 @@ public interface MeshManager<N, T>
 
 	default void invalidateMeshCaches() {}
 
+	/**
+	 * Re-generate meshes of blocks that were modified, e.g. after a commit. Defaults to {@link #refreshMeshes()}.
+	 *
+	 * @param blocksByLevel linear indices of modified blocks for each scale level, highest resolution first
+	 */
+	default void refreshMeshesInBlocks(final long[][] blocksByLevel)
+	{
+		refreshMeshes();
+	}
+
 }
@@ -36,6 +36,7 @@ import net.imglib2.converter.Converter;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
@@ -345,6 +346,54 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		Stream.of(this.invalidateMeshCaches).forEach(InvalidateAll::invalidateAll);
 	}
 
+	/**
+	 * Invalidate cached meshes and re-generate meshes of all blocks that intersect {@code blocksByLevel}, including a
+	 * one voxel border that is shared with adjacent blocks. Meshes of other blocks are kept.
+	 */
+	@Override
+	public void refreshMeshesInBlocks(final long[][] blocksByLevel)
+	{
+		final Interval[][] rangesByLevel = new Interval[Math.min(blocksByLevel.length, invalidateMeshCaches.length)][];
+		for (int level = 0; level < rangesByLevel.length; ++level)
+		{
+			final CellGrid grid = source.getGrid(level);
+			final long[] blockMin = new long[grid.numDimensions()];
+			final long[] blockMax = new long[grid.numDimensions()];
+			rangesByLevel[level] = new Interval[blocksByLevel[level].length];
+			for (int i = 0; i < blocksByLevel[level].length; ++i)
+			{
+				grid.getCellGridPositionFlat(blocksByLevel[level][i], blockMin);
+				for (int d = 0; d < blockMin.length; ++d)
+				{
+					blockMin[d] *= grid.cellDimension(d);
+					blockMax[d] = Math.min(blockMin[d] + grid.cellDimension(d), grid.imgDimension(d)) - 1;
+				}
+				rangesByLevel[level][i] = Intervals.expand(new FinalInterval(blockMin, blockMax), 1);
+			}
+			final Interval[] ranges = rangesByLevel[level];
+			if (ranges.length > 0)
+				invalidateMeshCaches[level].invalidateMatching(key -> intersectsAny(key.interval(), ranges));
+		}
+
+		synchronized (neurons)
+		{
+			for (final MeshGenerator<TLongHashSet> neuron : neurons.values())
+			{
+				final int level = neuron.scaleIndexProperty().get();
+				if (level < rangesByLevel.length && rangesByLevel[level].length > 0)
+					neuron.refreshMeshesIntersecting(rangesByLevel[level]);
+			}
+		}
+	}
+
+	private static boolean intersectsAny(final Interval interval, final Interval[] ranges)
+	{
+		for (final Interval range : ranges)
+			if (!Intervals.isEmpty(Intervals.intersect(interval, range)))
+				return true;
+		return false;
+	}
+
 	public static <D extends IntegerType<D>> MeshManagerWithAssignmentForSegments fromBlockLookup(
 			DataSource<D, ?> dataSource,
 			final SelectedIds selectedIds,
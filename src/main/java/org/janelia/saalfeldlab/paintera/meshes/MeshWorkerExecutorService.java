@@ -0,0 +1,176 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size worker pool for mesh generation that runs queued tasks in order of their {@link Priority} instead of
+ * FIFO. Tasks submitted through the plain {@link java.util.concurrent.ExecutorService} API are run before any
+ * prioritized mesh block task, in submission order.
+ */
+public class MeshWorkerExecutorService extends ThreadPoolExecutor
+{
+
+	/**
+	 * Priority of a mesh generation task. Tasks of visible segments are run first. Among those, tasks are ordered by
+	 * their index within their segment so that all segments make progress at the same rate, and then by the time the
+	 * segment was selected, most recent first.
+	 */
+	public static class Priority
+	{
+
+		public static final Priority DEFAULT = new Priority(true, -1, Long.MAX_VALUE);
+
+		private static final Comparator<Priority> COMPARATOR = Comparator
+				.comparing((Priority p) -> !p.isVisible)
+				.thenComparingInt(p -> p.indexInSegment)
+				.thenComparing(Comparator.comparingLong((Priority p) -> p.selectionTime).reversed());
+
+		private final boolean isVisible;
+
+		private final int indexInSegment;
+
+		private final long selectionTime;
+
+		/**
+		 * @param isVisible      whether the segment is currently visible
+		 * @param indexInSegment index of the task within all tasks of its segment
+		 * @param selectionTime  time at which the segment was selected, e.g. {@link System#nanoTime()}
+		 */
+		public Priority(final boolean isVisible, final int indexInSegment, final long selectionTime)
+		{
+			this.isVisible = isVisible;
+			this.indexInSegment = indexInSegment;
+			this.selectionTime = selectionTime;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"{visible=%s, index=%d, selectionTime=%d}",
+					isVisible,
+					indexInSegment,
+					selectionTime);
+		}
+
+	}
+
+	private static class PrioritizedTask<V> extends FutureTask<V> implements Comparable<PrioritizedTask<?>>
+	{
+
+		private final Priority priority;
+
+		private final long sequenceNumber;
+
+		private final CompletableFuture<V> completion;
+
+		private PrioritizedTask(
+				final Callable<V> callable,
+				final Priority priority,
+				final long sequenceNumber,
+				final CompletableFuture<V> completion)
+		{
+			super(callable);
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+			this.completion = completion;
+		}
+
+		@Override
+		public int compareTo(final PrioritizedTask<?> that)
+		{
+			final int comparison = Priority.COMPARATOR.compare(this.priority, that.priority);
+			return comparison == 0 ? Long.compare(this.sequenceNumber, that.sequenceNumber) : comparison;
+		}
+
+		@Override
+		protected void done()
+		{
+			if (completion == null)
+				return;
+			if (isCancelled())
+			{
+				completion.cancel(false);
+				return;
+			}
+			try
+			{
+				completion.complete(get());
+			} catch (final ExecutionException e)
+			{
+				completion.completeExceptionally(e.getCause());
+			} catch (final InterruptedException e)
+			{
+				completion.completeExceptionally(e);
+			}
+		}
+
+	}
+
+	private final AtomicLong sequenceNumber = new AtomicLong();
+
+	public MeshWorkerExecutorService(final int numThreads, final ThreadFactory threadFactory)
+	{
+		super(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+	}
+
+	/**
+	 * @return worker pool with one thread per available processor
+	 */
+	public static MeshWorkerExecutorService withAvailableProcessors(final ThreadFactory threadFactory)
+	{
+		return new MeshWorkerExecutorService(Math.max(1, Runtime.getRuntime().availableProcessors()), threadFactory);
+	}
+
+	/**
+	 * Submit {@code task} with {@code priority}. Cancelling the returned future marks the queued task as cancelled, and
+	 * {@link #purge()} removes all cancelled tasks from the queue at once.
+	 */
+	public <V> CompletableFuture<V> submit(final Callable<V> task, final Priority priority)
+	{
+		final CompletableFuture<V> completion = new CompletableFuture<>();
+		final PrioritizedTask<V> prioritizedTask = new PrioritizedTask<>(
+				task,
+				priority,
+				sequenceNumber.getAndIncrement(),
+				completion);
+		completion.whenComplete((result, error) -> {
+			if (completion.isCancelled())
+				prioritizedTask.cancel(false);
+		});
+		super.execute(prioritizedTask);
+		return completion;
+	}
+
+	@Override
+	public void execute(final Runnable command)
+	{
+		super.execute(command instanceof PrioritizedTask<?>
+		              ? command
+		              : newTaskFor(Executors.callable(command)));
+	}
+
+	@Override
+	protected <V> RunnableFuture<V> newTaskFor(final Callable<V> callable)
+	{
+		return new PrioritizedTask<>(callable, Priority.DEFAULT, sequenceNumber.getAndIncrement(), null);
+	}
+
+	@Override
+	protected <V> RunnableFuture<V> newTaskFor(final Runnable runnable, final V value)
+	{
+		return newTaskFor(Executors.callable(runnable, value));
+	}
+
+}
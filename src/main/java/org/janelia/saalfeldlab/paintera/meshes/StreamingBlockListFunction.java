@@ -0,0 +1,28 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.function.Consumer;
+
+import net.imglib2.Interval;
+
+/**
+ * Block list function that passes on each block as soon as it is found, so that consumers, e.g. the
+ * {@link MeshGeneratorJobManager}, can start processing blocks before the complete list is available.
+ */
+public interface StreamingBlockListFunction<T> extends InterruptibleFunction<T, Interval[]>
+{
+
+	/**
+	 * @param onBlockFound called for each block as soon as it is found, possibly from multiple threads concurrently.
+	 *                     Blocks may be passed more than once.
+	 *
+	 * @return all blocks for {@code key}, or {@code null} if interrupted
+	 */
+	Interval[] apply(T key, Consumer<Interval> onBlockFound);
+
+	@Override
+	default Interval[] apply(final T key)
+	{
+		return apply(key, block -> {});
+	}
+
+}
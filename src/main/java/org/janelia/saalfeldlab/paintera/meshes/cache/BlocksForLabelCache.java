@@ -0,0 +1,75 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import net.imglib2.Interval;
+import net.imglib2.cache.UncheckedCache;
+import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunctionAndCache;
+import org.janelia.saalfeldlab.paintera.meshes.StreamingBlockListFunction;
+import org.janelia.saalfeldlab.util.HashWrapper;
+
+/**
+ * Cache of the blocks that contain a label, loaded by a {@link BlocksForLabelCacheLoader}. Blocks that are not cached
+ * yet are passed on as soon as the loader finds them.
+ */
+public class BlocksForLabelCache<T> extends InterruptibleFunctionAndCache<T, Interval[]> implements StreamingBlockListFunction<T>
+{
+
+	private final BlocksForLabelCacheLoader<T> loader;
+
+	public BlocksForLabelCache(
+			final UncheckedCache<T, Interval[]> cache,
+			final BlocksForLabelCacheLoader<T> loader)
+	{
+		super(cache, loader);
+		this.loader = loader;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Cached blocks are passed on at once. If the blocks are loaded concurrently, e.g. for another consumer, blocks
+	 * that were found before this call are passed on when loading is done.
+	 */
+	@Override
+	public Interval[] apply(final T key, final Consumer<Interval> onBlockFound)
+	{
+		final Set<HashWrapper<Interval>> passed = new HashSet<>();
+		final Consumer<Interval> passOnce = block -> {
+			synchronized (passed)
+			{
+				if (!passed.add(HashWrapper.interval(block)))
+					return;
+			}
+			onBlockFound.accept(block);
+		};
+
+		final Interval[] blocks;
+		this.loader.addBlockFoundListener(key, passOnce);
+		try
+		{
+			blocks = get(key);
+		} finally
+		{
+			this.loader.removeBlockFoundListener(key, passOnce);
+		}
+
+		if (blocks != null)
+			for (final Interval block : blocks)
+				passOnce.accept(block);
+		return blocks;
+	}
+
+	/**
+	 * Invalidate cached blocks and the sorted unique labels of the loader.
+	 */
+	@Override
+	public void invalidateAll()
+	{
+		super.invalidateAll();
+		this.loader.invalidateAll();
+	}
+
+}
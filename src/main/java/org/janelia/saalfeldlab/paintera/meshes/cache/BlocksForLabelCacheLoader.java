@@ -4,15 +4,21 @@ import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import gnu.trove.iterator.TLongIterator;
 import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
@@ -20,17 +26,29 @@ import net.imglib2.Point;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedSoftRefLoaderCache;
 import org.janelia.saalfeldlab.paintera.meshes.Interruptible;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
 import org.janelia.saalfeldlab.util.HashWrapper;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>, Interruptible<T>
+public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>, Interruptible<T>, InvalidateAll
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final int NUM_FILTER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static final ExecutorService FILTER_EXECUTOR = Executors.newFixedThreadPool(
+			NUM_FILTER_THREADS,
+			new NamedThreadFactory("blocks-for-label-filter-%d", true));
+
+	private static final long MAX_SORTED_LABELS_BYTES = 64L << 20;
+
 	private final CellGrid grid;
 
 	private final InterruptibleFunction<T, Interval[]> getRelevantIntervalsFromLowerResolution;
@@ -43,6 +61,11 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 
 	private final List<Consumer<T>> interruptionListeners = new ArrayList<>();
 
+	private final Map<T, List<Consumer<Interval>>> blockFoundListeners = new HashMap<>();
+
+	private final MemoryBoundedSoftRefLoaderCache<HashWrapper<long[]>, long[], ?> sortedUniqueLabels =
+			MemoryBoundedSoftRefLoaderCache.withWeakRefs(MAX_SORTED_LABELS_BYTES, labels -> 8L * labels.length);
+
 	/**
 	 * @param grid
 	 * @param getRelevantIntervalsFromLowerResolution
@@ -55,7 +78,9 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 	 * @param getUniqueLabelListForBlock
 	 * 		Given a block for this resolution defined by its position in the cell grid, retrieve a unique list of
 	 * 		labels
-	 * 		present in this block.
+	 * 		present in this block. Each list is sorted once when it is loaded.
+	 * @param checkIfLabelsAreContained
+	 * 		Check if a key is contained in the sorted unique list of labels of a block.
 	 */
 	public BlocksForLabelCacheLoader(
 			final CellGrid grid,
@@ -83,7 +108,7 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 				getRelevantIntervalsFromLowerResolution,
 				getRelevantBlocksIntersectingWithLowResInterval,
 				getUniqueLabelListForBlock,
-				(id, block) -> Arrays.stream(block).filter(b -> b == id).count() > 0
+				(id, labels) -> Arrays.binarySearch(labels, id) >= 0
 		);
 	}
 
@@ -98,18 +123,63 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 				getRelevantIntervalsFromLowerResolution,
 				getRelevantBlocksIntersectingWithLowResInterval,
 				getUniqueLabelListForBlock,
-				(ids, block) -> Arrays.stream(block).filter(ids::contains).count() > 0
+				(ids, labels) -> containsAny(labels, ids)
 		);
 	}
 
+	/**
+	 * Find all blocks that contain {@code key}. Each block is passed to the listeners that were
+	 * {@link #addBlockFoundListener(Object, Consumer) added} for {@code key} as soon as it is found.
+	 */
 	@Override
 	public Interval[] get(final T key) throws Exception
 	{
-		final boolean[] isInterrupted = {false};
+		return get(key, block -> {
+			final List<Consumer<Interval>> listeners;
+			synchronized (this.blockFoundListeners)
+			{
+				listeners = new ArrayList<>(this.blockFoundListeners.getOrDefault(key, Collections.emptyList()));
+			}
+			listeners.forEach(listener -> listener.accept(block));
+		});
+	}
+
+	/**
+	 * Pass blocks that are found for {@code key} by {@link #get(Object)} to {@code listener} until it is
+	 * {@link #removeBlockFoundListener(Object, Consumer) removed}, e.g. while the blocks are loaded through a cache.
+	 */
+	public void addBlockFoundListener(final T key, final Consumer<Interval> listener)
+	{
+		synchronized (this.blockFoundListeners)
+		{
+			this.blockFoundListeners.computeIfAbsent(key, k -> new ArrayList<>()).add(listener);
+		}
+	}
+
+	public void removeBlockFoundListener(final T key, final Consumer<Interval> listener)
+	{
+		synchronized (this.blockFoundListeners)
+		{
+			final List<Consumer<Interval>> listeners = this.blockFoundListeners.get(key);
+			if (listeners != null && listeners.remove(listener) && listeners.isEmpty())
+				this.blockFoundListeners.remove(key);
+		}
+	}
+
+	/**
+	 * Find all blocks that contain {@code key}. Candidate blocks are filtered in parallel and each block is passed to
+	 * {@code onBlockFound} as soon as it is found, before the remaining candidates are checked, so that consumers can
+	 * start processing blocks early. {@code onBlockFound} may be called from multiple threads concurrently.
+	 *
+	 * @return all blocks that contain {@code key}, or {@code null} if interrupted
+	 */
+	public Interval[] get(final T key, final Consumer<Interval> onBlockFound) throws Exception
+	{
+		final AtomicBoolean isInterrupted = new AtomicBoolean(false);
 		final Consumer<T> listener = interruptedKey -> {
 			if (interruptedKey.equals(key))
 			{
-				isInterrupted[0] = true;
+				isInterrupted.set(true);
 				this.getRelevantIntervalsFromLowerResolution.interruptFor(key);
 			}
 		};
@@ -131,22 +201,38 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 					.forEach(blocks::add);
 			LOG.debug("key={} grid={} -- got {} block candidates", key, grid, blocks.size());
 
-			final List<Interval> results = new ArrayList<>();
-			for (final Iterator<HashWrapper<Interval>> blockIt = blocks.iterator(); blockIt.hasNext() &&
-					!isInterrupted[0]; )
+			final long start = System.nanoTime();
+			final List<Interval> candidates = blocks.stream().map(HashWrapper::getData).collect(Collectors.toList());
+			final List<Interval> results = Collections.synchronizedList(new ArrayList<>());
+			final int numTasks = Math.min(NUM_FILTER_THREADS, candidates.size());
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int task = 0; task < numTasks; ++task)
 			{
-				final HashWrapper<Interval> block   = blockIt.next();
-				final long[]                cellPos = new long[grid.numDimensions()];
-				grid.getCellPosition(Intervals.minAsLongArray(block.getData()), cellPos);
-				final long[] uniqueLabels = getUniqueLabelListForBlock.apply(cellPos);
-				LOG.trace("key={} grid ={} -- Unique labels: {}", key, grid, uniqueLabels);
-				if (checkIfLabelsAreContained.test(key, uniqueLabels))
-				{
-					results.add(block.getData());
-				}
+				final int firstCandidate = task;
+				futures.add(FILTER_EXECUTOR.submit(() -> {
+					final long[] cellPos = new long[grid.numDimensions()];
+					for (int index = firstCandidate; index < candidates.size() && !isInterrupted.get(); index += numTasks)
+					{
+						final Interval block = candidates.get(index);
+						grid.getCellPosition(Intervals.minAsLongArray(block), cellPos);
+						final long[] uniqueLabels = sortedUniqueLabels.get(
+								HashWrapper.longArray(cellPos.clone()),
+								position -> sorted(getUniqueLabelListForBlock.apply(position.getData())));
+						LOG.trace("key={} grid ={} -- Unique labels: {}", key, grid, uniqueLabels);
+						if (checkIfLabelsAreContained.test(key, uniqueLabels))
+						{
+							results.add(block);
+							onBlockFound.accept(block);
+						}
+					}
+					return null;
+				}));
 			}
+			for (final Future<?> future : futures)
+				future.get();
+			MetricRegistry.global().timer("mesh.blocks.filter").updateSince(start);
 			LOG.debug("key={} grid={} -- still {} blocks after filtering", key, grid, results.size());
-			return isInterrupted[0] ? null : results.toArray(new Interval[results.size()]);
+			return isInterrupted.get() ? null : results.toArray(new Interval[0]);
 		} finally
 		{
 			synchronized (this.interruptionListeners)
@@ -156,6 +242,31 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 		}
 	}
 
+	private static long[] sorted(final long[] labels)
+	{
+		final long[] sorted = labels.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @param sortedLabels sorted unique labels of a block
+	 */
+	private static boolean containsAny(final long[] sortedLabels, final TLongHashSet ids)
+	{
+		if (ids.size() < sortedLabels.length)
+		{
+			for (final TLongIterator id = ids.iterator(); id.hasNext(); )
+				if (Arrays.binarySearch(sortedLabels, id.next()) >= 0)
+					return true;
+			return false;
+		}
+		for (final long label : sortedLabels)
+			if (ids.contains(label))
+				return true;
+		return false;
+	}
+
 	private static List<String> toString(final Interval[] intervals)
 	{
 		final List<String> strings = Arrays
@@ -195,6 +306,15 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 				.collect(Collectors.toList()).toString();
 	}
 
+	/**
+	 * Invalidate the sorted unique labels of all blocks, e.g. after labels were modified.
+	 */
+	@Override
+	public void invalidateAll()
+	{
+		this.sortedUniqueLabels.invalidateAll();
+	}
+
 	@Override
 	public void interruptFor(final T t)
 	{
@@ -4,15 +4,17 @@ import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import net.imglib2.Interval;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
+import org.janelia.saalfeldlab.paintera.meshes.StreamingBlockListFunction;
 import org.janelia.saalfeldlab.util.HashWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BlocksForLabelDelegate<T, U> implements InterruptibleFunction<T, Interval[]>
+public class BlocksForLabelDelegate<T, U> implements StreamingBlockListFunction<T>
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -30,23 +32,42 @@ public class BlocksForLabelDelegate<T, U> implements InterruptibleFunction<T, In
 		this.keyMapping = keyMapping;
 	}
 
+	/**
+	 * Blocks of each mapped key are passed on as soon as they are found, or as soon as all blocks of the key are
+	 * available if {@code delegate} is not a {@link StreamingBlockListFunction}.
+	 */
 	@Override
-	public Interval[] apply(final T t)
+	@SuppressWarnings("unchecked")
+	public Interval[] apply(final T t, final Consumer<Interval> onBlockFound)
 	{
 		final Set<HashWrapper<Interval>> intervals = new HashSet<>();
+		final Consumer<Interval> passOnce = block -> {
+			synchronized (intervals)
+			{
+				if (!intervals.add(HashWrapper.interval(block)))
+					return;
+			}
+			onBlockFound.accept(block);
+		};
 
 		final U[] mappedKeys = this.keyMapping.apply(t);
 		LOG.debug("Mapped keys from {} to {}", t, mappedKeys);
-		Arrays
-				.stream(mappedKeys)
-				.map(delegate::apply)
-				.flatMap(Arrays::stream)
-				.map(HashWrapper::interval)
-				.forEach(intervals::add);
+		for (final U key : mappedKeys)
+		{
+			final Interval[] blocks = delegate instanceof StreamingBlockListFunction<?>
+			                          ? ((StreamingBlockListFunction<U>) delegate).apply(key, passOnce)
+			                          : delegate.apply(key);
+			if (blocks == null)
+				return null;
+			Arrays.stream(blocks).forEach(passOnce);
+		}
 
 		LOG.debug("Got intervals: {}", intervals);
 
-		return intervals.stream().map(HashWrapper::getData).toArray(Interval[]::new);
+		synchronized (intervals)
+		{
+			return intervals.stream().map(HashWrapper::getData).toArray(Interval[]::new);
+		}
 	}
 
 	@Override
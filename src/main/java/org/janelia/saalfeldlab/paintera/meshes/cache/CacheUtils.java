@@ -94,7 +94,7 @@ public class CacheUtils
 					: relevantBlocksFromLowResInterval(grid, scalingFactors[level + 1], scalingFactors[level]),
 					key -> uniqueLabelLoaders[finalLevel].apply(HashWrapper.longArray(key))
 			                                                                                 );
-			caches[level] = new InterruptibleFunctionAndCache<>(makeCache.apply(loader).unchecked(), loader);
+			caches[level] = new BlocksForLabelCache<>(makeCache.apply(loader).unchecked(), loader);
 		}
 
 		return caches;
@@ -152,7 +152,7 @@ public class CacheUtils
 					: relevantBlocksFromLowResInterval(grid, scalingFactors[level + 1], scalingFactors[level]),
 					key -> uniqueLabelLoaders[finalLevel].apply(HashWrapper.longArray(key))
 			                                                                                            );
-			caches[level] = fromCache(makeCache.apply(loader).unchecked(), (Interruptible<TLongHashSet>) loader);
+			caches[level] = new BlocksForLabelCache<>(makeCache.apply(loader).unchecked(), loader);
 		}
 
 		return caches;
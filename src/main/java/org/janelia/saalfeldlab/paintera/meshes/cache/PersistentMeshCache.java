@@ -0,0 +1,121 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import org.janelia.saalfeldlab.util.n5.cache.DiskBlockCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded directory of block meshes (vertices and normals) that persists across sessions. Storage, versioning,
+ * and least recently used eviction are delegated to a {@link DiskBlockCache}: each entry stores the version of the
+ * data that the mesh was generated from, and reading an entry at a different version removes it.
+ *
+ * Keys are free-form strings that must uniquely describe the mesh, except for the version of the underlying data.
+ */
+public class PersistentMeshCache
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final Map<Path, PersistentMeshCache> INSTANCES = new HashMap<>();
+
+	private final DiskBlockCache cache;
+
+	private PersistentMeshCache(final Path directory, final long maxBytes) throws IOException
+	{
+		this.cache = new DiskBlockCache(directory, maxBytes);
+	}
+
+	/**
+	 *
+	 * @return the cache for {@code directory}. Each directory is opened only once per process.
+	 */
+	public static synchronized PersistentMeshCache forDirectory(final Path directory, final long maxBytes) throws IOException
+	{
+		final Path normalized = directory.toAbsolutePath().normalize();
+		PersistentMeshCache cache = INSTANCES.get(normalized);
+		if (cache == null)
+		{
+			cache = new PersistentMeshCache(normalized, maxBytes);
+			INSTANCES.put(normalized, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 *
+	 * @param version version of the data that the mesh is generated from
+	 * @return mesh for {@code key} if it was stored at {@code version}
+	 */
+	public Optional<Pair<float[], float[]>> read(final String key, final long version)
+	{
+		try
+		{
+			final ByteBuffer buffer = cache.get(key, Long.toString(version));
+			if (buffer == null)
+				return Optional.empty();
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			final float[] vertices = new float[buffer.getInt()];
+			final float[] normals = new float[buffer.getInt()];
+			buffer.asFloatBuffer().get(vertices).get(normals);
+			return Optional.of(new ValuePair<>(vertices, normals));
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.debug("Unable to read cached mesh for {}: {}", key, e.getMessage());
+			cache.invalidate(key);
+			return Optional.empty();
+		}
+	}
+
+	public void write(final String key, final long version, final Pair<float[], float[]> verticesAndNormals)
+	{
+		final float[] vertices = verticesAndNormals.getA();
+		final float[] normals = verticesAndNormals.getB();
+		final ByteBuffer buffer = ByteBuffer
+				.allocate(2 * Integer.BYTES + Float.BYTES * (vertices.length + normals.length))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(vertices.length).putInt(normals.length);
+		buffer.asFloatBuffer().put(vertices).put(normals);
+		try
+		{
+			cache.put(key, Long.toString(version), buffer.array());
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to cache mesh for {}: {}", key, e.getMessage());
+		}
+	}
+
+	public long getCurrentBytes()
+	{
+		return this.cache.getUsedBytes();
+	}
+
+	static String sha1Hex(final String string)
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(string.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : digest)
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+}
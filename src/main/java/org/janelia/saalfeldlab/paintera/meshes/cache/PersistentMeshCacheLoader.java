@@ -0,0 +1,96 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.util.Pair;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CacheLoader} that looks up block meshes in a {@link PersistentMeshCache} before delegating to the actual mesh
+ * generation, and stores newly generated meshes. Entries are keyed by all parameters of the {@link ShapeKey} and
+ * stored with the content version of the underlying data: entries of an outdated version are removed when they are
+ * read, i.e. modified data never produces a stale mesh.
+ *
+ * @param <T> shape id type of {@link ShapeKey}
+ */
+public class PersistentMeshCacheLoader<T> implements CacheLoader<ShapeKey<T>, Pair<float[], float[]>>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final CacheLoader<ShapeKey<T>, Pair<float[], float[]>> delegate;
+
+	private final PersistentMeshCache cache;
+
+	private final Function<T, String> shapeIdToString;
+
+	private final ToLongFunction<ShapeKey<T>> dataVersion;
+
+	private final BooleanSupplier bypass;
+
+	/**
+	 *
+	 * @param delegate generates meshes that are not in {@code cache}
+	 * @param cache persistent mesh storage
+	 * @param shapeIdToString unique and deterministic string representation of shape ids
+	 * @param dataVersion content version of the data that a mesh is generated from
+	 * @param bypass do not read from or write to {@code cache} while {@code bypass} is true, e.g. while the data has
+	 * uncommitted modifications that are not reflected in {@code dataVersion}.
+	 */
+	public PersistentMeshCacheLoader(
+			final CacheLoader<ShapeKey<T>, Pair<float[], float[]>> delegate,
+			final PersistentMeshCache cache,
+			final Function<T, String> shapeIdToString,
+			final ToLongFunction<ShapeKey<T>> dataVersion,
+			final BooleanSupplier bypass)
+	{
+		this.delegate = delegate;
+		this.cache = cache;
+		this.shapeIdToString = shapeIdToString;
+		this.dataVersion = dataVersion;
+		this.bypass = bypass;
+	}
+
+	@Override
+	public Pair<float[], float[]> get(final ShapeKey<T> key) throws Exception
+	{
+		if (bypass.getAsBoolean())
+			return delegate.get(key);
+
+		final String cacheKey = cacheKey(key);
+		final long version = dataVersion.applyAsLong(key);
+		final Optional<Pair<float[], float[]>> cached = cache.read(cacheKey, version);
+		if (cached.isPresent())
+		{
+			LOG.trace("Found persisted mesh for {}", key);
+			return cached.get();
+		}
+
+		final Pair<float[], float[]> mesh = delegate.get(key);
+		if (mesh != null && !bypass.getAsBoolean())
+			cache.write(cacheKey, version, mesh);
+		return mesh;
+	}
+
+	private String cacheKey(final ShapeKey<T> key)
+	{
+		return String.format(
+				"id=%s;scale=%d;simplifications=%d;smoothingLambda=%s;smoothings=%d;min=%s;max=%s",
+				shapeIdToString.apply(key.shapeId()),
+				key.scaleIndex(),
+				key.simplificationIterations(),
+				Double.toString(key.smoothingLambda()),
+				key.smoothingIterations(),
+				Arrays.toString(key.min()),
+				Arrays.toString(key.max()));
+	}
+
+}
@@ -0,0 +1,143 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.util.Pair;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5BlockVersions;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Add a {@link PersistentMeshCache} in the project directory to segment mesh caches of N5 label sources. Meshes are
+ * stored in {@code <project>/mesh-cache/<source>}, keyed by {@link ShapeKey}, and invalidated by
+ * {@link N5BlockVersions block versions}, i.e. only for sources that support block versions. Configured in the {@code cache.meshes} section of {@code ~/.config/paintera.yml}:
+ * <pre>
+ * cache:
+ *   meshes:
+ *     enabled: true
+ *     maxBytes: 1073741824
+ * </pre>
+ */
+public class PersistentMeshCaches
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String CACHE_DIRECTORY = "mesh-cache";
+
+	private static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+	private PersistentMeshCaches()
+	{
+
+	}
+
+	/**
+	 * Wrap {@code makeCache} such that cache loaders passed to it are backed by a {@link PersistentMeshCache}. Returns
+	 * {@code makeCache} unchanged if persistent mesh caching is disabled, {@code projectDirectory} is {@code null}, or
+	 * {@code source} is not backed by N5 or does not support block versions.
+	 */
+	public static <C> Function<CacheLoader<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, C> segmentMeshes(
+			final Function<CacheLoader<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, C> makeCache,
+			final DataSource<?, ?> source,
+			final String projectDirectory)
+	{
+		if (projectDirectory == null || !isEnabled())
+			return makeCache;
+
+		final MaskedSource<?, ?> maskedSource = source instanceof MaskedSource<?, ?> ? (MaskedSource<?, ?>) source : null;
+		final DataSource<?, ?> underlyingSource = maskedSource == null ? source : maskedSource.underlyingSource();
+		if (!(underlyingSource instanceof N5DataSource<?, ?>))
+		{
+			LOG.debug("Not caching meshes for {}: not an N5 source", source);
+			return makeCache;
+		}
+
+		try
+		{
+			final N5DataSource<?, ?> n5Source = (N5DataSource<?, ?>) underlyingSource;
+			final N5Reader reader = n5Source.reader();
+			if (!Arrays
+					.stream(N5BlockVersions.levelDatasets(reader, n5Source.dataset()))
+					.allMatch(levelDataset -> N5BlockVersions.isSupported(reader, levelDataset)))
+			{
+				LOG.debug("Not caching meshes for {}: block versions are not supported", source);
+				return makeCache;
+			}
+			final N5BlockVersions versions = new N5BlockVersions(reader, n5Source.dataset());
+			final Path directory = Paths.get(projectDirectory, CACHE_DIRECTORY, PersistentMeshCache.sha1Hex(n5Source.meta().toString()));
+			final PersistentMeshCache cache = PersistentMeshCache.forDirectory(directory, maxBytes());
+			LOG.info("Caching meshes for {} in {}", n5Source.meta(), directory);
+
+			// uncommitted canvas modifications are not reflected in block versions
+			final BooleanSupplier bypass = maskedSource == null
+					? () -> false
+					: () -> maskedSource.getAffectedBlocks().length > 0;
+			if (maskedSource != null)
+				maskedSource.addOnCanvasClearedListener(() -> {
+					try
+					{
+						versions.reload();
+					} catch (final IOException e)
+					{
+						LOG.warn("Unable to reload block versions for {}: {}", n5Source.meta(), e.getMessage());
+					}
+				});
+
+			return loader -> makeCache.apply(new PersistentMeshCacheLoader<>(
+					loader,
+					cache,
+					PersistentMeshCaches::sortedIds,
+					key -> versions.version(key.scaleIndex(), key.interval()),
+					bypass));
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to create persistent mesh cache for {}: {}", source, e.getMessage());
+			return makeCache;
+		}
+	}
+
+	private static String sortedIds(final TLongHashSet ids)
+	{
+		final long[] sorted = ids.toArray();
+		Arrays.sort(sorted);
+		return Arrays.toString(sorted);
+	}
+
+	public static boolean isEnabled()
+	{
+		return Optional
+				.ofNullable(getConfig("enabled"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(true);
+	}
+
+	private static long maxBytes()
+	{
+		return Optional
+				.ofNullable(getConfig("maxBytes"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(DEFAULT_MAX_BYTES);
+	}
+
+	private static Object getConfig(final String key)
+	{
+		return PainteraConfigYaml.getConfig(() -> null, "cache", "meshes", key);
+	}
+
+}
@@ -13,6 +13,8 @@ import net.imglib2.type.label.Label;
 import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.label.LabelMultisetType.Entry;
 import net.imglib2.type.numeric.IntegerType;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteUnsignedLongType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -118,6 +120,16 @@ public class SegmentMaskGenerators
 		@Override
 		public void convert(final I input, final B output)
 		{
+			if (input instanceof PaletteUnsignedLongType)
+			{
+				// test each palette entry only once per cell
+				final PaletteLongArray access = ((PaletteUnsignedLongType) input).getPaletteAccess();
+				if (access != null)
+				{
+					output.set(access.isContainedIn(((PaletteUnsignedLongType) input).getIndex(), validLabels));
+					return;
+				}
+			}
 			output.set(validLabels.contains(input.getIntegerLong()));
 		}
 
@@ -0,0 +1,36 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count, e.g. of cache misses.
+ */
+public class Counter implements Metric
+{
+
+	private final LongAdder count = new LongAdder();
+
+	public void inc()
+	{
+		count.increment();
+	}
+
+	public void inc(final long n)
+	{
+		count.add(n);
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	@Override
+	public Map<String, Number> snapshot()
+	{
+		return Collections.singletonMap("count", getCount());
+	}
+
+}
@@ -0,0 +1,31 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Instantaneous value that is queried whenever the metric is read, e.g. the depth of a queue.
+ */
+public class Gauge implements Metric
+{
+
+	private final LongSupplier value;
+
+	public Gauge(final LongSupplier value)
+	{
+		this.value = value;
+	}
+
+	public long getValue()
+	{
+		return value.getAsLong();
+	}
+
+	@Override
+	public Map<String, Number> snapshot()
+	{
+		return Collections.singletonMap("value", getValue());
+	}
+
+}
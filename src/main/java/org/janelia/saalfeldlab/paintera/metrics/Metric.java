@@ -0,0 +1,18 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.Map;
+
+/**
+ * Runtime metric registered with a {@link MetricRegistry}.
+ */
+public interface Metric
+{
+
+	/**
+	 *
+	 * @return current values of this metric, by attribute name, e.g. {@code count} or {@code p99Millis}. Iteration order
+	 * of the returned map is stable.
+	 */
+	Map<String, Number> snapshot();
+
+}
@@ -0,0 +1,90 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Named collection of {@link Metric metrics}. Metrics are created lazily on first access and re-used for subsequent
+ * accesses with the same name, i.e. instrumented code can look up metrics by name without holding on to them. Names
+ * are free-form; by convention they are dot-separated and qualified with a bracketed tag, e.g.
+ * {@code cells.load[source=/volumes/raw,level=0]}.
+ */
+public class MetricRegistry
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final MetricRegistry GLOBAL = new MetricRegistry();
+
+	private final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+	/**
+	 *
+	 * @return registry shared by all of Paintera, exposed through JMX and {@link MetricsReporter}.
+	 */
+	public static MetricRegistry global()
+	{
+		return GLOBAL;
+	}
+
+	public static String tagged(final String name, final String tag, final Object value)
+	{
+		return String.format("%s[%s=%s]", name, tag, value);
+	}
+
+	public static String tagged(final String name, final String tag1, final Object value1, final String tag2, final Object value2)
+	{
+		return String.format("%s[%s=%s,%s=%s]", name, tag1, value1, tag2, value2);
+	}
+
+	public Counter counter(final String name)
+	{
+		return getOrCreate(name, Counter.class, Counter::new);
+	}
+
+	public Timer timer(final String name)
+	{
+		return getOrCreate(name, Timer.class, Timer::new);
+	}
+
+	/**
+	 * Register a gauge, replacing any metric previously registered under {@code name}.
+	 */
+	public Gauge gauge(final String name, final LongSupplier value)
+	{
+		final Gauge gauge = new Gauge(value);
+		metrics.put(name, gauge);
+		return gauge;
+	}
+
+	public Metric remove(final String name)
+	{
+		return metrics.remove(name);
+	}
+
+	/**
+	 *
+	 * @return read-only view of all registered metrics, sorted by name.
+	 */
+	public NavigableMap<String, Metric> metrics()
+	{
+		return Collections.unmodifiableNavigableMap(metrics);
+	}
+
+	private <M extends Metric> M getOrCreate(final String name, final Class<M> clazz, final Supplier<M> factory)
+	{
+		final Metric metric = metrics.computeIfAbsent(name, n -> factory.get());
+		if (clazz.isInstance(metric))
+			return clazz.cast(metric);
+		LOG.warn("Metric {} is registered as {}, not as {}. Using unregistered instance.", name, metric.getClass().getSimpleName(), clazz.getSimpleName());
+		return factory.get();
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes all metrics of a {@link MetricRegistry} as read-only JMX attributes named {@code <metric>.<attribute>}, e.g.
+ * {@code render.frame[screenScale=0].p90Millis}. The set of attributes is re-evaluated whenever {@link #getMBeanInfo()}
+ * is called, so metrics that are registered after this bean show up in JMX clients after a refresh.
+ */
+public class MetricsMBean implements DynamicMBean
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String OBJECT_NAME = "org.janelia.saalfeldlab.paintera:type=Metrics";
+
+	private static final String SEPARATOR = ".";
+
+	private final MetricRegistry registry;
+
+	public MetricsMBean(final MetricRegistry registry)
+	{
+		this.registry = registry;
+	}
+
+	/**
+	 * Register {@code registry} with the platform MBean server under {@link #OBJECT_NAME}. Does nothing if a bean is
+	 * registered under that name already.
+	 */
+	public static synchronized void register(final MetricRegistry registry)
+	{
+		try
+		{
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				return;
+			server.registerMBean(new MetricsMBean(registry), name);
+			LOG.info("Registered metrics with JMX as {}", OBJECT_NAME);
+		} catch (final JMException e)
+		{
+			LOG.warn("Unable to register metrics with JMX: {}", e.getMessage());
+		}
+	}
+
+	@Override
+	public Object getAttribute(final String attribute) throws AttributeNotFoundException
+	{
+		final int separatorIndex = attribute.lastIndexOf(SEPARATOR);
+		if (separatorIndex > 0)
+		{
+			final Metric metric = registry.metrics().get(attribute.substring(0, separatorIndex));
+			if (metric != null)
+			{
+				final Number value = metric.snapshot().get(attribute.substring(separatorIndex + 1));
+				if (value != null)
+					return value;
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public void setAttribute(final Attribute attribute) throws AttributeNotFoundException
+	{
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList getAttributes(final String[] attributes)
+	{
+		final AttributeList list = new AttributeList();
+		for (final String attribute : attributes)
+		{
+			try
+			{
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (final AttributeNotFoundException e)
+			{
+				LOG.debug("Requested unknown attribute {}", attribute);
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes)
+	{
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(final String actionName, final Object[] params, final String[] signature)
+	{
+		throw new UnsupportedOperationException("No operations available: " + actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo()
+	{
+		final List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (final Map.Entry<String, Metric> metric : registry.metrics().entrySet())
+			for (final Map.Entry<String, Number> value : metric.getValue().snapshot().entrySet())
+				attributes.add(new MBeanAttributeInfo(
+						metric.getKey() + SEPARATOR + value.getKey(),
+						value.getValue().getClass().getName(),
+						metric.getValue().getClass().getSimpleName() + " " + metric.getKey(),
+						true,
+						false,
+						false));
+		return new MBeanInfo(
+				getClass().getName(),
+				"Paintera runtime metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+				null,
+				null,
+				null);
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically writes all metrics of a {@link MetricRegistry} to the log or appends them to a CSV file with columns
+ * {@code timestamp,metric,attribute,value}.
+ *
+ * Metrics reporting is configured in the {@code metrics} section of {@code ~/.config/paintera.yml}:
+ * <pre>
+ * metrics:
+ *   jmx: true             # expose metrics as JMX MBean
+ *   reporter: log         # none, log, or csv
+ *   intervalSeconds: 60
+ *   csvFile: /path/to/metrics.csv
+ * </pre>
+ */
+public class MetricsReporter
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public enum Mode
+	{
+		NONE, LOG, CSV
+	}
+
+	private static final long DEFAULT_INTERVAL_SECONDS = 60;
+
+	private static final String CSV_HEADER = "timestamp,metric,attribute,value";
+
+	private static boolean started = false;
+
+	private final MetricRegistry registry;
+
+	private final Mode mode;
+
+	private final Path csvFile;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+			"paintera-metrics-reporter-%d",
+			true));
+
+	public MetricsReporter(final MetricRegistry registry, final Mode mode, final Path csvFile)
+	{
+		this.registry = registry;
+		this.mode = mode;
+		this.csvFile = csvFile;
+	}
+
+	/**
+	 * Register the {@link MetricRegistry#global() global registry} with JMX and start reporting as configured in
+	 * {@code paintera.yml}. Subsequent calls have no effect.
+	 */
+	public static synchronized void startFromConfig()
+	{
+		if (started)
+			return;
+		started = true;
+
+		final boolean jmx = Optional
+				.ofNullable(getConfig("jmx"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(true);
+		if (jmx)
+			MetricsMBean.register(MetricRegistry.global());
+
+		final Mode mode = Optional
+				.ofNullable(getConfig("reporter"))
+				.map(o -> Mode.valueOf(o.toString().toUpperCase()))
+				.orElse(Mode.NONE);
+		if (mode == Mode.NONE)
+			return;
+
+		final long intervalSeconds = Optional
+				.ofNullable(getConfig("intervalSeconds"))
+				.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+				.orElse(DEFAULT_INTERVAL_SECONDS);
+		final Path csvFile = Optional
+				.ofNullable(getConfig("csvFile"))
+				.map(Object::toString)
+				.map(Paths::get)
+				.orElseGet(() -> PainteraCache.getCacheFile(MetricsReporter.class, "metrics.csv"));
+		new MetricsReporter(MetricRegistry.global(), mode, csvFile).start(intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	public void start(final long interval, final TimeUnit unit)
+	{
+		LOG.info("Reporting metrics every {} {} ({}{})", interval, unit, mode, mode == Mode.CSV ? " to " + csvFile : "");
+		executor.scheduleAtFixedRate(this::reportSafely, interval, interval, unit);
+	}
+
+	public void stop()
+	{
+		executor.shutdown();
+		reportSafely();
+	}
+
+	public void report() throws IOException
+	{
+		final long timestamp = System.currentTimeMillis();
+		switch (mode)
+		{
+			case LOG:
+				for (final Map.Entry<String, Metric> metric : registry.metrics().entrySet())
+					LOG.info("{}: {}", metric.getKey(), metric.getValue().snapshot());
+				break;
+			case CSV:
+				final boolean writeHeader = !Files.exists(csvFile) || Files.size(csvFile) == 0;
+				if (csvFile.getParent() != null)
+					Files.createDirectories(csvFile.getParent());
+				try (final BufferedWriter writer = Files.newBufferedWriter(
+						csvFile,
+						StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND))
+				{
+					if (writeHeader)
+					{
+						writer.write(CSV_HEADER);
+						writer.newLine();
+					}
+					for (final Map.Entry<String, Metric> metric : registry.metrics().entrySet())
+						for (final Map.Entry<String, Number> value : metric.getValue().snapshot().entrySet())
+						{
+							writer.write(String.format("%d,\"%s\",%s,%s", timestamp, metric.getKey(), value.getKey(), value.getValue()));
+							writer.newLine();
+						}
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void reportSafely()
+	{
+		try
+		{
+			report();
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.warn("Unable to report metrics: {}", e.getMessage());
+			LOG.debug("Unable to report metrics", e);
+		}
+	}
+
+	private static Object getConfig(final String key)
+	{
+		return PainteraConfigYaml.getConfig(() -> null, "metrics", key);
+	}
+
+}
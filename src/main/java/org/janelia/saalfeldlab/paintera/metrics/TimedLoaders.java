@@ -0,0 +1,69 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.img.CellLoader;
+
+/**
+ * Wrap cell and cache loaders to record the number and latency of loads in a {@link Timer}. Failed loads are counted
+ * separately in a {@link Counter} named {@code <name>.failed}.
+ */
+public class TimedLoaders
+{
+
+	private TimedLoaders()
+	{
+
+	}
+
+	/**
+	 *
+	 * @param source dataset or group of a multi-scale source
+	 * @param level mipmap level within {@code source}
+	 * @return name of the metric for cell loads of {@code level} of {@code source}
+	 */
+	public static String cellLoadMetricName(final String source, final int level)
+	{
+		return MetricRegistry.tagged("cells.load", "source", source, "level", level);
+	}
+
+	public static <T> CellLoader<T> timed(final CellLoader<T> loader, final MetricRegistry registry, final String name)
+	{
+		final Timer timer = registry.timer(name);
+		final Counter failed = registry.counter(name + ".failed");
+		return cell -> {
+			final long start = System.nanoTime();
+			try
+			{
+				loader.load(cell);
+			} catch (final Exception e)
+			{
+				failed.inc();
+				throw e;
+			} finally
+			{
+				timer.updateSince(start);
+			}
+		};
+	}
+
+	public static <K, V> CacheLoader<K, V> timed(final CacheLoader<K, V> loader, final MetricRegistry registry, final String name)
+	{
+		final Timer timer = registry.timer(name);
+		final Counter failed = registry.counter(name + ".failed");
+		return key -> {
+			final long start = System.nanoTime();
+			try
+			{
+				return loader.get(key);
+			} catch (final Exception e)
+			{
+				failed.inc();
+				throw e;
+			} finally
+			{
+				timer.updateSince(start);
+			}
+		};
+	}
+
+}
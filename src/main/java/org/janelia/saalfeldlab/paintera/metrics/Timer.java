@@ -0,0 +1,138 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count and latency histogram of timed events, e.g. cell loads. Durations are recorded in nanoseconds into
+ * logarithmic buckets with four sub-buckets per power of two, i.e. reported percentiles over-estimate the true value by
+ * at most 25%. Recording is lock-free.
+ */
+public class Timer implements Metric
+{
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private static final int NUM_BUCKETS = 4 * 62;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong(0);
+
+	public void update(final long nanos)
+	{
+		final long n = Math.max(nanos, 0);
+		buckets.incrementAndGet(bucket(n));
+		count.increment();
+		totalNanos.add(n);
+		long max;
+		while ((max = maxNanos.get()) < n && !maxNanos.compareAndSet(max, n));
+	}
+
+	/**
+	 * Record the time elapsed since {@code startNanos}.
+	 *
+	 * @param startNanos start time as returned by {@link System#nanoTime()}
+	 */
+	public void updateSince(final long startNanos)
+	{
+		update(System.nanoTime() - startNanos);
+	}
+
+	public <T> T time(final Callable<T> callable) throws Exception
+	{
+		final long start = System.nanoTime();
+		try
+		{
+			return callable.call();
+		} finally
+		{
+			updateSince(start);
+		}
+	}
+
+	public void time(final Runnable runnable)
+	{
+		final long start = System.nanoTime();
+		try
+		{
+			runnable.run();
+		} finally
+		{
+			updateSince(start);
+		}
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 *
+	 * @param quantile in {@code [0, 1]}
+	 * @return upper bound of the histogram bucket that contains {@code quantile}, in nanoseconds
+	 */
+	public long getQuantileNanos(final double quantile)
+	{
+		final long[] counts = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int b = 0; b < NUM_BUCKETS; ++b)
+		{
+			counts[b] = buckets.get(b);
+			total += counts[b];
+		}
+		if (total == 0)
+			return 0;
+		final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long cumulative = 0;
+		for (int b = 0; b < NUM_BUCKETS; ++b)
+		{
+			cumulative += counts[b];
+			if (cumulative >= rank)
+				return Math.min(upperBound(b), maxNanos.get());
+		}
+		return maxNanos.get();
+	}
+
+	@Override
+	public Map<String, Number> snapshot()
+	{
+		final long count = getCount();
+		final Map<String, Number> snapshot = new LinkedHashMap<>();
+		snapshot.put("count", count);
+		snapshot.put("meanMillis", count == 0 ? 0.0 : totalNanos.sum() / NANOS_PER_MILLI / count);
+		snapshot.put("p50Millis", getQuantileNanos(0.5) / NANOS_PER_MILLI);
+		snapshot.put("p90Millis", getQuantileNanos(0.9) / NANOS_PER_MILLI);
+		snapshot.put("p99Millis", getQuantileNanos(0.99) / NANOS_PER_MILLI);
+		snapshot.put("maxMillis", maxNanos.get() / NANOS_PER_MILLI);
+		return snapshot;
+	}
+
+	static int bucket(final long nanos)
+	{
+		if (nanos < 4)
+			return (int) nanos;
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int subBucket = (int) ((nanos >>> (exponent - 2)) & 3);
+		return 4 * (exponent - 1) + subBucket;
+	}
+
+	static long upperBound(final int bucket)
+	{
+		if (bucket < 4)
+			return bucket;
+		final int exponent = bucket / 4 + 1;
+		final int subBucket = bucket % 4;
+		return ((4L + subBucket + 1) << (exponent - 2)) - 1;
+	}
+
+}
@@ -21,6 +21,7 @@ import org.janelia.saalfeldlab.paintera.config.NavigationConfig;
 import org.janelia.saalfeldlab.paintera.config.OrthoSliceConfigBase;
 import org.janelia.saalfeldlab.paintera.config.ScreenScalesConfig;
 import org.janelia.saalfeldlab.paintera.config.Viewer3DConfig;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSourceDeserializer;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer.Arguments;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
@@ -81,6 +82,8 @@ public class Properties implements TransformListener<AffineTransform3D>
 
 	private transient final BooleanProperty transformDirty = new SimpleBooleanProperty(false);
 
+	private transient final BooleanProperty stained = new SimpleBooleanProperty(false);
+
 	public transient final ObservableBooleanValue isDirty;
 
 	public Properties(
@@ -98,7 +101,7 @@ public class Properties implements TransformListener<AffineTransform3D>
 		super();
 		this.sourceInfo = sources;
 		this.gridConstraints = gridConstraints;
-		this.isDirty = transformDirty.or(windowProperties.hasChanged).or(sources.isDirtyProperty());
+		this.isDirty = transformDirty.or(windowProperties.hasChanged).or(sources.isDirtyProperty()).or(stained);
 	}
 
 	@Override
@@ -128,6 +131,16 @@ public class Properties implements TransformListener<AffineTransform3D>
 		sourceInfo.clean();
 		setGlobalTransformClean();
 		windowProperties.clean();
+		stained.set(false);
+	}
+
+	/**
+	 * Mark these properties dirty until the next {@link #clean()}, e.g. if they were cleaned for saving but could not
+	 * be written.
+	 */
+	public void stain()
+	{
+		stained.set(true);
 	}
 
 	public static Properties fromSerializedProperties(
@@ -138,14 +151,18 @@ public class Properties implements TransformListener<AffineTransform3D>
 			final Map<Integer, SourceState<?, ?>> indexToState,
 			final GridConstraintsManager manager) throws InstantiableException {
 		final Arguments arguments = new StatefulSerializer.Arguments(viewer);
+		final Gson gson = GsonHelpers.builderWithAllRequiredDeserializers(arguments, projectDirectory, indexToState::get).create();
+		// data sources do not depend on other sources: open all of them in parallel while states are restored in order
+		Optional
+				.ofNullable(serializedProperties.get(SOURCES_KEY))
+				.ifPresent(sources -> N5DataSourceDeserializer.openInBackground(sources, gson, arguments));
 		return fromSerializedProperties(
 				serializedProperties,
 				viewer,
 				removeExistingSources,
 				indexToState,
 				manager,
-				GsonHelpers.builderWithAllRequiredDeserializers(arguments, projectDirectory, indexToState::get)
-						.create()
+				gson
 		                               );
 	}
 
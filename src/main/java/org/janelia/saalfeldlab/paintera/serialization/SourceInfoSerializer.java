@@ -5,14 +5,12 @@ import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.IntConsumer;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -55,29 +53,39 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 	@Override
 	public JsonElement serialize(final SourceInfo src, final Type typeOfSrc, final JsonSerializationContext context)
 	{
-		final Map<String, Object> elements = new HashMap<>();
-		final List<Source<?>>     sources  = new ArrayList<>(src.trackSources());
+		return serialize(src, s -> context.serialize(s, s.getClass()));
+	}
+
+	/**
+	 * Serialize {@code src} with a custom serializer for individual states, e.g. to re-use serialized states that did
+	 * not change.
+	 */
+	public static JsonObject serialize(
+			final SourceInfo src,
+			final Function<SourceState<?, ?>, JsonElement> serializeState)
+	{
+		final List<Source<?>> sources = new ArrayList<>(src.trackSources());
 
 		LOG.debug("Serializing sources: {}", sources);
 
-		final List<JsonElement> serializedSources = src
-				.trackSources()
+		final JsonArray serializedSources = new JsonArray();
+		sources
 				.stream()
 				.map(src::getState)
 				.map(s -> {
 					final JsonObject typeAndData = new JsonObject();
 					typeAndData.addProperty(STATE_TYPE_KEY, s.getClass().getName());
-					typeAndData.add(STATE_KEY, context.serialize(s, s.getClass()));
+					typeAndData.add(STATE_KEY, serializeState.apply(s));
 					return typeAndData;
 				})
-				.collect(Collectors.toList());
+				.forEach(serializedSources::add);
 		LOG.debug("Serialized sources: {}", serializedSources);
 
-		final int currentSourceIndex = src.currentSourceIndexProperty().get();
-		elements.put(NUM_SOURCES_KEY, sources.size());
-		elements.put(CURRENT_SOURCE_INDEX_KEY, currentSourceIndex);
-		elements.put(SOURCES_KEY, serializedSources);
-		return context.serialize(elements);
+		final JsonObject elements = new JsonObject();
+		elements.addProperty(NUM_SOURCES_KEY, sources.size());
+		elements.addProperty(CURRENT_SOURCE_INDEX_KEY, src.currentSourceIndexProperty().get());
+		elements.add(SOURCES_KEY, serializedSources);
+		return elements;
 	}
 
 	public static void populate(
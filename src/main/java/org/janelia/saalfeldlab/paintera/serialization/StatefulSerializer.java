@@ -1,11 +1,13 @@
 package org.janelia.saalfeldlab.paintera.serialization;
 
 import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonSerializer;
 import javafx.scene.Group;
 import javafx.util.Pair;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.util.SciJavaUtils;
 import org.scijava.InstantiableException;
@@ -14,6 +16,8 @@ import org.scijava.plugin.SciJavaPlugin;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.function.IntFunction;
 import java.util.function.Supplier;
@@ -38,6 +42,12 @@ public class StatefulSerializer
 
 		public final PainteraBaseView viewer;
 
+		/**
+		 * Data sources that are being opened in the background, by their serialized form. Deserializers take
+		 * (and remove) their source from here if present instead of opening it again.
+		 */
+		public final Map<JsonElement, CompletableFuture<? extends DataSource<?, ?>>> openingDataSources = new ConcurrentHashMap<>();
+
 		public Arguments(final PainteraBaseView viewer)
 		{
 			this.globalCache = viewer.getGlobalCache();
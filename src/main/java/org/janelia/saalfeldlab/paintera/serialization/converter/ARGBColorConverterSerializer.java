@@ -29,6 +29,8 @@ public class ARGBColorConverterSerializer<T extends RealType<T>> implements Pain
 
 	private static final String MAX_KEY = "max";
 
+	private static final String AUTO_CONTRAST_KEY = "autoContrast";
+
 	@Override
 	public ARGBColorConverter<T> deserialize(final JsonElement json, final Type type, final JsonDeserializationContext
 			context)
@@ -46,6 +48,7 @@ public class ARGBColorConverterSerializer<T extends RealType<T>> implements Pain
 					converter.colorProperty()::set);
 			Optional.ofNullable(map.get(MIN_KEY)).map(JsonElement::getAsDouble).ifPresent(converter::setMin);
 			Optional.ofNullable(map.get(MAX_KEY)).map(JsonElement::getAsDouble).ifPresent(converter::setMax);
+			Optional.ofNullable(map.get(AUTO_CONTRAST_KEY)).map(JsonElement::getAsBoolean).ifPresent(converter.autoContrastProperty()::set);
 			return converter;
 		} catch (InstantiationException
 				| IllegalAccessException
@@ -68,6 +71,8 @@ public class ARGBColorConverterSerializer<T extends RealType<T>> implements Pain
 		map.addProperty(COLOR_KEY, Colors.toHTML(src.getColor()));
 		map.addProperty(MIN_KEY, src.getMin());
 		map.addProperty(MAX_KEY, src.getMax());
+		if (src.autoContrastProperty().get())
+			map.addProperty(AUTO_CONTRAST_KEY, true);
 		return map;
 	}
 
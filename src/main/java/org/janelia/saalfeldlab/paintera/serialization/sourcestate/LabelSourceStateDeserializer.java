@@ -33,6 +33,7 @@ import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerWithAssignmentForSegments;
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCaches;
 import org.janelia.saalfeldlab.paintera.serialization.assignments.FragmentSegmentAssignmentOnlyLocalSerializer;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer.Arguments;
@@ -59,10 +60,18 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 
 	private final Arguments arguments;
 
+	private final Supplier<String> projectDirectory;
+
 	public LabelSourceStateDeserializer(final Arguments arguments)
+	{
+		this(arguments, () -> null);
+	}
+
+	public LabelSourceStateDeserializer(final Arguments arguments, final Supplier<String> projectDirectory)
 	{
 		super();
 		this.arguments = arguments;
+		this.projectDirectory = projectDirectory;
 	}
 
 	@Plugin(type = StatefulSerializer.DeserializerFactory.class)
@@ -74,7 +83,7 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 		public LabelSourceStateDeserializer<C> createDeserializer(final Arguments arguments, final Supplier<String>
 				projectDirectory, final IntFunction<SourceState<?, ?>> dependencyFromIndex)
 		{
-			return new LabelSourceStateDeserializer<>(arguments);
+			return new LabelSourceStateDeserializer<>(arguments, projectDirectory);
 		}
 
 		@Override
@@ -136,7 +145,7 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 				stream,
 				arguments.meshesGroup,
 				blockLoaders,
-				arguments.globalCache::createNewCache,
+				PersistentMeshCaches.segmentMeshes(arguments.globalCache::createNewCache, source, projectDirectory.get()),
 				arguments.meshManagerExecutors,
 				arguments.meshWorkersExecutors
 		);
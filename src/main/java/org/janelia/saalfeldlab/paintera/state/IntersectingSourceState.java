@@ -7,10 +7,13 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.cache.UncheckedCache;
 import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.queue.BlockingFetchQueues;
 import net.imglib2.cache.volatiles.VolatileCache;
 import net.imglib2.converter.ARGBColorConverter;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
@@ -27,6 +30,7 @@ import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Triple;
@@ -44,26 +48,31 @@ import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.Interpolations;
+import org.janelia.saalfeldlab.paintera.data.PredicateDataSource;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrderNotSupported;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunctionAndCache;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManager;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerSimple;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
 import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
 import org.janelia.saalfeldlab.util.Colors;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import tmp.bdv.img.cache.VolatileCachedCellImg;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class IntersectingSourceState
@@ -76,6 +85,71 @@ public class IntersectingSourceState
 
 	private final MeshManagerSimple<TLongHashSet, TLongHashSet> meshManager;
 
+	/**
+	 * Executors and fetch queue that compute the intersection. Owned by this state and shut down on removal.
+	 */
+	private static class IntersectionExecutors
+	{
+
+		private final GlobalCache globalCache;
+
+		private final ExecutorService workers;
+
+		private final ExecutorService solvers;
+
+		private final BlockingFetchQueues<Callable<?>> queue;
+
+		private final ExecutorService fetchers;
+
+		private IntersectionExecutors(final String name, final GlobalCache globalCache)
+		{
+			final int numThreads = Runtime.getRuntime().availableProcessors();
+			this.globalCache = globalCache;
+			this.workers = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("intersection-" + name + "-%d", true));
+			// at most one solution is computed per level at any time
+			this.solvers = Executors.newCachedThreadPool(new NamedThreadFactory("intersection-" + name + "-solver-%d", true));
+			// intersect cells wait for cells of the thresholded and label sources and must not occupy their fetchers
+			this.queue = globalCache.createFetchQueue();
+			this.fetchers = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("intersection-" + name + "-fetcher-%d", true));
+			for (int i = 0; i < numThreads; ++i)
+				this.fetchers.execute(this::fetch);
+		}
+
+		private void fetch()
+		{
+			try
+			{
+				while (!Thread.currentThread().isInterrupted())
+				{
+					final Callable<?> fetch = queue.take();
+					try
+					{
+						fetch.call();
+					} catch (final InterruptedException e)
+					{
+						throw e;
+					} catch (final Exception e)
+					{
+						LOG.debug("Unable to fetch intersect cell: {}", e.getMessage());
+					}
+				}
+			} catch (final InterruptedException e)
+			{
+				LOG.debug("Intersection fetcher interrupted");
+			}
+		}
+
+		private void shutdown()
+		{
+			this.fetchers.shutdownNow();
+			this.globalCache.removeFetchQueue(this.queue);
+			this.solvers.shutdownNow();
+			this.workers.shutdownNow();
+		}
+	}
+
+	private final IntersectionExecutors intersectionExecutors;
+
 	public <D extends IntegerType<D>, T extends Type<T>, B extends BooleanType<B>> IntersectingSourceState(
 			final ThresholdingSourceState<?, ?> thresholded,
 			final LabelSourceState<D, T> labels,
@@ -86,9 +160,33 @@ public class IntersectingSourceState
 			final Group meshesGroup,
 			final ExecutorService manager,
 			final ExecutorService workers) throws InvalidAccessException {
+		this(
+				thresholded,
+				labels,
+				composite,
+				name,
+				globalCache,
+				priority,
+				meshesGroup,
+				manager,
+				workers,
+				new IntersectionExecutors(name, globalCache));
+	}
+
+	private <D extends IntegerType<D>, T extends Type<T>, B extends BooleanType<B>> IntersectingSourceState(
+			final ThresholdingSourceState<?, ?> thresholded,
+			final LabelSourceState<D, T> labels,
+			final Composite<ARGBType, ARGBType> composite,
+			final String name,
+			final GlobalCache globalCache,
+			final int priority,
+			final Group meshesGroup,
+			final ExecutorService manager,
+			final ExecutorService workers,
+			final IntersectionExecutors intersectionExecutors) throws InvalidAccessException {
 		// TODO use better converter
 		super(
-				makeIntersect(thresholded, labels, globalCache, priority, name),
+				makeIntersect(thresholded, labels, globalCache, priority, name, intersectionExecutors),
 				new ARGBColorConverter.Imp0<>(0, 1),
 				composite,
 				name,
@@ -96,6 +194,7 @@ public class IntersectingSourceState
 				thresholded,
 				labels
 		     );
+		this.intersectionExecutors = intersectionExecutors;
 		final DataSource<UnsignedByteType, VolatileUnsignedByteType> source = getDataSource();
 
 		this.axisOrderProperty().bindBidirectional(thresholded.axisOrderProperty());
@@ -166,26 +265,8 @@ public class IntersectingSourceState
 			final DataSource<?, ?> source,
 			final FragmentsInSelectedSegments fragmentsInSelectedSegments)
 	{
-		for (int level = 0; level < source.getNumMipmapLevels(); ++level)
-		{
-			final DataSource<?, ?>            dsource = source instanceof MaskedSource<?, ?>
-			                                            ? ((MaskedSource<?, ?>) source).underlyingSource()
-			                                            : source;
-			final RandomAccessibleInterval<?> data    = dsource.getDataSource(0, level);
-			if (data instanceof CachedCellImg<?, ?>)
-			{
-				LOG.debug("Invalidating: data type={}", data.getClass().getName());
-				((CachedCellImg<?, ?>) data).getCache().invalidateAll();
-			}
-
-			final RandomAccessibleInterval<?> vdata = dsource.getSource(0, level);
-			if (vdata instanceof VolatileCachedCellImg)
-			{
-				LOG.debug("Invalidating: vdata type={}", vdata.getClass().getName());
-				((VolatileCachedCellImg<?, ?>) vdata).getInvalidateAll().run();
-			}
-
-		}
+		// invalidates connected components and cached cells of all levels
+		source.invalidateAll();
 
 		this.meshManager.removeAllMeshes();
 		if (Optional.ofNullable(fragmentsInSelectedSegments.getFragments()).map(sel -> sel.length).orElse(0) > 0)
@@ -199,13 +280,21 @@ public class IntersectingSourceState
 		return this.meshManager;
 	}
 
+	@Override
+	public void onRemoval(final SourceInfo sourceInfo)
+	{
+		LOG.debug("Shutting down intersection executors of {}", nameProperty().get());
+		this.intersectionExecutors.shutdown();
+	}
+
 	private static <D extends IntegerType<D>, T extends Type<T>, B extends BooleanType<B>>
 	DataSource<UnsignedByteType, VolatileUnsignedByteType> makeIntersect(
 			final SourceState<B, Volatile<B>> thresholded,
 			final LabelSourceState<D, T> labels,
 			final GlobalCache globalCache,
 			final int priority,
-			final String name) throws InvalidAccessException {
+			final String name,
+			final IntersectionExecutors executors) throws InvalidAccessException {
 		LOG.debug(
 				"Number of mipmap labels: thresholded={} labels={}",
 				thresholded.getDataSource().getNumMipmapLevels(),
@@ -221,6 +310,7 @@ public class IntersectingSourceState
 		final RandomAccessibleInterval<VolatileUnsignedByteType>[] vdata      = new RandomAccessibleInterval[transforms.length];
 		final Invalidate<Long>[] invalidate                                   = new Invalidate[transforms.length];
 		final Invalidate<Long>[] vinvalidate                                  = new Invalidate[transforms.length];
+		final LabelIntersectionCellLoader<?, ?>[] loaders                     = new LabelIntersectionCellLoader[transforms.length];
 
 		final SelectedIds                    selectedIds                 = labels.selectedIds();
 		final FragmentSegmentAssignmentState assignment                  = labels.assignment();
@@ -260,20 +350,29 @@ public class IntersectingSourceState
 
 			final B extension = Util.getTypeFromInterval(thresh);
 			extension.set(false);
+			final InterruptibleFunction<TLongHashSet, Interval[]> blockList = labels.meshManager().blockListCache()[level];
+			final int fLevel = level;
+			final Predicate<Interval> mayContainForeground = thresholded.getDataSource() instanceof PredicateDataSource<?, ?, ?>
+					? interval -> ((PredicateDataSource<?, ?, ?>) thresholded.getDataSource()).test(fLevel, interval).orElse(true)
+					: interval -> true;
 			final LabelIntersectionCellLoader<D, B> loader = new LabelIntersectionCellLoader<>(
+					grid,
 					label,
 					Views.extendValue(thresh, extension),
 					checkForType(labelsSource.getDataType(), fragmentsInSelectedSegments),
 					BooleanType::get,
-					extension::copy
+					() -> seedCells(grid, blockList, fragmentsInSelectedSegments, mayContainForeground),
+					executors.workers,
+					executors.solvers
 			);
+			loaders[level] = loader;
 
 			LOG.debug("Making intersect for level={} with grid={}", level, grid);
 
 			final Pair<CachedCellImg<UnsignedByteType, VolatileByteArray>, Invalidate<Long>> imgAndInvalidate =
 					globalCache.createVolatileImg(grid, loader, new UnsignedByteType());
 			final Triple<RandomAccessibleInterval<VolatileUnsignedByteType>, VolatileCache<Long, Cell<VolatileByteArray>>, Invalidate<Long>> vimgAndInvalidate =
-					globalCache.wrapAsVolatile(imgAndInvalidate.getA(), imgAndInvalidate.getB(), priority);
+					globalCache.wrapAsVolatile(imgAndInvalidate.getA(), imgAndInvalidate.getB(), priority, executors.queue);
 			data[level] = imgAndInvalidate.getA();
 			vdata[level] = vimgAndInvalidate.getA();
 			invalidate[level] = imgAndInvalidate.getB();
@@ -283,7 +382,11 @@ public class IntersectingSourceState
 
 		return new RandomAccessibleIntervalDataSource<>(
 				new ValueTriple<>(data, vdata, transforms),
-				() -> {Stream.of(invalidate).forEach(InvalidateAll::invalidateAll); Stream.of(vinvalidate).forEach(InvalidateAll::invalidateAll);},
+				() -> {
+					Stream.of(loaders).forEach(LabelIntersectionCellLoader::invalidate);
+					Stream.of(invalidate).forEach(InvalidateAll::invalidateAll);
+					Stream.of(vinvalidate).forEach(InvalidateAll::invalidateAll);
+				},
 				Interpolations.nearestNeighbor(),
 				Interpolations.nearestNeighbor(),
 				name
@@ -297,9 +400,67 @@ public class IntersectingSourceState
 			return (Predicate<T>) checkForLabelMultisetType(fragmentsInSelectedSegments);
 		}
 
+		if (t instanceof IntegerType<?>)
+		{
+			return i -> fragmentsInSelectedSegments.contains(((IntegerType<?>) i).getIntegerLong());
+		}
+
 		return null;
 	}
 
+	/**
+	 *
+	 * @param mayContainForeground {@code false} for intervals that are known to contain no foreground of the
+	 * thresholded source. Cells in such intervals cannot contain seeds and are skipped.
+	 */
+	private static long[] seedCells(
+			final CellGrid grid,
+			final InterruptibleFunction<TLongHashSet, Interval[]> blockList,
+			final FragmentsInSelectedSegments fragmentsInSelectedSegments,
+			final Predicate<Interval> mayContainForeground)
+	{
+		final long[] fragments = fragmentsInSelectedSegments.getFragments();
+		if (fragments == null || fragments.length == 0)
+			return new long[] {};
+
+		final long[] candidates;
+		try
+		{
+			final Interval[] blocks = blockList.apply(new TLongHashSet(fragments));
+			if (blocks == null)
+				return null;
+			final long[] cellPosition = new long[grid.numDimensions()];
+			candidates = Stream
+					.of(blocks)
+					.mapToLong(block -> {
+						grid.getCellPosition(Intervals.minAsLongArray(block), cellPosition);
+						return IntervalIndexer.positionToIndex(cellPosition, grid.getGridDimensions());
+					})
+					.toArray();
+		} catch (final RuntimeException e)
+		{
+			LOG.debug("Unable to retrieve block list for fragments, considering all cells as seed candidates", e);
+			return null;
+		}
+
+		final int n = grid.numDimensions();
+		final long[] cellPosition = new long[n];
+		final long[] cellMin = new long[n];
+		final long[] cellMax = new long[n];
+		final int[] cellDimensions = new int[n];
+		final long[] seedCells = LongStream
+				.of(candidates)
+				.filter(index -> {
+					IntervalIndexer.indexToPosition(index, grid.getGridDimensions(), cellPosition);
+					grid.getCellDimensions(cellPosition, cellMin, cellDimensions);
+					Arrays.setAll(cellMax, d -> cellMin[d] + cellDimensions[d] - 1);
+					return mayContainForeground.test(new FinalInterval(cellMin, cellMax));
+				})
+				.toArray();
+		LOG.debug("Skipping {} of {} seed cell candidates without foreground", candidates.length - seedCells.length, candidates.length);
+		return seedCells;
+	}
+
 	private static final Predicate<LabelMultisetType> checkForLabelMultisetType(final FragmentsInSelectedSegments fragmentsInSelectedSegments)
 	{
 		return lmt -> {
@@ -1,51 +1,78 @@
 package org.janelia.saalfeldlab.paintera.state;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
-import net.imglib2.Cursor;
 import net.imglib2.RandomAccessible;
-import net.imglib2.algorithm.fill.FloodFill;
-import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.util.Intervals;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.util.connectivity.BlockwiseConnectedComponents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import tmp.net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
 
+/**
+ * Load cells of the intersection of two sources: All voxels in {@code data2} that satisfy {@code check2} and that are
+ * connected to a voxel that satisfies both {@code check1} in {@code data1} and {@code check2} in {@code data2}.
+ * Connectivity is evaluated across cell boundaries through {@link BlockwiseConnectedComponents}.
+ *
+ * @param <T> type of {@code data1}
+ * @param <U> type of {@code data2}
+ */
 public class LabelIntersectionCellLoader<T, U> implements CellLoader<UnsignedByteType>
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	private final RandomAccessible<T> data1;
-
-	private final RandomAccessible<U> data2;
-
-	private final Predicate<T> check1;
-
-	private final Predicate<U> check2;
-
-	private final Supplier<U> extension;
+	private final BlockwiseConnectedComponents<T, U> components;
 
+	/**
+	 *
+	 * @param grid cell grid of the intersection
+	 * @param data1 first source
+	 * @param data2 second source, extended beyond its interval
+	 * @param check1 seed predicate for {@code data1}
+	 * @param check2 foreground predicate for {@code data2}
+	 * @param seedCells linear indices of all cells that may contain voxels that satisfy {@code check1}, {@code null}
+	 * for all cells.
+	 * @param es labels cells in parallel. Must not be a fetcher thread of the cache that uses this loader.
+	 * @param solver computes the connected components across all cells, so that fetcher threads of the cache that uses
+	 *               this loader only wait for the result. Must not be {@code es}.
+	 */
 	public LabelIntersectionCellLoader(
+			final CellGrid grid,
 			final RandomAccessible<T> data1,
 			final RandomAccessible<U> data2,
 			final Predicate<T> check1,
 			final Predicate<U> check2,
-			final Supplier<U> extension)
+			final Supplier<long[]> seedCells,
+			final ExecutorService es,
+			final Executor solver)
 	{
 		super();
-		this.data1 = data1;
-		this.data2 = data2;
-		this.check1 = check1;
-		this.check2 = check2;
-		this.extension = extension;
+		this.components = new BlockwiseConnectedComponents<>(
+				grid,
+				data1,
+				data2,
+				check1,
+				check2,
+				seedCells,
+				es,
+				solver);
+	}
+
+	/**
+	 * Discard all connected components. Must be called whenever {@code data1}, {@code data2}, {@code check1}, or
+	 * {@code check2} change.
+	 */
+	public void invalidate()
+	{
+		this.components.invalidate();
 	}
 
 	@Override
@@ -57,31 +84,6 @@ public class LabelIntersectionCellLoader<T, U> implements CellLoader<UnsignedByt
 				Intervals.maxAsLongArray(cell),
 				cell.size()
 		         );
-		final IntervalView<U> label2Interval        = Views.interval(data2, cell);
-		final Cursor<T> label1Cursor                = Views.flatIterable(Views.interval(data1, cell)).cursor();
-		final Cursor<U> label2Cursor                = Views.flatIterable(label2Interval).cursor();
-		final Cursor<UnsignedByteType> targetCursor = cell.localizingCursor();
-
-		//		cell.forEach( UnsignedByteType::setZero );
-		while (targetCursor.hasNext())
-		{
-			final UnsignedByteType targetType = targetCursor.next();
-			final T                label1Type = label1Cursor.next();
-			final U                label2Type = label2Cursor.next();
-			if (targetType.get() == 0)
-			{
-				if (check1.test(label1Type) && check2.test(label2Type))
-				{
-					FloodFill.fill(
-							Views.extend(label2Interval, new OutOfBoundsConstantValueFactory<>(extension)),
-							Views.extendValue(cell, new UnsignedByteType(1)),
-							targetCursor,
-							new UnsignedByteType(1),
-							new DiamondShape(1),
-							(s, t) -> check2.test(s) && t.get() == 0
-					              );
-				}
-			}
-		}
+		components.fill(cell);
 	}
 }
@@ -21,6 +21,7 @@ import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ActiveSection;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ModeState;
+import org.janelia.saalfeldlab.paintera.control.actions.PaintActionType;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
@@ -31,6 +32,7 @@ import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.mask.Mask;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.LocalIdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
@@ -162,6 +164,11 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 			this.shapeInterpolationMode = new ShapeInterpolationMode<>((MaskedSource<D, ?>) dataSource, this, selectedIds, idService, converter, assignment);
 		else
 			this.shapeInterpolationMode = null;
+		if (dataSource instanceof MaskedSource<?, ?>)
+		{
+			((MaskedSource<?, ?>) dataSource).addOnCanvasRestoredListener(() -> InvokeOnJavaFXApplicationThread.invoke(this::refreshMeshes));
+			((MaskedSource<?, ?>) dataSource).addOnBlocksModifiedListener(meshManager::refreshMeshesInBlocks);
+		}
 		this.displayStatus = createDisplayStatus();
 		assignment.addListener(obs -> stain());
 		selectedIds.addListener(obs -> stain());
@@ -490,9 +497,45 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 						},
 						e -> floodFillState.get() != null && keyTracker.areOnlyTheseKeysDown(KeyCode.ESCAPE)
 			));
+		if (getDataSource() instanceof MaskedSource<?, ?>)
+		{
+			final MaskedSource<?, ?> maskedSource = (MaskedSource<?, ?>) getDataSource();
+			handler.addEventHandler(
+					KeyEvent.KEY_PRESSED,
+					EventFX.KEY_PRESSED(
+							"undo paint",
+							e -> {
+								e.consume();
+								undoOrRedoPainting(maskedSource, true);
+							},
+							e -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Paint) && keyTracker.areOnlyTheseKeysDown(KeyCode.CONTROL, KeyCode.Z)
+				));
+			handler.addEventHandler(
+					KeyEvent.KEY_PRESSED,
+					EventFX.KEY_PRESSED(
+							"redo paint",
+							e -> {
+								e.consume();
+								undoOrRedoPainting(maskedSource, false);
+							},
+							e -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Paint) && keyTracker.areOnlyTheseKeysDown(KeyCode.CONTROL, KeyCode.SHIFT, KeyCode.Z)
+				));
+		}
 		return handler;
 	}
 
+	private static void undoOrRedoPainting(final MaskedSource<?, ?> maskedSource, final boolean undo)
+	{
+		try
+		{
+			final boolean restored = undo ? maskedSource.undo() : maskedSource.redo();
+			LOG.debug("{} painting: {}", undo ? "Undo" : "Redo", restored);
+		} catch (final MaskInUse e)
+		{
+			LOG.info("Unable to {} painting: {}", undo ? "undo" : "redo", e.getMessage());
+		}
+	}
+
 //	@Override
 //	public EventHandler<Event> stateSpecificGlobalEventFilter(PainteraBaseView paintera, KeyTracker keyTracker) {
 //		return e -> {
@@ -531,6 +574,12 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		assignment.addListener(obs -> paintera.orthogonalViews().requestRepaint());
 	}
 
+	@Override
+	public void onRemoval(final SourceInfo sourceInfo) {
+		if (getDataSource() instanceof MaskedSource<?, ?>)
+			((MaskedSource<?, ?>) getDataSource()).stopWatchingBackground();
+	}
+
 	@Override
 	public Node getDisplayStatus()
 	{
@@ -73,6 +73,7 @@ public class MinimalSourceState<D, T, S extends DataSource<D, T>, C extends Conv
 		this.composite.addListener(obs -> this.stain());
 		this.name.addListener(obs -> this.stain());
 		this.isVisible.addListener(obs -> this.stain());
+		this.interpolation.addListener(obs -> this.stain());
 
 		this.axisOrder.set(AxisOrder.XYZ);
 		this.axisOrder.addListener((obs, oldv, newv) -> {
@@ -80,6 +81,8 @@ public class MinimalSourceState<D, T, S extends DataSource<D, T>, C extends Conv
 				this.axisOrder.set(oldv);
 			else if (newv.hasChannels() || newv.hasTime())
 				this.axisOrder.set(newv.spatialOnly());
+			else
+				this.stain();
 		});
 
 	}
@@ -19,10 +19,12 @@ import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
 import org.janelia.saalfeldlab.fx.event.EventFX;
 import org.janelia.saalfeldlab.fx.event.KeyTracker;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.composition.CompositeCopy;
+import org.janelia.saalfeldlab.paintera.control.AutoContrast;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
@@ -38,6 +40,8 @@ public class RawSourceState<D, T extends RealType<T>>
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private AutoContrast autoContrast = null;
+
 	public RawSourceState(
 			final DataSource<D, T> dataSource,
 			final ARGBColorConverter<T> converter,
@@ -45,6 +49,10 @@ public class RawSourceState<D, T extends RealType<T>>
 			final String name)
 	{
 		super(dataSource, converter, composite, name);
+		converter.minProperty().addListener(obs -> stain());
+		converter.maxProperty().addListener(obs -> stain());
+		converter.alphaProperty().addListener(obs -> stain());
+		converter.colorProperty().addListener(obs -> stain());
 	}
 
 	@Override
@@ -53,6 +61,20 @@ public class RawSourceState<D, T extends RealType<T>>
 		converter().maxProperty().addListener((obs, oldv, newv) -> paintera.orthogonalViews().requestRepaint());
 		converter().alphaProperty().addListener((obs, oldv, newv) -> paintera.orthogonalViews().requestRepaint());
 		converter().colorProperty().addListener((obs, oldv, newv) -> paintera.orthogonalViews().requestRepaint());
+		this.autoContrast = new AutoContrast(
+				getDataSource(),
+				converter(),
+				paintera.orthogonalViews().topLeft().viewer(),
+				paintera.orthogonalViews().topRight().viewer(),
+				paintera.orthogonalViews().bottomLeft().viewer());
+	}
+
+	@Override
+	public void onRemoval(final SourceInfo sourceInfo) {
+		final AutoContrast autoContrast = this.autoContrast;
+		this.autoContrast = null;
+		if (autoContrast != null)
+			InvokeOnJavaFXApplicationThread.invoke(autoContrast::dispose);
 	}
 
 	public static <D extends RealType<D> & NativeType<D>, T extends AbstractVolatileNativeRealType<D, T>>
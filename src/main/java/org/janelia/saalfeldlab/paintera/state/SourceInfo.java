@@ -243,6 +243,10 @@ public class SourceInfo
 				0)));
 		this.composites.remove(source);
 		this.removedSources.add(source);
+		if (state != null)
+		{
+			state.onRemoval(this);
+		}
 	}
 
 	public SourceState<?, ?> getState(final Source<?> source)
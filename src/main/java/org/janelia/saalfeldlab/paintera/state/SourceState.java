@@ -85,8 +85,14 @@ public interface SourceState<D, T> extends HasModifiableAxisOrder
 
 	}
 
-//	default void onRemove(PainteraBaseView paintera) {
-//
-//	}
+	/**
+	 * Called after this state was removed from {@code sourceInfo}. Release resources owned by this state, e.g. shut
+	 * down executors and stop background tasks.
+	 *
+	 * @param sourceInfo the {@link SourceInfo} that this state was removed from
+	 */
+	default void onRemoval(SourceInfo sourceInfo) {
+
+	}
 
 }
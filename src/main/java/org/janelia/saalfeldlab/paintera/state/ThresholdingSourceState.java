@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.state;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Optional;
 import java.util.function.Predicate;
 
 import javafx.beans.binding.Bindings;
@@ -12,8 +13,10 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableDoubleValue;
 import javafx.scene.paint.Color;
+import net.imglib2.Interval;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.BooleanType;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.ARGBType;
@@ -21,6 +24,7 @@ import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.AbstractVolatileRealType;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.composition.ARGBCompositeAlphaAdd;
+import org.janelia.saalfeldlab.paintera.data.BlockStatistics;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.PredicateDataSource;
 import org.janelia.saalfeldlab.paintera.state.ThresholdingSourceState.Threshold;
@@ -92,7 +96,22 @@ public class ThresholdingSourceState<D extends RealType<D>, T extends AbstractVo
 			final DataSource<D, T> source,
 			final String name)
 	{
-		return new PredicateDataSource<>(source, new Threshold<>(), name);
+		final Threshold<D> threshold = new Threshold<>();
+		PredicateDataSource.CellPredicate cellPredicate;
+		try
+		{
+			cellPredicate = new BlockStatisticsThreshold(BlockStatistics.forSource(source), threshold);
+		} catch (final RuntimeException e)
+		{
+			// block statistics only speed up thresholding: evaluate voxel by voxel without them
+			LOG.warn("Unable to collect block statistics for {}: {}", name, e.getMessage());
+			cellPredicate = null;
+		}
+		return new PredicateDataSource<>(
+				source,
+				threshold,
+				cellPredicate,
+				name);
 	}
 
 	public ObjectProperty<Color> colorProperty()
@@ -199,6 +218,22 @@ public class ThresholdingSourceState<D extends RealType<D>, T extends AbstractVo
 			return isWithinMinMax;
 		}
 
+		/**
+		 *
+		 * @param min minimum of all non-NaN values
+		 * @param max maximum of all non-NaN values
+		 * @param containsNaN {@code true} if any of the values is NaN
+		 * @return result of {@link #test(RealType)} if it is the same for all values, empty otherwise
+		 */
+		public Optional<Boolean> test(final double min, final double max, final boolean containsNaN)
+		{
+			if (max <= this.min || min >= this.max)
+				return Optional.of(false);
+			if (!containsNaN && min > this.min && max < this.max)
+				return Optional.of(true);
+			return Optional.empty();
+		}
+
 		private void update()
 		{
 			final double m = this.minSupplier.get();
@@ -229,6 +264,48 @@ public class ThresholdingSourceState<D extends RealType<D>, T extends AbstractVo
 
 	}
 
+	/**
+	 * Evaluate a {@link Threshold} for whole cells from their {@link BlockStatistics}.
+	 */
+	private static class BlockStatisticsThreshold implements PredicateDataSource.CellPredicate
+	{
+
+		private final BlockStatistics[] statistics;
+
+		private final Threshold<?> threshold;
+
+		private BlockStatisticsThreshold(final BlockStatistics[] statistics, final Threshold<?> threshold)
+		{
+			this.statistics = statistics;
+			this.threshold = threshold;
+		}
+
+		@Override
+		public CellGrid getGrid(final int level)
+		{
+			return statistics[level].getGrid();
+		}
+
+		@Override
+		public Optional<Boolean> test(final int level, final long cell)
+		{
+			final double[] minMaxNaNCount = new double[3];
+			return statistics[level].get(cell, minMaxNaNCount)
+					? threshold.test(minMaxNaNCount[0], minMaxNaNCount[1], minMaxNaNCount[2] > 0)
+					: Optional.empty();
+		}
+
+		@Override
+		public Optional<Boolean> test(final int level, final Interval interval)
+		{
+			final double[] minMaxNaNCount = new double[3];
+			return statistics[level].get(interval, minMaxNaNCount)
+					? threshold.test(minMaxNaNCount[0], minMaxNaNCount[1], minMaxNaNCount[2] > 0)
+					: Optional.empty();
+		}
+
+	}
+
 	private RawSourceState<D, T> getUnderlyingSource() {
 		return this.underlyingSource;
 	}
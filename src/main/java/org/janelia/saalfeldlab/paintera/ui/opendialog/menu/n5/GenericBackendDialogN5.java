@@ -83,6 +83,7 @@ import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerWithAssignmentForSegments;
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCaches;
 import org.janelia.saalfeldlab.paintera.state.ChannelSourceState;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.state.RawSourceState;
@@ -672,7 +673,7 @@ public class GenericBackendDialogN5 implements Closeable
 				stream,
 				meshesGroup,
 				blockLoaders,
-				globalCache::createNewCache,
+				PersistentMeshCaches.segmentMeshes(globalCache::createNewCache, masked, projectDirectory),
 				manager,
 				workers);
 
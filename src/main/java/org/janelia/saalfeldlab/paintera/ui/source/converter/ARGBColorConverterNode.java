@@ -3,12 +3,15 @@ package org.janelia.saalfeldlab.paintera.ui.source.converter;
 import java.lang.invoke.MethodHandles;
 
 import javafx.beans.binding.StringBinding;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Orientation;
 import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
@@ -45,6 +48,8 @@ public class ARGBColorConverterNode implements BindUnbindAndNodeSupplier
 
 	private final DoubleProperty max = new SimpleDoubleProperty();
 
+	private final BooleanProperty autoContrast = new SimpleBooleanProperty();
+
 	public ARGBColorConverterNode(final ARGBColorConverter<?> converter)
 	{
 		super();
@@ -66,6 +71,7 @@ public class ARGBColorConverterNode implements BindUnbindAndNodeSupplier
 		alphaProperty.bindBidirectional(converter.alphaProperty());
 		this.min.bindBidirectional(converter.minProperty());
 		this.max.bindBidirectional(converter.maxProperty());
+		this.autoContrast.bindBidirectional(converter.autoContrastProperty());
 	}
 
 	@Override
@@ -75,6 +81,7 @@ public class ARGBColorConverterNode implements BindUnbindAndNodeSupplier
 		alphaProperty.unbindBidirectional(converter.alphaProperty());
 		this.min.unbindBidirectional(converter.minProperty());
 		this.max.unbindBidirectional(converter.maxProperty());
+		this.autoContrast.unbindBidirectional(converter.autoContrastProperty());
 	}
 
 	private Node getNodeForARGBColorConverter()
@@ -129,7 +136,11 @@ public class ARGBColorConverterNode implements BindUnbindAndNodeSupplier
 		this.min.addListener((obs, oldv, newv) -> minFormatter.setValue(newv.doubleValue()));
 		this.max.addListener((obs, oldv, newv) -> maxFormatter.setValue(newv.doubleValue()));
 
-		final HBox minMaxBox = new HBox(minInput, maxInput);
+		final CheckBox autoContrastCheckBox = new CheckBox("auto");
+		autoContrastCheckBox.selectedProperty().bindBidirectional(this.autoContrast);
+		autoContrastCheckBox.setTooltip(new Tooltip("Choose min and max from the data in view"));
+
+		final HBox minMaxBox = new HBox(minInput, maxInput, autoContrastCheckBox);
 		tilePane.getChildren().add(minMaxBox);
 
 		final NumericSliderWithField alphaSliderWithField = new NumericSliderWithField(0, 1, this.alphaProperty.get());
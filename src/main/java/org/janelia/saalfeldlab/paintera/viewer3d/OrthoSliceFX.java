@@ -1,6 +1,8 @@
 package org.janelia.saalfeldlab.paintera.viewer3d;
 
 import bdv.fx.viewer.ViewerPanelFX;
+import bdv.fx.viewer.render.BufferExposingWritableImage;
+import bdv.fx.viewer.render.MultiResolutionRendererFX;
 import bdv.fx.viewer.render.RenderUnit;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -8,15 +10,11 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.MeshView;
 import javafx.scene.transform.Affine;
-import net.imglib2.FinalDimensions;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RealPoint;
@@ -27,6 +25,7 @@ import org.janelia.saalfeldlab.util.NamedThreadFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class OrthoSliceFX
 {
@@ -41,7 +40,18 @@ public class OrthoSliceFX
 	
 	private final PriorityLatestTaskExecutor delayedTextureUpdateExecutor = new PriorityLatestTaskExecutor(textureUpdateDelayNanoSec, new NamedThreadFactory("texture-update-thread-%d", true));
 
-	private final List<WritableImage> textures = new ArrayList<>();
+	/**
+	 * One texture per screen scale. Textures are {@link BufferExposingWritableImage#retain() retained} rendered images
+	 * if the entire image was rendered, or copies that are updated with the rendered region otherwise.
+	 */
+	private final List<BufferExposingWritableImage> textures = new ArrayList<>();
+
+	/**
+	 * Texture that is currently shown as self-illumination map, retained separately from {@link #textures} until it
+	 * is replaced on screen, so that it is not recycled and rendered into while it is still shown. Only accessed on
+	 * the JavaFX application thread.
+	 */
+	private BufferExposingWritableImage displayedTexture = null;
 
 	private int currentTextureScreenScaleIndex = -1;
 
@@ -99,6 +109,8 @@ public class OrthoSliceFX
 		this.screenScales = screenScales.clone();
 		delayedTextureUpdateExecutor.cancel();
 
+		// the displayed texture stays retained by displayedTexture until it is replaced on screen
+		textures.stream().filter(Objects::nonNull).forEach(BufferExposingWritableImage::release);
 		textures.clear();
 		for (int i = 0; i < screenScales.length; ++i)
 			textures.add(null);
@@ -106,7 +118,7 @@ public class OrthoSliceFX
 
 	private void updateTexture(final RenderUnit.RenderResult newv)
 	{
-		if (newv.getImage() == null || newv.getScreenScaleIndex() == -1)
+		if (!(newv.getImage() instanceof BufferExposingWritableImage) || newv.getScreenScaleIndex() == -1)
 			return;
 
 		// FIXME: there is a race condition that sometimes may cause an ArrayIndexOutOfBounds exception:
@@ -116,31 +128,27 @@ public class OrthoSliceFX
 		if (newv.getScreenScaleIndex() >= textures.size())
 			return;
 
-		final int[] textureImageSize = {(int) newv.getImage().getWidth(), (int) newv.getImage().getHeight()};
-		final WritableImage textureImage = getTextureImage(newv.getScreenScaleIndex(), textureImageSize);
-
+		final BufferExposingWritableImage renderedImage = (BufferExposingWritableImage) newv.getImage();
+		final Interval imageInterval = new FinalInterval((long) renderedImage.getWidth(), (long) renderedImage.getHeight());
 		final Interval roi = Intervals.intersect(
 			Intervals.smallestContainingInterval(newv.getRenderTargetRealInterval()),
-			new FinalInterval(new FinalDimensions(textureImageSize))
+			imageInterval
 		);
+		if (Intervals.isEmpty(roi))
+			return;
 
-		// copy relevant part of the rendered image into the texture image
-		final PixelReader pixelReader = newv.getImage().getPixelReader();
-		final PixelWriter pixelWriter = textureImage.getPixelWriter();
-		pixelWriter.setPixels(
-			(int) roi.min(0), // dst x
-			(int) roi.min(1), // dst y
-			(int) roi.dimension(0), // w
-			(int) roi.dimension(1),	// h
-			pixelReader, // src
-			(int) roi.min(0), // src x
-			(int) roi.min(1)  // src y
-		);
+		updateTextureImage(newv.getScreenScaleIndex(), renderedImage, roi, imageInterval);
 
 		// setup a task for setting the texture of the mesh
 		final int newScreenScaleIndex = newv.getScreenScaleIndex();
 		final Runnable updateTextureTask = () -> InvokeOnJavaFXApplicationThread.invoke(
 			() -> {
+				// the texture may have been replaced since this task was scheduled
+				if (newScreenScaleIndex >= textures.size() || textures.get(newScreenScaleIndex) == null || this.meshViews.isEmpty())
+					return;
+				final BufferExposingWritableImage textureImage = textures.get(newScreenScaleIndex);
+				final double[] textureImageSize = {textureImage.getWidth(), textureImage.getHeight()};
+
 				// calculate new texture coordinates depending on the ratio between the screen size and the rendered image
 				final float[] texCoordMin = {0.0f, 0.0f}, texCoordMax = new float[2];
 				for (int d = 0; d < 2; ++d)
@@ -148,6 +156,7 @@ public class OrthoSliceFX
 
 				((PhongMaterial) this.meshViews.get(0).getMaterial()).setSelfIlluminationMap(textureImage);
 				((OrthoSliceMeshFX) this.meshViews.get(0).getMesh()).setTexCoords(texCoordMin, texCoordMax);
+				setDisplayedTexture(textureImage);
 
 				this.currentTextureScreenScaleIndex = newScreenScaleIndex;
 			}
@@ -168,22 +177,68 @@ public class OrthoSliceFX
 		}
 	}
 
-	private WritableImage getTextureImage(final int screenScaleIndex, final int[] size)
+	/**
+	 * Use the rendered image as texture if it was rendered entirely, to avoid copying it. Otherwise, copy the rendered
+	 * region into the current texture.
+	 */
+	private void updateTextureImage(
+			final int screenScaleIndex,
+			final BufferExposingWritableImage renderedImage,
+			final Interval roi,
+			final Interval imageInterval)
 	{
-		WritableImage textureImage = textures.get(screenScaleIndex);
-		final boolean create = textureImage == null || (int) textureImage.getWidth() != size[0] || (int) textureImage.getHeight() != size[1];
-		if (create)
+		final BufferExposingWritableImage textureImage = textures.get(screenScaleIndex);
+		if (textureImage == renderedImage)
+			return;
+
+		final boolean sameSize = textureImage != null
+				&& (int) textureImage.getWidth() == (int) renderedImage.getWidth()
+				&& (int) textureImage.getHeight() == (int) renderedImage.getHeight();
+		final boolean renderedEntirely = Intervals.equals(roi, imageInterval);
+		if (sameSize && !renderedEntirely)
+		{
+			textureImage.copyFrom(renderedImage, roi);
+			textureImage.setPixelsDirty();
+			return;
+		}
+
+		final BufferExposingWritableImage newTextureImage;
+		if (renderedEntirely)
+			newTextureImage = renderedImage.retain();
+		else
 		{
-			textureImage = new WritableImage(size[0], size[1]);
-			textures.set(screenScaleIndex, textureImage);
+			newTextureImage = new MultiResolutionRendererFX.MakeWritableImage()
+					.create((int) renderedImage.getWidth(), (int) renderedImage.getHeight())
+					.retain();
+			newTextureImage.copyFrom(renderedImage, roi);
+			newTextureImage.setPixelsDirty();
 		}
-		return textureImage;
+		textures.set(screenScaleIndex, newTextureImage);
+		if (textureImage != null)
+			textureImage.release();
+	}
+
+	/**
+	 * Retain {@code textureImage} while it is shown and release the texture that was shown before. Call after
+	 * {@code textureImage} replaced the previous texture on screen.
+	 */
+	private void setDisplayedTexture(final BufferExposingWritableImage textureImage)
+	{
+		if (textureImage == displayedTexture)
+			return;
+		if (textureImage != null)
+			textureImage.retain();
+		if (displayedTexture != null)
+			displayedTexture.release();
+		displayedTexture = textureImage;
 	}
 
 	private void initializeMeshes()
 	{
 		this.meshViews.clear();
 		delayedTextureUpdateExecutor.cancel();
+		// the new material does not show any texture yet
+		setDisplayedTexture(null);
 
 		this.dimensions = this.viewer.getRenderUnit().getDimensions().clone();
 		final long[] min = {0, 0}, max = this.dimensions;
@@ -0,0 +1,505 @@
+package org.janelia.saalfeldlab.util.connectivity;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Connected components of the voxels that satisfy {@code foregroundCheck}, restricted to components that contain at
+ * least one voxel that also satisfies {@code seedCheck}. Components are computed with face connectivity across the
+ * whole {@link CellGrid}:
+ * <ol>
+ *     <li>Each cell is labeled independently (in parallel) and keeps only the labels on its faces.</li>
+ *     <li>Labels on shared faces of neighboring cells are merged in a {@link ConcurrentUnionFind}.</li>
+ *     <li>Starting from the cells that may contain seeds, neighboring cells are explored only if a seeded component
+ *     touches their face, until no seeded component can grow any further.</li>
+ * </ol>
+ * The solution is computed once on first request, on the {@code solver} executor rather than on the requesting
+ * thread, and re-used until {@link #invalidate()} is called. Masks for individual cells are then produced lazily through
+ * {@link #fill(RandomAccessibleInterval)} by re-labeling only the requested cell.
+ *
+ * @param <S> seed type
+ * @param <F> foreground type
+ */
+public class BlockwiseConnectedComponents<S, F>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static class CellLabeling
+	{
+		private final int numComponents;
+
+		private final int[] labels;
+
+		private final BitSet seeded;
+
+		private CellLabeling(final int numComponents, final int[] labels, final BitSet seeded)
+		{
+			this.numComponents = numComponents;
+			this.labels = labels;
+			this.seeded = seeded;
+		}
+	}
+
+	private static class CellRecord
+	{
+		private final long index;
+
+		private final long[] min;
+
+		private final int[] dimensions;
+
+		private final int base;
+
+		private final BitSet seeded;
+
+		// local labels on faces, indexed by 2 * d + (0 for lower, 1 for upper)
+		private final int[][] faces;
+
+		private CellRecord(final long index, final long[] min, final int[] dimensions, final int base, final BitSet seeded, final int[][] faces)
+		{
+			this.index = index;
+			this.min = min;
+			this.dimensions = dimensions;
+			this.base = base;
+			this.seeded = seeded;
+			this.faces = faces;
+		}
+	}
+
+	private static class Solution
+	{
+		private final Map<Long, CellRecord> cells = new ConcurrentHashMap<>();
+
+		private final ConcurrentUnionFind unionFind = new ConcurrentUnionFind();
+
+		private final BitSet seededRoots = new BitSet();
+	}
+
+	private final CellGrid grid;
+
+	private final RandomAccessible<S> seedData;
+
+	private final RandomAccessible<F> foregroundData;
+
+	private final Predicate<S> seedCheck;
+
+	private final Predicate<F> foregroundCheck;
+
+	private final Supplier<long[]> seedCellCandidates;
+
+	private final ExecutorService es;
+
+	private final Executor solver;
+
+	private volatile Future<Solution> solution = null;
+
+	/**
+	 *
+	 * @param grid cells are processed independently
+	 * @param seedData seeds
+	 * @param foregroundData foreground
+	 * @param seedCheck test if voxel in {@code seedData} is a seed
+	 * @param foregroundCheck test if voxel in {@code foregroundData} is foreground
+	 * @param seedCellCandidates linear indices of all cells that may contain seeds. If it returns {@code null}, all
+	 * cells are candidates.
+	 * @param es execute labeling and merging of cells. Must not be used by callers of {@link #fill(RandomAccessibleInterval)}
+	 *              to avoid dead locks.
+	 */
+	public BlockwiseConnectedComponents(
+			final CellGrid grid,
+			final RandomAccessible<S> seedData,
+			final RandomAccessible<F> foregroundData,
+			final Predicate<S> seedCheck,
+			final Predicate<F> foregroundCheck,
+			final Supplier<long[]> seedCellCandidates,
+			final ExecutorService es)
+	{
+		this(grid, seedData, foregroundData, seedCheck, foregroundCheck, seedCellCandidates, es, Runnable::run);
+	}
+
+	/**
+	 *
+	 * @param grid cells are processed independently
+	 * @param seedData seeds
+	 * @param foregroundData foreground
+	 * @param seedCheck test if voxel in {@code seedData} is a seed
+	 * @param foregroundCheck test if voxel in {@code foregroundData} is foreground
+	 * @param seedCellCandidates linear indices of all cells that may contain seeds. If it returns {@code null}, all
+	 * cells are candidates.
+	 * @param es execute labeling and merging of cells. Must not be used by callers of {@link #fill(RandomAccessibleInterval)}
+	 *              to avoid dead locks.
+	 * @param solver coordinates the computation of the solution and waits for the tasks submitted to {@code es}. Must
+	 *               not be {@code es}.
+	 */
+	public BlockwiseConnectedComponents(
+			final CellGrid grid,
+			final RandomAccessible<S> seedData,
+			final RandomAccessible<F> foregroundData,
+			final Predicate<S> seedCheck,
+			final Predicate<F> foregroundCheck,
+			final Supplier<long[]> seedCellCandidates,
+			final ExecutorService es,
+			final Executor solver)
+	{
+		this.grid = grid;
+		this.seedData = seedData;
+		this.foregroundData = foregroundData;
+		this.seedCheck = seedCheck;
+		this.foregroundCheck = foregroundCheck;
+		this.seedCellCandidates = seedCellCandidates;
+		this.es = es;
+		this.solver = solver;
+	}
+
+	/**
+	 * Discard current solution. The next call to {@link #fill(RandomAccessibleInterval)} will trigger re-computation.
+	 */
+	public void invalidate()
+	{
+		this.solution = null;
+	}
+
+	/**
+	 * Write 1 into all voxels of {@code cell} that belong to a seeded component, 0 everywhere else.
+	 *
+	 * @param cell must be aligned with a cell of the grid
+	 * @param <I> target type
+	 * @throws InterruptedException if interrupted while waiting for the solution
+	 * @throws ExecutionException if computation of the solution failed
+	 */
+	public <I extends IntegerType<I>> void fill(final RandomAccessibleInterval<I> cell) throws InterruptedException, ExecutionException
+	{
+		final long[] cellPosition = new long[grid.numDimensions()];
+		grid.getCellPosition(Intervals.minAsLongArray(cell), cellPosition);
+		final long index = IntervalIndexer.positionToIndex(cellPosition, grid.getGridDimensions());
+
+		final Future<Solution> future = getSolution();
+		final Solution solution;
+		try
+		{
+			solution = future.get();
+		} catch (final ExecutionException e)
+		{
+			// allow re-computation on next request
+			synchronized (this)
+			{
+				if (this.solution == future)
+					this.solution = null;
+			}
+			throw e;
+		}
+		final CellRecord record = solution.cells.get(index);
+		final Cursor<I> target = Views.flatIterable(cell).cursor();
+
+		if (record == null)
+		{
+			while (target.hasNext())
+				target.next().setZero();
+			return;
+		}
+
+		final int[] labels = label(record.min, record.dimensions).labels;
+		for (int i = 0; target.hasNext(); ++i)
+		{
+			final int label = labels[i];
+			final boolean isSeeded = label > 0 && solution.seededRoots.get(solution.unionFind.find(record.base + label - 1));
+			target.next().setInteger(isSeeded ? 1 : 0);
+		}
+	}
+
+	private Future<Solution> getSolution()
+	{
+		Future<Solution> current = this.solution;
+		if (current == null)
+		{
+			final FutureTask<Solution> task;
+			synchronized (this)
+			{
+				current = this.solution;
+				if (current != null)
+					return current;
+				task = new FutureTask<>(this::solve);
+				this.solution = current = task;
+			}
+			try
+			{
+				solver.execute(task);
+			} catch (final RejectedExecutionException e)
+			{
+				LOG.debug("Solver rejected computation of connected components, computing on calling thread: {}", e.getMessage());
+				task.run();
+			}
+		}
+		return current;
+	}
+
+	private Solution solve() throws InterruptedException, ExecutionException
+	{
+		final Solution solution = new Solution();
+		final long[] candidates = seedCellCandidates.get();
+		final TLongSet frontier = new TLongHashSet(candidates == null
+		                                           ? LongStream.range(0, Intervals.numElements(grid.getGridDimensions())).toArray()
+		                                           : candidates);
+		LOG.debug("Computing connected components for grid {} from {} seed cell candidates", grid, frontier.size());
+
+		int wave = 0;
+		while (!frontier.isEmpty())
+		{
+			LOG.trace("Processing {} cells in wave {}", frontier.size(), wave);
+			final long[] cells = frontier.toArray();
+			final TLongSet cellsInWave = new TLongHashSet(cells);
+
+			invokeAll(LongStream.of(cells).mapToObj(index -> (Callable<Void>) () -> {
+				solution.cells.put(index, createRecord(index, solution.unionFind));
+				return null;
+			}));
+
+			invokeAll(LongStream.of(cells).mapToObj(index -> (Callable<Void>) () -> {
+				mergeWithProcessedNeighbors(solution, solution.cells.get(index), cellsInWave);
+				return null;
+			}));
+
+			updateSeededRoots(solution);
+
+			frontier.clear();
+			for (final CellRecord record : solution.cells.values())
+				addExpansionCandidates(solution, record, frontier);
+			++wave;
+		}
+		LOG.debug("Explored {} cells in {} waves for grid {}", solution.cells.size(), wave, grid);
+		return solution;
+	}
+
+	private void invokeAll(final Stream<Callable<Void>> tasks) throws InterruptedException, ExecutionException
+	{
+		final List<Future<Void>> futures = new ArrayList<>();
+		tasks.map(es::submit).forEach(futures::add);
+		for (final Future<Void> future : futures)
+			future.get();
+	}
+
+	private CellRecord createRecord(final long index, final ConcurrentUnionFind unionFind)
+	{
+		final int n = grid.numDimensions();
+		final long[] cellPosition = new long[n];
+		final long[] min = new long[n];
+		final int[] dimensions = new int[n];
+		IntervalIndexer.indexToPosition(index, grid.getGridDimensions(), cellPosition);
+		grid.getCellDimensions(cellPosition, min, dimensions);
+
+		final CellLabeling labeling = label(min, dimensions);
+		final int base = unionFind.allocate(labeling.numComponents);
+		final int[][] faces = new int[2 * n][];
+		for (int d = 0; d < n; ++d)
+		{
+			faces[2 * d] = extractFace(labeling.labels, dimensions, d, 0);
+			faces[2 * d + 1] = extractFace(labeling.labels, dimensions, d, dimensions[d] - 1);
+		}
+		return new CellRecord(index, min, dimensions, base, labeling.seeded, faces);
+	}
+
+	private void mergeWithProcessedNeighbors(final Solution solution, final CellRecord record, final TLongSet cellsInWave)
+	{
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] cellPosition = new long[grid.numDimensions()];
+		for (int d = 0; d < cellPosition.length; ++d)
+		{
+			for (int side = 0; side < 2; ++side)
+			{
+				IntervalIndexer.indexToPosition(record.index, gridDimensions, cellPosition);
+				cellPosition[d] += side == 0 ? -1 : 1;
+				if (cellPosition[d] < 0 || cellPosition[d] >= gridDimensions[d])
+					continue;
+				final long neighborIndex = IntervalIndexer.positionToIndex(cellPosition, gridDimensions);
+				// merge each pair of cells only once
+				if (cellsInWave.contains(neighborIndex) && neighborIndex < record.index)
+					continue;
+				final CellRecord neighbor = solution.cells.get(neighborIndex);
+				if (neighbor == null)
+					continue;
+				final int[] face = record.faces[2 * d + side];
+				final int[] neighborFace = neighbor.faces[2 * d + 1 - side];
+				for (int i = 0; i < face.length; ++i)
+					if (face[i] > 0 && neighborFace[i] > 0)
+						solution.unionFind.union(record.base + face[i] - 1, neighbor.base + neighborFace[i] - 1);
+			}
+		}
+	}
+
+	private static void updateSeededRoots(final Solution solution)
+	{
+		solution.seededRoots.clear();
+		for (final CellRecord record : solution.cells.values())
+			for (int l = record.seeded.nextSetBit(0); l >= 0; l = record.seeded.nextSetBit(l + 1))
+				solution.seededRoots.set(solution.unionFind.find(record.base + l));
+	}
+
+	private void addExpansionCandidates(final Solution solution, final CellRecord record, final TLongSet candidates)
+	{
+		final int n = grid.numDimensions();
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] cellPosition = new long[n];
+		final RandomAccess<F> foregroundAccess = foregroundData.randomAccess();
+		final long[] position = new long[n];
+		for (int d = 0; d < n; ++d)
+		{
+			for (int side = 0; side < 2; ++side)
+			{
+				IntervalIndexer.indexToPosition(record.index, gridDimensions, cellPosition);
+				cellPosition[d] += side == 0 ? -1 : 1;
+				if (cellPosition[d] < 0 || cellPosition[d] >= gridDimensions[d])
+					continue;
+				final long neighborIndex = IntervalIndexer.positionToIndex(cellPosition, gridDimensions);
+				if (solution.cells.containsKey(neighborIndex) || candidates.contains(neighborIndex))
+					continue;
+
+				final int[] face = record.faces[2 * d + side];
+				final int[] faceDimensions = faceDimensions(record.dimensions, d);
+				final int[] facePosition = new int[faceDimensions.length];
+				for (int i = 0; i < face.length; ++i)
+				{
+					if (face[i] == 0 || !solution.seededRoots.get(solution.unionFind.find(record.base + face[i] - 1)))
+						continue;
+					IntervalIndexer.indexToPosition(i, faceDimensions, facePosition);
+					for (int k = 0, fd = 0; k < n; ++k)
+						position[k] = k == d
+						              ? (side == 0 ? record.min[k] - 1 : record.min[k] + record.dimensions[k])
+						              : record.min[k] + facePosition[fd++];
+					foregroundAccess.setPosition(position);
+					if (foregroundCheck.test(foregroundAccess.get()))
+					{
+						candidates.add(neighborIndex);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Label connected foreground components of a single cell in flat iteration order. Labeling is deterministic, i.e.
+	 * the same cell is always labeled identically.
+	 */
+	private CellLabeling label(final long[] min, final int[] dimensions)
+	{
+		final int n = dimensions.length;
+		final long[] max = new long[n];
+		for (int d = 0; d < n; ++d)
+			max[d] = min[d] + dimensions[d] - 1;
+		final Interval interval = new FinalInterval(min, max);
+
+		final int size = (int) Intervals.numElements(dimensions);
+		final int[] labels = new int[size];
+		final boolean[] isSeed = new boolean[size];
+
+		final Cursor<F> foregroundCursor = Views.flatIterable(Views.interval(foregroundData, interval)).cursor();
+		final Cursor<S> seedCursor = Views.flatIterable(Views.interval(seedData, interval)).cursor();
+		for (int i = 0; i < size; ++i)
+		{
+			final boolean isForeground = foregroundCheck.test(foregroundCursor.next());
+			final S seed = seedCursor.next();
+			// -1 marks unlabeled foreground
+			labels[i] = isForeground ? -1 : 0;
+			isSeed[i] = isForeground && seedCheck.test(seed);
+		}
+
+		final int[] strides = new int[n];
+		strides[0] = 1;
+		for (int d = 1; d < n; ++d)
+			strides[d] = strides[d - 1] * dimensions[d - 1];
+
+		final BitSet seeded = new BitSet();
+		final int[] queue = new int[size];
+		final int[] position = new int[n];
+		int numComponents = 0;
+		for (int start = 0; start < size; ++start)
+		{
+			if (labels[start] != -1)
+				continue;
+			final int label = ++numComponents;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = start;
+			labels[start] = label;
+			while (head < tail)
+			{
+				final int current = queue[head++];
+				if (isSeed[current])
+					seeded.set(label - 1);
+				IntervalIndexer.indexToPosition(current, dimensions, position);
+				for (int d = 0; d < n; ++d)
+				{
+					if (position[d] > 0 && labels[current - strides[d]] == -1)
+					{
+						labels[current - strides[d]] = label;
+						queue[tail++] = current - strides[d];
+					}
+					if (position[d] < dimensions[d] - 1 && labels[current + strides[d]] == -1)
+					{
+						labels[current + strides[d]] = label;
+						queue[tail++] = current + strides[d];
+					}
+				}
+			}
+		}
+		return new CellLabeling(numComponents, labels, seeded);
+	}
+
+	private static int[] faceDimensions(final int[] dimensions, final int dimension)
+	{
+		final int[] faceDimensions = new int[dimensions.length - 1];
+		for (int d = 0, fd = 0; d < dimensions.length; ++d)
+			if (d != dimension)
+				faceDimensions[fd++] = dimensions[d];
+		return faceDimensions;
+	}
+
+	private static int[] extractFace(final int[] labels, final int[] dimensions, final int dimension, final int coordinate)
+	{
+		final int[] faceDimensions = faceDimensions(dimensions, dimension);
+		final int[] face = new int[(int) Intervals.numElements(faceDimensions)];
+		final int[] facePosition = new int[faceDimensions.length];
+		final int[] position = new int[dimensions.length];
+		for (int i = 0; i < face.length; ++i)
+		{
+			IntervalIndexer.indexToPosition(i, faceDimensions, facePosition);
+			for (int d = 0, fd = 0; d < dimensions.length; ++d)
+				position[d] = d == dimension ? coordinate : facePosition[fd++];
+			face[i] = labels[IntervalIndexer.positionToIndex(position, dimensions)];
+		}
+		return face;
+	}
+
+}
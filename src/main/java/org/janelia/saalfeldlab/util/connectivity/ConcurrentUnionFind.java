@@ -0,0 +1,107 @@
+package org.janelia.saalfeldlab.util.connectivity;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free union-find over a growable range of {@code int} ids. Ids are handed out in contiguous ranges through
+ * {@link #allocate(int)}. {@link #find(int)} uses path halving and {@link #union(int, int)} always links the root with
+ * the larger id below the root with the smaller id, which keeps concurrent unions free of cycles.
+ */
+public class ConcurrentUnionFind
+{
+
+	private static final int CHUNK_BITS = 16;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final AtomicReferenceArray<AtomicIntegerArray> chunks = new AtomicReferenceArray<>((Integer.MAX_VALUE >> CHUNK_BITS) + 1);
+
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	/**
+	 *
+	 * @param n number of ids
+	 * @return first id of a contiguous range of {@code n} new singleton sets
+	 */
+	public int allocate(final int n)
+	{
+		final int base = size.getAndAdd(n);
+		if (base + n < base)
+			throw new IllegalStateException("Number of ids exceeds " + Integer.MAX_VALUE);
+		for (int chunk = base >> CHUNK_BITS; n > 0 && chunk <= (base + n - 1) >> CHUNK_BITS; ++chunk)
+			ensureChunk(chunk);
+		return base;
+	}
+
+	/**
+	 *
+	 * @return number of ids allocated so far
+	 */
+	public int size()
+	{
+		return size.get();
+	}
+
+	public int find(int id)
+	{
+		while (true)
+		{
+			final int parent = getParent(id);
+			if (parent == id)
+				return id;
+			final int grandParent = getParent(parent);
+			if (parent != grandParent)
+				compareAndSetParent(id, parent, grandParent);
+			id = grandParent;
+		}
+	}
+
+	/**
+	 *
+	 * @param id1 id
+	 * @param id2 id
+	 * @return root of the merged set
+	 */
+	public int union(final int id1, final int id2)
+	{
+		int r1 = id1;
+		int r2 = id2;
+		while (true)
+		{
+			r1 = find(r1);
+			r2 = find(r2);
+			if (r1 == r2)
+				return r1;
+			final int min = Math.min(r1, r2);
+			final int max = Math.max(r1, r2);
+			if (compareAndSetParent(max, max, min))
+				return min;
+		}
+	}
+
+	private int getParent(final int id)
+	{
+		return chunks.get(id >> CHUNK_BITS).get(id & CHUNK_MASK);
+	}
+
+	private boolean compareAndSetParent(final int id, final int expected, final int parent)
+	{
+		return chunks.get(id >> CHUNK_BITS).compareAndSet(id & CHUNK_MASK, expected, parent);
+	}
+
+	private void ensureChunk(final int chunk)
+	{
+		if (chunks.get(chunk) != null)
+			return;
+		final AtomicIntegerArray parents = new AtomicIntegerArray(CHUNK_SIZE);
+		final int offset = chunk << CHUNK_BITS;
+		for (int i = 0; i < CHUNK_SIZE; ++i)
+			parents.lazySet(i, offset + i);
+		chunks.compareAndSet(chunk, null, parents);
+	}
+
+}
@@ -0,0 +1,452 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link LabelBlockLookup} that stores the block lists of all ids of a scale level in {@link #numShards} shards,
+ * selected by a hash of the id. Each shard consists of a compacted file with one record per id and an append-only log
+ * of updates. Updates are appended to the log, so that updating the block lists of many ids, e.g. all ids modified
+ * in a commit, with {@link #write(int, TLongObjectMap)} results in a single sequential write per affected shard.
+ * Shards are cached in memory and only the newly appended part of the log is read on subsequent lookups. Once the log
+ * grows larger than the compacted file, it is merged into the compacted file in the background.
+ *
+ * Appending, reading, and compacting a shard are guarded by file locks on its log, so that multiple processes can
+ * share a lookup on a file system that supports them. Reading only opens the log for reading and takes a shared lock,
+ * so that lookups on read-only file systems can be read.
+ */
+@LabelBlockLookup.LookupType(LabelBlockLookupSharded.LOOKUP_TYPE)
+public class LabelBlockLookupSharded implements LabelBlockLookup
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String LOOKUP_TYPE = "sharded";
+
+	public static final int DEFAULT_NUM_SHARDS = 256;
+
+	private static final long MIN_LOG_SIZE_FOR_COMPACTION = 1 << 20;
+
+	private static final Interval[] EMPTY = new Interval[0];
+
+	private static final ExecutorService COMPACTION = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("label-block-lookup-compaction-%d", true));
+
+	// shared by all lookups in this JVM, file locks cannot be acquired twice by the same process. Shards are softly
+	// referenced so that the block lists of unused shards can be reclaimed: a shard that is in use is strongly
+	// reachable, so there is never more than one instance per log.
+	private static final Map<Path, ShardReference> SHARDS = new HashMap<>();
+
+	private static final ReferenceQueue<Shard> CLEARED_SHARDS = new ReferenceQueue<>();
+
+	private static class ShardReference extends SoftReference<Shard>
+	{
+
+		private final Path log;
+
+		private ShardReference(final Shard shard)
+		{
+			super(shard, CLEARED_SHARDS);
+			this.log = shard.log;
+		}
+
+	}
+
+	private static class Shard
+	{
+
+		private final Path compacted;
+
+		private final Path log;
+
+		private final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+
+		private long compactedSize = -1;
+
+		private long compactedModified = -1;
+
+		private long logPosition = 0;
+
+		private boolean isCompactionScheduled = false;
+
+		private Shard(final Path compacted, final Path log)
+		{
+			this.compacted = compacted;
+			this.log = log;
+		}
+
+		private synchronized void refresh() throws IOException
+		{
+			if (!Files.exists(log) && !Files.exists(compacted))
+			{
+				blockLists.clear();
+				compactedSize = compactedModified = -1;
+				logPosition = 0;
+				return;
+			}
+
+			if (!Files.exists(log))
+			{
+				// the compacted file is replaced atomically and can be read without lock
+				update(null);
+				return;
+			}
+
+			try (final FileChannel channel = FileChannel.open(log, StandardOpenOption.READ))
+			{
+				final FileLock lock = tryLockShared(channel);
+				try
+				{
+					update(channel);
+				} finally
+				{
+					if (lock != null)
+						lock.release();
+				}
+			}
+		}
+
+		private FileLock tryLockShared(final FileChannel channel)
+		{
+			try
+			{
+				return channel.lock(0, Long.MAX_VALUE, true);
+			} catch (final IOException | UnsupportedOperationException e)
+			{
+				// e.g. no lock support on a read-only mount: truncated records at the end of the log are ignored
+				LOG.debug("Reading label block lookup shard {} without lock: {}", log, e.getMessage());
+				return null;
+			}
+		}
+
+		// reload if compacted since the last update, otherwise read records appended to the log since
+		private void update(final FileChannel channel) throws IOException
+		{
+			final long compactedSize = Files.exists(compacted) ? Files.size(compacted) : -1;
+			final long compactedModified = Files.exists(compacted) ? Files.getLastModifiedTime(compacted).toMillis() : -1;
+			final long logSize = channel == null ? 0 : channel.size();
+			if (compactedSize != this.compactedSize || compactedModified != this.compactedModified || logSize < logPosition)
+			{
+				blockLists.clear();
+				if (compactedSize >= 0)
+					decode(Files.readAllBytes(compacted), blockLists);
+				this.compactedSize = compactedSize;
+				this.compactedModified = compactedModified;
+				this.logPosition = 0;
+			}
+			if (logSize > logPosition)
+				logPosition += decode(read(channel, logPosition, logSize), blockLists);
+		}
+
+		private synchronized void read(final long[] ids, final TLongObjectMap<Interval[]> blockLists) throws IOException
+		{
+			refresh();
+			for (final long id : ids)
+			{
+				final Interval[] blocks = this.blockLists.get(id);
+				blockLists.put(id, blocks == null ? EMPTY : blocks.clone());
+			}
+		}
+
+		private synchronized void append(final byte[] records) throws IOException
+		{
+			Files.createDirectories(log.getParent());
+			try (final FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			     final FileLock lock = channel.lock())
+			{
+				update(channel);
+				// drop a record at the end of the log that was truncated by a crash
+				if (channel.size() > logPosition)
+					channel.truncate(logPosition);
+
+				final ByteBuffer buffer = ByteBuffer.wrap(records);
+				final long position = channel.size();
+				while (buffer.hasRemaining())
+					channel.write(buffer, position + buffer.position());
+				decode(records, blockLists);
+				logPosition = position + records.length;
+			}
+			final long compactedSize = Math.max(this.compactedSize, 0);
+			if (!isCompactionScheduled && logPosition > Math.max(MIN_LOG_SIZE_FOR_COMPACTION, compactedSize))
+			{
+				isCompactionScheduled = true;
+				COMPACTION.submit(this::compactAndLogErrors);
+			}
+		}
+
+		private void compactAndLogErrors()
+		{
+			try
+			{
+				compact();
+			} catch (final IOException | RuntimeException e)
+			{
+				LOG.warn("Unable to compact label block lookup shard {}: {}", compacted, e.getMessage());
+			}
+		}
+
+		private synchronized void compact() throws IOException
+		{
+			isCompactionScheduled = false;
+			final long start = System.nanoTime();
+			try (final FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			     final FileLock lock = channel.lock())
+			{
+				final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+				if (Files.exists(compacted))
+					decode(Files.readAllBytes(compacted), blockLists);
+				decode(read(channel, 0, channel.size()), blockLists);
+
+				final long[] ids = blockLists.keys();
+				Arrays.sort(ids);
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				final DataOutputStream out = new DataOutputStream(bytes);
+				for (final long id : ids)
+				{
+					final Interval[] blocks = blockLists.get(id);
+					if (blocks.length > 0)
+						encode(id, blocks, out);
+				}
+				out.flush();
+
+				final Path tmp = compacted.resolveSibling(compacted.getFileName() + ".tmp");
+				Files.write(tmp, bytes.toByteArray());
+				Files.move(tmp, compacted, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				channel.truncate(0);
+			}
+			// force full reload
+			this.compactedSize = this.compactedModified = -1;
+			MetricRegistry.global().timer("labelBlockLookup.compact").updateSince(start);
+			LOG.debug("Compacted label block lookup shard {}", compacted);
+		}
+
+		private static byte[] read(final FileChannel channel, final long from, final long to) throws IOException
+		{
+			final ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+			while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0);
+			return buffer.array();
+		}
+
+	}
+
+	@LabelBlockLookup.Parameter
+	private final String root;
+
+	@LabelBlockLookup.Parameter
+	private final int numShards;
+
+	private LabelBlockLookupSharded()
+	{
+		this(null, DEFAULT_NUM_SHARDS);
+	}
+
+	/**
+	 * @param root      directory that holds one sub-directory of shards per scale level
+	 * @param numShards number of shards per scale level. Must not change once block lists were written.
+	 */
+	public LabelBlockLookupSharded(final String root, final int numShards)
+	{
+		this.root = root;
+		this.numShards = numShards;
+	}
+
+	public LabelBlockLookupSharded(final String root)
+	{
+		this(root, DEFAULT_NUM_SHARDS);
+	}
+
+	@NotNull
+	@Override
+	public String getType()
+	{
+		return LOOKUP_TYPE;
+	}
+
+	@NotNull
+	@Override
+	public Interval[] read(final int level, final long id) throws IOException
+	{
+		return read(level, new long[] {id}).get(id);
+	}
+
+	/**
+	 * Read the block lists of all {@code ids} with a single read per affected shard.
+	 *
+	 * @return block list by id, empty for ids without blocks
+	 */
+	public TLongObjectMap<Interval[]> read(final int level, final long[] ids) throws IOException
+	{
+		final long start = System.nanoTime();
+		final TLongArrayList[] idsByShard = new TLongArrayList[numShards];
+		for (final long id : ids)
+		{
+			final int shardIndex = shardIndex(id);
+			if (idsByShard[shardIndex] == null)
+				idsByShard[shardIndex] = new TLongArrayList();
+			idsByShard[shardIndex].add(id);
+		}
+
+		final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+		for (int shardIndex = 0; shardIndex < numShards; ++shardIndex)
+			if (idsByShard[shardIndex] != null)
+				shard(level, shardIndex).read(idsByShard[shardIndex].toArray(), blockLists);
+		MetricRegistry.global().timer("labelBlockLookup.read").updateSince(start);
+		return blockLists;
+	}
+
+	@Override
+	public void write(final int level, final long id, final Interval... intervals) throws IOException
+	{
+		final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+		blockLists.put(id, intervals);
+		write(level, blockLists);
+	}
+
+	/**
+	 * Replace the block lists of all ids in {@code blockLists} with a single append per affected shard.
+	 */
+	public void write(final int level, final TLongObjectMap<Interval[]> blockLists) throws IOException
+	{
+		final long start = System.nanoTime();
+		final ByteArrayOutputStream[] recordsByShard = new ByteArrayOutputStream[numShards];
+		for (final TLongObjectIterator<Interval[]> it = blockLists.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final int shardIndex = shardIndex(it.key());
+			if (recordsByShard[shardIndex] == null)
+				recordsByShard[shardIndex] = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(recordsByShard[shardIndex]);
+			encode(it.key(), it.value(), out);
+			out.flush();
+		}
+
+		for (int shardIndex = 0; shardIndex < numShards; ++shardIndex)
+			if (recordsByShard[shardIndex] != null)
+				shard(level, shardIndex).append(recordsByShard[shardIndex].toByteArray());
+		MetricRegistry.global().timer("labelBlockLookup.write").updateSince(start);
+		LOG.debug("level={}: Wrote block lists for {} ids", level, blockLists.size());
+	}
+
+	public String getRoot()
+	{
+		return root;
+	}
+
+	public int getNumShards()
+	{
+		return numShards;
+	}
+
+	private Shard shard(final int level, final int shardIndex)
+	{
+		final Path directory = Paths.get(root, "s" + level).toAbsolutePath();
+		final Path log = directory.resolve(String.format("shard-%d.log", shardIndex));
+		synchronized (SHARDS)
+		{
+			for (ShardReference cleared; (cleared = (ShardReference) CLEARED_SHARDS.poll()) != null; )
+				SHARDS.remove(cleared.log, cleared);
+			final ShardReference reference = SHARDS.get(log);
+			Shard shard = reference == null ? null : reference.get();
+			if (shard == null)
+			{
+				shard = new Shard(directory.resolve(String.format("shard-%d", shardIndex)), log);
+				SHARDS.put(log, new ShardReference(shard));
+			}
+			return shard;
+		}
+	}
+
+	private int shardIndex(final long id)
+	{
+		// mix bits so that consecutive ids are spread over shards
+		long hash = id * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		return (int) Math.floorMod(hash, (long) numShards);
+	}
+
+	private static void encode(final long id, final Interval[] blocks, final DataOutputStream out) throws IOException
+	{
+		out.writeLong(id);
+		out.writeInt(blocks.length);
+		for (final Interval block : blocks)
+		{
+			out.writeInt(block.numDimensions());
+			for (int d = 0; d < block.numDimensions(); ++d)
+				out.writeLong(block.min(d));
+			for (int d = 0; d < block.numDimensions(); ++d)
+				out.writeLong(block.max(d));
+		}
+	}
+
+	/**
+	 * Decode records from {@code bytes} into {@code blockLists}. Later records replace earlier records of the same id.
+	 *
+	 * @return number of bytes of complete records. A truncated record at the end, e.g. from an interrupted append, is
+	 * ignored.
+	 */
+	private static long decode(final byte[] bytes, final TLongObjectMap<Interval[]> blockLists) throws IOException
+	{
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		long position = 0;
+		try
+		{
+			while (position < bytes.length)
+			{
+				final long id = in.readLong();
+				final Interval[] blocks = new Interval[in.readInt()];
+				long recordSize = Long.BYTES + Integer.BYTES;
+				for (int i = 0; i < blocks.length; ++i)
+				{
+					final long[] min = new long[in.readInt()];
+					final long[] max = new long[min.length];
+					for (int d = 0; d < min.length; ++d)
+						min[d] = in.readLong();
+					for (int d = 0; d < max.length; ++d)
+						max[d] = in.readLong();
+					blocks[i] = new FinalInterval(min, max);
+					recordSize += Integer.BYTES + 2L * min.length * Long.BYTES;
+				}
+				blockLists.put(id, blocks);
+				position += recordSize;
+			}
+		} catch (final EOFException e)
+		{
+			LOG.warn("Ignoring truncated record at position {} of label block lookup shard", position);
+		}
+		return position;
+	}
+
+}
@@ -0,0 +1,167 @@
+package org.janelia.saalfeldlab.util.math;
+
+import java.util.Arrays;
+
+/**
+ * Histogram with a fixed number of bins over a range that is not known in advance. The range grows with the values
+ * that are added: whenever a value falls outside the current range, the bin width is doubled by merging neighboring
+ * bins until the value fits. Bins are at most twice as wide as necessary for the range of added values, and the
+ * histogram never holds more than {@code numBins} bins, independent of the number of values added.
+ *
+ * Not thread safe.
+ */
+public class StreamingHistogram
+{
+
+	public static final double DEFAULT_INITIAL_BIN_WIDTH = 1.0 / 1024;
+
+	private final long[] counts;
+
+	private final double initialBinWidth;
+
+	private double binWidth = Double.NaN;
+
+	private double lowerBound = Double.NaN;
+
+	private long totalCount = 0;
+
+	private double minValue = Double.POSITIVE_INFINITY;
+
+	private double maxValue = Double.NEGATIVE_INFINITY;
+
+	public StreamingHistogram(final int numBins)
+	{
+		this(numBins, DEFAULT_INITIAL_BIN_WIDTH);
+	}
+
+	/**
+	 * @param numBins         number of bins, must be even and positive
+	 * @param initialBinWidth bin width until the range of added values exceeds {@code numBins * initialBinWidth}
+	 */
+	public StreamingHistogram(final int numBins, final double initialBinWidth)
+	{
+		if (numBins < 2 || numBins % 2 != 0)
+			throw new IllegalArgumentException("Number of bins must be even and positive: " + numBins);
+		this.counts = new long[numBins];
+		this.initialBinWidth = initialBinWidth;
+	}
+
+	public void add(final double value)
+	{
+		add(value, 1);
+	}
+
+	/**
+	 * Add {@code value} {@code count} times. NaN and infinite values are ignored.
+	 */
+	public void add(final double value, final long count)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value) || count <= 0)
+			return;
+
+		if (Double.isNaN(lowerBound))
+		{
+			binWidth = initialBinWidth;
+			lowerBound = Math.floor(value / binWidth) * binWidth;
+		}
+		while (value < lowerBound)
+			growDown();
+		while (value >= lowerBound + binWidth * counts.length)
+			growUp();
+
+		final int bin = Math.min((int) ((value - lowerBound) / binWidth), counts.length - 1);
+		counts[bin] += count;
+		totalCount += count;
+		minValue = Math.min(minValue, value);
+		maxValue = Math.max(maxValue, value);
+	}
+
+	/**
+	 * Add all counts of {@code other}, at the centers of its bins.
+	 */
+	public void add(final StreamingHistogram other)
+	{
+		for (int bin = 0; bin < other.counts.length; ++bin)
+			if (other.counts[bin] > 0)
+				add(Math.min(Math.max(other.lowerBound + (bin + 0.5) * other.binWidth, other.minValue), other.maxValue), other.counts[bin]);
+	}
+
+	/**
+	 * @param quantile in {@code [0, 1]}
+	 * @return approximate value below which {@code quantile} of all added values lie, interpolated linearly within
+	 * bins, {@code NaN} if no values were added
+	 */
+	public double quantile(final double quantile)
+	{
+		if (totalCount == 0)
+			return Double.NaN;
+
+		final double target = Math.min(Math.max(quantile, 0.0), 1.0) * totalCount;
+		long cumulative = 0;
+		for (int bin = 0; bin < counts.length; ++bin)
+		{
+			if (counts[bin] == 0)
+				continue;
+			if (cumulative + counts[bin] >= target)
+			{
+				final double fraction = (target - cumulative) / counts[bin];
+				final double value = lowerBound + (bin + fraction) * binWidth;
+				return Math.min(Math.max(value, minValue), maxValue);
+			}
+			cumulative += counts[bin];
+		}
+		return maxValue;
+	}
+
+	public long getTotalCount()
+	{
+		return this.totalCount;
+	}
+
+	public double getMinValue()
+	{
+		return this.minValue;
+	}
+
+	public double getMaxValue()
+	{
+		return this.maxValue;
+	}
+
+	public double getBinWidth()
+	{
+		return this.binWidth;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(counts, 0);
+		binWidth = Double.NaN;
+		lowerBound = Double.NaN;
+		totalCount = 0;
+		minValue = Double.POSITIVE_INFINITY;
+		maxValue = Double.NEGATIVE_INFINITY;
+	}
+
+	// double bin width, current range becomes lower half
+	private void growUp()
+	{
+		final int half = counts.length / 2;
+		for (int bin = 0; bin < half; ++bin)
+			counts[bin] = counts[2 * bin] + counts[2 * bin + 1];
+		Arrays.fill(counts, half, counts.length, 0);
+		binWidth *= 2;
+	}
+
+	// double bin width, current range becomes upper half
+	private void growDown()
+	{
+		final int half = counts.length / 2;
+		for (int bin = counts.length - 1; bin >= half; --bin)
+			counts[bin] = counts[2 * (bin - half)] + counts[2 * (bin - half) + 1];
+		Arrays.fill(counts, 0, half, 0);
+		lowerBound -= binWidth * counts.length;
+		binWidth *= 2;
+	}
+
+}
@@ -0,0 +1,333 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.cache.volatiles.VolatileCache;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.util.Triple;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5CellLoader;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.cache.Invalidate;
+import org.janelia.saalfeldlab.paintera.cache.global.FetchBackend;
+import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
+import org.janelia.saalfeldlab.paintera.cache.global.InvalidAccessException;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.paintera.metrics.TimedLoaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mipmap pyramid for single-scale data that is generated on demand: each block of a coarser level is computed from
+ * the corresponding 2x2x2 blocks of the next finer level when it is first requested, and cached in the
+ * {@link GlobalCache} like regular data. Zooming out over a large single-scale volume then only loads the blocks
+ * that are visible on screen.
+ *
+ * Integer data with at least 32 bits per voxel is treated as labels and downsampled by mode, all other data is
+ * averaged. Generated levels of averaged data can optionally be persisted in a sidecar group
+ * {@code <dataset>-paintera-pyramid} of the same container, if the container is writable. Labels are never persisted
+ * because committing the canvas would make them stale.
+ *
+ * Configured in {@code ~/.config/paintera.yml}:
+ * <pre>
+ * data:
+ *   pyramid:
+ *     enabled: true
+ *     persist: false
+ * </pre>
+ */
+public class LazyPyramid
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String SIDECAR_SUFFIX = "-paintera-pyramid";
+
+	private LazyPyramid()
+	{
+
+	}
+
+	public static boolean isEnabled()
+	{
+		return getBooleanConfig("enabled", true);
+	}
+
+	/**
+	 * Add lazily generated coarser levels to single-scale {@code level0}, until a single block covers the whole
+	 * volume. Returns {@code level0} only if generated levels are disabled in the config.
+	 *
+	 * @param reader container of {@code dataset}; if it is an {@link N5Writer}, generated blocks may be persisted
+	 * @param dataset dataset of {@code level0}
+	 * @return {@code level0} followed by generated levels
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static <T extends NativeType<T>, V extends Volatile<T> & NativeType<V>>
+	ImagesWithInvalidate<T, V>[] withGeneratedLevels(
+			final ImagesWithInvalidate<T, V> level0,
+			final CellGrid grid,
+			final N5Reader reader,
+			final String dataset,
+			final GlobalCache globalCache,
+			final int priority) throws IOException
+	{
+		if (!isEnabled())
+			return new ImagesWithInvalidate[] {level0};
+
+		final T type = Util.getTypeFromInterval(level0.data).createVariable();
+		final boolean isLabel = isLabelType(type);
+		final boolean persist = !isLabel && reader instanceof N5Writer && getBooleanConfig("persist", false);
+		final int[] blockSize = new int[grid.numDimensions()];
+		grid.cellDimensions(blockSize);
+		// generating a block reads the finer level from the same backend
+		final FetchBackend backend = N5Helpers.fetchBackend(reader);
+
+		final List<ImagesWithInvalidate<T, V>> levels = new ArrayList<>();
+		levels.add(level0);
+		long[] dimensions = grid.getImgDimensions();
+		for (int level = 1; !fitsIntoSingleBlock(dimensions, blockSize); ++level)
+		{
+			dimensions = Arrays.stream(dimensions).map(dim -> (dim + 1) / 2).toArray();
+			final CellGrid levelGrid = new CellGrid(dimensions, blockSize);
+			final RandomAccessibleInterval<T> finer = levels.get(level - 1).data;
+			final String name = dataset + SIDECAR_SUFFIX + "/s" + level;
+
+			CellLoader<T> loader = isLabel
+					? cell -> downsampleByMode((RandomAccessibleInterval) finer, (SingleCellArrayImg) cell)
+					: cell -> downsampleByAverage((RandomAccessibleInterval) finer, (SingleCellArrayImg) cell);
+			if (persist)
+				loader = persisted(loader, (N5Writer) reader, name, levelGrid, type);
+			loader = TimedLoaders.timed(loader, MetricRegistry.global(), TimedLoaders.cellLoadMetricName(dataset, level));
+
+			final double[] factors = new double[dimensions.length];
+			Arrays.fill(factors, 1 << level);
+			final double[] initialFactors = new double[dimensions.length];
+			Arrays.fill(initialFactors, 1.0);
+			final AffineTransform3D transform = N5Helpers.considerDownsampling(level0.transform.copy(), factors, initialFactors);
+
+			levels.add(open(levelGrid, loader, type, transform, globalCache, priority, backend));
+			LOG.debug("Added generated level {} with dimensions {} for {}", level, dimensions, dataset);
+		}
+		return levels.toArray(new ImagesWithInvalidate[0]);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T extends NativeType<T>, V extends Volatile<T> & NativeType<V>, A>
+	ImagesWithInvalidate<T, V> open(
+			final CellGrid grid,
+			final CellLoader<T> loader,
+			final T type,
+			final AffineTransform3D transform,
+			final GlobalCache globalCache,
+			final int priority,
+			final FetchBackend backend) throws IOException
+	{
+		try
+		{
+			final Pair<CachedCellImg<T, A>, Invalidate<Long>> img = type instanceof UnsignedLongType
+					? (Pair) globalCache.createVolatilePaletteImg(grid, (CellLoader<UnsignedLongType>) loader)
+					: (Pair) globalCache.createVolatileImg(grid, loader, type);
+			final Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> vimg =
+					globalCache.wrapAsVolatile(img.getA(), img.getB(), priority, backend);
+			return new ImagesWithInvalidate<>(img.getA(), vimg.getA(), transform, img.getB(), vimg.getC());
+		} catch (final InvalidAccessException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	private static <T extends NativeType<T>> CellLoader<T> persisted(
+			final CellLoader<T> generator,
+			final N5Writer writer,
+			final String dataset,
+			final CellGrid grid,
+			final T type) throws IOException
+	{
+		final int[] blockSize = new int[grid.numDimensions()];
+		grid.cellDimensions(blockSize);
+		if (!writer.datasetExists(dataset))
+			writer.createDataset(dataset, grid.getImgDimensions(), blockSize, N5Utils.dataType(type), new GzipCompression());
+
+		final DatasetAttributes attributes = writer.getDatasetAttributes(dataset);
+		if (!Arrays.equals(attributes.getDimensions(), grid.getImgDimensions()) || !Arrays.equals(attributes.getBlockSize(), blockSize))
+		{
+			LOG.warn("Not persisting generated level {}: existing dataset does not match grid {}", dataset, grid);
+			return generator;
+		}
+
+		// read each block only once: missing blocks are reported by the handler instead of checked for up front
+		final N5CellLoader<T> sidecarLoader = new N5CellLoader<>(writer, dataset, blockSize, missing -> {
+			throw NotPersisted.INSTANCE;
+		});
+		return cell -> {
+			try
+			{
+				sidecarLoader.load(cell);
+				return;
+			} catch (final NotPersisted e)
+			{
+				// generate below
+			}
+			final long[] gridPosition = new long[cell.numDimensions()];
+			Arrays.setAll(gridPosition, d -> cell.min(d) / blockSize[d]);
+			generator.load(cell);
+			N5Utils.saveBlock(cell, writer, dataset, attributes, gridPosition);
+		};
+	}
+
+	/**
+	 * Signals that a block of a generated level was not persisted yet. Control flow only, without stack trace.
+	 */
+	private static class NotPersisted extends RuntimeException
+	{
+
+		private static final NotPersisted INSTANCE = new NotPersisted();
+
+		private NotPersisted()
+		{
+			super("Block not persisted", null, false, false);
+		}
+
+	}
+
+	/**
+	 * Set each voxel of {@code target} to the average of the corresponding (up to) 2x2x2 voxels in {@code source}.
+	 */
+	public static <R extends RealType<R>> void downsampleByAverage(
+			final RandomAccessibleInterval<R> source,
+			final RandomAccessibleInterval<R> target)
+	{
+		final int numTarget = (int) Intervals.numElements(target);
+		final double[] sums = new double[numTarget];
+		final int[] counts = new int[numTarget];
+		final Cursor<R> sourceCursor = Views.flatIterable(Views.interval(source, sourceInterval(source, target))).localizingCursor();
+		final long[] targetMin = Intervals.minAsLongArray(target);
+		final long[] targetDimensions = Intervals.dimensionsAsLongArray(target);
+		while (sourceCursor.hasNext())
+		{
+			final double value = sourceCursor.next().getRealDouble();
+			final int index = targetIndex(sourceCursor, targetMin, targetDimensions);
+			sums[index] += value;
+			++counts[index];
+		}
+
+		final Cursor<R> targetCursor = Views.flatIterable(target).cursor();
+		for (int index = 0; targetCursor.hasNext(); ++index)
+			targetCursor.next().setReal(sums[index] / counts[index]);
+	}
+
+	/**
+	 * Set each voxel of {@code target} to the most frequent of the corresponding (up to) 2x2x2 voxels in
+	 * {@code source}. Ties are broken in favor of the smaller value.
+	 */
+	public static <I extends IntegerType<I>> void downsampleByMode(
+			final RandomAccessibleInterval<I> source,
+			final RandomAccessibleInterval<I> target)
+	{
+		final int numTarget = (int) Intervals.numElements(target);
+		final int maxPerTarget = 1 << source.numDimensions();
+		final long[] values = new long[numTarget * maxPerTarget];
+		final int[] counts = new int[numTarget];
+		final Cursor<I> sourceCursor = Views.flatIterable(Views.interval(source, sourceInterval(source, target))).localizingCursor();
+		final long[] targetMin = Intervals.minAsLongArray(target);
+		final long[] targetDimensions = Intervals.dimensionsAsLongArray(target);
+		while (sourceCursor.hasNext())
+		{
+			final long value = sourceCursor.next().getIntegerLong();
+			final int index = targetIndex(sourceCursor, targetMin, targetDimensions);
+			values[index * maxPerTarget + counts[index]++] = value;
+		}
+
+		final Cursor<I> targetCursor = Views.flatIterable(target).cursor();
+		for (int index = 0; targetCursor.hasNext(); ++index)
+		{
+			final int from = index * maxPerTarget;
+			final int to = from + counts[index];
+			Arrays.sort(values, from, to);
+			long mode = values[from];
+			int modeCount = 0;
+			for (int start = from; start < to; )
+			{
+				int end = start + 1;
+				while (end < to && values[end] == values[start])
+					++end;
+				if (end - start > modeCount)
+				{
+					mode = values[start];
+					modeCount = end - start;
+				}
+				start = end;
+			}
+			targetCursor.next().setInteger(mode);
+		}
+	}
+
+	private static Interval sourceInterval(final Interval source, final Interval target)
+	{
+		final long[] min = new long[target.numDimensions()];
+		final long[] max = new long[target.numDimensions()];
+		for (int d = 0; d < min.length; ++d)
+		{
+			min[d] = 2 * target.min(d);
+			max[d] = Math.min(2 * target.max(d) + 1, source.max(d));
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private static int targetIndex(final Cursor<?> sourceCursor, final long[] targetMin, final long[] targetDimensions)
+	{
+		int index = 0;
+		for (int d = targetMin.length - 1; d >= 0; --d)
+			index = (int) (index * targetDimensions[d] + sourceCursor.getLongPosition(d) / 2 - targetMin[d]);
+		return index;
+	}
+
+	private static boolean isLabelType(final NativeType<?> type)
+	{
+		return type instanceof IntegerType<?> && ((IntegerType<?>) type).getBitsPerPixel() >= 32;
+	}
+
+	private static boolean fitsIntoSingleBlock(final long[] dimensions, final int[] blockSize)
+	{
+		for (int d = 0; d < dimensions.length; ++d)
+			if (dimensions[d] > blockSize[d])
+				return false;
+		return true;
+	}
+
+	private static boolean getBooleanConfig(final String key, final boolean defaultValue)
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "data", "pyramid", key))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(defaultValue);
+	}
+
+}
@@ -1,9 +1,12 @@
 package org.janelia.saalfeldlab.util.n5;
 
 import bdv.viewer.Interpolation;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
+import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.volatiles.VolatileCache;
@@ -23,6 +26,7 @@ import net.imglib2.type.label.N5CacheLoader;
 import net.imglib2.type.label.VolatileLabelMultisetArray;
 import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Triple;
 import org.janelia.saalfeldlab.n5.DataType;
@@ -30,7 +34,10 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
 import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupAdapter;
 import org.janelia.saalfeldlab.n5.imglib2.N5CellLoader;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
 import org.janelia.saalfeldlab.paintera.cache.global.InvalidAccessException;
@@ -38,8 +45,12 @@ import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5Meta;
 import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.janelia.saalfeldlab.paintera.metrics.TimedLoaders;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.VolatileHelpers;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
+import org.janelia.saalfeldlab.util.n5.cache.N5BlockCaches;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.touk.throwing.ThrowingConsumer;
@@ -54,6 +65,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -258,21 +270,43 @@ public class N5Data {
 	 * @return image data with cache invalidation
 	 * @throws IOException if any N5 operation throws {@link IOException}
 	 */
-	@SuppressWarnings("unchecked")
-	public static <T extends NativeType<T>, V extends Volatile<T> & NativeType<V>, A extends ArrayDataAccess<A>>
+	public static <T extends NativeType<T>, V extends Volatile<T> & NativeType<V>>
 	ImagesWithInvalidate<T, V> openRaw(
 			final N5Reader reader,
 			final String dataset,
 			final AffineTransform3D transform,
 			final GlobalCache globalCache,
 			final int priority) throws IOException {
+		return openRaw(reader, dataset, transform, globalCache, priority, dataset, 0);
+	}
+
+	/**
+	 * @param source dataset or multi-scale group that {@code dataset} belongs to, for metrics
+	 * @param level mipmap level of {@code dataset} in {@code source}, for metrics
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T extends NativeType<T>, V extends Volatile<T> & NativeType<V>, A extends ArrayDataAccess<A>>
+	ImagesWithInvalidate<T, V> openRaw(
+			final N5Reader reader,
+			final String dataset,
+			final AffineTransform3D transform,
+			final GlobalCache globalCache,
+			final int priority,
+			final String source,
+			final int level) throws IOException {
 
 		try {
 			final CellGrid grid = N5Helpers.getGrid(reader, dataset);
-			final CellLoader<T> loader = new N5CellLoader<>(reader, dataset, reader.getDatasetAttributes(dataset).getBlockSize());
+			final CellLoader<T> loader = TimedLoaders.timed(
+					new N5CellLoader<>(N5BlockCaches.sharedAndCachedIfRemote(reader), dataset, reader.getDatasetAttributes(dataset).getBlockSize()),
+					MetricRegistry.global(),
+					TimedLoaders.cellLoadMetricName(source, level));
 			final T type = N5Types.type(reader.getDatasetAttributes(dataset).getDataType());
-			final Pair<CachedCellImg<T, A>, Invalidate<Long>> raw = globalCache.createVolatileImg(grid, loader, type);
-			final Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> vraw = globalCache.wrapAsVolatile(raw.getA(), raw.getB(), priority);
+			// uint64 labels hold few distinct values per block
+			final Pair<CachedCellImg<T, A>, Invalidate<Long>> raw = type instanceof UnsignedLongType
+					? (Pair) globalCache.createVolatilePaletteImg(grid, (CellLoader<UnsignedLongType>) loader)
+					: globalCache.createVolatileImg(grid, loader, type);
+			final Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> vraw = globalCache.wrapAsVolatile(raw.getA(), raw.getB(), priority, N5Helpers.fetchBackend(reader));
 			return new ImagesWithInvalidate<>(raw.getA(), vraw.getA(), transform, raw.getB(), vraw.getC());
 		}
 		catch (Exception e)
@@ -372,7 +406,7 @@ public class N5Data {
 			futures.add(es.submit(ThrowingSupplier.unchecked(() -> {
 				LOG.debug("Populating scale level {}", fScale);
 				final String scaleDataset = Paths.get(dataset, scaleDatasets[fScale]).toString();
-				imagesWithInvalidate[fScale] = openRaw(reader, scaleDataset, transform.copy(), globalCache, priority);
+				imagesWithInvalidate[fScale] = openRaw(reader, scaleDataset, transform.copy(), globalCache, priority, dataset, fScale);
 				final double[] downsamplingFactors = N5Helpers.getDownsamplingFactors(reader, scaleDataset);
 				LOG.debug("Read downsampling factors: {}", Arrays.toString(downsamplingFactors));
 				imagesWithInvalidate[fScale].transform.set(N5Helpers.considerDownsampling(
@@ -478,14 +512,32 @@ public class N5Data {
 			final AffineTransform3D transform,
 			final GlobalCache globalCache,
 			final int priority) throws IOException
+	{
+		return openLabelMultiset(reader, dataset, transform, globalCache, priority, dataset, 0);
+	}
+
+	/**
+	 * @param source dataset or multi-scale group that {@code dataset} belongs to, for metrics
+	 * @param level mipmap level of {@code dataset} in {@code source}, for metrics
+	 */
+	private static ImagesWithInvalidate<LabelMultisetType, VolatileLabelMultisetType> openLabelMultiset(
+			final N5Reader reader,
+			final String dataset,
+			final AffineTransform3D transform,
+			final GlobalCache globalCache,
+			final int priority,
+			final String source,
+			final int level) throws IOException
 	{
 		try {
 			final DatasetAttributes attrs = reader.getDatasetAttributes(dataset);
-			final N5CacheLoader loader = new N5CacheLoader(
-					reader,
-					dataset,
-					N5CacheLoader.constantNullReplacement(Label.BACKGROUND)
-			);
+			final CacheLoader<Long, Cell<VolatileLabelMultisetArray>> loader = TimedLoaders.timed(
+					new N5CacheLoader(
+							N5BlockCaches.sharedAndCachedIfRemote(reader),
+							dataset,
+							N5CacheLoader.constantNullReplacement(Label.BACKGROUND)),
+					MetricRegistry.global(),
+					TimedLoaders.cellLoadMetricName(source, level));
 			final Pair<CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray>, Invalidate<Long>> cachedImg = globalCache.createImg(
 					new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
 					loader,
@@ -504,7 +556,8 @@ public class N5Data {
 					cachedImg.getB(),
 					linkedTypeFactory,
 					new VolatileHelpers.CreateInvalidVolatileLabelMultisetArray(cachedImg.getA().getCellGrid()),
-					priority);
+					priority,
+					N5Helpers.fetchBackend(reader));
 
 			return new ImagesWithInvalidate<>(cachedImg.getA(), vimg.getA(), transform, cachedImg.getB(), vimg.getC());
 		}
@@ -618,7 +671,7 @@ public class N5Data {
 			futures.add(es.submit(ThrowingSupplier.unchecked(() -> {
 				LOG.debug("Populating scale level {}", fScale);
 				final String scaleDataset = Paths.get(dataset, scaleDatasets[fScale]).toString();
-				imagesWithInvalidate[fScale] = openLabelMultiset(reader, scaleDataset, transform.copy(), globalCache, priority);
+				imagesWithInvalidate[fScale] = openLabelMultiset(reader, scaleDataset, transform.copy(), globalCache, priority, dataset, fScale);
 				final double[] downsamplingFactors = N5Helpers.getDownsamplingFactors(reader, scaleDataset);
 				LOG.debug("Read downsampling factors: {}", Arrays.toString(downsamplingFactors));
 				imagesWithInvalidate[fScale].transform.set(N5Helpers.considerDownsampling(
@@ -739,6 +792,15 @@ public class N5Data {
 		n5.setAttribute(group, N5Helpers.PAINTERA_DATA_KEY, pd);
 		n5.setAttribute(group, N5Helpers.MAX_ID_KEY, 1L);
 
+		if (useShardedLabelBlockLookup())
+		{
+			final Gson gson = new GsonBuilder()
+					.registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter())
+					.create();
+			final LabelBlockLookup lookup = new LabelBlockLookupSharded(Paths.get(container, group, "label-to-block-mapping-sharded").toString());
+			n5.setAttribute(group, "labelBlockLookup", gson.toJsonTree(lookup, LabelBlockLookup.class));
+		}
+
 		final String dataGroup = String.format("%s/data", group);
 		n5.createGroup(dataGroup);
 
@@ -787,4 +849,12 @@ public class N5Data {
 			}
 		}
 	}
+
+	private static boolean useShardedLabelBlockLookup()
+	{
+		return Optional
+				.ofNullable(PainteraConfigYaml.getConfig(() -> null, "data", "labelBlockLookup", "sharded"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(false);
+	}
 }
@@ -24,6 +24,7 @@ import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
 import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.cache.global.FetchBackend;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal.Persister;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
@@ -285,6 +286,20 @@ public class N5Helpers
 		return isHDF(base) ? new N5HDF5Meta(base, dataset, defaultCellDimensions, false) : new N5FSMeta(base, dataset);
 	}
 
+	/**
+	 * @param n5 container
+	 * @return {@link FetchBackend} through which blocks of {@code n5} should be fetched: {@link FetchBackend#HDF5} for
+	 * HDF5, {@link FetchBackend#LOCAL} for the local file system, and {@link FetchBackend#CLOUD} otherwise.
+	 */
+	public static FetchBackend fetchBackend(final N5Reader n5)
+	{
+		if (n5 instanceof N5HDF5Reader)
+			return FetchBackend.HDF5;
+		if (n5 instanceof N5FSReader)
+			return FetchBackend.LOCAL;
+		return FetchBackend.CLOUD;
+	}
+
 	/**
 	 *
 	 * @param base path
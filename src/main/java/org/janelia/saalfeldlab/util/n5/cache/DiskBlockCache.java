@@ -0,0 +1,327 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded on-disk cache of serialized blocks. Entries are evicted in least-recently-used order once the total size of
+ * all entries exceeds the byte budget. Each entry stores the version of the block it was fetched at, and lookups for
+ * a different version miss. Reads are memory-mapped, lookups and insertions are safe to call concurrently.
+ *
+ * The access order is persisted in the modification times of the entry files, so that it survives restarts. To avoid
+ * a file system write for every read, the modification time of an entry is updated at most once per
+ * {@link #DEFAULT_TOUCH_INTERVAL_MILLIS}.
+ *
+ * File layout of each entry: magic ({@code int}), length of version ({@code int}), version (UTF-8), block bytes.
+ */
+public class DiskBlockCache
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int MAGIC = 0x50424331;
+
+	private static final String SUFFIX = ".block";
+
+	private static final String TMP_PREFIX = "tmp-";
+
+	public static final long DEFAULT_TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private static class Entry
+	{
+		private final Path path;
+
+		private final long size;
+
+		private volatile long lastAccess;
+
+		private volatile long lastTouched;
+
+		private Entry(final Path path, final long size, final long lastAccess, final long lastTouched)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastAccess = lastAccess;
+			this.lastTouched = lastTouched;
+		}
+	}
+
+	private final Path directory;
+
+	private final long maxBytes;
+
+	private final long touchIntervalMillis;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final AtomicLong usedBytes = new AtomicLong(0);
+
+	private final AtomicLong accessClock = new AtomicLong(0);
+
+	private final Object evictionLock = new Object();
+
+	/**
+	 *
+	 * @param directory store entries in this directory. Entries from previous sessions are re-used.
+	 * @param maxBytes upper bound for the total size of all entries
+	 * @throws IOException if {@code directory} cannot be created or listed
+	 */
+	public DiskBlockCache(final Path directory, final long maxBytes) throws IOException
+	{
+		this(directory, maxBytes, DEFAULT_TOUCH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 *
+	 * @param directory store entries in this directory. Entries from previous sessions are re-used.
+	 * @param maxBytes upper bound for the total size of all entries
+	 * @param touchIntervalMillis minimum time between updates of the modification time of an entry on access
+	 * @throws IOException if {@code directory} cannot be created or listed
+	 */
+	public DiskBlockCache(final Path directory, final long maxBytes, final long touchIntervalMillis) throws IOException
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.touchIntervalMillis = touchIntervalMillis;
+		Files.createDirectories(directory);
+		restore();
+		evictIfNecessary();
+	}
+
+	/**
+	 *
+	 * @param key block key
+	 * @param version expected version of the block. If {@code null}, any cached version is accepted.
+	 * @return memory-mapped block bytes or {@code null} if no entry for {@code key} at {@code version} exists
+	 * @throws IOException if the entry cannot be read
+	 */
+	public ByteBuffer get(final String key, final String version) throws IOException
+	{
+		final String name = fileName(key);
+		final Entry entry = entries.get(name);
+		if (entry == null)
+			return null;
+
+		final MappedByteBuffer mapped;
+		try (final FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ))
+		{
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (final NoSuchFileException e)
+		{
+			LOG.debug("Cache entry {} for key {} disappeared", entry.path, key);
+			remove(name, entry);
+			return null;
+		}
+
+		if (mapped.remaining() < 2 * Integer.BYTES || mapped.getInt() != MAGIC)
+		{
+			LOG.debug("Removing corrupt cache entry {}", entry.path);
+			remove(name, entry);
+			return null;
+		}
+
+		final byte[] versionBytes = new byte[mapped.getInt()];
+		mapped.get(versionBytes);
+		final String cachedVersion = new String(versionBytes, StandardCharsets.UTF_8);
+		if (version != null && !version.equals(cachedVersion))
+		{
+			LOG.debug("Removing stale cache entry for key {}: cached version {}, current version {}", key, cachedVersion, version);
+			remove(name, entry);
+			return null;
+		}
+
+		entry.lastAccess = accessClock.incrementAndGet();
+		touch(entry);
+		return mapped.slice();
+	}
+
+	/**
+	 *
+	 * @param key block key
+	 * @return {@code true} if an entry for {@code key} exists, at any version
+	 */
+	public boolean contains(final String key)
+	{
+		return entries.containsKey(fileName(key));
+	}
+
+	/**
+	 * Add or replace entry for {@code key}. Evicts least recently used entries if necessary.
+	 *
+	 * @param key block key
+	 * @param version version of the block
+	 * @param bytes serialized block
+	 * @throws IOException if the entry cannot be written
+	 */
+	public void put(final String key, final String version, final byte[] bytes) throws IOException
+	{
+		final String name = fileName(key);
+		final byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + versionBytes.length);
+		header.putInt(MAGIC).putInt(versionBytes.length).put(versionBytes).flip();
+
+		final Path tmp = Files.createTempFile(directory, TMP_PREFIX, SUFFIX);
+		try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE))
+		{
+			final ByteBuffer data = ByteBuffer.wrap(bytes);
+			while (header.hasRemaining())
+				channel.write(header);
+			while (data.hasRemaining())
+				channel.write(data);
+		} catch (final IOException e)
+		{
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+
+		final Path target = directory.resolve(name);
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		final Entry entry = new Entry(target, header.limit() + bytes.length, accessClock.incrementAndGet(), System.currentTimeMillis());
+		final Entry previous = entries.put(name, entry);
+		usedBytes.addAndGet(entry.size - (previous == null ? 0 : previous.size));
+		evictIfNecessary();
+	}
+
+	/**
+	 * Remove entry for {@code key}, if present.
+	 *
+	 * @param key block key
+	 */
+	public void invalidate(final String key)
+	{
+		final String name = fileName(key);
+		final Entry entry = entries.get(name);
+		if (entry != null)
+			remove(name, entry);
+	}
+
+	/**
+	 *
+	 * @return total size of all entries in bytes
+	 */
+	public long getUsedBytes()
+	{
+		return usedBytes.get();
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	private void evictIfNecessary()
+	{
+		if (usedBytes.get() <= maxBytes)
+			return;
+
+		synchronized (evictionLock)
+		{
+			if (usedBytes.get() <= maxBytes)
+				return;
+			final List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+			candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+			for (final Map.Entry<String, Entry> candidate : candidates)
+			{
+				if (usedBytes.get() <= maxBytes)
+					break;
+				LOG.trace("Evicting cache entry {}", candidate.getValue().path);
+				remove(candidate.getKey(), candidate.getValue());
+			}
+		}
+	}
+
+	private void touch(final Entry entry)
+	{
+		final long now = System.currentTimeMillis();
+		if (now - entry.lastTouched < touchIntervalMillis)
+			return;
+		entry.lastTouched = now;
+		try
+		{
+			Files.setLastModifiedTime(entry.path, FileTime.fromMillis(now));
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to update access time of cache entry {}", entry.path, e);
+		}
+	}
+
+	private void remove(final String name, final Entry entry)
+	{
+		if (entries.remove(name, entry))
+		{
+			usedBytes.addAndGet(-entry.size);
+			try
+			{
+				Files.deleteIfExists(entry.path);
+			} catch (final IOException e)
+			{
+				LOG.debug("Unable to delete cache entry {}", entry.path, e);
+			}
+		}
+	}
+
+	private void restore() throws IOException
+	{
+		final List<Path> files = new ArrayList<>();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX))
+		{
+			stream.forEach(files::add);
+		}
+
+		// restore access order of previous session from modification times, which are updated on access
+		files.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+		for (final Path file : files)
+		{
+			final String name = file.getFileName().toString();
+			if (name.startsWith(TMP_PREFIX))
+			{
+				Files.deleteIfExists(file);
+				continue;
+			}
+			final long size = Files.size(file);
+			entries.put(name, new Entry(file, size, accessClock.incrementAndGet(), file.toFile().lastModified()));
+			usedBytes.addAndGet(size);
+		}
+		LOG.debug("Restored {} cache entries ({} bytes) from {}", entries.size(), usedBytes.get(), directory);
+	}
+
+	static String fileName(final String key)
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(2 * digest.length + SUFFIX.length());
+			for (final byte b : digest)
+				sb.append(String.format("%02x", b));
+			return sb.append(SUFFIX).toString();
+		} catch (final NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+}
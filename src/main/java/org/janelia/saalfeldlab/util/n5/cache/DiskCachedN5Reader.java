@@ -0,0 +1,247 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * {@link N5Reader} that serves blocks from a {@link DiskBlockCache} and falls back to a {@link RemoteBlockStore} on
+ * cache misses. All other (meta data) requests are delegated to the wrapped reader.
+ */
+public class DiskCachedN5Reader implements N5Reader
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public enum Validation
+	{
+		/**
+		 * Query the block version from the remote before every read. Only meta data is transferred for valid entries.
+		 */
+		ALWAYS,
+		/**
+		 * Query the block version from the remote only for the first read of each block in this session. Blocks that
+		 * are not cached are fetched right away, without a separate version query.
+		 */
+		SESSION,
+		/**
+		 * Never validate cached blocks. Only safe for read-only data.
+		 */
+		NEVER
+	}
+
+	private final N5Reader delegate;
+
+	private final RemoteBlockStore store;
+
+	private final DiskBlockCache cache;
+
+	private final Validation validation;
+
+	private final Map<String, String> sessionVersions = new ConcurrentHashMap<>();
+
+	public DiskCachedN5Reader(
+			final N5Reader delegate,
+			final RemoteBlockStore store,
+			final DiskBlockCache cache,
+			final Validation validation)
+	{
+		this.delegate = delegate;
+		this.store = store;
+		this.cache = cache;
+		this.validation = validation;
+	}
+
+	public N5Reader getDelegate()
+	{
+		return this.delegate;
+	}
+
+	public RemoteBlockStore getStore()
+	{
+		return this.store;
+	}
+
+	@Override
+	public DataBlock<?> readBlock(
+			final String pathName,
+			final DatasetAttributes datasetAttributes,
+			final long[] gridPosition) throws IOException
+	{
+		final String key = key(pathName, gridPosition);
+
+		final String version;
+		switch (validation)
+		{
+			case ALWAYS:
+				version = store.version(pathName, gridPosition);
+				break;
+			case SESSION:
+				final String knownVersion = sessionVersions.get(key);
+				if (knownVersion == null && !cache.contains(key))
+					return fetch(key, pathName, datasetAttributes, gridPosition);
+				version = knownVersion == null ? store.version(pathName, gridPosition) : knownVersion;
+				break;
+			default:
+				version = null;
+				break;
+		}
+
+		if (validation != Validation.NEVER && version == null)
+		{
+			LOG.trace("Block {} does not exist in {}", key, store.identifier());
+			cache.invalidate(key);
+			return null;
+		}
+
+		final ByteBuffer cached = cache.get(key, version);
+		if (cached != null)
+		{
+			LOG.trace("Cache hit for block {}", key);
+			if (version != null)
+				sessionVersions.put(key, version);
+			return DefaultBlockReader.readBlock(new ByteBufferInputStream(cached), datasetAttributes, gridPosition);
+		}
+
+		return fetch(key, pathName, datasetAttributes, gridPosition);
+	}
+
+	private DataBlock<?> fetch(
+			final String key,
+			final String pathName,
+			final DatasetAttributes datasetAttributes,
+			final long[] gridPosition) throws IOException
+	{
+		LOG.trace("Cache miss for block {}", key);
+		final RemoteBlockStore.VersionedBytes fetched = store.fetch(pathName, gridPosition);
+		if (fetched == null)
+			return null;
+		sessionVersions.put(key, fetched.version);
+		try
+		{
+			cache.put(key, fetched.version, fetched.bytes);
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to cache block {}", key, e);
+		}
+		return DefaultBlockReader.readBlock(new ByteArrayInputStream(fetched.bytes), datasetAttributes, gridPosition);
+	}
+
+	/**
+	 * Forget the version of a block that was seen in this session, e.g. after the block was written by this instance.
+	 *
+	 * @param pathName dataset
+	 * @param gridPosition block position
+	 */
+	public void invalidate(final String pathName, final long[] gridPosition)
+	{
+		final String key = key(pathName, gridPosition);
+		sessionVersions.remove(key);
+		cache.invalidate(key);
+	}
+
+	@Override
+	public <T> T getAttribute(final String pathName, final String key, final Class<T> clazz) throws IOException
+	{
+		return delegate.getAttribute(pathName, key, clazz);
+	}
+
+	public <T> T getAttribute(final String pathName, final String key, final Type type) throws IOException
+	{
+		return delegate.getAttribute(pathName, key, type);
+	}
+
+	@Override
+	public DatasetAttributes getDatasetAttributes(final String pathName) throws IOException
+	{
+		return delegate.getDatasetAttributes(pathName);
+	}
+
+	@Override
+	public boolean exists(final String pathName)
+	{
+		return delegate.exists(pathName);
+	}
+
+	@Override
+	public boolean datasetExists(final String pathName) throws IOException
+	{
+		return delegate.datasetExists(pathName);
+	}
+
+	@Override
+	public String[] list(final String pathName) throws IOException
+	{
+		return delegate.list(pathName);
+	}
+
+	@Override
+	public Map<String, Class<?>> listAttributes(final String pathName) throws IOException
+	{
+		return delegate.listAttributes(pathName);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("{DiskCached: %s (%s)}", delegate, store.identifier());
+	}
+
+	private String key(final String pathName, final long[] gridPosition)
+	{
+		final String normalizedPath = pathName.replace('\\', '/').replaceAll("^/+|/+$", "");
+		return store.identifier()
+				+ "/" + normalizedPath
+				+ "/" + LongStream.of(gridPosition).mapToObj(Long::toString).collect(Collectors.joining("/"));
+	}
+
+	private static class ByteBufferInputStream extends InputStream
+	{
+
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(final ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+		{
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+
+}
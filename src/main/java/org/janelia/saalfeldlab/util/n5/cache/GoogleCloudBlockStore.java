@@ -0,0 +1,90 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.janelia.saalfeldlab.n5.googlecloud.N5GoogleCloudStorageReader;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionHelpers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * {@link RemoteBlockStore} for containers on Google Cloud Storage. Block versions are object generations.
+ */
+public class GoogleCloudBlockStore implements RemoteBlockStore
+{
+
+	private final Storage storage;
+
+	private final String bucketName;
+
+	public GoogleCloudBlockStore(final Storage storage, final String bucketName)
+	{
+		this.storage = storage;
+		this.bucketName = bucketName;
+	}
+
+	@Override
+	public String identifier()
+	{
+		return "gs://" + bucketName;
+	}
+
+	@Override
+	public String version(final String dataset, final long[] gridPosition) throws IOException
+	{
+		try
+		{
+			final Blob blob = storage.get(blobId(dataset, gridPosition), Storage.BlobGetOption.fields(Storage.BlobField.GENERATION));
+			return blob == null ? null : Long.toString(blob.getGeneration());
+		} catch (final StorageException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public VersionedBytes fetch(final String dataset, final long[] gridPosition) throws IOException
+	{
+		try
+		{
+			final Blob blob = storage.get(blobId(dataset, gridPosition));
+			return blob == null ? null : new VersionedBytes(Long.toString(blob.getGeneration()), blob.getContent());
+		} catch (final StorageException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	private BlobId blobId(final String dataset, final long[] gridPosition)
+	{
+		final String datasetKey = Arrays
+				.stream(dataset.replace('\\', '/').split("/"))
+				.filter(s -> s.length() > 0)
+				.collect(Collectors.joining("/"));
+		final String blockKey = Stream
+				.concat(Stream.of(datasetKey).filter(s -> s.length() > 0), LongStream.of(gridPosition).mapToObj(Long::toString))
+				.collect(Collectors.joining("/"));
+		return BlobId.of(bucketName, blockKey);
+	}
+
+	public static GoogleCloudBlockStore fromReader(final N5GoogleCloudStorageReader reader) throws ReflectionException
+	{
+		try
+		{
+			final Storage storage = (Storage) ReflectionHelpers.searchForField(reader.getClass(), "storage").get(reader);
+			final String bucketName = (String) ReflectionHelpers.searchForField(reader.getClass(), "bucketName").get(reader);
+			return new GoogleCloudBlockStore(storage, bucketName);
+		} catch (IllegalArgumentException | IllegalAccessException | NoSuchFieldException | SecurityException e)
+		{
+			throw new ReflectionException(e);
+		}
+	}
+
+}
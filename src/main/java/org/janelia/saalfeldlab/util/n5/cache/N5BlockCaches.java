@@ -0,0 +1,120 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.googlecloud.N5GoogleCloudStorageReader;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Wraps readers for remote N5 backends in a {@link DiskCachedN5Reader} that shares a single {@link DiskBlockCache}.
+ *
+ * Configured in the {@code cache.blocks} section of {@code paintera.yml}:
+ * <pre>
+ * cache:
+ *   blocks:
+ *     enabled: true
+ *     directory: /path/to/cache
+ *     maxBytes: 10737418240
+ *     validation: SESSION # or ALWAYS, NEVER
+ * </pre>
+ *
+ * By default, cached blocks are validated against the remote once per session. {@code ALWAYS} validates every read,
+ * at the cost of a remote round-trip for each cached block.
+ */
+public class N5BlockCaches
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+	private static DiskBlockCache cache = null;
+
+	/**
+	 *
+	 * @param reader container
+	 * @return {@code reader} wrapped in {@link DiskCachedN5Reader} if {@code reader} is a remote backend and the disk
+	 * cache is enabled, {@code reader} otherwise.
+	 */
+	public static N5Reader cachedIfRemote(final N5Reader reader)
+	{
+		if (reader instanceof DiskCachedN5Reader || !isEnabled())
+			return reader;
+
+		try
+		{
+			if (reader instanceof N5GoogleCloudStorageReader)
+				return new DiskCachedN5Reader(
+						reader,
+						GoogleCloudBlockStore.fromReader((N5GoogleCloudStorageReader) reader),
+						getCache(),
+						validation());
+		} catch (final IOException | ReflectionException e)
+		{
+			LOG.warn("Unable to create disk cache for {}, using uncached reader: {}", reader, e.getMessage());
+			LOG.debug("Unable to create disk cache for {}", reader, e);
+		}
+		return reader;
+	}
+
+	/**
+	 *
+	 * @param reader container
+	 * @return {@code reader} {@link #cachedIfRemote(N5Reader) cached if remote}, and wrapped in
+	 * {@link SharedBlockReader} to share concurrent block reads with all other readers of the same container.
+	 */
+	public static N5Reader sharedAndCachedIfRemote(final N5Reader reader)
+	{
+		return SharedBlockReader.sharedIfPossible(cachedIfRemote(reader));
+	}
+
+	public static synchronized DiskBlockCache getCache() throws IOException
+	{
+		if (cache == null)
+		{
+			final Path directory = Optional
+					.ofNullable(getConfig("directory"))
+					.map(Object::toString)
+					.map(Paths::get)
+					.orElseGet(() -> PainteraCache.getCacheFile(DiskBlockCache.class, "blocks"));
+			final long maxBytes = Optional
+					.ofNullable(getConfig("maxBytes"))
+					.map(o -> o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString()))
+					.orElse(DEFAULT_MAX_BYTES);
+			LOG.info("Caching remote N5 blocks in {} (at most {} bytes)", directory, maxBytes);
+			cache = new DiskBlockCache(directory, maxBytes);
+		}
+		return cache;
+	}
+
+	private static boolean isEnabled()
+	{
+		return Optional
+				.ofNullable(getConfig("enabled"))
+				.map(o -> o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(o.toString()))
+				.orElse(true);
+	}
+
+	private static DiskCachedN5Reader.Validation validation()
+	{
+		return Optional
+				.ofNullable(getConfig("validation"))
+				.map(o -> DiskCachedN5Reader.Validation.valueOf(o.toString().toUpperCase()))
+				.orElse(DiskCachedN5Reader.Validation.SESSION);
+	}
+
+	private static Object getConfig(final String key)
+	{
+		return PainteraConfigYaml.getConfig(() -> null, "cache", "blocks", key);
+	}
+
+}
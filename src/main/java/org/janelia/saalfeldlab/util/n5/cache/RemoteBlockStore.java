@@ -0,0 +1,51 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import java.io.IOException;
+
+/**
+ * Raw access to the serialized (compressed) blocks of a remote N5 container.
+ *
+ * Implementations report a version token for each block, e.g. object generation or ETag, that changes whenever the
+ * block is overwritten. {@link DiskCachedN5Reader} uses this token to validate locally cached copies.
+ */
+public interface RemoteBlockStore
+{
+
+	class VersionedBytes
+	{
+		public final String version;
+
+		public final byte[] bytes;
+
+		public VersionedBytes(final String version, final byte[] bytes)
+		{
+			this.version = version;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 *
+	 * @return identifier of the container, e.g. {@code gs://bucket}. Used to separate cache entries of different containers.
+	 */
+	String identifier();
+
+	/**
+	 *
+	 * @param dataset dataset
+	 * @param gridPosition block position
+	 * @return current version of the block or {@code null} if the block does not exist
+	 * @throws IOException if the remote cannot be queried
+	 */
+	String version(String dataset, long[] gridPosition) throws IOException;
+
+	/**
+	 *
+	 * @param dataset dataset
+	 * @param gridPosition block position
+	 * @return serialized block along with its version or {@code null} if the block does not exist
+	 * @throws IOException if the remote cannot be queried
+	 */
+	VersionedBytes fetch(String dataset, long[] gridPosition) throws IOException;
+
+}
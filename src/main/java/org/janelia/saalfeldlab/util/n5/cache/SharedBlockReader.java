@@ -0,0 +1,199 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.googlecloud.N5GoogleCloudStorageReader;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionHelpers;
+import org.janelia.saalfeldlab.paintera.metrics.Counter;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Type;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * {@link N5Reader} that shares block reads across all readers of the same container: Concurrent requests for the same
+ * block, e.g. from a label source and a source that intersects it, or from the renderer and the mesh generator, are
+ * read and decoded only once. Blocks are not retained once the read completes, so blocks that are written later are
+ * never served stale. All other (meta data) requests are delegated to the wrapped reader.
+ *
+ * Returned blocks are shared between all requests that were coalesced and must not be modified.
+ */
+public class SharedBlockReader implements N5Reader
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final Map<String, CompletableFuture<DataBlock<?>>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+	private static final Counter COALESCED = MetricRegistry.global().counter("n5.blocks.coalesced");
+
+	private final N5Reader delegate;
+
+	private final String container;
+
+	/**
+	 * @param container identifies the container of {@code delegate}; readers with the same identifier share reads
+	 */
+	public SharedBlockReader(final N5Reader delegate, final String container)
+	{
+		this.delegate = delegate;
+		this.container = container;
+	}
+
+	/**
+	 * @param reader container
+	 * @return {@code reader} wrapped in {@link SharedBlockReader} if its container can be identified, {@code reader}
+	 * otherwise (e.g. HDF5).
+	 */
+	public static N5Reader sharedIfPossible(final N5Reader reader)
+	{
+		if (reader instanceof SharedBlockReader)
+			return reader;
+		return containerIdentifier(reader)
+				.map(container -> (N5Reader) new SharedBlockReader(reader, container))
+				.orElse(reader);
+	}
+
+	public N5Reader getDelegate()
+	{
+		return this.delegate;
+	}
+
+	@Override
+	public DataBlock<?> readBlock(
+			final String pathName,
+			final DatasetAttributes datasetAttributes,
+			final long[] gridPosition) throws IOException
+	{
+		final String key = key(pathName, gridPosition);
+		final CompletableFuture<DataBlock<?>> block = new CompletableFuture<>();
+		final CompletableFuture<DataBlock<?>> inFlight = IN_FLIGHT.putIfAbsent(key, block);
+		if (inFlight != null)
+		{
+			LOG.trace("Joining in-flight read of block {}", key);
+			COALESCED.inc();
+			return join(inFlight, key);
+		}
+
+		try
+		{
+			final DataBlock<?> read = delegate.readBlock(pathName, datasetAttributes, gridPosition);
+			block.complete(read);
+			return read;
+		} catch (final IOException | RuntimeException | Error e)
+		{
+			block.completeExceptionally(e);
+			throw e;
+		} finally
+		{
+			IN_FLIGHT.remove(key, block);
+		}
+	}
+
+	@Override
+	public <T> T getAttribute(final String pathName, final String key, final Class<T> clazz) throws IOException
+	{
+		return delegate.getAttribute(pathName, key, clazz);
+	}
+
+	public <T> T getAttribute(final String pathName, final String key, final Type type) throws IOException
+	{
+		return delegate.getAttribute(pathName, key, type);
+	}
+
+	@Override
+	public DatasetAttributes getDatasetAttributes(final String pathName) throws IOException
+	{
+		return delegate.getDatasetAttributes(pathName);
+	}
+
+	@Override
+	public boolean exists(final String pathName)
+	{
+		return delegate.exists(pathName);
+	}
+
+	@Override
+	public boolean datasetExists(final String pathName) throws IOException
+	{
+		return delegate.datasetExists(pathName);
+	}
+
+	@Override
+	public String[] list(final String pathName) throws IOException
+	{
+		return delegate.list(pathName);
+	}
+
+	@Override
+	public Map<String, Class<?>> listAttributes(final String pathName) throws IOException
+	{
+		return delegate.listAttributes(pathName);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("{Shared: %s (%s)}", delegate, container);
+	}
+
+	private String key(final String pathName, final long[] gridPosition)
+	{
+		final String normalizedPath = pathName.replace('\\', '/').replaceAll("^/+|/+$", "");
+		return container
+				+ "/" + normalizedPath
+				+ "/" + LongStream.of(gridPosition).mapToObj(Long::toString).collect(Collectors.joining("/"));
+	}
+
+	private static DataBlock<?> join(final CompletableFuture<DataBlock<?>> block, final String key) throws IOException
+	{
+		try
+		{
+			return block.get();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for block " + key, e);
+		} catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static Optional<String> containerIdentifier(final N5Reader reader)
+	{
+		try
+		{
+			if (reader instanceof DiskCachedN5Reader)
+				return Optional.of(((DiskCachedN5Reader) reader).getStore().identifier());
+			if (reader instanceof N5GoogleCloudStorageReader)
+				return Optional.of(GoogleCloudBlockStore.fromReader((N5GoogleCloudStorageReader) reader).identifier());
+			if (reader instanceof N5FSReader)
+			{
+				final String basePath = (String) ReflectionHelpers.searchForField(reader.getClass(), "basePath").get(reader);
+				return Optional.of(Paths.get(basePath).toAbsolutePath().normalize().toUri().toString());
+			}
+		} catch (final ReflectionException | IllegalArgumentException | IllegalAccessException | NoSuchFieldException | SecurityException e)
+		{
+			LOG.debug("Unable to identify container of {}, reads will not be shared: {}", reader, e.getMessage());
+		}
+		return Optional.empty();
+	}
+
+}
@@ -0,0 +1,93 @@
+package bdv.fx.viewer.render;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import bdv.cache.CacheControl;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.ConstantUtils;
+import org.janelia.saalfeldlab.paintera.composition.Composite;
+import org.janelia.saalfeldlab.paintera.composition.CompositeCopy;
+import org.janelia.saalfeldlab.paintera.composition.CompositeProjectorPreMultiply;
+import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
+import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeadlessRenderUnitTest
+{
+
+	private static final int WIDTH = 40;
+
+	private static final int HEIGHT = 30;
+
+	private static final int COLOR = ARGBType.rgba(255, 0, 0, 255);
+
+	@Test
+	public void testRenderUntilComplete()
+	{
+		final RandomAccessibleInterval<ARGBType> rai = ConstantUtils
+				.constantRandomAccessibleInterval(new ARGBType(COLOR), 3, new FinalInterval(100, 100, 100));
+		final RandomAccessibleIntervalDataSource<ARGBType, ARGBType> source = new RandomAccessibleIntervalDataSource<>(
+				rai,
+				rai,
+				new AffineTransform3D(),
+				() -> {},
+				i -> new NearestNeighborInterpolatorFactory<>(),
+				i -> new NearestNeighborInterpolatorFactory<>(),
+				"constant");
+		final Map<Source<?>, Composite<ARGBType, ARGBType>> composites = new HashMap<>();
+		composites.put(source, new CompositeCopy<>());
+		final List<SourceAndConverter<?>> sources = Collections.singletonList(new SourceAndConverter<>(source, (s, t) -> t.set(s)));
+
+		final ExecutorService renderingExecutor = Executors.newFixedThreadPool(1);
+		try
+		{
+			final HeadlessRenderUnit renderUnit = new HeadlessRenderUnit(
+					WIDTH,
+					HEIGHT,
+					new double[] {1.0, 0.5},
+					s -> AxisOrder.XYZ,
+					s -> Interpolation.NEARESTNEIGHBOR,
+					new CompositeProjectorPreMultiply.CompositeProjectorFactory(composites),
+					new CacheControl.Dummy(),
+					1,
+					renderingExecutor);
+			Assert.assertNull(renderUnit.getImage());
+
+			final AffineTransform3D viewerTransform = new AffineTransform3D();
+			viewerTransform.setTranslation(-10, -10, -50);
+			renderUnit.setFrame(sources, 0, viewerTransform);
+			Assert.assertFalse(renderUnit.isComplete());
+
+			final HeadlessRenderUnit.FrameStatistics statistics = renderUnit.renderUntilComplete(TimeUnit.SECONDS.toNanos(10));
+			Assert.assertTrue(statistics.isComplete);
+			Assert.assertTrue(renderUnit.isComplete());
+			// coarse screen scale first, then full resolution, all data available immediately
+			Assert.assertEquals(2, statistics.numPasses);
+			Assert.assertTrue(statistics.firstFrameNanos >= 0);
+			Assert.assertTrue(statistics.firstFullResolutionFrameNanos >= statistics.firstFrameNanos);
+
+			Assert.assertEquals(WIDTH, renderUnit.getImage().dimension(0));
+			Assert.assertEquals(HEIGHT, renderUnit.getImage().dimension(1));
+			for (final int argb : renderUnit.getImage().update(null).getCurrentStorageArray())
+				Assert.assertEquals(COLOR, argb);
+		} finally
+		{
+			renderingExecutor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.janelia.saalfeldlab.paintera;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProjectJournalTest {
+
+	@Test
+	public void testCommitAndRotate() throws IOException
+	{
+		final Path project = Files.createTempDirectory("project-journal-test");
+		final ProjectJournal journal = new ProjectJournal(project, 3);
+		Assert.assertTrue(journal.entries().isEmpty());
+
+		for (int i = 0; i < 5; ++i)
+			journal.commit("{\"version\":" + i + "}");
+
+		Assert.assertEquals("{\"version\":4}", read(project.resolve(ProjectJournal.ATTRIBUTES_FILE)));
+		final List<Path> entries = journal.entries();
+		Assert.assertEquals(3, entries.size());
+		Assert.assertEquals("{\"version\":4}", read(entries.get(0)));
+		Assert.assertEquals("{\"version\":2}", read(entries.get(2)));
+		Assert.assertFalse(Files.exists(project.resolve(ProjectJournal.ATTRIBUTES_FILE + ".tmp")));
+	}
+
+	@Test
+	public void testLatestValidEntry() throws IOException
+	{
+		final Path project = Files.createTempDirectory("project-journal-test");
+		final ProjectJournal journal = new ProjectJournal(project);
+		Assert.assertFalse(journal.latestValidEntry(s -> true).isPresent());
+
+		journal.commit("valid");
+		journal.commit("corrupt");
+		final Optional<String> latest = journal.latestValidEntry(s -> s.equals("valid"));
+		Assert.assertTrue(latest.isPresent());
+		Assert.assertEquals("valid", latest.get());
+	}
+
+	private static String read(final Path path) throws IOException
+	{
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.DirtyVolatileLongArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.label.FromIntegerTypeConverter;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.LabelUtils;
+import net.imglib2.type.label.VolatileLabelMultisetArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.data.palette.PaletteLongArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedCellCacheTest {
+
+	private static final int[] DIMENSIONS = {16, 16, 16};
+
+	private static final long[] MIN = {32, 0, 16};
+
+	private static final int NUM_ELEMENTS = 16 * 16 * 16;
+
+	@Test
+	public void testLabelRoundTrip()
+	{
+		final long[] labels = new long[NUM_ELEMENTS];
+		for (int i = 0; i < labels.length; ++i)
+			labels[i] = i < NUM_ELEMENTS / 3 ? 1 : i < NUM_ELEMENTS / 2 ? 1L << 40 : 7;
+
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+		Assert.assertTrue(cache.put(1L, new Cell<>(DIMENSIONS, MIN, new VolatileLongArray(labels, true)), cache.epoch()));
+		Assert.assertTrue(cache.sizeInBytes() < NUM_ELEMENTS);
+
+		final Cell<?> cell = (Cell<?>) cache.remove(1L);
+		Assert.assertNotNull(cell);
+		Assert.assertTrue(cell.getData() instanceof VolatileLongArray);
+		Assert.assertTrue(((VolatileLongArray) cell.getData()).isValid());
+		Assert.assertArrayEquals(labels, ((VolatileLongArray) cell.getData()).getCurrentStorageArray());
+		Assert.assertArrayEquals(MIN, min(cell));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.sizeInBytes());
+		Assert.assertNull(cache.remove(1L));
+	}
+
+	@Test
+	public void testRawRoundTrip()
+	{
+		final byte[] data = new byte[NUM_ELEMENTS];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte) (i / 64);
+
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+		Assert.assertTrue(cache.put(2L, new Cell<>(DIMENSIONS, MIN, new ByteArray(data)), cache.epoch()));
+		final Cell<?> cell = (Cell<?>) cache.remove(2L);
+		Assert.assertArrayEquals(data, ((ByteArray) cell.getData()).getCurrentStorageArray());
+	}
+
+	@Test
+	public void testPaletteRoundTrip()
+	{
+		final long[] labels = labels();
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+		Assert.assertTrue(cache.put(3L, new Cell<>(DIMENSIONS, MIN, PaletteLongArray.fromArray(labels, true)), cache.epoch()));
+
+		final Cell<?> cell = (Cell<?>) cache.remove(3L);
+		Assert.assertTrue(cell.getData() instanceof PaletteLongArray);
+		final PaletteLongArray access = (PaletteLongArray) cell.getData();
+		Assert.assertTrue(access.isValid());
+		Assert.assertEquals(3, access.getPaletteSize());
+		for (int i = 0; i < labels.length; ++i)
+			Assert.assertEquals(labels[i], access.getValue(i));
+		Assert.assertArrayEquals(MIN, min(cell));
+	}
+
+	@Test
+	public void testLabelMultisetRoundTrip()
+	{
+		final long[] labels = labels();
+		final byte[] serialized = LabelUtils.serializeLabelMultisetTypes(
+				Views.flatIterable(Converters.convert(
+						ArrayImgs.unsignedLongs(labels, NUM_ELEMENTS),
+						new FromIntegerTypeConverter<UnsignedLongType>(),
+						FromIntegerTypeConverter.geAppropriateType())),
+				NUM_ELEMENTS);
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+		Assert.assertTrue(cache.put(4L, new Cell<>(DIMENSIONS, MIN, LabelUtils.fromBytes(serialized, NUM_ELEMENTS)), cache.epoch()));
+		Assert.assertTrue(cache.sizeInBytes() < serialized.length);
+
+		final Cell<?> cell = (Cell<?>) cache.remove(4L);
+		Assert.assertTrue(cell.getData() instanceof VolatileLabelMultisetArray);
+		final VolatileLabelMultisetArray access = (VolatileLabelMultisetArray) cell.getData();
+		Assert.assertTrue(access.isValid());
+		final ArrayImg<LabelMultisetType, VolatileLabelMultisetArray> img = new ArrayImg<>(access, new long[] {NUM_ELEMENTS}, new LabelMultisetType().getEntitiesPerPixel());
+		img.setLinkedType(new LabelMultisetType(img));
+		int i = 0;
+		for (final LabelMultisetType t : img)
+		{
+			Assert.assertEquals(1, t.entrySet().size());
+			Assert.assertEquals(labels[i++], t.argMax());
+		}
+	}
+
+	@Test
+	public void testOffer() throws Exception
+	{
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+		cache.offer(1L, new Cell<>(DIMENSIONS, MIN, new VolatileLongArray(labels(), true)), cache.epoch());
+		// unsupported values are not queued
+		cache.offer(2L, new Object(), cache.epoch());
+		cache.awaitPending();
+		Assert.assertEquals(1, cache.size());
+		Assert.assertNotNull(cache.remove(1L));
+
+		// invalidated while waiting for compression
+		final long epoch = cache.epoch();
+		cache.invalidate(1L);
+		cache.offer(1L, new Cell<>(DIMENSIONS, MIN, new VolatileLongArray(labels(), true)), epoch);
+		cache.awaitPending();
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testRejected()
+	{
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(Long.MAX_VALUE);
+
+		// invalid and dirty cells
+		Assert.assertFalse(cache.put(1L, new Cell<>(DIMENSIONS, MIN, new VolatileLongArray(NUM_ELEMENTS, false)), cache.epoch()));
+		final DirtyVolatileLongArray dirty = new DirtyVolatileLongArray(NUM_ELEMENTS, true);
+		dirty.setDirty();
+		Assert.assertFalse(cache.put(1L, new Cell<>(DIMENSIONS, MIN, dirty), cache.epoch()));
+
+		// invalidated after eviction
+		final long epoch = cache.epoch();
+		cache.invalidate(1L);
+		Assert.assertFalse(cache.put(1L, new Cell<>(DIMENSIONS, MIN, new LongArray(NUM_ELEMENTS)), epoch));
+
+		// incompressible
+		final long[] noise = new long[NUM_ELEMENTS];
+		final Random rng = new Random(100);
+		Arrays.setAll(noise, i -> rng.nextLong());
+		Assert.assertFalse(cache.put(1L, new Cell<>(DIMENSIONS, MIN, new LongArray(noise)), cache.epoch()));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testBoundedMemory()
+	{
+		final CompressedCellCache<Long> probe = new CompressedCellCache<>(Long.MAX_VALUE);
+		probe.put(0L, new Cell<>(DIMENSIONS, MIN, new LongArray(NUM_ELEMENTS)), probe.epoch());
+		final long entrySize = probe.sizeInBytes();
+
+		final CompressedCellCache<Long> cache = new CompressedCellCache<>(2 * entrySize);
+		for (long key = 0; key < 3; ++key)
+			cache.put(key, new Cell<>(DIMENSIONS, MIN, new LongArray(NUM_ELEMENTS)), cache.epoch());
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(2 * entrySize, cache.sizeInBytes());
+		// least recently inserted entry is evicted first
+		Assert.assertNull(cache.remove(0L));
+		Assert.assertNotNull(cache.remove(1L));
+		Assert.assertNotNull(cache.remove(2L));
+	}
+
+	private static long[] labels()
+	{
+		final long[] labels = new long[NUM_ELEMENTS];
+		for (int i = 0; i < labels.length; ++i)
+			labels[i] = i < NUM_ELEMENTS / 3 ? 1 : i < NUM_ELEMENTS / 2 ? 1L << 40 : 7;
+		return labels;
+	}
+
+	private static long[] min(final Cell<?> cell)
+	{
+		final long[] min = new long[cell.numDimensions()];
+		cell.min(min);
+		return min;
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import org.janelia.saalfeldlab.paintera.metrics.Gauge;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+public class MemoryBoundedSoftRefLoaderCacheTest {
+
+	@Test
+	public void testMemoryGaugeAggregatesInstances() throws ExecutionException {
+		final MemoryBoundedSoftRefLoaderCache<Long, long[], ?> first = MemoryBoundedSoftRefLoaderCache.withWeakRefs(1 << 20, v -> v.length * Long.BYTES);
+		final MemoryBoundedSoftRefLoaderCache<Long, long[], ?> second = MemoryBoundedSoftRefLoaderCache.withWeakRefs(1 << 20, v -> v.length * Long.BYTES);
+		final Gauge gauge = (Gauge) MetricRegistry.global().metrics().get("cache.bytes");
+		final long before = gauge.getValue();
+
+		final long[] firstValue = first.get(1L, k -> new long[10]);
+		final long[] secondValue = second.get(1L, k -> new long[20]);
+
+		Assert.assertEquals(10 * Long.BYTES, first.getCurrentMemoryUsageInBytes());
+		Assert.assertEquals(20 * Long.BYTES, second.getCurrentMemoryUsageInBytes());
+		Assert.assertEquals(before + 30 * Long.BYTES, gauge.getValue());
+		Assert.assertEquals(10, firstValue.length);
+		Assert.assertEquals(20, secondValue.length);
+	}
+
+}
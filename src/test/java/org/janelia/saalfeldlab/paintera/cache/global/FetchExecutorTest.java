@@ -0,0 +1,78 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FetchExecutorTest {
+
+	private static final int NUM_PRIORITIES = 3;
+
+	@Test
+	public void testMaxConcurrentFetches() throws InterruptedException {
+		final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(NUM_PRIORITIES);
+		final FetchExecutor executor = new FetchExecutor(queue, "test-concurrency", 2, false);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(10);
+		try {
+			for (int i = 0; i < 10; ++i)
+				queue.put(() -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					Thread.sleep(20);
+					running.decrementAndGet();
+					done.countDown();
+					return null;
+				}, 0);
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(2, maxRunning.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testPriorityOrder() throws InterruptedException {
+		final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(NUM_PRIORITIES);
+		final FetchExecutor executor = new FetchExecutor(queue, "test-priority", 1, false);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(NUM_PRIORITIES);
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		try {
+			// occupy the only slot so that the remaining requests are queued before any of them is taken
+			queue.put(() -> {
+				started.countDown();
+				release.await();
+				return null;
+			}, 0);
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			for (int priority = NUM_PRIORITIES - 1; priority >= 0; --priority) {
+				final int p = priority;
+				queue.put(() -> {
+					order.add(p);
+					done.countDown();
+					return null;
+				}, p);
+			}
+			release.countDown();
+
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+			// lower values are served first
+			Assert.assertEquals(Arrays.asList(0, 1, 2), order);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
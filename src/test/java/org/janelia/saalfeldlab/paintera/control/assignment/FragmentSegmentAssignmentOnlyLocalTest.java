@@ -0,0 +1,41 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FragmentSegmentAssignmentOnlyLocalTest {
+
+	@Test
+	public void testInitialLutIsLoadedLazily()
+	{
+		final AtomicInteger numLoads = new AtomicInteger(0);
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(
+				() -> {
+					numLoads.incrementAndGet();
+					final TLongLongMap lut = new TLongLongHashMap();
+					lut.put(1, 10);
+					lut.put(2, 10);
+					return lut;
+				},
+				(keys, values) -> {});
+		Assert.assertEquals(0, numLoads.get());
+
+		// actions applied before the lut is loaded are replayed on top of it
+		assignment.apply(new Merge(3, 1, 10));
+		Assert.assertEquals(0, numLoads.get());
+
+		Assert.assertEquals(10, assignment.getSegment(3));
+		Assert.assertEquals(10, assignment.getSegment(2));
+		Assert.assertTrue(assignment.getFragments(10).containsAll(new long[] {1, 2, 3}));
+		Assert.assertEquals(1, numLoads.get());
+
+		Assert.assertEquals(4, assignment.getSegment(4));
+		Assert.assertEquals(1, numLoads.get());
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import java.util.Arrays;
+
+import net.imglib2.Interval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Paint2DTest
+{
+
+	private static final long[] DIMENSIONS = {32, 32, 5};
+
+	private static final long LABEL = 3;
+
+	@Test
+	public void testCapsuleWithIdenticalEndPointsEqualsPaint()
+	{
+		final AffineTransform3D globalToViewerTransform = new AffineTransform3D();
+		globalToViewerTransform.setTranslation(0.0, 0.0, -2.0);
+		assertCapsuleEqualsPaint(globalToViewerTransform, 15.2, 14.7, 4.0, 2.0);
+		assertCapsuleEqualsPaint(globalToViewerTransform, 6.0, 25.0, 5.0, 1.0);
+		assertCapsuleEqualsPaint(globalToViewerTransform, 15.0, 15.0, 0.0, 1.0);
+	}
+
+	@Test
+	public void testCapsuleWithIdenticalEndPointsEqualsPaintFlipped()
+	{
+		// viewer x and y point in the opposite direction of label x and y
+		final AffineTransform3D globalToViewerTransform = new AffineTransform3D();
+		globalToViewerTransform.set(
+				-1.0, 0.0, 0.0, 31.0,
+				0.0, -1.0, 0.0, 31.0,
+				0.0, 0.0, 1.0, -2.0);
+		assertCapsuleEqualsPaint(globalToViewerTransform, 15.2, 14.7, 4.0, 2.0);
+		assertCapsuleEqualsPaint(globalToViewerTransform, 15.0, 15.0, 0.0, 1.0);
+	}
+
+	private static void assertCapsuleEqualsPaint(
+			final AffineTransform3D globalToViewerTransform,
+			final double x,
+			final double y,
+			final double radius,
+			final double brushDepth)
+	{
+		final AffineTransform3D labelToGlobalTransform = new AffineTransform3D();
+		final AffineTransform3D labelToViewerTransform = labelToGlobalTransform.copy().preConcatenate(globalToViewerTransform);
+
+		final ArrayImg<UnsignedLongType, LongArray> painted = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final Interval paintedInterval = Paint2D.paint(
+				painted,
+				LABEL,
+				x,
+				y,
+				radius,
+				brushDepth,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform);
+
+		final ArrayImg<UnsignedLongType, LongArray> capsule = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final Interval capsuleInterval = Paint2D.paintCapsule(
+				capsule,
+				LABEL,
+				x,
+				y,
+				x,
+				y,
+				radius,
+				brushDepth,
+				labelToViewerTransform,
+				globalToViewerTransform,
+				labelToGlobalTransform);
+
+		final long[] paintedData = painted.update(null).getCurrentStorageArray();
+		Assert.assertTrue(Arrays.stream(paintedData).anyMatch(l -> l == LABEL));
+		Assert.assertArrayEquals(paintedData, capsule.update(null).getCurrentStorageArray());
+		Assert.assertNotNull(capsuleInterval);
+		Assert.assertTrue(Intervals.equals(paintedInterval, capsuleInterval));
+	}
+
+}
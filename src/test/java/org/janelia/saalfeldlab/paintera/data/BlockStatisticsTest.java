@@ -0,0 +1,130 @@
+package org.janelia.saalfeldlab.paintera.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.real.DoubleType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockStatisticsTest {
+
+	// 4x4 image in 2x2 cells: [0, 1] [2, 3] / [NaN, NaN] [4.5, -1.25]
+	private static ArrayImg<DoubleType, DoubleArray> testData()
+	{
+		return ArrayImgs.doubles(
+				new double[] {
+						0.0, 0.0, 2.0, 2.0,
+						1.0, 1.0, 3.0, 3.0,
+						Double.NaN, Double.NaN, 4.5, 4.5,
+						Double.NaN, Double.NaN, -1.25, 4.5
+				},
+				4, 4);
+	}
+
+	@Test
+	public void testComputeAndPersist() throws IOException
+	{
+		final ArrayImg<DoubleType, DoubleArray> data = testData();
+		final CellGrid grid = new CellGrid(new long[] {4, 4}, new int[] {2, 2});
+		final Path file = Files.createTempDirectory("block-statistics-test").resolve(BlockStatistics.FILE_NAME);
+
+		final BlockStatistics statistics = new BlockStatistics(data, grid, file);
+		for (long cell = 0; cell < 4; ++cell)
+			statistics.compute(cell);
+
+		final double[] minMaxNaNCount = new double[3];
+		Assert.assertTrue(statistics.get(0, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {0.0, 1.0, 0.0}, minMaxNaNCount, 0.0);
+		Assert.assertTrue(statistics.get(1, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {2.0, 3.0, 0.0}, minMaxNaNCount, 0.0);
+		Assert.assertTrue(statistics.get(2, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 4.0}, minMaxNaNCount, 0.0);
+		Assert.assertTrue(statistics.get(3, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {-1.25, 4.5, 0.0}, minMaxNaNCount, 0.0);
+
+		Assert.assertTrue(statistics.get(new FinalInterval(new long[] {1, 1}, new long[] {2, 2}), minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {-1.25, 4.5, 4.0}, minMaxNaNCount, 0.0);
+
+		statistics.save();
+		final BlockStatistics loaded = new BlockStatistics(data, grid, file);
+		Assert.assertTrue(loaded.get(3, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {-1.25, 4.5, 0.0}, minMaxNaNCount, 0.0);
+
+		// statistics for a different grid are ignored
+		final BlockStatistics other = new BlockStatistics(data, new CellGrid(new long[] {4, 4}, new int[] {4, 2}), file);
+		Assert.assertFalse(other.get(0, minMaxNaNCount));
+	}
+
+	@Test
+	public void testDiscardModifiedCells() throws IOException
+	{
+		final ArrayImg<DoubleType, DoubleArray> data = testData();
+		final CellGrid grid = new CellGrid(new long[] {4, 4}, new int[] {2, 2});
+		final Path file = Files.createTempDirectory("block-statistics-test").resolve(BlockStatistics.FILE_NAME);
+		final long[] stamps = {1, 1, 1, 1};
+
+		final BlockStatistics statistics = new BlockStatistics(data, grid, file, cell -> stamps[(int) cell]);
+		for (long cell = 0; cell < 4; ++cell)
+			statistics.compute(cell);
+		statistics.save();
+
+		// cell 3 is modified and re-stamped, cell 0 is modified without changing its stamp
+		final RandomAccess<DoubleType> access = data.randomAccess();
+		access.setPosition(new long[] {3, 3});
+		access.get().set(-5.0);
+		stamps[3] = 2;
+		access.setPosition(new long[] {0, 0});
+		access.get().set(10.0);
+
+		final BlockStatistics loaded = new BlockStatistics(data, grid, file, cell -> stamps[(int) cell]);
+		loaded.compute(0);
+		loaded.compute(3);
+		final double[] minMaxNaNCount = new double[3];
+		Assert.assertTrue(loaded.get(0, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {0.0, 1.0, 0.0}, minMaxNaNCount, 0.0);
+		Assert.assertTrue(loaded.get(3, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {-5.0, 4.5, 0.0}, minMaxNaNCount, 0.0);
+	}
+
+	@Test
+	public void testLargeGrid()
+	{
+		// statistics are allocated for computed cells only
+		final CellGrid grid = new CellGrid(new long[] {1L << 40, 1L << 20}, new int[] {1, 1});
+		final BlockStatistics statistics = new BlockStatistics(testData(), grid, null);
+		statistics.compute(2);
+		final double[] minMaxNaNCount = new double[3];
+		Assert.assertTrue(statistics.get(2, minMaxNaNCount));
+		Assert.assertArrayEquals(new double[] {2.0, 2.0, 0.0}, minMaxNaNCount, 0.0);
+	}
+
+	@Test
+	public void testBlockwiseConstant()
+	{
+		final ArrayImg<DoubleType, DoubleArray> data = testData();
+		final CellGrid grid = new CellGrid(new long[] {4, 4}, new int[] {2, 2});
+		final DoubleType constant = new DoubleType(-1.0);
+		final BlockwiseConstantRandomAccessibleInterval<DoubleType> blockwiseConstant =
+				new BlockwiseConstantRandomAccessibleInterval<>(data, grid, cell -> cell == 1 ? constant : null);
+
+		final RandomAccess<DoubleType> access = blockwiseConstant.randomAccess();
+		access.setPosition(new long[] {0, 1});
+		Assert.assertEquals(1.0, access.get().getRealDouble(), 0.0);
+		access.setPosition(new long[] {3, 1});
+		Assert.assertEquals(-1.0, access.get().getRealDouble(), 0.0);
+		access.setPosition(new long[] {2, 0});
+		Assert.assertEquals(-1.0, access.get().getRealDouble(), 0.0);
+		access.setPosition(new long[] {2, 2});
+		Assert.assertEquals(4.5, access.get().getRealDouble(), 0.0);
+		Assert.assertEquals(4.5, access.copyRandomAccess().get().getRealDouble(), 0.0);
+	}
+
+}
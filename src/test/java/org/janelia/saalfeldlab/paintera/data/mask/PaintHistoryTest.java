@@ -0,0 +1,151 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PaintHistoryTest {
+
+	private static final long[] DIMENSIONS = {10, 9, 8};
+
+	private static final int[] BLOCK_SIZE = {4, 4, 4};
+
+	@Test
+	public void testSnapshotAndRestore()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> canvas = ArrayImgs.unsignedLongs(DIMENSIONS);
+		canvas.forEach(t -> t.set(Label.INVALID));
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<UnsignedLongType>[] canvases = new RandomAccessibleInterval[] {canvas};
+		final CellGrid[] grids = {new CellGrid(DIMENSIONS, BLOCK_SIZE)};
+
+		// paint into the first and the last (truncated) block
+		Views.interval(canvas, Intervals.createMinMax(0, 0, 0, 3, 3, 3)).forEach(t -> t.set(1));
+		final long[] before = canvas.update(null).getCurrentStorageArray().clone();
+		final TLongSet touchedBlocks = new TLongHashSet(new long[] {0, grids[0].getNumCells() - 1});
+		final PaintHistory.Entry preImage = PaintHistory.snapshot(2, canvases, grids, new TLongSet[] {touchedBlocks});
+		Assert.assertEquals(2, preImage.blocks().size());
+		Views.interval(canvas, Intervals.createMinMax(2, 2, 2, 9, 8, 7)).forEach(t -> t.set(2));
+		final long[] after = canvas.update(null).getCurrentStorageArray().clone();
+
+		final PaintHistory history = new PaintHistory(Long.MAX_VALUE);
+		history.push(preImage);
+		Assert.assertTrue(history.canUndo());
+		Assert.assertFalse(history.canRedo());
+
+		// undo
+		final PaintHistory.Entry undo = history.popUndo();
+		final PaintHistory.Entry postImage = PaintHistory.snapshot(undo, canvases, grids);
+		PaintHistory.restore(undo, canvases, grids);
+		history.pushRedo(postImage);
+		// blocks between first and last block were not recorded and keep the painted label
+		final long[] expected = after.clone();
+		for (int i = 0; i < expected.length; ++i)
+		{
+			final long[] pos = new long[3];
+			IntervalIndexer.indexToPosition(i, DIMENSIONS, pos);
+			if (isInBlock(pos, 0, 0, 0) || isInBlock(pos, 2, 2, 1))
+				expected[i] = before[i];
+		}
+		Assert.assertArrayEquals(expected, canvas.update(null).getCurrentStorageArray());
+		Assert.assertFalse(history.canUndo());
+		Assert.assertTrue(history.canRedo());
+
+		// redo
+		final PaintHistory.Entry redo = history.popRedo();
+		history.pushUndo(PaintHistory.snapshot(redo, canvases, grids));
+		PaintHistory.restore(redo, canvases, grids);
+		Assert.assertArrayEquals(after, canvas.update(null).getCurrentStorageArray());
+	}
+
+	@Test
+	public void testBoundedMemory()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> canvas = ArrayImgs.unsignedLongs(DIMENSIONS);
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<UnsignedLongType>[] canvases = new RandomAccessibleInterval[] {canvas};
+		final CellGrid[] grids = {new CellGrid(DIMENSIONS, BLOCK_SIZE)};
+		final PaintHistory.Entry entry = PaintHistory.snapshot(1, canvases, grids, new TLongSet[] {new TLongHashSet(new long[] {0})});
+
+		final PaintHistory history = new PaintHistory(2 * entry.sizeInBytes());
+		history.push(entry);
+		history.push(entry);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		history.push(entry);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertNotNull(history.popUndo());
+		Assert.assertNotNull(history.popUndo());
+		Assert.assertNull(history.popUndo());
+
+		// new entries clear redo history
+		history.pushRedo(entry);
+		history.push(entry);
+		Assert.assertFalse(history.canRedo());
+		Assert.assertEquals(entry.sizeInBytes(), history.sizeInBytes());
+	}
+
+	@Test
+	public void testBoundedMemoryUndoRedo()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> canvas = ArrayImgs.unsignedLongs(DIMENSIONS);
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<UnsignedLongType>[] canvases = new RandomAccessibleInterval[] {canvas};
+		final CellGrid[] grids = {new CellGrid(DIMENSIONS, BLOCK_SIZE)};
+		final PaintHistory.Entry entry = PaintHistory.snapshot(1, canvases, grids, new TLongSet[] {new TLongHashSet(new long[] {0})});
+		final PaintHistory.Entry other = PaintHistory.snapshot(2, canvases, grids, new TLongSet[] {new TLongHashSet(new long[] {0})});
+
+		final PaintHistory history = new PaintHistory(2 * entry.sizeInBytes());
+		history.push(entry);
+		history.push(entry);
+
+		// undo
+		Assert.assertNotNull(history.popUndo());
+		history.pushRedo(other);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertNotNull(history.popUndo());
+		history.pushRedo(other);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertFalse(history.canUndo());
+
+		// the redo entry farthest from the current state is dropped
+		history.pushRedo(entry);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertSame(entry, history.popRedo());
+		Assert.assertSame(other, history.popRedo());
+		Assert.assertNull(history.popRedo());
+		Assert.assertEquals(0, history.sizeInBytes());
+
+		// redo: recording the undo state drops the oldest entry of the longer history
+		history.pushRedo(entry);
+		history.pushRedo(entry);
+		history.pushUndo(other);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertTrue(history.canUndo());
+		history.pushUndo(other);
+		Assert.assertEquals(2 * entry.sizeInBytes(), history.sizeInBytes());
+		Assert.assertSame(other, history.popUndo());
+		Assert.assertNull(history.popUndo());
+		Assert.assertSame(entry, history.popRedo());
+		Assert.assertNull(history.popRedo());
+	}
+
+	private static boolean isInBlock(final long[] pos, final long... block)
+	{
+		for (int d = 0; d < pos.length; ++d)
+			if (pos[d] / BLOCK_SIZE[d] != block[d])
+				return false;
+		return true;
+	}
+
+}
@@ -5,6 +5,7 @@ import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.util.Grids;
 import net.imglib2.cache.img.CachedCellImg;
@@ -30,6 +31,7 @@ import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.CommitConflict;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
@@ -55,6 +57,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
@@ -435,4 +441,110 @@ public class CommitCanvasN5Test {
 		return IntervalIndexer.positionToIndex(intervalMin, grid.getGridDimensions());
 	}
 
+
+	@Test
+	public void testConcurrentCommits() throws IOException, UnableToPersistCanvas, ReflectionException, InterruptedException, ExecutionException {
+
+		final long[] dims = new long[] {10, 10, 10};
+		final int[] blockSize = new int[] {5, 5, 5};
+		final String dataset = "concurrent-uint64";
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		container.createDataset(dataset, new DatasetAttributes(dims, blockSize, DataType.UINT64, new GzipCompression()));
+
+		final CommitCanvasN5 annotator1 = new CommitCanvasN5(container, dataset);
+		final CommitCanvasN5 annotator2 = new CommitCanvasN5(container, dataset);
+		final long[] block = {0};
+
+		// disjoint voxels in the same block are merged
+		final CachedCellImg<UnsignedLongType, ?> canvas1 = emptyCanvas(dims, blockSize);
+		final CachedCellImg<UnsignedLongType, ?> canvas2 = emptyCanvas(dims, blockSize);
+		valueAt(canvas1, 0, 0, 0).setInteger(1);
+		annotator1.blocksPainted(block);
+		valueAt(canvas2, 1, 0, 0).setInteger(2);
+		annotator2.blocksPainted(block);
+		annotator2.persistCanvas(canvas2, block);
+		annotator1.persistCanvas(canvas1, block);
+		RandomAccessibleInterval<UnsignedLongType> labels = N5Utils.open(container, dataset);
+		Assert.assertEquals(1, valueAt(labels, 0, 0, 0).getIntegerLong());
+		Assert.assertEquals(2, valueAt(labels, 1, 0, 0).getIntegerLong());
+
+		// overlapping voxels are a conflict and nothing is written
+		final CachedCellImg<UnsignedLongType, ?> canvas3 = emptyCanvas(dims, blockSize);
+		final CachedCellImg<UnsignedLongType, ?> canvas4 = emptyCanvas(dims, blockSize);
+		valueAt(canvas3, 1, 0, 0).setInteger(3);
+		valueAt(canvas3, 2, 0, 0).setInteger(3);
+		annotator1.blocksPainted(block);
+		valueAt(canvas4, 1, 0, 0).setInteger(4);
+		annotator2.blocksPainted(block);
+		annotator2.persistCanvas(canvas4, block);
+		try {
+			annotator1.persistCanvas(canvas3, block);
+			Assert.fail("Expected commit conflict");
+		} catch (final CommitConflict e) {
+			Assert.assertArrayEquals(block, e.getConflictingBlocks());
+		}
+		labels = N5Utils.open(container, dataset);
+		Assert.assertEquals(4, valueAt(labels, 1, 0, 0).getIntegerLong());
+		Assert.assertEquals(0, valueAt(labels, 2, 0, 0).getIntegerLong());
+
+		// committing again after a conflict overwrites
+		annotator1.persistCanvas(canvas3, block);
+		labels = N5Utils.open(container, dataset);
+		Assert.assertEquals(3, valueAt(labels, 1, 0, 0).getIntegerLong());
+		Assert.assertEquals(3, valueAt(labels, 2, 0, 0).getIntegerLong());
+
+		// blocks and label block lookup are updated as one commit step: concurrent commits that paint the same label
+		// into different blocks both end up in the lookup
+		final String painteraDataset = "concurrent-paintera";
+		createPainteraDataset(container, painteraDataset, dims, blockSize);
+		final CommitCanvasN5 painteraAnnotator1 = new CommitCanvasN5(container, painteraDataset);
+		final CommitCanvasN5 painteraAnnotator2 = new CommitCanvasN5(container, painteraDataset);
+		final Path mappingPattern = Paths.get(new N5FSMeta(container, null).basePath(), painteraDataset, "label-to-block-mapping", "s%d", "%d");
+		final ExecutorService es = Executors.newFixedThreadPool(2);
+		try {
+			for (long id = 10; id < 20; ++id) {
+				final CachedCellImg<UnsignedLongType, ?> painteraCanvas1 = emptyCanvas(dims, blockSize);
+				final CachedCellImg<UnsignedLongType, ?> painteraCanvas2 = emptyCanvas(dims, blockSize);
+				valueAt(painteraCanvas1, 0, 0, 0).setInteger(id);
+				valueAt(painteraCanvas2, 5, 0, 0).setInteger(id);
+				final Future<?> commit1 = es.submit(() -> painteraAnnotator1.commit(painteraCanvas1, new long[] {0}));
+				final Future<?> commit2 = es.submit(() -> painteraAnnotator2.commit(painteraCanvas2, new long[] {1}));
+				commit1.get();
+				commit2.get();
+				final Interval[] lookupForId = new LabelBlockLookupFromFile(mappingPattern.toString()).read(0, id);
+				Assert.assertEquals(
+						new TLongHashSet(new long[] {0, 1}),
+						new TLongHashSet(Stream.of(lookupForId).map(Intervals::minAsLongArray).mapToLong(m -> toBlockIndex(m, new CellGrid(dims, blockSize))).toArray()));
+			}
+		} finally {
+			es.shutdown();
+		}
+	}
+
+	private static void createPainteraDataset(
+			final N5Writer container,
+			final String dataset,
+			final long[] dims,
+			final int[] blockSize) throws IOException {
+		final String dataGroup = String.join("/", dataset, "data");
+		final String uniqueLabelsGroup = String.join("/", dataset, "unique-labels");
+		container.createGroup(dataGroup);
+		container.createGroup(uniqueLabelsGroup);
+		container.createDataset(String.join("/", dataGroup, "s0"), new DatasetAttributes(dims, blockSize, DataType.UINT64, new GzipCompression()));
+		container.createDataset(String.join("/", uniqueLabelsGroup, "s0"), new DatasetAttributes(dims, blockSize, DataType.UINT64, new GzipCompression()));
+		container.setAttribute(dataset, "painteraData", PAINTERA_DATA_ATTRIBUTE);
+		container.setAttribute(dataGroup, N5Helpers.MULTI_SCALE_KEY, true);
+		container.setAttribute(uniqueLabelsGroup, N5Helpers.MULTI_SCALE_KEY, true);
+	}
+
+	private static CachedCellImg<UnsignedLongType, ?> emptyCanvas(final long[] dims, final int[] blockSize) {
+		final ReadOnlyCachedCellImgFactory factory = new ReadOnlyCachedCellImgFactory(ReadOnlyCachedCellImgOptions.options().cellDimensions(blockSize));
+		return factory.create(dims, new UnsignedLongType(), img -> img.forEach(px -> px.set(INVALID)));
+	}
+
+	private static UnsignedLongType valueAt(final RandomAccessibleInterval<UnsignedLongType> img, final long... position) {
+		final RandomAccess<UnsignedLongType> access = img.randomAccess();
+		access.setPosition(position);
+		return access.get();
+	}
 }
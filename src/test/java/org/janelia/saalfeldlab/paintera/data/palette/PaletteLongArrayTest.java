@@ -0,0 +1,114 @@
+package org.janelia.saalfeldlab.paintera.data.palette;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PaletteLongArrayTest {
+
+	@Test
+	public void testFromArray()
+	{
+		final long[] data = new long[1000];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (i / 100) * 1000000000000L;
+
+		final PaletteLongArray access = PaletteLongArray.fromArray(data, true);
+		Assert.assertTrue(access.isValid());
+		Assert.assertEquals(10, access.getPaletteSize());
+		Assert.assertEquals(data.length, access.getNumElements());
+		for (int i = 0; i < data.length; ++i)
+			Assert.assertEquals(data[i], access.getValue(i));
+		// one byte per element plus palette
+		Assert.assertEquals(data.length + 10 * Long.BYTES, access.sizeInBytes());
+
+		Assert.assertFalse(PaletteLongArray.fromArray(data, 10, false).isValid());
+	}
+
+	@Test
+	public void testPromotion()
+	{
+		final int numElements = 140000;
+		final PaletteLongArray access = PaletteLongArray.fromArray(new long[numElements], true);
+		Assert.assertEquals(1, access.getPaletteSize());
+
+		// 16 bit indices
+		for (int i = 0; i < 300; ++i)
+			access.setValue(i, i + 1000);
+		Assert.assertEquals(301, access.getPaletteSize());
+
+		// 32 bit indices
+		for (int i = 300; i < 69000; ++i)
+			access.setValue(i, -i);
+		Assert.assertEquals(69001, access.getPaletteSize());
+		Assert.assertTrue(access.isPaletteEncoded());
+
+		for (int i = 0; i < 300; ++i)
+			Assert.assertEquals(i + 1000, access.getValue(i));
+		for (int i = 300; i < 69000; ++i)
+			Assert.assertEquals(-i, access.getValue(i));
+		for (int i = 69000; i < numElements; ++i)
+			Assert.assertEquals(0, access.getValue(i));
+
+		// existing palette entries are reused
+		access.setValue(0, 1001);
+		Assert.assertEquals(1001, access.getValue(0));
+		Assert.assertEquals(69001, access.getPaletteSize());
+	}
+
+	@Test
+	public void testFallBackToValues()
+	{
+		final int numElements = 1000;
+		final PaletteLongArray access = PaletteLongArray.fromArray(new long[numElements], true);
+		for (int i = 0; i < numElements / 2 - 1; ++i)
+			access.setValue(i, i + 1);
+		Assert.assertTrue(access.isPaletteEncoded());
+		Assert.assertEquals(numElements / 2, access.getPaletteSize());
+
+		// palette would hold more than half as many values as elements
+		access.setValue(numElements - 1, -1);
+		Assert.assertFalse(access.isPaletteEncoded());
+		Assert.assertEquals(0, access.getPaletteSize());
+		Assert.assertEquals(numElements * Long.BYTES, access.sizeInBytes());
+		for (int i = 0; i < numElements / 2 - 1; ++i)
+			Assert.assertEquals(i + 1, access.getValue(i));
+		Assert.assertEquals(0, access.getValue(numElements - 2));
+		Assert.assertEquals(-1, access.getValue(numElements - 1));
+
+		access.setValue(0, 5);
+		Assert.assertEquals(5, access.getValue(0));
+		final TLongHashSet labels = new TLongHashSet(new long[] {5, -1});
+		Assert.assertTrue(access.isContainedIn(0, labels));
+		Assert.assertFalse(access.isContainedIn(1, labels));
+		Assert.assertTrue(access.isContainedIn(numElements - 1, labels));
+
+		// many distinct values
+		final long[] data = new long[numElements];
+		for (int i = 0; i < numElements; ++i)
+			data[i] = i;
+		final PaletteLongArray distinct = PaletteLongArray.fromArray(data, true);
+		Assert.assertFalse(distinct.isPaletteEncoded());
+		for (int i = 0; i < numElements; ++i)
+			Assert.assertEquals(i, distinct.getValue(i));
+	}
+
+	@Test
+	public void testIsContainedIn()
+	{
+		final PaletteLongArray access = PaletteLongArray.fromArray(new long[] {1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3}, true);
+		final TLongHashSet labels = new TLongHashSet(new long[] {2, 4});
+		for (int i = 0; i < 12; ++i)
+			Assert.assertEquals(access.getValue(i) == 2, access.isContainedIn(i, labels));
+
+		// new palette entries after the mask was computed
+		access.setValue(0, 4);
+		Assert.assertTrue(access.isPaletteEncoded());
+		Assert.assertTrue(access.isContainedIn(0, labels));
+
+		final TLongHashSet otherLabels = new TLongHashSet(new long[] {3});
+		Assert.assertFalse(access.isContainedIn(0, otherLabels));
+		Assert.assertTrue(access.isContainedIn(2, otherLabels));
+	}
+
+}
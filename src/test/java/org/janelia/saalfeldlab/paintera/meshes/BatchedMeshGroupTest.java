@@ -0,0 +1,81 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import net.imglib2.FinalInterval;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class BatchedMeshGroupTest {
+
+	// one triangle
+	private static final int VERTICES_PER_BLOCK = 3;
+
+	@Test
+	public void testBatchingAndRemoval() {
+		final Set<Runnable> scheduled = new LinkedHashSet<>();
+		final BatchedMeshGroup<Long> group = new BatchedMeshGroup<>(2 * VERTICES_PER_BLOCK, scheduled::add);
+
+		for (long x = 0; x < 5; ++x)
+			group.add(key(x), triangle(x), new float[3 * VERTICES_PER_BLOCK]);
+		Assert.assertEquals(5, group.numBlocks());
+		// at most two blocks per batch
+		Assert.assertEquals(3, group.numBatches());
+		// repeated updates of a batch are merged
+		Assert.assertEquals(3, scheduled.size());
+
+		// replacing a block does not add a batch
+		group.add(key(0), triangle(0), new float[3 * VERTICES_PER_BLOCK]);
+		Assert.assertEquals(5, group.numBlocks());
+		Assert.assertEquals(3, group.numBatches());
+
+		// empty meshes are not added
+		group.add(key(5), new float[0], new float[0]);
+		Assert.assertEquals(5, group.numBlocks());
+
+		scheduled.clear();
+		Assert.assertEquals(2, group.removeMatching(key -> key.min()[0] >= 3));
+		Assert.assertEquals(3, group.numBlocks());
+		// removing the only block of a batch drops the batch but still schedules its update to clear the scene graph
+		Assert.assertEquals(2, group.numBatches());
+		Assert.assertEquals(2, scheduled.size());
+
+		group.clear();
+		Assert.assertEquals(0, group.numBlocks());
+		Assert.assertEquals(0, group.numBatches());
+	}
+
+	@Test
+	public void testRemoveIntersecting() {
+		final Set<Runnable> scheduled = new LinkedHashSet<>();
+		final BatchedMeshGroup<Long> group = new BatchedMeshGroup<>(2 * VERTICES_PER_BLOCK, scheduled::add);
+
+		for (long x = 0; x < 5; ++x)
+			group.add(key(x), triangle(x), new float[3 * VERTICES_PER_BLOCK]);
+
+		// blocks are one voxel wide, only blocks 1 and 2 intersect
+		scheduled.clear();
+		Assert.assertEquals(2, group.removeIntersecting(new FinalInterval(new long[] {1, 0, 0}, new long[] {2, 5, 5})));
+		Assert.assertEquals(3, group.numBlocks());
+		Assert.assertEquals(2, scheduled.size());
+
+		// nothing left to remove in the same range or outside of all blocks
+		Assert.assertEquals(0, group.removeIntersecting(new FinalInterval(new long[] {1, 0, 0}, new long[] {2, 5, 5})));
+		Assert.assertEquals(0, group.removeIntersecting(new FinalInterval(new long[] {0, 1, 0}, new long[] {4, 1, 0})));
+		Assert.assertEquals(3, group.numBlocks());
+
+		Assert.assertEquals(3, group.removeIntersecting(new FinalInterval(new long[] {-1, -1, -1}, new long[] {4, 0, 0})));
+		Assert.assertEquals(0, group.numBlocks());
+		Assert.assertEquals(0, group.numBatches());
+	}
+
+	private static ShapeKey<Long> key(final long x) {
+		return new ShapeKey<>(1L, 0, 0, 0.0, 0, new long[] {x, 0, 0}, new long[] {x, 0, 0});
+	}
+
+	private static float[] triangle(final long x) {
+		return new float[] {x, 0, 0, x + 1, 0, 0, x, 1, 0};
+	}
+
+}
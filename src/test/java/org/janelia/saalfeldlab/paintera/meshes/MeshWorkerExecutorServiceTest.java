@@ -0,0 +1,64 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshWorkerExecutorServiceTest {
+
+	@Test
+	public void testPriorityOrder() throws Exception
+	{
+		final MeshWorkerExecutorService executor = new MeshWorkerExecutorService(1, Executors.defaultThreadFactory());
+		try
+		{
+			// block the only worker so that all following tasks are queued
+			final CountDownLatch block = new CountDownLatch(1);
+			executor.submit(() -> {
+				block.await();
+				return null;
+			});
+
+			final List<String> order = Collections.synchronizedList(new ArrayList<>());
+			final List<CompletableFuture<Void>> futures = new ArrayList<>();
+			futures.add(submit(executor, order, "invisible", new MeshWorkerExecutorService.Priority(false, 0, 3)));
+			futures.add(submit(executor, order, "old-1", new MeshWorkerExecutorService.Priority(true, 1, 1)));
+			futures.add(submit(executor, order, "old-0", new MeshWorkerExecutorService.Priority(true, 0, 1)));
+			futures.add(submit(executor, order, "new-1", new MeshWorkerExecutorService.Priority(true, 1, 2)));
+			futures.add(submit(executor, order, "new-0", new MeshWorkerExecutorService.Priority(true, 0, 2)));
+			final CompletableFuture<Void> cancelled = submit(executor, order, "cancelled", new MeshWorkerExecutorService.Priority(true, 0, 0));
+			executor.submit(() -> order.add("default"));
+
+			Assert.assertTrue(cancelled.cancel(false));
+			executor.purge();
+			block.countDown();
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(Arrays.asList("default", "new-0", "old-0", "new-1", "old-1", "invisible"), order);
+		} finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static CompletableFuture<Void> submit(
+			final MeshWorkerExecutorService executor,
+			final List<String> order,
+			final String name,
+			final MeshWorkerExecutorService.Priority priority)
+	{
+		return executor.submit(() -> {
+			order.add(name);
+			return null;
+		}, priority);
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.paintera.cache.WeakRefLoaderCache;
+import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
+import org.janelia.saalfeldlab.util.HashWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlocksForLabelCacheLoaderTest {
+
+	private static final long[] DIMENSIONS = {8, 8, 4};
+
+	private static final int[] BLOCK_SIZE = {2, 2, 2};
+
+	@Test
+	public void testStreamedBlocksEqualBatch() throws Exception
+	{
+		final BlocksForLabelCacheLoader<Long> loader = loader();
+
+		for (final long id : new long[] {0, 7, 15, 16, 50, 100})
+		{
+			final Set<HashWrapper<Interval>> streamed = Collections.synchronizedSet(new HashSet<>());
+			final Interval[] blocks = loader.get(id, block -> Assert.assertTrue(streamed.add(HashWrapper.interval(block))));
+			Assert.assertEquals(asSet(blocks), streamed);
+			Assert.assertEquals(asSet(loader.get(id)), streamed);
+		}
+
+		// labels 0 to 15 are contained in one column of two blocks each, 50 and 100 in all blocks
+		Assert.assertEquals(2, loader.get(7L).length);
+		Assert.assertEquals(0, loader.get(16L).length);
+		Assert.assertEquals(32, loader.get(100L).length);
+	}
+
+	@Test
+	public void testStreamedBlocksEqualBatchThroughCache()
+	{
+		final BlocksForLabelCacheLoader<Long> loader = loader();
+		final BlocksForLabelCache<Long> cache = new BlocksForLabelCache<>(
+				new WeakRefLoaderCache<Long, Interval[]>().withLoader(loader).unchecked(),
+				loader);
+
+		// first request loads and streams blocks as they are found, second request streams the cached blocks
+		for (int request = 0; request < 2; ++request)
+		{
+			for (final long id : new long[] {0, 7, 16, 100})
+			{
+				final Set<HashWrapper<Interval>> streamed = Collections.synchronizedSet(new HashSet<>());
+				final Interval[] blocks = cache.apply(id, block -> Assert.assertTrue(streamed.add(HashWrapper.interval(block))));
+				Assert.assertEquals(asSet(blocks), streamed);
+				Assert.assertEquals(asSet(cache.apply(id)), streamed);
+			}
+		}
+	}
+
+	private static BlocksForLabelCacheLoader<Long> loader()
+	{
+		final CellGrid grid = new CellGrid(DIMENSIONS, BLOCK_SIZE);
+		final long[] max = Arrays.stream(DIMENSIONS).map(d -> d - 1).toArray();
+		return BlocksForLabelCacheLoader.longKeys(
+				grid,
+				InterruptibleFunction.fromFunction(id -> new Interval[] {new FinalInterval(DIMENSIONS.clone())}),
+				interval -> CacheUtils.collectAllOffsets(DIMENSIONS, BLOCK_SIZE, min -> CacheUtils.fromMin(min, max, BLOCK_SIZE)),
+				BlocksForLabelCacheLoaderTest::uniqueLabels);
+	}
+
+	// not sorted
+	private static long[] uniqueLabels(final long[] cellPosition)
+	{
+		return new long[] {100, cellPosition[0] + 4 * cellPosition[1], 50};
+	}
+
+	private static Set<HashWrapper<Interval>> asSet(final Interval[] blocks)
+	{
+		return Arrays.stream(blocks).map(HashWrapper::interval).collect(Collectors.toSet());
+	}
+
+}
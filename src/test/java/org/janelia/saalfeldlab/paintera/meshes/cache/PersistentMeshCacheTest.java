@@ -0,0 +1,95 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.data.n5.N5BlockVersions;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PersistentMeshCacheTest {
+
+	private static final float[] VERTICES = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+
+	private static final float[] NORMALS = {-1, 0, 0, 0, -1, 0, 0, 0, -1};
+
+	@Test
+	public void testWriteReadEvict() throws IOException
+	{
+		final Path directory = Files.createTempDirectory("persistent-mesh-cache-test");
+		directory.toFile().deleteOnExit();
+
+		// each entry takes a little over 80 bytes: allow for two entries
+		final PersistentMeshCache cache = PersistentMeshCache.forDirectory(directory, 200);
+
+		Assert.assertFalse(cache.read("a", 0).isPresent());
+		cache.write("a", 0, new ValuePair<>(VERTICES, NORMALS));
+		final Optional<Pair<float[], float[]>> a = cache.read("a", 0);
+		Assert.assertTrue(a.isPresent());
+		Assert.assertArrayEquals(VERTICES, a.get().getA(), 0.0f);
+		Assert.assertArrayEquals(NORMALS, a.get().getB(), 0.0f);
+
+		cache.write("b", 0, new ValuePair<>(VERTICES, NORMALS));
+		// touch a so that b is evicted first
+		Assert.assertTrue(cache.read("a", 0).isPresent());
+		cache.write("c", 0, new ValuePair<>(VERTICES, NORMALS));
+
+		Assert.assertTrue(cache.read("a", 0).isPresent());
+		Assert.assertFalse(cache.read("b", 0).isPresent());
+		Assert.assertTrue(cache.read("c", 0).isPresent());
+		Assert.assertTrue(cache.getCurrentBytes() <= 200);
+	}
+
+	@Test
+	public void testInvalidatedByVersionBump() throws Exception
+	{
+		final Path directory = Files.createTempDirectory("persistent-mesh-cache-test");
+		directory.toFile().deleteOnExit();
+		final String container = Files.createTempDirectory("persistent-mesh-cache-test-n5").toString();
+		final String dataset = "labels";
+		final N5FSWriter n5 = new N5FSWriter(container);
+		n5.createDataset(dataset, new long[] {20, 10, 10}, new int[] {10, 10, 10}, DataType.UINT64, new GzipCompression());
+
+		final PersistentMeshCache cache = PersistentMeshCache.forDirectory(directory, 1 << 20);
+		final N5BlockVersions versions = new N5BlockVersions(n5, dataset);
+		final AtomicInteger numGenerated = new AtomicInteger();
+		final PersistentMeshCacheLoader<Long> loader = new PersistentMeshCacheLoader<>(
+				key -> {
+					numGenerated.incrementAndGet();
+					return new ValuePair<>(VERTICES, NORMALS);
+				},
+				cache,
+				id -> Long.toString(id),
+				key -> versions.version(key.scaleIndex(), key.interval()),
+				() -> false);
+		final ShapeKey<Long> key = new ShapeKey<>(1L, 0, 0, 0.5, 0, new long[] {0, 0, 0}, new long[] {9, 9, 9});
+
+		loader.get(key);
+		loader.get(key);
+		Assert.assertEquals(1, numGenerated.get());
+		Assert.assertTrue(cache.getCurrentBytes() > 0);
+
+		// versions are not stored in the dataset attributes
+		Assert.assertEquals(1, N5BlockVersions.bump(n5, dataset, new long[] {1}));
+		Assert.assertNull(n5.getAttribute(dataset, "blockVersions", Object.class));
+		versions.reload();
+		Assert.assertEquals(1, versions.version(0, new FinalInterval(new long[] {0, 0, 0}, new long[] {9, 9, 9})));
+
+		// bumping a neighboring block invalidates the mesh
+		loader.get(key);
+		Assert.assertEquals(2, numGenerated.get());
+		loader.get(key);
+		Assert.assertEquals(2, numGenerated.get());
+	}
+
+}
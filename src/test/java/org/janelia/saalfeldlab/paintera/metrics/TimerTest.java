@@ -0,0 +1,45 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimerTest {
+
+	@Test
+	public void testBucketBounds()
+	{
+		long previousUpperBound = -1;
+		for (long nanos = 0; nanos < 1 << 16; ++nanos)
+		{
+			final int bucket = Timer.bucket(nanos);
+			Assert.assertTrue(nanos <= Timer.upperBound(bucket));
+			Assert.assertTrue(bucket == 0 || nanos > Timer.upperBound(bucket - 1));
+			Assert.assertTrue(Timer.upperBound(bucket) >= previousUpperBound);
+			previousUpperBound = Timer.upperBound(bucket);
+		}
+		final int lastBucket = Timer.bucket(Long.MAX_VALUE);
+		Assert.assertEquals(Long.MAX_VALUE, Timer.upperBound(lastBucket));
+	}
+
+	@Test
+	public void testQuantiles()
+	{
+		final Timer timer = new Timer();
+		Assert.assertEquals(0, timer.getQuantileNanos(0.5));
+
+		for (long nanos = 1; nanos <= 1000; ++nanos)
+			timer.update(nanos * 1000);
+
+		Assert.assertEquals(1000, timer.getCount());
+		Assert.assertEquals(1000 * 1000, timer.getQuantileNanos(1.0));
+
+		final long median = timer.getQuantileNanos(0.5);
+		Assert.assertTrue(median >= 500 * 1000);
+		Assert.assertTrue(median <= 500 * 1000 * 5 / 4);
+
+		final long p99 = timer.getQuantileNanos(0.99);
+		Assert.assertTrue(p99 >= 990 * 1000);
+		Assert.assertTrue(p99 <= 1000 * 1000);
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.janelia.saalfeldlab.util.connectivity;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BlockwiseConnectedComponentsTest {
+
+	private static final long SEED_LABEL = 5;
+
+	@Test
+	public void testConnectedAcrossCells() throws InterruptedException, ExecutionException {
+		final long[] dims = {10, 4, 4};
+		final CellGrid grid = new CellGrid(dims, new int[] {3, 4, 4});
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dims);
+		final ArrayImg<UnsignedByteType, ByteArray> foreground = ArrayImgs.unsignedBytes(dims);
+		final RandomAccess<UnsignedByteType> foregroundAccess = foreground.randomAccess();
+
+		// line that crosses all cells, seeded in first cell only
+		for (long x = 0; x < dims[0]; ++x) {
+			foregroundAccess.setPosition(new long[] {x, 1, 1});
+			foregroundAccess.get().set(1);
+		}
+		final RandomAccess<UnsignedLongType> labelsAccess = labels.randomAccess();
+		labelsAccess.setPosition(new long[] {0, 1, 1});
+		labelsAccess.get().set(SEED_LABEL);
+
+		// unseeded component in last cell
+		foregroundAccess.setPosition(new long[] {9, 3, 3});
+		foregroundAccess.get().set(1);
+
+		final ExecutorService es = Executors.newFixedThreadPool(3);
+		final BlockwiseConnectedComponents<UnsignedLongType, UnsignedByteType> components = new BlockwiseConnectedComponents<>(
+				grid,
+				Views.extendZero(labels),
+				Views.extendZero(foreground),
+				l -> l.getIntegerLong() == SEED_LABEL,
+				f -> f.get() > 0,
+				() -> new long[] {0},
+				es);
+
+		for (long x = 0; x < dims[0]; x += 3) {
+			final long[] min = {x, 0, 0};
+			final long[] max = {Math.min(x + 2, dims[0] - 1), dims[1] - 1, dims[2] - 1};
+			final ArrayImg<UnsignedByteType, ByteArray> cell = ArrayImgs.unsignedBytes(Intervals.dimensionsAsLongArray(new FinalInterval(min, max)));
+			components.fill(Views.translate(cell, min));
+			final RandomAccess<UnsignedByteType> access = Views.translate(cell, min).randomAccess();
+			for (long cx = min[0]; cx <= max[0]; ++cx) {
+				access.setPosition(new long[] {cx, 1, 1});
+				Assert.assertEquals(1, access.get().get());
+			}
+			// only the seeded line is part of the intersection
+			long count = 0;
+			for (final UnsignedByteType t : cell)
+				count += t.get();
+			Assert.assertEquals(max[0] - min[0] + 1, count);
+		}
+
+		es.shutdown();
+	}
+
+	@Test
+	public void testSolvedOnSolverExecutor() throws InterruptedException, ExecutionException {
+		final long[] dims = {6, 2, 2};
+		final CellGrid grid = new CellGrid(dims, new int[] {2, 2, 2});
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dims);
+		final ArrayImg<UnsignedByteType, ByteArray> foreground = ArrayImgs.unsignedBytes(dims);
+		for (final UnsignedByteType f : foreground)
+			f.set(1);
+		labels.randomAccess().get().set(SEED_LABEL);
+
+		final ExecutorService es = Executors.newFixedThreadPool(2);
+		final ExecutorService solver = Executors.newSingleThreadExecutor(r -> new Thread(r, "solver"));
+		final AtomicReference<String> solvedOn = new AtomicReference<>();
+		final BlockwiseConnectedComponents<UnsignedLongType, UnsignedByteType> components = new BlockwiseConnectedComponents<>(
+				grid,
+				Views.extendZero(labels),
+				Views.extendZero(foreground),
+				l -> l.getIntegerLong() == SEED_LABEL,
+				f -> f.get() > 0,
+				() -> {
+					solvedOn.set(Thread.currentThread().getName());
+					return null;
+				},
+				es,
+				solver);
+
+		final long[] min = {4, 0, 0};
+		final ArrayImg<UnsignedByteType, ByteArray> cell = ArrayImgs.unsignedBytes(2, 2, 2);
+		components.fill(Views.translate(cell, min));
+		Assert.assertEquals("solver", solvedOn.get());
+		for (final UnsignedByteType t : cell)
+			Assert.assertEquals(1, t.get());
+
+		solver.shutdown();
+		es.shutdown();
+	}
+
+	@Test
+	public void testUnionFind() throws InterruptedException {
+		final ConcurrentUnionFind unionFind = new ConcurrentUnionFind();
+		final int n = 200000;
+		Assert.assertEquals(0, unionFind.allocate(n));
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			final int offset = t;
+			threads[t] = new Thread(() -> {
+				for (int i = offset; i + 2 < n; i += threads.length)
+					unionFind.union(i, i + 2);
+			});
+			threads[t].start();
+		}
+		for (final Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(0, unionFind.find(n - 2));
+		Assert.assertEquals(1, unionFind.find(n - 1));
+		Assert.assertNotEquals(unionFind.find(4), unionFind.find(5));
+	}
+
+}
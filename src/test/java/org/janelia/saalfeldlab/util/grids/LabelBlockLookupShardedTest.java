@@ -0,0 +1,89 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class LabelBlockLookupShardedTest {
+
+	@Test
+	public void testWriteAndRead() throws IOException
+	{
+		final Path root = Files.createTempDirectory("label-block-lookup-sharded-test");
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(root.toString(), 4);
+
+		final Interval block1 = new FinalInterval(new long[] {0, 0, 0}, new long[] {63, 63, 63});
+		final Interval block2 = new FinalInterval(new long[] {64, 0, 0}, new long[] {127, 63, 63});
+
+		Assert.assertEquals(0, lookup.read(0, 1L).length);
+
+		lookup.write(0, 1L, block1, block2);
+		assertEquals(new Interval[] {block1, block2}, lookup.read(0, 1L));
+		Assert.assertEquals(0, lookup.read(1, 1L).length);
+
+		lookup.write(0, 1L, block2);
+		assertEquals(new Interval[] {block2}, lookup.read(0, 1L));
+
+		lookup.write(0, 1L);
+		Assert.assertEquals(0, lookup.read(0, 1L).length);
+	}
+
+	@Test
+	public void testBatchWriteAndRead() throws IOException
+	{
+		final Path root = Files.createTempDirectory("label-block-lookup-sharded-test");
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(root.toString(), 3);
+
+		final TLongObjectMap<Interval[]> blockLists = new TLongObjectHashMap<>();
+		for (long id = 1; id <= 100; ++id)
+			blockLists.put(id, new Interval[] {new FinalInterval(new long[] {id, 0}, new long[] {id + 9, 9})});
+		lookup.write(0, blockLists);
+
+		final long[] ids = {1, 50, 100, 101};
+		final TLongObjectMap<Interval[]> read = lookup.read(0, ids);
+		Assert.assertEquals(ids.length, read.size());
+		for (long id = 1; id <= 100; id += 49)
+			assertEquals(blockLists.get(id), read.get(id));
+		Assert.assertEquals(0, read.get(101).length);
+
+		// a lookup at the same root reads what was written before
+		final LabelBlockLookupSharded other = new LabelBlockLookupSharded(root.toString(), 3);
+		for (long id = 1; id <= 100; ++id)
+			assertEquals(blockLists.get(id), other.read(0, id));
+	}
+
+	@Test
+	public void testReadDoesNotWrite() throws IOException
+	{
+		final Path root = Files.createTempDirectory("label-block-lookup-sharded-test");
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(root.toString(), 1);
+		final Interval block = new FinalInterval(new long[] {0, 0}, new long[] {9, 9});
+		lookup.write(0, 1L, block);
+
+		// logs and compacted shards share their format: provide a compacted shard without log
+		final Path compactedOnly = Files.createTempDirectory("label-block-lookup-sharded-test");
+		Files.createDirectories(compactedOnly.resolve("s0"));
+		Files.copy(root.resolve("s0").resolve("shard-0.log"), compactedOnly.resolve("s0").resolve("shard-0"));
+
+		final LabelBlockLookupSharded reader = new LabelBlockLookupSharded(compactedOnly.toString(), 1);
+		assertEquals(new Interval[] {block}, reader.read(0, 1L));
+		Assert.assertFalse(Files.exists(compactedOnly.resolve("s0").resolve("shard-0.log")));
+	}
+
+	private static void assertEquals(final Interval[] expected, final Interval[] actual)
+	{
+		Assert.assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+			Assert.assertTrue(Arrays.toString(actual), Intervals.equals(expected[i], actual[i]));
+	}
+
+}
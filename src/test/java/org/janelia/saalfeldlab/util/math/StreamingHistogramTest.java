@@ -0,0 +1,53 @@
+package org.janelia.saalfeldlab.util.math;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class StreamingHistogramTest {
+
+	@Test
+	public void testIntegerValues() {
+		final StreamingHistogram histogram = new StreamingHistogram(1024);
+		for (int value = 1000; value < 2000; ++value)
+			histogram.add(value);
+		Assert.assertEquals(1000, histogram.getTotalCount());
+		Assert.assertEquals(1000.0, histogram.getMinValue(), 0.0);
+		Assert.assertEquals(1999.0, histogram.getMaxValue(), 0.0);
+		Assert.assertEquals(1000.0, histogram.quantile(0.0), 0.0);
+		Assert.assertEquals(1999.0, histogram.quantile(1.0), 0.0);
+		Assert.assertEquals(1500.0, histogram.quantile(0.5), 2 * histogram.getBinWidth());
+		Assert.assertEquals(1100.0, histogram.quantile(0.1), 2 * histogram.getBinWidth());
+	}
+
+	@Test
+	public void testGrowInBothDirections() {
+		final Random rng = new Random(100);
+		final StreamingHistogram histogram = new StreamingHistogram(256);
+		for (int i = 0; i < 100000; ++i)
+			histogram.add(rng.nextDouble() * 2.0 - 1.0);
+		Assert.assertTrue(histogram.getBinWidth() <= 4.0 * 2.0 / 256);
+		Assert.assertEquals(-0.9, histogram.quantile(0.05), 0.03);
+		Assert.assertEquals(0.0, histogram.quantile(0.5), 0.03);
+		Assert.assertEquals(0.9, histogram.quantile(0.95), 0.03);
+	}
+
+	@Test
+	public void testMergeAndIgnoreNonFinite() {
+		final StreamingHistogram histogram1 = new StreamingHistogram(64);
+		final StreamingHistogram histogram2 = new StreamingHistogram(64);
+		histogram1.add(Double.NaN);
+		histogram1.add(Double.POSITIVE_INFINITY);
+		Assert.assertEquals(0, histogram1.getTotalCount());
+		Assert.assertTrue(Double.isNaN(histogram1.quantile(0.5)));
+
+		histogram1.add(1.0, 10);
+		histogram2.add(3.0, 30);
+		histogram1.add(histogram2);
+		Assert.assertEquals(40, histogram1.getTotalCount());
+		Assert.assertEquals(1.0, histogram1.quantile(0.2), histogram1.getBinWidth());
+		Assert.assertEquals(3.0, histogram1.quantile(0.9), histogram1.getBinWidth());
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LazyPyramidTest {
+
+	@Test
+	public void testDownsampleByAverage()
+	{
+		// 3x2, last column is truncated
+		final ArrayImg<DoubleType, DoubleArray> source = ArrayImgs.doubles(new double[] {
+				1, 3, 5,
+				3, 5, 7}, 3, 2);
+		final ArrayImg<DoubleType, DoubleArray> target = ArrayImgs.doubles(2, 1);
+		LazyPyramid.downsampleByAverage(source, target);
+		Assert.assertArrayEquals(new double[] {3, 6}, target.update(null).getCurrentStorageArray(), 0.0);
+	}
+
+	@Test
+	public void testDownsampleByMode()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> source = ArrayImgs.unsignedLongs(new long[] {
+				1, 2, 4, 4, 9, 8,
+				2, 2, 3, 5, 8, 9,
+				5, 5, 6, 6, 1, 1,
+				5, 6, 6, 6, 1, 1}, 6, 4);
+		final ArrayImg<UnsignedLongType, LongArray> target = ArrayImgs.unsignedLongs(3, 2);
+		LazyPyramid.downsampleByMode(source, target);
+		// ties are resolved in favor of the smaller label
+		Assert.assertArrayEquals(new long[] {2, 4, 8, 5, 6, 1}, target.update(null).getCurrentStorageArray());
+
+		// target block in the interior of the level
+		final ArrayImg<UnsignedLongType, LongArray> block = ArrayImgs.unsignedLongs(1, 1);
+		LazyPyramid.downsampleByMode(source, Views.translate(block, 2, 1));
+		Assert.assertEquals(1, block.update(null).getCurrentStorageArray()[0]);
+	}
+
+}
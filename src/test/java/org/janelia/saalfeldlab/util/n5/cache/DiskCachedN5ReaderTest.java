@@ -0,0 +1,188 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+public class DiskCachedN5ReaderTest {
+
+	private static final String DATASET = "data";
+
+	private static final int[] BLOCK_SIZE = {4, 3, 2};
+
+	/**
+	 * Local stand-in for a cloud bucket: serves the raw block files of an {@link N5FSWriter} and uses a hash of the
+	 * block contents as version, similar to an ETag.
+	 */
+	private static class LocalBlockStore implements RemoteBlockStore {
+
+		private final Path basePath;
+
+		private final AtomicInteger numFetches = new AtomicInteger(0);
+
+		private final AtomicInteger numVersionQueries = new AtomicInteger(0);
+
+		private LocalBlockStore(final Path basePath) {
+			this.basePath = basePath;
+		}
+
+		@Override
+		public String identifier() {
+			return basePath.toUri().toString();
+		}
+
+		@Override
+		public String version(final String dataset, final long[] gridPosition) throws IOException {
+			numVersionQueries.incrementAndGet();
+			final Path path = blockPath(dataset, gridPosition);
+			return Files.exists(path) ? Integer.toString(Arrays.hashCode(Files.readAllBytes(path))) : null;
+		}
+
+		@Override
+		public VersionedBytes fetch(final String dataset, final long[] gridPosition) throws IOException {
+			numFetches.incrementAndGet();
+			final Path path = blockPath(dataset, gridPosition);
+			if (!Files.exists(path))
+				return null;
+			final byte[] bytes = Files.readAllBytes(path);
+			return new VersionedBytes(Integer.toString(Arrays.hashCode(bytes)), bytes);
+		}
+
+		private Path blockPath(final String dataset, final long[] gridPosition) {
+			return Paths.get(basePath.toString(), dataset, LongStream.of(gridPosition).mapToObj(Long::toString).toArray(String[]::new));
+		}
+	}
+
+	@Test
+	public void testCacheHitsAndValidation() throws IOException {
+		final Path containerDir = Files.createTempDirectory(null);
+		final N5FSWriter writer = new N5FSWriter(containerDir.toAbsolutePath().toString());
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {8, 6, 4}, BLOCK_SIZE, DataType.UINT64, new GzipCompression());
+		writer.createDataset(DATASET, attributes);
+		final long[] position = {1, 0, 1};
+		writer.writeBlock(DATASET, attributes, block(position, 1));
+
+		final Path cacheDir = Files.createTempDirectory(null);
+		final LocalBlockStore store = new LocalBlockStore(containerDir.toAbsolutePath());
+		final DiskCachedN5Reader reader = new DiskCachedN5Reader(
+				writer,
+				store,
+				new DiskBlockCache(cacheDir, Long.MAX_VALUE),
+				DiskCachedN5Reader.Validation.ALWAYS);
+
+		Assert.assertArrayEquals(block(position, 1).getData(), (long[]) reader.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(1, store.numFetches.get());
+
+		Assert.assertArrayEquals(block(position, 1).getData(), (long[]) reader.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(1, store.numFetches.get());
+
+		// remote block changes, cached copy must not be used
+		writer.writeBlock(DATASET, attributes, block(position, 2));
+		Assert.assertArrayEquals(block(position, 2).getData(), (long[]) reader.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(2, store.numFetches.get());
+
+		// missing blocks are not fetched
+		Assert.assertNull(reader.readBlock(DATASET, attributes, new long[] {0, 0, 0}));
+		Assert.assertEquals(2, store.numFetches.get());
+
+		// new session re-uses cache directory
+		final DiskCachedN5Reader restarted = new DiskCachedN5Reader(
+				writer,
+				store,
+				new DiskBlockCache(cacheDir, Long.MAX_VALUE),
+				DiskCachedN5Reader.Validation.SESSION);
+		Assert.assertArrayEquals(block(position, 2).getData(), (long[]) restarted.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(2, store.numFetches.get());
+	}
+
+	@Test
+	public void testSessionMissFetchesOnce() throws IOException {
+		final Path containerDir = Files.createTempDirectory(null);
+		final N5FSWriter writer = new N5FSWriter(containerDir.toAbsolutePath().toString());
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {8, 6, 4}, BLOCK_SIZE, DataType.UINT64, new GzipCompression());
+		writer.createDataset(DATASET, attributes);
+		final long[] position = {0, 1, 0};
+		writer.writeBlock(DATASET, attributes, block(position, 3));
+
+		final LocalBlockStore store = new LocalBlockStore(containerDir.toAbsolutePath());
+		final DiskCachedN5Reader reader = new DiskCachedN5Reader(
+				writer,
+				store,
+				new DiskBlockCache(Files.createTempDirectory(null), Long.MAX_VALUE),
+				DiskCachedN5Reader.Validation.SESSION);
+
+		// uncached block: fetch only, the fetch already returns the version
+		Assert.assertArrayEquals(block(position, 3).getData(), (long[]) reader.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(1, store.numFetches.get());
+		Assert.assertEquals(0, store.numVersionQueries.get());
+
+		// version is known for the rest of the session
+		Assert.assertArrayEquals(block(position, 3).getData(), (long[]) reader.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(1, store.numFetches.get());
+		Assert.assertEquals(0, store.numVersionQueries.get());
+	}
+
+	@Test
+	public void testAccessOrderSurvivesRestart() throws IOException {
+		final Path cacheDir = Files.createTempDirectory(null);
+		final byte[] data = new byte[100];
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, 250, 0);
+		cache.put("a", "0", data);
+		cache.put("b", "0", data);
+		// a was written before b
+		Files.setLastModifiedTime(cacheDir.resolve(DiskBlockCache.fileName("a")), FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(cacheDir.resolve(DiskBlockCache.fileName("b")), FileTime.fromMillis(2000));
+		Assert.assertNotNull(cache.get("a", "0"));
+
+		// b is least recently used in the next session, even though it was written last
+		final DiskBlockCache restarted = new DiskBlockCache(cacheDir, 250, 0);
+		restarted.put("c", "0", data);
+		Assert.assertNull(restarted.get("b", "0"));
+		Assert.assertNotNull(restarted.get("a", "0"));
+		Assert.assertNotNull(restarted.get("c", "0"));
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		final Path cacheDir = Files.createTempDirectory(null);
+		final byte[] data = new byte[100];
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, 250);
+
+		cache.put("a", "0", data);
+		cache.put("b", "0", data);
+		Assert.assertNotNull(cache.get("a", "0"));
+		cache.put("c", "0", data);
+
+		// b is least recently used
+		Assert.assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+		Assert.assertNull(cache.get("b", "0"));
+		Assert.assertNotNull(cache.get("a", "0"));
+		Assert.assertNotNull(cache.get("c", "0"));
+		Assert.assertEquals(data.length, cache.get("c", "0").remaining());
+
+		// version mismatch removes entry
+		Assert.assertNull(cache.get("c", "1"));
+		Assert.assertNull(cache.get("c", null));
+	}
+
+	private static LongArrayDataBlock block(final long[] position, final long value) {
+		final long[] data = new long[BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2]];
+		Arrays.fill(data, value);
+		data[0] = position[0];
+		return new LongArrayDataBlock(BLOCK_SIZE, position, data);
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.janelia.saalfeldlab.util.n5.cache;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedBlockReaderTest {
+
+	private static final String DATASET = "data";
+
+	private static final int[] BLOCK_SIZE = {4, 3, 2};
+
+	@Test
+	public void testConcurrentReadsAreShared() throws Exception {
+		final String container = Files.createTempDirectory(null).toAbsolutePath().toString();
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {8, 6, 4}, BLOCK_SIZE, DataType.UINT64, new GzipCompression());
+		final long[] position = {1, 0, 1};
+		final long[] data = new long[BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2]];
+		Arrays.fill(data, 3);
+		final N5FSWriter writer = new N5FSWriter(container);
+		writer.createDataset(DATASET, attributes);
+		writer.writeBlock(DATASET, attributes, new LongArrayDataBlock(BLOCK_SIZE, position, data));
+
+		final AtomicInteger numReads = new AtomicInteger(0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final N5Reader slow = new N5FSWriter(container) {
+			@Override
+			public DataBlock<?> readBlock(final String pathName, final DatasetAttributes datasetAttributes, final long[] gridPosition) throws IOException {
+				numReads.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					throw new IOException(e);
+				}
+				return super.readBlock(pathName, datasetAttributes, gridPosition);
+			}
+		};
+		// separate readers for the same container, e.g. opened by different sources
+		final N5Reader first = new SharedBlockReader(slow, container);
+		final N5Reader second = new SharedBlockReader(slow, container);
+
+		final long coalesced = MetricRegistry.global().counter("n5.blocks.coalesced").getCount();
+		final CompletableFuture<DataBlock<?>> firstBlock = read(first, attributes, position);
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		final CompletableFuture<DataBlock<?>> secondBlock = read(second, attributes, position);
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (MetricRegistry.global().counter("n5.blocks.coalesced").getCount() == coalesced && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		release.countDown();
+
+		Assert.assertArrayEquals(data, (long[]) firstBlock.get().getData());
+		Assert.assertArrayEquals(data, (long[]) secondBlock.get().getData());
+		Assert.assertEquals(1, numReads.get());
+
+		// completed reads are not retained
+		Assert.assertArrayEquals(data, (long[]) second.readBlock(DATASET, attributes, position).getData());
+		Assert.assertEquals(2, numReads.get());
+	}
+
+	@Test
+	public void testFileSystemReaderIsShared() throws IOException {
+		final N5Reader reader = new N5FSWriter(Files.createTempDirectory(null).toAbsolutePath().toString());
+		Assert.assertTrue(SharedBlockReader.sharedIfPossible(reader) instanceof SharedBlockReader);
+		Assert.assertSame(reader, ((SharedBlockReader) SharedBlockReader.sharedIfPossible(reader)).getDelegate());
+	}
+
+	private static CompletableFuture<DataBlock<?>> read(final N5Reader reader, final DatasetAttributes attributes, final long[] position) {
+		final CompletableFuture<DataBlock<?>> block = new CompletableFuture<>();
+		new Thread(() -> {
+			try {
+				block.complete(reader.readBlock(DATASET, attributes, position));
+			} catch (final IOException e) {
+				block.completeExceptionally(e);
+			}
+		}).start();
+		return block;
+	}
+
+}